@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.bench.ltr;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import org.apache.solr.core.SolrResourceLoader;
+import org.apache.solr.ltr.feature.Feature;
+import org.apache.solr.ltr.feature.ValueFeature;
+import org.apache.solr.ltr.model.LTRScoringModel;
+import org.apache.solr.ltr.model.MultipleAdditiveTreesModel;
+import org.apache.solr.ltr.norm.IdentityNormalizer;
+import org.apache.solr.ltr.norm.Normalizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Scores reranking windows with a {@link MultipleAdditiveTreesModel}, one document at a time and in
+ * batches. Trees with a depth of 6 or less are batch scored with bit vectors, deeper trees tree by
+ * tree.
+ */
+@Fork(value = 1)
+@Warmup(time = 1, iterations = 5)
+@Measurement(time = 1, iterations = 5)
+@Threads(value = 1)
+public class TreeEnsembleScoring {
+
+  @State(Scope.Benchmark)
+  public static class BenchState {
+
+    @Param({"100", "1000"})
+    int numTrees;
+
+    @Param({"4", "6", "8"})
+    int depth;
+
+    @Param({"50"})
+    int numFeatures;
+
+    /** Number of documents scored per invocation, as with the reRankDocs of a request */
+    @Param({"200"})
+    int numDocs;
+
+    MultipleAdditiveTreesModel model;
+    float[][] featureVectors;
+    float[] scores;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception {
+      final SplittableRandom random = new SplittableRandom(0x5EED);
+      final SolrResourceLoader loader = new SolrResourceLoader(Path.of("").toAbsolutePath());
+
+      final List<Feature> features = new ArrayList<>(numFeatures);
+      for (int i = 0; i < numFeatures; i++) {
+        final Feature feature =
+            Feature.getInstance(
+                loader, ValueFeature.class.getName(), "f" + i, Map.of("value", 0f));
+        feature.setIndex(i);
+        features.add(feature);
+      }
+      final List<Normalizer> norms =
+          new ArrayList<>(Collections.nCopies(numFeatures, IdentityNormalizer.INSTANCE));
+
+      final List<Object> trees = new ArrayList<>(numTrees);
+      for (int i = 0; i < numTrees; i++) {
+        final Map<String, Object> tree = new HashMap<>();
+        tree.put("weight", "0.1");
+        tree.put("root", createNode(random, depth));
+        trees.add(tree);
+      }
+      final Map<String, Object> params = new HashMap<>();
+      params.put("trees", trees);
+
+      model =
+          (MultipleAdditiveTreesModel)
+              LTRScoringModel.getInstance(
+                  loader,
+                  MultipleAdditiveTreesModel.class.getName(),
+                  "bench",
+                  features,
+                  norms,
+                  "bench",
+                  features,
+                  params);
+
+      featureVectors = new float[numDocs][numFeatures];
+      for (float[] featureVector : featureVectors) {
+        for (int i = 0; i < numFeatures; i++) {
+          featureVector[i] = (float) random.nextDouble();
+        }
+      }
+      scores = new float[numDocs];
+    }
+
+    private Map<String, Object> createNode(SplittableRandom random, int depth) {
+      final Map<String, Object> node = new HashMap<>();
+      if (depth == 0) {
+        node.put("value", Float.toString((float) random.nextDouble(-1, 1)));
+      } else {
+        node.put("feature", "f" + random.nextInt(numFeatures));
+        node.put("threshold", Float.toString((float) random.nextDouble()));
+        node.put("left", createNode(random, depth - 1));
+        node.put("right", createNode(random, depth - 1));
+      }
+      return node;
+    }
+  }
+
+  @Benchmark
+  public void scoreEach(BenchState state, Blackhole bh) {
+    for (int doc = 0; doc < state.numDocs; doc++) {
+      bh.consume(state.model.score(state.featureVectors[doc]));
+    }
+  }
+
+  @Benchmark
+  public float[] batchScore(BenchState state) {
+    state.model.batchScore(state.featureVectors, state.numDocs, state.scores);
+    return state.scores;
+  }
+}
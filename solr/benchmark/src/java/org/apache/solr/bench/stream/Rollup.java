@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.bench.stream;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.TupleBatch;
+import org.apache.solr.client.solrj.io.comp.HashKey;
+import org.apache.solr.client.solrj.io.comp.StreamComparator;
+import org.apache.solr.client.solrj.io.stream.CloudSolrStream;
+import org.apache.solr.client.solrj.io.stream.RollupStream;
+import org.apache.solr.client.solrj.io.stream.SolrStream;
+import org.apache.solr.client.solrj.io.stream.StreamContext;
+import org.apache.solr.client.solrj.io.stream.TupleStream;
+import org.apache.solr.client.solrj.io.stream.expr.Explanation;
+import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
+import org.apache.solr.client.solrj.io.stream.metrics.Bucket;
+import org.apache.solr.client.solrj.io.stream.metrics.CountMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.MaxMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.MeanMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.Metric;
+import org.apache.solr.client.solrj.io.stream.metrics.MinMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.SumMetric;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Rolls up the rows of a sorted export, as the <code>map_reduce</code> aggregations of SQL do:
+ * tuple by tuple, as the {@link RollupStream} did before reading batches, and by ranges of rows of
+ * {@link TupleBatch batches}. The rows are generated in memory, so that only the rollup is
+ * measured. The batches are either filled straight into columns, as the javabin parser of a single
+ * {@link SolrStream} decodes them, or from tuples, as the batches of a {@link CloudSolrStream}
+ * merging the tuples of several shards are.
+ */
+@Fork(value = 1)
+@Warmup(time = 1, iterations = 5)
+@Measurement(time = 1, iterations = 5)
+@Threads(value = 1)
+public class Rollup {
+
+  @State(Scope.Benchmark)
+  public static class BenchState {
+
+    @Param({"1000000"})
+    int numRows;
+
+    /** The average number of rows of a group */
+    @Param({"1", "100", "10000"})
+    int groupSize;
+
+    long[] keys;
+    long[] longs;
+    double[] doubles;
+    Bucket[] buckets;
+    Metric[] metrics;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+      SplittableRandom random = new SplittableRandom(0x5EED);
+      keys = new long[numRows];
+      longs = new long[numRows];
+      doubles = new double[numRows];
+      long key = 0;
+      for (int i = 0; i < numRows; i++) {
+        if (random.nextInt(groupSize) == 0) {
+          key++;
+        }
+        keys[i] = key;
+        longs[i] = random.nextInt(1_000_000);
+        doubles[i] = random.nextDouble();
+      }
+      buckets = new Bucket[] {new Bucket("key_l")};
+      metrics =
+          new Metric[] {
+            new CountMetric(),
+            new SumMetric("value_l"),
+            new MinMetric("value_l"),
+            new MaxMetric("value_l"),
+            new MeanMetric("value_d")
+          };
+    }
+  }
+
+  /** Rolls up tuple by tuple, comparing the bucket values of each tuple with the current group */
+  @Benchmark
+  public void rollupTuples(BenchState state, Blackhole bh) throws IOException {
+    try (TupleStream stream = new RowsStream(state, false)) {
+      stream.open();
+      HashKey currentKey = null;
+      Metric[] currentMetrics = null;
+      for (Tuple tuple = stream.read(); !tuple.EOF; tuple = stream.read()) {
+        Object[] bucketValues = new Object[state.buckets.length];
+        for (int i = 0; i < bucketValues.length; i++) {
+          bucketValues[i] = state.buckets[i].getBucketValue(tuple);
+        }
+        HashKey hashKey = new HashKey(bucketValues);
+        if (!hashKey.equals(currentKey)) {
+          if (currentMetrics != null) {
+            consume(currentMetrics, bh);
+          }
+          currentKey = hashKey;
+          currentMetrics = new Metric[state.metrics.length];
+          for (int i = 0; i < currentMetrics.length; i++) {
+            currentMetrics[i] = state.metrics[i].newInstance();
+          }
+        }
+        for (Metric metric : currentMetrics) {
+          metric.update(tuple);
+        }
+      }
+      if (currentMetrics != null) {
+        consume(currentMetrics, bh);
+      }
+    }
+  }
+
+  /** Rolls up ranges of rows of batches, which are read column by column */
+  @Benchmark
+  public void rollupBatches(BenchState state, Blackhole bh) throws IOException {
+    rollup(new RowsStream(state, true), state, bh);
+  }
+
+  /** Rolls up ranges of rows of batches, which are filled from tuples */
+  @Benchmark
+  public void rollupBatchesOfTuples(BenchState state, Blackhole bh) throws IOException {
+    rollup(new RowsStream(state, false), state, bh);
+  }
+
+  private static void rollup(TupleStream rows, BenchState state, Blackhole bh) throws IOException {
+    try (TupleStream stream = new RollupStream(rows, state.buckets, state.metrics)) {
+      stream.open();
+      for (Tuple tuple = stream.read(); !tuple.EOF; tuple = stream.read()) {
+        bh.consume(tuple);
+      }
+    }
+  }
+
+  private static void consume(Metric[] metrics, Blackhole bh) {
+    for (Metric metric : metrics) {
+      bh.consume(metric.getValue());
+    }
+  }
+
+  /**
+   * A stream of the generated rows, which reads batches column by column, or else tuple by tuple
+   * like the streams which don't decode columns
+   */
+  private static class RowsStream extends TupleStream {
+    private final BenchState state;
+    private final boolean columns;
+    private int pos;
+
+    RowsStream(BenchState state, boolean columns) {
+      this.state = state;
+      this.columns = columns;
+    }
+
+    @Override
+    public void setStreamContext(StreamContext context) {}
+
+    @Override
+    public List<TupleStream> children() {
+      return List.of();
+    }
+
+    @Override
+    public void open() {
+      pos = 0;
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public Tuple read() {
+      if (pos == state.numRows) {
+        return Tuple.EOF();
+      }
+      Tuple tuple = new Tuple();
+      tuple.put("key_l", state.keys[pos]);
+      tuple.put("value_l", state.longs[pos]);
+      tuple.put("value_d", state.doubles[pos]);
+      pos++;
+      return tuple;
+    }
+
+    @Override
+    public void readBatch(TupleBatch batch) throws IOException {
+      if (!columns) {
+        super.readBatch(batch);
+        return;
+      }
+      batch.clear();
+      int keyColumn = batch.getSchema().getColumn("key_l");
+      int longColumn = batch.getSchema().getColumn("value_l");
+      int doubleColumn = batch.getSchema().getColumn("value_d");
+      while (!batch.isFull() && pos < state.numRows) {
+        int row = batch.addRow();
+        if (keyColumn >= 0) {
+          batch.setLong(row, keyColumn, state.keys[pos]);
+        }
+        if (longColumn >= 0) {
+          batch.setLong(row, longColumn, state.longs[pos]);
+        }
+        if (doubleColumn >= 0) {
+          batch.setDouble(row, doubleColumn, state.doubles[pos]);
+        }
+        pos++;
+      }
+      if (pos == state.numRows) {
+        batch.setEndTuple(Tuple.EOF());
+      }
+    }
+
+    @Override
+    public StreamComparator getStreamSort() {
+      return null;
+    }
+
+    @Override
+    public Explanation toExplanation(StreamFactory factory) {
+      return null;
+    }
+  }
+}
@@ -78,6 +78,7 @@ import org.apache.solr.search.CacheConfig;
 import org.apache.solr.search.CaffeineCache;
 import org.apache.solr.search.QParserPlugin;
 import org.apache.solr.search.SolrCache;
+import org.apache.solr.search.StoredFieldsCache;
 import org.apache.solr.search.ValueSourceParser;
 import org.apache.solr.search.stats.StatsCache;
 import org.apache.solr.servlet.SolrRequestParsers;
@@ -300,6 +301,12 @@ public class SolrConfig implements MapSerializable {
       queryResultMaxDocsCached =
           get("query").get("queryResultMaxDocsCached").intVal(Integer.MAX_VALUE);
       enableLazyFieldLoading = get("query").get("enableLazyFieldLoading").boolVal(false);
+      ConfigNode storedFieldsCache = get("query").get(StoredFieldsCache.NAME);
+      storedFieldsCacheMaxRamMB = storedFieldsCache.intAttr(StoredFieldsCache.MAX_RAM_MB_PARAM, -1);
+      storedFieldsCacheMaxEntrySizeKB =
+          storedFieldsCache.intAttr(
+              StoredFieldsCache.MAX_ENTRY_SIZE_KB_PARAM,
+              StoredFieldsCache.DEFAULT_MAX_ENTRY_SIZE_KB);
 
       filterCacheConfig =
           CacheConfig.getConfig(this, get("query").get("filterCache"), "query/filterCache");
@@ -677,6 +684,11 @@ public class SolrConfig implements MapSerializable {
   public final int queryResultMaxDocsCached;
   public final boolean enableLazyFieldLoading;
 
+  /** The memory limit of the {@link StoredFieldsCache} of a core, disabled if negative */
+  public final int storedFieldsCacheMaxRamMB;
+
+  public final int storedFieldsCacheMaxEntrySizeKB;
+
   // IndexConfig settings
   public final SolrIndexConfig indexConfig;
 
@@ -977,6 +989,15 @@ public class SolrConfig implements MapSerializable {
     m.put("queryResultWindowSize", queryResultWindowSize);
     m.put("queryResultMaxDocsCached", queryResultMaxDocsCached);
     m.put("enableLazyFieldLoading", enableLazyFieldLoading);
+    if (storedFieldsCacheMaxRamMB >= 0) {
+      m.put(
+          StoredFieldsCache.NAME,
+          Map.of(
+              StoredFieldsCache.MAX_RAM_MB_PARAM,
+              storedFieldsCacheMaxRamMB,
+              StoredFieldsCache.MAX_ENTRY_SIZE_KB_PARAM,
+              storedFieldsCacheMaxEntrySizeKB));
+    }
     m.put("maxBooleanClauses", booleanQueryMaxClauseCount);
     m.put(MIN_PREFIX_QUERY_TERM_LENGTH, prefixQueryMinPrefixLength);
 
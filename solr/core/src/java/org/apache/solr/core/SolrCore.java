@@ -145,6 +145,7 @@ import org.apache.solr.schema.SimilarityFactory;
 import org.apache.solr.search.QParserPlugin;
 import org.apache.solr.search.SolrFieldCacheBean;
 import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.StoredFieldsCache;
 import org.apache.solr.search.ValueSourceParser;
 import org.apache.solr.search.stats.LocalStatsCache;
 import org.apache.solr.search.stats.StatsCache;
@@ -1115,6 +1116,8 @@ public class SolrCore implements SolrInfoBean, Closeable {
       solrFieldCacheBean.initializeMetrics(solrMetricsContext, "core");
       infoRegistry.put("fieldCache", solrFieldCacheBean);
 
+      this.storedFieldsCache = initStoredFieldsCache();
+
       this.maxWarmingSearchers = solrConfig.maxWarmingSearchers;
       this.slowQueryThresholdMillis = solrConfig.slowQueryThresholdMillis;
 
@@ -1606,6 +1609,27 @@ public class SolrCore implements SolrInfoBean, Closeable {
     return factory.getCodec();
   }
 
+  private StoredFieldsCache initStoredFieldsCache() {
+    if (solrConfig.storedFieldsCacheMaxRamMB < 0) {
+      return null;
+    }
+    StoredFieldsCache cache =
+        new StoredFieldsCache(
+            solrConfig.storedFieldsCacheMaxRamMB * 1024L * 1024L,
+            solrConfig.storedFieldsCacheMaxEntrySizeKB * 1024);
+    cache.initializeMetrics(solrMetricsContext, "core");
+    infoRegistry.put(StoredFieldsCache.NAME, cache);
+    return cache;
+  }
+
+  /**
+   * Returns the cache of the stored fields of documents shared by the searchers of this core, or
+   * null if it isn't configured.
+   */
+  public StoredFieldsCache getStoredFieldsCache() {
+    return storedFieldsCache;
+  }
+
   /** Create an instance of {@link StatsCache} using configured parameters. */
   public StatsCache createStatsCache() {
     final StatsCache cache;
@@ -1831,6 +1855,9 @@ public class SolrCore implements SolrInfoBean, Closeable {
       // then the searchExecutor will throw an exception when getSearcher()
       // tries to use it, and the exception handling code should close it.
       closeSearcher();
+      if (storedFieldsCache != null) {
+        storedFieldsCache.clear();
+      }
     } catch (Throwable e) {
       log.error("Exception closingSearcher", e);
       if (e instanceof Error) {
@@ -2072,6 +2099,7 @@ public class SolrCore implements SolrInfoBean, Closeable {
   private ReentrantLock openSearcherLock =
       new ReentrantLock(true); // used to serialize opens/reopens for absolute ordering
   private final int maxWarmingSearchers; // max number of on-deck searchers allowed
+  private final StoredFieldsCache storedFieldsCache; // shared by searchers, may be null
   private final int slowQueryThresholdMillis; // threshold above which a query is considered slow
 
   private RefCounted<SolrIndexSearcher> realtimeSearcher;
@@ -28,11 +28,14 @@ import org.apache.solr.client.solrj.io.SolrClientCache;
 import org.apache.solr.client.solrj.io.stream.StreamContext;
 import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.MapSolrParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.params.StreamParams;
 import org.apache.solr.core.CoreContainer;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.handler.admin.api.ReplicationAPIBase;
 import org.apache.solr.handler.component.SearchHandler;
+import org.apache.solr.handler.export.ExportShuffle;
 import org.apache.solr.handler.export.ExportWriter;
 import org.apache.solr.handler.export.ExportWriterStream;
 import org.apache.solr.metrics.SolrMetricManager;
@@ -53,6 +56,7 @@ public class ExportHandler extends SearchHandler {
   private SolrClientCache solrClientCache;
   private StreamContext initialStreamContext;
   private String writerMetricsPath;
+  private final ConcurrentMap<String, ExportShuffle> shuffles = new ConcurrentHashMap<>();
 
   public static class ExportHandlerStreamFactory extends SolrDefaultStreamFactory {
     static final String[] forbiddenStreams =
@@ -119,8 +123,13 @@ public class ExportHandler extends SearchHandler {
 
   @Override
   public void handleRequestBody(SolrQueryRequest req, SolrQueryResponse rsp) throws Exception {
+    ExportShuffle.Partition shuffle = null;
     try {
-      super.handleRequestBody(req, rsp);
+      shuffle = joinShuffle(req);
+      // the other workers of a shuffle only read the documents the export routes to them
+      if (shuffle == null || shuffle.isProducer()) {
+        super.handleRequestBody(req, rsp);
+      }
     } catch (Exception e) {
       rsp.setException(e);
     }
@@ -131,6 +140,30 @@ public class ExportHandler extends SearchHandler {
     rsp.add(
         ReplicationAPIBase.FILE_STREAM,
         new ExportWriter(
-            req, rsp, wt, initialStreamContext, solrMetricsContext, writerMetricsPath));
+            req, rsp, wt, initialStreamContext, solrMetricsContext, writerMetricsPath, shuffle));
+  }
+
+  /**
+   * Joins the shuffle of the documents among workers the request is part of, if any. The tuples of
+   * a stream expression aren't shuffled, the request then filters the documents of its worker.
+   */
+  private ExportShuffle.Partition joinShuffle(SolrQueryRequest req) {
+    SolrParams params = req.getParams();
+    if (params.get(StreamParams.SHUFFLE_ID) == null) {
+      return null;
+    }
+    if (params.get(StreamParams.EXPR) != null) {
+      ModifiableSolrParams filtered = new ModifiableSolrParams(params);
+      filtered.add(
+          CommonParams.FQ,
+          "{!hash workers="
+              + params.required().getInt(StreamParams.SHUFFLE_WORKERS)
+              + " worker="
+              + params.required().getInt(StreamParams.SHUFFLE_WORKER)
+              + "}");
+      req.setParams(filtered);
+      return null;
+    }
+    return ExportShuffle.join(shuffles, params);
   }
 }
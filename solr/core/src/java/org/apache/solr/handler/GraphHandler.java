@@ -19,6 +19,7 @@ package org.apache.solr.handler;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.security.Principal;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +29,7 @@ import org.apache.solr.client.solrj.io.Tuple;
 import org.apache.solr.client.solrj.io.comp.StreamComparator;
 import org.apache.solr.client.solrj.io.graph.Traversal;
 import org.apache.solr.client.solrj.io.stream.ExceptionStream;
+import org.apache.solr.client.solrj.io.stream.LookupCoalescer;
 import org.apache.solr.client.solrj.io.stream.StreamContext;
 import org.apache.solr.client.solrj.io.stream.TupleStream;
 import org.apache.solr.client.solrj.io.stream.expr.DefaultStreamFactory;
@@ -150,6 +152,9 @@ public class GraphHandler extends RequestHandlerBase
     StreamContext context = new StreamContext();
     context.setSolrClientCache(solrClientCache);
     context.put("core", this.coreName);
+    // the lookups of the streams are only merged with those of the same user
+    Principal user = req.getUserPrincipal();
+    context.put(LookupCoalescer.USER_KEY, user == null ? "" : user.getName());
     Traversal traversal = new Traversal();
     context.put("traversal", traversal);
     tupleStream.setStreamContext(context);
@@ -20,6 +20,7 @@ import static org.apache.solr.common.params.CommonParams.ID;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -29,12 +30,18 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
 import org.apache.solr.client.solrj.io.ModelCache;
 import org.apache.solr.client.solrj.io.SolrClientCache;
 import org.apache.solr.client.solrj.io.Tuple;
 import org.apache.solr.client.solrj.io.comp.StreamComparator;
+import org.apache.solr.client.solrj.io.eval.CompiledEvaluator;
 import org.apache.solr.client.solrj.io.stream.DaemonStream;
 import org.apache.solr.client.solrj.io.stream.ExceptionStream;
+import org.apache.solr.client.solrj.io.stream.LookupCoalescer;
+import org.apache.solr.client.solrj.io.stream.ParallelStream;
+import org.apache.solr.client.solrj.io.stream.PrefetchStream;
+import org.apache.solr.client.solrj.io.stream.SpillMetrics;
 import org.apache.solr.client.solrj.io.stream.StreamContext;
 import org.apache.solr.client.solrj.io.stream.TupleStream;
 import org.apache.solr.client.solrj.io.stream.expr.Explanation;
@@ -57,6 +64,8 @@ import org.apache.solr.core.CoreContainer;
 import org.apache.solr.core.PluginInfo;
 import org.apache.solr.core.SolrConfig;
 import org.apache.solr.core.SolrCore;
+import org.apache.solr.metrics.MetricsMap;
+import org.apache.solr.metrics.SolrMetricsContext;
 import org.apache.solr.pkg.PackagePluginHolder;
 import org.apache.solr.pkg.SolrPackageLoader;
 import org.apache.solr.request.SolrQueryRequest;
@@ -94,6 +103,31 @@ public class StreamHandler extends RequestHandlerBase
     return PermissionNameProvider.Name.READ_PERM;
   }
 
+  @Override
+  public void initializeMetrics(SolrMetricsContext parentContext, String scope) {
+    super.initializeMetrics(parentContext, scope);
+    // the tuples spilled to disk by the streams of this node which exceed their memory limit
+    registerStreamGauge("spill", SpillMetrics::getMetrics, scope);
+    // the tuples read ahead of their consumers from the shards, and the reads which waited for them
+    registerStreamGauge("prefetch", PrefetchStream::getMetrics, scope);
+    // the lookups of the streams of this node, merged into fewer requests within a budget
+    registerStreamGauge("lookup", LookupCoalescer::getMetrics, scope);
+    // the evaluators of select and having compiled, and the tuples they left to the interpreted
+    registerStreamGauge("evaluator", CompiledEvaluator::getMetrics, scope);
+  }
+
+  /** Registers a gauge of the counters of the streams of this node, read when it is reported */
+  private void registerStreamGauge(String name, Supplier<Map<String, Long>> metrics, String scope) {
+    MetricsMap metricsMap =
+        new MetricsMap(
+            map -> {
+              for (Map.Entry<String, Long> entry : metrics.get().entrySet()) {
+                map.put(entry.getKey(), entry.getValue());
+              }
+            });
+    solrMetricsContext.gauge(metricsMap, true, name, getCategory().toString(), scope);
+  }
+
   @Override
   @SuppressWarnings("unchecked")
   public void inform(SolrCore core) {
@@ -227,11 +261,15 @@ public class StreamHandler extends RequestHandlerBase
     context.put("shards", getCollectionShards(params));
     context.workerID = worker;
     context.numWorkers = numWorkers;
+    context.put(ParallelStream.SHUFFLE_ID_PARAM, params.get(ParallelStream.SHUFFLE_ID_PARAM));
     context.setSolrClientCache(solrClientCache);
     context.setModelCache(modelCache);
     context.setObjectCache(objectCache);
     context.put("core", this.coreName);
     context.put("solr-core", req.getCore());
+    // the lookups of the streams are only merged with those of the same user
+    Principal user = req.getUserPrincipal();
+    context.put(LookupCoalescer.USER_KEY, user == null ? "" : user.getName());
     context.setLocal(local);
     tupleStream.setStreamContext(context);
 
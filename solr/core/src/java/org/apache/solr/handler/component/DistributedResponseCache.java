@@ -0,0 +1,362 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import com.codahale.metrics.Counter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.EnvUtils;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.metrics.SolrMetricsContext;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.search.SolrCache;
+
+/**
+ * Caches the merged responses of distributed search requests on the coordinator, so that repeated
+ * requests are answered without sending any shard request.
+ *
+ * <p>Responses are cached in the user cache named {@value #CACHE_NAME} of the searcher of the
+ * coordinating core, if it is configured:
+ *
+ * <pre>
+ * &lt;cache name="distribResponseCache"
+ *        class="solr.CaffeineCache"
+ *        size="512"
+ *        initialSize="512"
+ *        autowarmCount="0" /&gt;
+ * </pre>
+ *
+ * <p>The key of a response is the path of the request, its params, its shards and its user, so that
+ * a response is only shared by the requests of the same user. While the cache is configured, the
+ * shard requests ask each shard replica for the version of the index of its searcher, see {@link
+ * ShardParams#SHARDS_INDEX_VERSION}. A cached response is only used as long as the last versions
+ * seen from the replicas which took part in it are unchanged, and were seen no more than {@link
+ * ShardParams#DISTRIB_RESPONSE_CACHE_MAX_AGE} milliseconds ago, at most {@link #MAX_MAX_AGE}. These
+ * versions are only seen by the requests which aren't answered from the cache: no shard is asked
+ * for its version by a hit, so a cached response may still be used for up to the max age after a
+ * replica opened a new searcher. Responses of debug requests, of requests with
+ * <code>cache=false</code> and partial responses are not cached.
+ *
+ * <p>The values of a response are deep copied when it is cached, and again for each response they
+ * are added to, so that no response shares mutable objects, e.g. a {@link SolrDocumentList}, with
+ * the cache or with another response. Responses with values of other types than those of merged
+ * responses, which can't be copied, are not cached.
+ */
+class DistributedResponseCache {
+
+  /** Name of the (optional) searcher scoped user cache of distributed responses */
+  public static final String CACHE_NAME = "distribResponseCache";
+
+  /** Key of the index version of a shard in the header of its response */
+  public static final String INDEX_VERSION = "indexVersion";
+
+  /** Default for {@link ShardParams#DISTRIB_RESPONSE_CACHE_MAX_AGE} */
+  public static final long DEFAULT_MAX_AGE = 1000;
+
+  /** The highest {@link ShardParams#DISTRIB_RESPONSE_CACHE_MAX_AGE} a request may ask for */
+  public static final long MAX_MAX_AGE =
+      EnvUtils.getPropertyAsLong("solr.distribResponseCache.maxAge", 10000L);
+
+  /** The types of values of responses which don't need to be copied */
+  private static final Set<Class<?>> IMMUTABLE_TYPES =
+      Set.of(
+          String.class,
+          Boolean.class,
+          Character.class,
+          Byte.class,
+          Short.class,
+          Integer.class,
+          Long.class,
+          Float.class,
+          Double.class,
+          BigInteger.class,
+          BigDecimal.class,
+          UUID.class);
+
+  /** Returned by {@link #copy} for values which can't be copied */
+  static final Object UNCOPYABLE = new Object();
+
+  /** the last seen index version of each shard replica, by shard address */
+  private final Map<String, SeenVersion> seenVersions = new ConcurrentHashMap<>();
+
+  private Counter hits = new Counter();
+  private Counter staleVersions = new Counter();
+
+  void initializeMetrics(SolrMetricsContext solrMetricsContext, String... metricPath) {
+    hits = solrMetricsContext.counter("hits", metricPath);
+    staleVersions = solrMetricsContext.counter("staleVersions", metricPath);
+  }
+
+  /** Adds the index version of the searcher of a shard to the header of its response. */
+  static void addIndexVersion(SolrQueryRequest req, SolrQueryResponse rsp) {
+    NamedList<Object> header = rsp.getResponseHeader();
+    if (header != null) {
+      header.add(INDEX_VERSION, req.getSearcher().getIndexReader().getVersion());
+    }
+  }
+
+  /**
+   * Returns the cached response state of a distributed request, or null if the cache isn't
+   * configured or the response of the request can't be cached.
+   */
+  CachedRequest startRequest(ResponseBuilder rb) {
+    final SolrQueryRequest req = rb.req;
+    final SolrParams params = req.getParams();
+    if (!params.getBool(CommonParams.CACHE, true)
+        || params.getBool(CommonParams.DEBUG_QUERY, false)
+        || params.get(CommonParams.DEBUG) != null
+        || params.getBool(ShardParams.SHARDS_INFO, false)
+        || req.getContentStreams() != null
+        || rb.shards == null) {
+      return null;
+    }
+    final SolrCache<Key, CachedResponse> cache = req.getSearcher().getCache(CACHE_NAME);
+    if (cache == null) {
+      return null;
+    }
+
+    final Map<String, List<String>> normalizedParams = new TreeMap<>();
+    for (Iterator<String> it = params.getParameterNamesIterator(); it.hasNext(); ) {
+      final String name = it.next();
+      normalizedParams.put(name, Arrays.asList(params.getParams(name)));
+    }
+    final String[] shards = rb.shards.clone();
+    Arrays.sort(shards);
+    // the shards may filter the documents by user, e.g. in a search component
+    final String user = req.getUserPrincipal() != null ? req.getUserPrincipal().getName() : null;
+    final Key key = new Key(req.getPath(), List.of(shards), normalizedParams, user);
+    final long maxAge =
+        Math.min(
+            MAX_MAX_AGE,
+            params.getLong(ShardParams.DISTRIB_RESPONSE_CACHE_MAX_AGE, DEFAULT_MAX_AGE));
+    return new CachedRequest(cache, key, TimeUnit.MILLISECONDS.toNanos(maxAge));
+  }
+
+  /** The cached response state of a distributed request */
+  class CachedRequest {
+    private final SolrCache<Key, CachedResponse> cache;
+    private final Key key;
+    private final long maxAgeNanos;
+    private final Map<String, Long> indexVersions = new HashMap<>();
+    private boolean cacheable = true;
+
+    private CachedRequest(SolrCache<Key, CachedResponse> cache, Key key, long maxAgeNanos) {
+      this.cache = cache;
+      this.key = key;
+      this.maxAgeNanos = maxAgeNanos;
+    }
+
+    /**
+     * Adds the cached values of the response of this request to <code>rsp</code>.
+     *
+     * @return false, leaving <code>rsp</code> untouched, if no response is cached or it is stale
+     */
+    boolean respond(SolrQueryResponse rsp) {
+      final CachedResponse cachedResponse = cache.get(key);
+      if (cachedResponse == null) {
+        return false;
+      }
+      if (!isCurrent(cachedResponse)) {
+        staleVersions.inc();
+        return false;
+      }
+      hits.inc();
+      final NamedList<Object> values = rsp.getValues();
+      for (Map.Entry<String, Object> entry : cachedResponse.values) {
+        values.add(entry.getKey(), copy(entry.getValue()));
+      }
+      return true;
+    }
+
+    private boolean isCurrent(CachedResponse cachedResponse) {
+      final long now = System.nanoTime();
+      for (Map.Entry<String, Long> entry : cachedResponse.indexVersions.entrySet()) {
+        final SeenVersion seen = seenVersions.get(entry.getKey());
+        if (seen == null
+            || seen.version != entry.getValue()
+            || now - seen.seenAtNanos > maxAgeNanos) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /** Records the index version of the replica of a shard response. */
+    void addShardResponse(ShardResponse srsp) {
+      final Long version = getIndexVersion(srsp);
+      final String address = srsp.getShardAddress();
+      if (srsp.getException() != null || version == null || address == null) {
+        cacheable = false;
+        return;
+      }
+      seenVersions.put(address, new SeenVersion(version, System.nanoTime()));
+      final Long previous = indexVersions.putIfAbsent(address, version);
+      if (previous != null && !previous.equals(version)) {
+        // the replica opened a new searcher while serving this request
+        cacheable = false;
+      }
+    }
+
+    /** Caches the response of this request, unless it is incomplete. */
+    void finish(SolrQueryResponse rsp) {
+      if (!cacheable
+          || indexVersions.isEmpty()
+          || rsp.getException() != null
+          || !SolrQueryResponse.haveCompleteResults(rsp.getResponseHeader())) {
+        return;
+      }
+      final NamedList<Object> values = new SimpleOrderedMap<>();
+      for (Map.Entry<String, Object> entry : rsp.getValues()) {
+        if (!SolrQueryResponse.RESPONSE_HEADER_KEY.equals(entry.getKey())) {
+          final Object value = copy(entry.getValue());
+          if (value == UNCOPYABLE) {
+            return;
+          }
+          values.add(entry.getKey(), value);
+        }
+      }
+      cache.put(key, new CachedResponse(values, Map.copyOf(indexVersions)));
+    }
+  }
+
+  /**
+   * Returns a deep copy of a value of a response, or {@link #UNCOPYABLE} if it is, or contains, a
+   * value of another type than those of merged responses.
+   */
+  static Object copy(Object value) {
+    if (value == null || IMMUTABLE_TYPES.contains(value.getClass())) {
+      return value;
+    } else if (value instanceof Date) {
+      return new Date(((Date) value).getTime());
+    } else if (value instanceof byte[]) {
+      return ((byte[]) value).clone();
+    } else if (value instanceof SolrDocumentList) {
+      final SolrDocumentList docs = (SolrDocumentList) value;
+      final SolrDocumentList copy = new SolrDocumentList();
+      copy.setNumFound(docs.getNumFound());
+      copy.setStart(docs.getStart());
+      copy.setNumFoundExact(docs.getNumFoundExact());
+      copy.setMaxScore(docs.getMaxScore());
+      for (SolrDocument doc : docs) {
+        final Object docCopy = copy(doc);
+        if (docCopy == UNCOPYABLE) {
+          return UNCOPYABLE;
+        }
+        copy.add((SolrDocument) docCopy);
+      }
+      return copy;
+    } else if (value instanceof SolrDocument) {
+      final SolrDocument doc = (SolrDocument) value;
+      final SolrDocument copy = new SolrDocument();
+      for (Map.Entry<String, Object> field : doc) {
+        final Object fieldCopy = copy(field.getValue());
+        if (fieldCopy == UNCOPYABLE) {
+          return UNCOPYABLE;
+        }
+        copy.setField(field.getKey(), fieldCopy);
+      }
+      if (doc.hasChildDocuments()) {
+        for (SolrDocument child : doc.getChildDocuments()) {
+          final Object childCopy = copy(child);
+          if (childCopy == UNCOPYABLE) {
+            return UNCOPYABLE;
+          }
+          copy.addChildDocument((SolrDocument) childCopy);
+        }
+      }
+      return copy;
+    } else if (value instanceof NamedList) {
+      final NamedList<?> namedList = (NamedList<?>) value;
+      final NamedList<Object> copy =
+          value instanceof SimpleOrderedMap
+              ? new SimpleOrderedMap<>(namedList.size())
+              : new NamedList<>(namedList.size());
+      for (int i = 0; i < namedList.size(); i++) {
+        final Object entryCopy = copy(namedList.getVal(i));
+        if (entryCopy == UNCOPYABLE) {
+          return UNCOPYABLE;
+        }
+        copy.add(namedList.getName(i), entryCopy);
+      }
+      return copy;
+    } else if (value instanceof Map) {
+      final Map<Object, Object> copy = new LinkedHashMap<>();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        final Object entryCopy = copy(entry.getValue());
+        final Object entryKey = entry.getKey();
+        if (entryCopy == UNCOPYABLE
+            || (entryKey != null && !IMMUTABLE_TYPES.contains(entryKey.getClass()))) {
+          return UNCOPYABLE;
+        }
+        copy.put(entryKey, entryCopy);
+      }
+      return copy;
+    } else if (value instanceof Collection || value instanceof Object[]) {
+      final Collection<?> values =
+          value instanceof Collection ? (Collection<?>) value : Arrays.asList((Object[]) value);
+      final List<Object> copy = new ArrayList<>(values.size());
+      for (Object element : values) {
+        final Object elementCopy = copy(element);
+        if (elementCopy == UNCOPYABLE) {
+          return UNCOPYABLE;
+        }
+        copy.add(elementCopy);
+      }
+      return copy;
+    }
+    return UNCOPYABLE;
+  }
+
+  private static Long getIndexVersion(ShardResponse srsp) {
+    if (srsp.getSolrResponse() == null || srsp.getSolrResponse().getResponse() == null) {
+      return null;
+    }
+    final Object version =
+        srsp.getSolrResponse()
+            .getResponse()
+            .findRecursive(SolrQueryResponse.RESPONSE_HEADER_KEY, INDEX_VERSION);
+    return version instanceof Number ? ((Number) version).longValue() : null;
+  }
+
+  private record Key(
+      String path, List<String> shards, Map<String, List<String>> params, String user) {}
+
+  private record CachedResponse(NamedList<Object> values, Map<String, Long> indexVersions) {}
+
+  private record SeenVersion(long version, long seenAtNanos) {}
+}
@@ -28,6 +28,8 @@ import com.carrotsearch.hppc.cursors.ObjectCursor;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import org.apache.lucene.index.DocValues;
@@ -40,6 +42,7 @@ import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.LeafCollector;
 import org.apache.lucene.search.MatchAllDocsQuery;
@@ -52,6 +55,7 @@ import org.apache.lucene.search.TermInSetQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopDocsCollector;
 import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldDocs;
 import org.apache.lucene.search.TopScoreDocCollector;
 import org.apache.lucene.search.TotalHitCountCollector;
 import org.apache.lucene.search.TotalHits;
@@ -60,9 +64,11 @@ import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.lucene.util.CharsRefBuilder;
 import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.IOSupplier;
 import org.apache.lucene.util.LongValues;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.ExpandParams;
 import org.apache.solr.common.params.GroupParams;
 import org.apache.solr.common.params.SolrParams;
@@ -393,7 +399,7 @@ public class ExpandComponent extends SearchComponent implements PluginInfoInitia
     Collector collector;
     if (sort != null) sort = sort.rewrite(searcher);
 
-    GroupCollector groupExpandCollector = null;
+    final IOSupplier<GroupCollector> groupCollectorFactory;
 
     if (values != null) {
       // Get The Top Level SortedDocValues again so we can re-iterate:
@@ -405,30 +411,41 @@ public class ExpandComponent extends SearchComponent implements PluginInfoInitia
         values = DocValues.getSorted(reader, field);
       }
 
-      groupExpandCollector =
-          new GroupExpandCollector(
-              limit,
-              sort,
-              query,
-              expandNullGroup,
-              fieldType,
-              ordBytes,
-              values,
-              groupBits,
-              collapsedSet);
+      final Sort groupSort = sort;
+      final IntObjectHashMap<BytesRef> groupOrdBytes = ordBytes;
+      final SortedDocValues groupValues = values;
+      final FixedBitSet groupOrds = groupBits;
+      groupCollectorFactory =
+          () ->
+              new GroupExpandCollector(
+                  limit,
+                  groupSort,
+                  query,
+                  expandNullGroup,
+                  fieldType,
+                  groupOrdBytes,
+                  groupValues,
+                  groupOrds,
+                  collapsedSet);
     } else {
-      groupExpandCollector =
-          new NumericGroupExpandCollector(
-              limit,
-              sort,
-              query,
-              expandNullGroup,
-              fieldType,
-              ordBytes,
-              field,
-              groupSet,
-              collapsedSet);
+      final Sort groupSort = sort;
+      final IntObjectHashMap<BytesRef> groupOrdBytes = ordBytes;
+      final LongHashSet groupValues = groupSet;
+      final String groupField = field;
+      groupCollectorFactory =
+          () ->
+              new NumericGroupExpandCollector(
+                  limit,
+                  groupSort,
+                  query,
+                  expandNullGroup,
+                  fieldType,
+                  groupOrdBytes,
+                  groupField,
+                  groupValues,
+                  collapsedSet);
     }
+    final GroupCollector groupExpandCollector = groupCollectorFactory.get();
 
     if (groupQuery != null) {
       // Limits the results to documents that are in the same group as the documents in the page.
@@ -436,19 +453,36 @@ public class ExpandComponent extends SearchComponent implements PluginInfoInitia
     }
 
     SolrIndexSearcher.ProcessedFilter pfilter = searcher.getProcessedFilter(newFilters);
-    if (pfilter.postFilter != null) {
-      pfilter.postFilter.setLastDelegate(groupExpandCollector);
-      collector = pfilter.postFilter;
+    final Query expandQuery = QueryUtils.combineQueryAndFilter(query, pfilter.filter);
+    final SimpleOrderedMap<DocSlice> expanded;
+    if (pfilter.postFilter == null
+        && params.getBool(CommonParams.MULTI_THREADED, false)
+        && groupExpandCollector.canCollectInParallel()) {
+      // collect the top docs of each group per slice using the searcher's executor, then merge
+      expanded =
+          searcher.search(
+              expandQuery,
+              new GroupCollectorManager(
+                  groupExpandCollector,
+                  groupCollectorFactory,
+                  searcher,
+                  rb.rsp.getReturnFields()));
     } else {
-      collector = groupExpandCollector;
-    }
+      if (pfilter.postFilter != null) {
+        pfilter.postFilter.setLastDelegate(groupExpandCollector);
+        collector = pfilter.postFilter;
+      } else {
+        collector = groupExpandCollector;
+      }
 
-    searcher.search(QueryUtils.combineQueryAndFilter(query, pfilter.filter), collector);
+      searcher.search(expandQuery, collector);
+      expanded = groupExpandCollector.getGroups(searcher, rb.rsp.getReturnFields());
+    }
     if (queryLimits.maybeExitWithPartialResults("Expand expand")) {
       return;
     }
 
-    rb.rsp.add("expanded", groupExpandCollector.getGroups(searcher, rb.rsp.getReturnFields()));
+    rb.rsp.add("expanded", expanded);
   }
 
   @Override
@@ -633,6 +667,12 @@ public class ExpandComponent extends SearchComponent implements PluginInfoInitia
     protected LongObjectMap<Collector> getGroups() {
       return groups;
     }
+
+    @Override
+    protected boolean canCollectInParallel() {
+      // top level (non ordinal mapped) doc values can only be iterated in global doc order
+      return null != ordinalMap;
+    }
   }
 
   private static class NumericGroupExpandCollector extends GroupCollector {
@@ -706,6 +746,11 @@ public class ExpandComponent extends SearchComponent implements PluginInfoInitia
     protected LongObjectHashMap<Collector> getGroups() {
       return groups;
     }
+
+    @Override
+    protected boolean canCollectInParallel() {
+      return true;
+    }
   }
 
   private abstract static class GroupCollector implements Collector {
@@ -738,21 +783,49 @@ public class ExpandComponent extends SearchComponent implements PluginInfoInitia
 
     protected abstract LongObjectMap<Collector> getGroups();
 
+    /**
+     * Whether independent instances of this collector may collect disjoint sets of segments
+     * concurrently, with the results merged by a {@link GroupCollectorManager}
+     */
+    protected abstract boolean canCollectInParallel();
+
     public final SimpleOrderedMap<DocSlice> getGroups(
         SolrIndexSearcher searcher, ReturnFields returnFields) throws IOException {
+      return getGroups(List.of(this), searcher, returnFields);
+    }
 
+    /**
+     * Builds the expanded groups from one or more collectors that collected disjoint sets of
+     * segments, merging the top docs of each group. All collectors must have been created with the
+     * same arguments.
+     */
+    static SimpleOrderedMap<DocSlice> getGroups(
+        List<? extends GroupCollector> collectors,
+        SolrIndexSearcher searcher,
+        ReturnFields returnFields)
+        throws IOException {
+      final GroupCollector first = collectors.get(0);
       final SimpleOrderedMap<DocSlice> outMap = new SimpleOrderedMap<>();
       final CharsRefBuilder charsRef = new CharsRefBuilder();
-      for (LongObjectCursor<Collector> cursor : getGroups()) {
+      final TopDocs[] topDocs = new TopDocs[collectors.size()];
+      for (LongObjectCursor<Collector> cursor : first.getGroups()) {
         final long groupValue = cursor.key;
-        final DocSlice slice = collectorToDocSlice(cursor.value, searcher, returnFields);
+        for (int i = 0; i < topDocs.length; i++) {
+          topDocs[i] = toTopDocs(collectors.get(i).getGroups().get(groupValue));
+        }
+        final DocSlice slice =
+            first.topDocsToDocSlice(first.merge(topDocs), searcher, returnFields);
         if (null != slice) {
-          addGroupSliceToOutputMap(outMap, charsRef, groupValue, slice);
+          first.addGroupSliceToOutputMap(outMap, charsRef, groupValue, slice);
         }
       }
-      if (expandNullGroup) {
-        assert null != nullGroupCollector;
-        final DocSlice nullGroup = collectorToDocSlice(nullGroupCollector, searcher, returnFields);
+      if (first.expandNullGroup) {
+        for (int i = 0; i < topDocs.length; i++) {
+          assert null != collectors.get(i).nullGroupCollector;
+          topDocs[i] = toTopDocs(collectors.get(i).nullGroupCollector);
+        }
+        final DocSlice nullGroup =
+            first.topDocsToDocSlice(first.merge(topDocs), searcher, returnFields);
         if (null != nullGroup) {
           outMap.add(null, nullGroup);
         }
@@ -760,12 +833,43 @@ public class ExpandComponent extends SearchComponent implements PluginInfoInitia
       return outMap;
     }
 
-    private DocSlice collectorToDocSlice(
-        Collector groupCollector, SolrIndexSearcher searcher, ReturnFields returnFields)
+    private static TopDocs toTopDocs(Collector groupCollector) {
+      if (groupCollector instanceof TopDocsCollector<?> topDocsCollector) {
+        return topDocsCollector.topDocs();
+      }
+      final int totalHits = ((TotalHitCountCollector) groupCollector).getTotalHits();
+      return new TopDocs(new TotalHits(totalHits, TotalHits.Relation.EQUAL_TO), new ScoreDoc[0]);
+    }
+
+    // the order of equal docs within a sequentially collected group
+    private static final Comparator<ScoreDoc> DOC_ID_TIE_BREAKER =
+        Comparator.comparingInt(scoreDoc -> scoreDoc.doc);
+
+    private TopDocs merge(TopDocs[] topDocs) {
+      if (topDocs.length == 1) {
+        return topDocs[0];
+      } else if (limit == 0) {
+        long totalHits = 0;
+        for (TopDocs td : topDocs) {
+          totalHits += td.totalHits.value;
+        }
+        return new TopDocs(new TotalHits(totalHits, TotalHits.Relation.EQUAL_TO), new ScoreDoc[0]);
+      } else if (sort == null) {
+        return TopDocs.merge(0, limit, topDocs, DOC_ID_TIE_BREAKER);
+      } else {
+        return TopDocs.merge(
+            sort,
+            0,
+            limit,
+            Arrays.copyOf(topDocs, topDocs.length, TopFieldDocs[].class),
+            DOC_ID_TIE_BREAKER);
+      }
+    }
+
+    private DocSlice topDocsToDocSlice(
+        TopDocs topDocs, SolrIndexSearcher searcher, ReturnFields returnFields)
         throws IOException {
-      if (groupCollector instanceof TopDocsCollector) {
-        TopDocsCollector<?> topDocsCollector = TopDocsCollector.class.cast(groupCollector);
-        TopDocs topDocs = topDocsCollector.topDocs();
+      if (limit > 0) {
         ScoreDoc[] scoreDocs = topDocs.scoreDocs;
         if (scoreDocs.length > 0) {
           if (returnFields.wantsScore() && sort != null) {
@@ -789,7 +893,7 @@ public class ExpandComponent extends SearchComponent implements PluginInfoInitia
               TotalHits.Relation.EQUAL_TO);
         }
       } else {
-        int totalHits = ((TotalHitCountCollector) groupCollector).getTotalHits();
+        long totalHits = topDocs.totalHits.value;
         if (totalHits > 0) {
           return new DocSlice(0, 0, null, null, totalHits, 0, TotalHits.Relation.EQUAL_TO);
         }
@@ -833,6 +937,46 @@ public class ExpandComponent extends SearchComponent implements PluginInfoInitia
     }
   }
 
+  /**
+   * Collects the expanded groups concurrently, with one {@link GroupCollector} per index slice, and
+   * merges the top docs of each group when reducing.
+   */
+  private static class GroupCollectorManager
+      implements CollectorManager<GroupCollector, SimpleOrderedMap<DocSlice>> {
+    private final IOSupplier<GroupCollector> factory;
+    private final SolrIndexSearcher searcher;
+    private final ReturnFields returnFields;
+    private GroupCollector unused;
+
+    GroupCollectorManager(
+        GroupCollector first,
+        IOSupplier<GroupCollector> factory,
+        SolrIndexSearcher searcher,
+        ReturnFields returnFields) {
+      this.unused = first;
+      this.factory = factory;
+      this.searcher = searcher;
+      this.returnFields = returnFields;
+    }
+
+    @Override
+    public GroupCollector newCollector() throws IOException {
+      // the collector built up front (to check it supports parallel collection) is used first
+      if (unused != null) {
+        final GroupCollector collector = unused;
+        unused = null;
+        return collector;
+      }
+      return factory.get();
+    }
+
+    @Override
+    public SimpleOrderedMap<DocSlice> reduce(Collection<GroupCollector> collectors)
+        throws IOException {
+      return GroupCollector.getGroups(new ArrayList<>(collectors), searcher, returnFields);
+    }
+  }
+
   private Query getGroupQuery(String fname, FieldType ft, int size, LongHashSet groupSet) {
 
     BytesRef[] bytesRefs = new BytesRef[size];
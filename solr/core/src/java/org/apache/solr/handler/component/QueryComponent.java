@@ -27,6 +27,7 @@ import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -34,6 +35,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.UUID;
 import org.apache.lucene.index.ExitableDirectoryReader;
 import org.apache.lucene.index.IndexReaderContext;
 import org.apache.lucene.index.LeafReaderContext;
@@ -62,6 +64,7 @@ import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.ExpandParams;
 import org.apache.solr.common.params.GroupParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.ShardParams;
@@ -91,6 +94,7 @@ import org.apache.solr.search.QueryResult;
 import org.apache.solr.search.QueryUtils;
 import org.apache.solr.search.RankQuery;
 import org.apache.solr.search.ReturnFields;
+import org.apache.solr.search.SharedMinCompetitiveScore;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.search.SolrReturnFields;
 import org.apache.solr.search.SortSpec;
@@ -361,6 +365,7 @@ public class QueryComponent extends SearchComponent {
     if ((purpose & ShardRequest.PURPOSE_SET_TERM_STATS) != 0) {
       // retrieve from request and update local cache
       statsCache.receiveGlobalStats(req);
+      statsCache.returnLocalStatsVersion(rb, searcher);
     }
 
     // Optional: This could also be implemented by the top-level searcher sending
@@ -382,6 +387,16 @@ public class QueryComponent extends SearchComponent {
     cmd.setMinExactCount(getMinExactCount(params));
     cmd.setDistribStatsDisabled(rb.isDistribStatsDisabled());
 
+    String sharedMinScoreId = params.get(ResponseBuilder.SHARED_MIN_SCORE_ID);
+    if (sharedMinScoreId != null && params.getBool(ShardParams.IS_SHARD, false)) {
+      String collection = req.getCore().getCoreDescriptor().getCollectionName();
+      cmd.setSharedMinCompetitiveScore(
+          SharedMinCompetitiveScore.get(
+              sharedMinScoreId,
+              collection != null ? collection : req.getCore().getName(),
+              req.getUserPrincipal() != null ? req.getUserPrincipal().getName() : null));
+    }
+
     boolean isCancellableQuery = params.getBool(CommonParams.IS_QUERY_CANCELLABLE, false);
 
     if (isCancellableQuery) {
@@ -596,7 +611,11 @@ public class QueryComponent extends SearchComponent {
     } else if (rb.stage < ResponseBuilder.STAGE_EXECUTE_QUERY) {
       nextStage = ResponseBuilder.STAGE_EXECUTE_QUERY;
     } else if (rb.stage == ResponseBuilder.STAGE_EXECUTE_QUERY) {
-      shardRequestFactory = new TopGroupsShardRequestFactory();
+      // the top groups may have been returned with the search groups already
+      if (rb.mergedTopGroups.isEmpty()
+          || !rb.mergedTopGroups.keySet().containsAll(List.of(rb.getGroupingSpec().getFields()))) {
+        shardRequestFactory = new TopGroupsShardRequestFactory();
+      }
       nextStage = ResponseBuilder.STAGE_GET_FIELDS;
     } else if (rb.stage < ResponseBuilder.STAGE_GET_FIELDS) {
       nextStage = ResponseBuilder.STAGE_GET_FIELDS;
@@ -640,6 +659,9 @@ public class QueryComponent extends SearchComponent {
 
   @Override
   public void handleResponses(ResponseBuilder rb, ShardRequest sreq) {
+    if ((sreq.purpose & ShardRequest.PURPOSE_SET_TERM_STATS) != 0) {
+      rb.req.getSearcher().getStatsCache().checkLocalStatsVersions(rb.req, sreq.responses);
+    }
     if (rb.grouping()) {
       handleGroupedResponses(rb, sreq);
     } else {
@@ -665,6 +687,9 @@ public class QueryComponent extends SearchComponent {
   protected void handleRegularResponses(ResponseBuilder rb, ShardRequest sreq) {
     if ((sreq.purpose & ShardRequest.PURPOSE_GET_TOP_IDS) != 0) {
       mergeIds(rb, sreq);
+      if (sreq.params.getInt(ShardParams.DISTRIB_SINGLE_PASS_DOCS, 0) > 0) {
+        returnSinglePassFields(rb, sreq);
+      }
     }
 
     if ((sreq.purpose & ShardRequest.PURPOSE_GET_TERM_STATS) != 0) {
@@ -848,6 +873,33 @@ public class QueryComponent extends SearchComponent {
       }
     }
 
+    int singlePassDocs = rb.onePassDistributedQuery ? 0 : getSinglePassDocs(rb);
+    if (singlePassDocs > 0) {
+      sreq.params.set(ShardParams.DISTRIB_SINGLE_PASS_DOCS, singlePassDocs);
+      // the same fields as the ones createRetrieveDocs would ask for
+      String[] fls = rb.req.getParams().getParams(CommonParams.FL);
+      if (fls != null && fls.length > 0 && (fls.length != 1 || !fls[0].isEmpty())) {
+        sreq.params.set(ResponseBuilder.SINGLE_PASS_FIELDS, fls);
+        if (!fields.wantsField(keyFieldName)) {
+          sreq.params.add(ResponseBuilder.SINGLE_PASS_FIELDS, keyFieldName);
+        }
+      } else {
+        sreq.params.set(ResponseBuilder.SINGLE_PASS_FIELDS, "*");
+      }
+    } else {
+      sreq.params.remove(ShardParams.DISTRIB_SINGLE_PASS_DOCS);
+    }
+
+    if (isSharedMinScoreAllowed(rb)) {
+      // identifies the shard requests of this request which share their minimum competitive score
+      sreq.params.set(ResponseBuilder.SHARED_MIN_SCORE_ID, UUID.randomUUID().toString());
+      // documents are only skipped once minExactCount hits are counted, which are all of them
+      // unless the request asks for fewer
+      if (rb.req.getParams().get(CommonParams.MIN_EXACT_COUNT) == null) {
+        sreq.params.set(CommonParams.MIN_EXACT_COUNT, sreq.params.getInt(CommonParams.ROWS));
+      }
+    }
+
     // TODO: should this really sendGlobalDfs if just includeScore?
 
     if (shardQueryIncludeScore || rb.isDebug()) {
@@ -861,6 +913,50 @@ public class QueryComponent extends SearchComponent {
     rb.addRequest(this, sreq);
   }
 
+  /**
+   * Returns the number of top documents of each shard whose fields are returned along with their
+   * ids, see {@link ShardParams#DISTRIB_SINGLE_PASS_DOCS}, or 0 if the fields of the documents
+   * must be retrieved once the ids are merged.
+   */
+  protected int getSinglePassDocs(ResponseBuilder rb) {
+    SolrParams params = rb.req.getParams();
+    int singlePassDocs = params.getInt(ShardParams.DISTRIB_SINGLE_PASS_DOCS, 0);
+    if (singlePassDocs <= 0
+        || rb.getSortSpec().getOffset() > 0
+        || rb.shards_start > 0
+        || rb.getMergeStrategies() != null
+        // components which add to the requests retrieving the fields
+        || rb.doHighlights
+        || rb.isDebug()
+        || params.getBool(ExpandParams.EXPAND, false)
+        || params.getBool(TermVectorComponent.COMPONENT_NAME, false)) {
+      return 0;
+    }
+    int rows = rb.shards_rows > -1 ? rb.shards_rows : rb.getSortSpec().getCount();
+    return Math.min(singlePassDocs, rows);
+  }
+
+  /**
+   * Returns whether the shard requests may skip the documents which can't make the top documents of
+   * the other shards, see {@link ShardParams#DISTRIB_SHARED_MIN_SCORE}.
+   */
+  protected boolean isSharedMinScoreAllowed(ResponseBuilder rb) {
+    if (!rb.req.getParams().getBool(ShardParams.DISTRIB_SHARED_MIN_SCORE, false)
+        || rb.shards_rows > -1
+        || rb.getRankQuery() != null
+        || rb.getMergeStrategies() != null) {
+      return false;
+    }
+    Sort sort = rb.getSortSpec().getSort();
+    if (sort == null) {
+      return true;
+    }
+    SortField[] sortFields = sort.getSort();
+    return sortFields.length == 1
+        && sortFields[0].getType() == SortField.Type.SCORE
+        && !sortFields[0].getReverse();
+  }
+
   protected boolean addFL(StringBuilder fl, String field, boolean additionalAdded) {
     if (additionalAdded) fl.append(",");
     fl.append(field);
@@ -1250,6 +1346,11 @@ public class QueryComponent extends SearchComponent {
     // for each shard, collect the documents for that shard.
     HashMap<String, Collection<ShardDoc>> shardMap = new HashMap<>();
     for (ShardDoc sdoc : rb.resultIds.values()) {
+      if (rb.getResponseDocs() != null
+          && rb.getResponseDocs().get(sdoc.positionInResponse) != null) {
+        // already returned along with the ids, see returnSinglePassFields
+        continue;
+      }
       Collection<ShardDoc> shardDocs = shardMap.get(sdoc.shard);
       if (shardDocs == null) {
         shardDocs = new ArrayList<>();
@@ -1278,6 +1379,7 @@ public class QueryComponent extends SearchComponent {
 
       // we already have the field sort values
       sreq.params.remove(ResponseBuilder.FIELD_SORT_VALUES);
+      sreq.params.remove(ShardParams.DISTRIB_SINGLE_PASS_DOCS);
 
       if (!rb.rsp.getReturnFields().wantsField(uniqueField.getName())) {
         sreq.params.add(CommonParams.FL, uniqueField.getName());
@@ -1360,18 +1462,7 @@ public class QueryComponent extends SearchComponent {
           final ShardDoc sdoc = rb.resultIds.get(lastKeyString);
           if (sdoc != null) {
             shardDocFoundInResults = Boolean.TRUE;
-            if (returnScores) {
-              doc.setField("score", sdoc.score);
-            } else {
-              // Score might have been added (in createMainQuery) to shard-requests (and therefore
-              // in shard-response-docs) Remove score if the outer request did not ask for it
-              // returned
-              doc.remove("score");
-            }
-            if (removeKeyField) {
-              doc.removeFields(keyFieldName);
-            }
-            rb.getResponseDocs().set(sdoc.positionInResponse, doc);
+            setResponseDoc(rb, sdoc, doc, keyFieldName, removeKeyField, returnScores);
           } else {
             if (shardDocFoundInResults == null) {
               shardDocFoundInResults = Boolean.FALSE;
@@ -1397,6 +1488,65 @@ public class QueryComponent extends SearchComponent {
     }
   }
 
+  /**
+   * Sets the documents which the shards returned along with their ids, and which made the merged
+   * results, so that their fields aren't retrieved again by {@link #createRetrieveDocs}.
+   */
+  protected void returnSinglePassFields(ResponseBuilder rb, ShardRequest sreq) {
+    if (rb.resultIds == null || rb.getResponseDocs() == null) {
+      return;
+    }
+    boolean returnScores = (rb.getFieldFlags() & SolrIndexSearcher.GET_SCORES) != 0;
+
+    String keyFieldName = rb.req.getSchema().getUniqueKeyField().getName();
+    boolean removeKeyField = !rb.rsp.getReturnFields().wantsField(keyFieldName);
+    if (rb.rsp.getReturnFields().getFieldRenames().get(keyFieldName) != null) {
+      // if id was renamed we need to use the new name
+      keyFieldName = rb.rsp.getReturnFields().getFieldRenames().get(keyFieldName);
+    }
+    for (ShardResponse srsp : sreq.responses) {
+      if (srsp.getException() != null) {
+        continue;
+      }
+      SolrDocumentList docs =
+          (SolrDocumentList)
+              SolrResponseUtil.getSubsectionFromShardResponse(
+                  rb, srsp, ResponseBuilder.SINGLE_PASS_DOCS, true);
+      if (docs == null) {
+        continue;
+      }
+      for (SolrDocument doc : docs) {
+        final Object id = doc.getFieldValue(keyFieldName);
+        final ShardDoc sdoc = id == null ? null : rb.resultIds.get(id.toString());
+        // the same id may have been merged from another shard
+        if (sdoc != null && sdoc.shard.equals(srsp.getShard())) {
+          setResponseDoc(rb, sdoc, doc, keyFieldName, removeKeyField, returnScores);
+        }
+      }
+    }
+  }
+
+  private void setResponseDoc(
+      ResponseBuilder rb,
+      ShardDoc sdoc,
+      SolrDocument doc,
+      String keyFieldName,
+      boolean removeKeyField,
+      boolean returnScores) {
+    if (returnScores) {
+      doc.setField("score", sdoc.score);
+    } else {
+      // Score might have been added (in createMainQuery) to shard-requests (and therefore
+      // in shard-response-docs) Remove score if the outer request did not ask for it
+      // returned
+      doc.remove("score");
+    }
+    if (removeKeyField) {
+      doc.removeFields(keyFieldName);
+    }
+    rb.getResponseDocs().set(sdoc.positionInResponse, doc);
+  }
+
   /////////////////////////////////////////////
   ///  SolrInfoBean
   ////////////////////////////////////////////
@@ -1484,14 +1634,24 @@ public class QueryComponent extends SearchComponent {
             .setIncludeHitCount(true)
             .setSearcher(searcher);
 
+    int singlePassMaxGroups = req.getParams().getInt(GroupParams.GROUP_SINGLE_PASS_MAX_GROUPS, 0);
+    int topNGroups = cmd.getOffset() + cmd.getLen();
+    if (singlePassMaxGroups > 0) {
+      // one more group than the maximum tells whether all groups of this shard were collected
+      topNGroups = Math.max(topNGroups, singlePassMaxGroups + 1);
+    }
+
+    List<SearchGroupsFieldCommand> searchGroupsCommands = new ArrayList<>();
     for (String field : groupingSpec.getFields()) {
-      topsGroupsActionBuilder.addCommandField(
+      SearchGroupsFieldCommand searchGroupsCommand =
           new SearchGroupsFieldCommand.Builder()
               .setField(schema.getField(field))
               .setGroupSort(groupingSpec.getGroupSortSpec().getSort())
-              .setTopNGroups(cmd.getOffset() + cmd.getLen())
+              .setTopNGroups(topNGroups)
               .setIncludeGroupCount(groupingSpec.isIncludeGroupCount())
-              .build());
+              .build();
+      searchGroupsCommands.add(searchGroupsCommand);
+      topsGroupsActionBuilder.addCommandField(searchGroupsCommand);
     }
 
     CommandHandler commandHandler = topsGroupsActionBuilder.build();
@@ -1501,9 +1661,63 @@ public class QueryComponent extends SearchComponent {
     var result = new QueryResult();
     rsp.add("firstPhase", commandHandler.processResult(result, serializer));
     rsp.add("totalHitCount", commandHandler.getTotalHitCount());
+
+    if (singlePassMaxGroups > 0 && groupingSpec.getQueries().length == 0) {
+      doProcessGroupedDistributedSearchSinglePass(
+          rb, cmd, searchGroupsCommands, singlePassMaxGroups, result);
+    }
     rb.setResult(result);
   }
 
+  /**
+   * Adds the top groups of this shard to the response of the first phase, if the shard has no more
+   * than <code>maxGroups</code> groups. The top groups of all the groups of the shard include those
+   * of the merged search groups, so that the second phase isn't needed when all shards do this.
+   */
+  private void doProcessGroupedDistributedSearchSinglePass(
+      ResponseBuilder rb,
+      QueryCommand cmd,
+      List<SearchGroupsFieldCommand> searchGroupsCommands,
+      int maxGroups,
+      QueryResult result)
+      throws IOException {
+    List<Collection<SearchGroup<BytesRef>>> shardGroups = new ArrayList<>();
+    for (SearchGroupsFieldCommand searchGroupsCommand : searchGroupsCommands) {
+      Collection<SearchGroup<BytesRef>> searchGroups =
+          searchGroupsCommand.result().getSearchGroups();
+      if (searchGroups == null) {
+        searchGroups = Collections.emptyList();
+      } else if (searchGroups.size() > maxGroups) {
+        return;
+      }
+      shardGroups.add(searchGroups);
+    }
+
+    SolrIndexSearcher searcher = rb.req.getSearcher();
+    GroupingSpecification groupingSpec = rb.getGroupingSpec();
+    int docsToCollect = getMaxDocsPerGroup(groupingSpec, searcher);
+
+    CommandHandler.Builder singlePassBuilder =
+        new CommandHandler.Builder()
+            .setQueryCommand(cmd)
+            .setNeedDocSet(false) // Order matters here
+            .setSearcher(searcher);
+    for (int i = 0; i < searchGroupsCommands.size(); i++) {
+      singlePassBuilder.addCommandField(
+          createTopGroupsFieldCommand(
+              cmd,
+              groupingSpec,
+              searcher.getSchema().getField(searchGroupsCommands.get(i).getKey()),
+              shardGroups.get(i),
+              docsToCollect));
+    }
+
+    CommandHandler commandHandler = singlePassBuilder.build();
+    commandHandler.execute();
+    TopGroupsResultTransformer serializer = new TopGroupsResultTransformer(rb);
+    rb.rsp.add("secondPhase", commandHandler.processResult(result, serializer));
+  }
+
   private void doProcessGroupedDistributedSearchSecondPhase(ResponseBuilder rb, QueryCommand cmd)
       throws IOException, SyntaxError {
 
@@ -1527,11 +1741,7 @@ public class QueryComponent extends SearchComponent {
                 groupingSpec.isTruncateGroups() && groupingSpec.getFields().length > 0)
             .setSearcher(searcher);
 
-    SortSpec withinGroupSortSpec = groupingSpec.getWithinGroupSortSpec();
-    int docsToCollect =
-        Grouping.getMax(
-            withinGroupSortSpec.getOffset(), withinGroupSortSpec.getCount(), searcher.maxDoc());
-    docsToCollect = Math.max(docsToCollect, 1);
+    int docsToCollect = getMaxDocsPerGroup(groupingSpec, searcher);
 
     for (String field : groupingSpec.getFields()) {
       SchemaField schemaField = schema.getField(field);
@@ -1553,16 +1763,7 @@ public class QueryComponent extends SearchComponent {
       }
 
       secondPhaseBuilder.addCommandField(
-          new TopGroupsFieldCommand.Builder()
-              .setQuery(cmd.getQuery())
-              .setField(schemaField)
-              .setGroupSort(groupingSpec.getGroupSortSpec().getSort())
-              .setSortWithinGroup(withinGroupSortSpec.getSort())
-              .setFirstPhaseGroups(topGroups)
-              .setMaxDocPerGroup(docsToCollect)
-              .setNeedScores(needScores)
-              .setNeedMaxScore(needScores)
-              .build());
+          createTopGroupsFieldCommand(cmd, groupingSpec, schemaField, topGroups, docsToCollect));
     }
 
     SortSpec groupSortSpec = groupingSpec.getGroupSortSpec();
@@ -1593,6 +1794,35 @@ public class QueryComponent extends SearchComponent {
     rb.setResult(result);
   }
 
+  /** Returns the number of documents to collect for each of the top groups of a shard. */
+  private static int getMaxDocsPerGroup(
+      GroupingSpecification groupingSpec, SolrIndexSearcher searcher) {
+    SortSpec withinGroupSortSpec = groupingSpec.getWithinGroupSortSpec();
+    int docsToCollect =
+        Grouping.getMax(
+            withinGroupSortSpec.getOffset(), withinGroupSortSpec.getCount(), searcher.maxDoc());
+    return Math.max(docsToCollect, 1);
+  }
+
+  private static TopGroupsFieldCommand createTopGroupsFieldCommand(
+      QueryCommand cmd,
+      GroupingSpecification groupingSpec,
+      SchemaField field,
+      Collection<SearchGroup<BytesRef>> topGroups,
+      int maxDocsPerGroup) {
+    boolean needScores = (cmd.getFlags() & SolrIndexSearcher.GET_SCORES) != 0;
+    return new TopGroupsFieldCommand.Builder()
+        .setQuery(cmd.getQuery())
+        .setField(field)
+        .setGroupSort(groupingSpec.getGroupSortSpec().getSort())
+        .setSortWithinGroup(groupingSpec.getWithinGroupSortSpec().getSort())
+        .setFirstPhaseGroups(topGroups)
+        .setMaxDocPerGroup(maxDocsPerGroup)
+        .setNeedScores(needScores)
+        .setNeedMaxScore(needScores)
+        .build();
+  }
+
   private void doProcessGroupedSearch(ResponseBuilder rb, QueryCommand cmd)
       throws IOException, SyntaxError {
 
@@ -1718,9 +1948,34 @@ public class QueryComponent extends SearchComponent {
       doFieldSortValues(rb, searcher);
     }
 
+    doSinglePassFields(rb);
     doPrefetch(rb);
   }
 
+  /**
+   * Adds the top {@link ShardParams#DISTRIB_SINGLE_PASS_DOCS} documents of a shard request to the
+   * response, with the fields that the coordinator would otherwise retrieve in a second pass.
+   */
+  protected void doSinglePassFields(ResponseBuilder rb) {
+    SolrParams params = rb.req.getParams();
+    String[] fls = params.getParams(ResponseBuilder.SINGLE_PASS_FIELDS);
+    int singlePassDocs = params.getInt(ShardParams.DISTRIB_SINGLE_PASS_DOCS, 0);
+    DocList docList = rb.getResults() == null ? null : rb.getResults().docList;
+    if (fls == null
+        || singlePassDocs <= 0
+        || docList == null
+        || !params.getBool(ShardParams.IS_SHARD, false)) {
+      return;
+    }
+    DocList docs = docList.subset(0, Math.min(singlePassDocs, docList.size()));
+    if (docs != null) {
+      rb.rsp.add(
+          ResponseBuilder.SINGLE_PASS_DOCS,
+          new BasicResultContext(
+              docs, new SolrReturnFields(fls, rb.req), null, rb.getQuery(), rb.req));
+    }
+  }
+
   private static String generateQueryID(SolrQueryRequest req) {
     ZkController zkController = req.getCoreContainer().getZkController();
     String nodeName = req.getCoreContainer().getHostName();
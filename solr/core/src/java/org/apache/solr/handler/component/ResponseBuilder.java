@@ -113,6 +113,9 @@ public class ResponseBuilder {
   //////////////////////////////////////////////////////////
 
   public static final String FIELD_SORT_VALUES = "fsv";
+  public static final String SINGLE_PASS_FIELDS = "singlePassFl";
+  public static final String SINGLE_PASS_DOCS = "singlePassDocs";
+  public static final String SHARED_MIN_SCORE_ID = "sharedMinScoreId";
   public static final String SHARDS = "shards";
   public static final String IDS = "ids";
 
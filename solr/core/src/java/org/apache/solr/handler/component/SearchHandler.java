@@ -120,6 +120,7 @@ public class SearchHandler extends RequestHandlerBase
 
   private HandlerMetrics metricsShard = HandlerMetrics.NO_OP;
   private final Map<String, Counter> shardPurposes = new ConcurrentHashMap<>();
+  private final DistributedResponseCache responseCache = new DistributedResponseCache();
 
   protected volatile List<SearchComponent> components;
   private ShardHandlerFactory shardHandlerFactory;
@@ -164,6 +165,8 @@ public class SearchHandler extends RequestHandlerBase
         "purposes",
         getCategory().toString(),
         scope + SHARD_HANDLER_SUFFIX);
+    responseCache.initializeMetrics(
+        solrMetricsContext, getCategory().toString(), scope, DistributedResponseCache.CACHE_NAME);
   }
 
   @Override
@@ -399,6 +402,9 @@ public class SearchHandler extends RequestHandlerBase
       int purpose = req.getParams().getInt(ShardParams.SHARDS_PURPOSE, 0);
       SolrPluginUtils.forEachRequestPurpose(
           purpose, n -> shardPurposes.computeIfAbsent(n, name -> new Counter()).inc());
+      if (req.getParams().getBool(ShardParams.SHARDS_INDEX_VERSION, false)) {
+        DistributedResponseCache.addIndexVersion(req, rsp);
+      }
     }
 
     List<SearchComponent> components = getComponents();
@@ -528,6 +534,12 @@ public class SearchHandler extends RequestHandlerBase
     } else {
       // a distributed request
 
+      final DistributedResponseCache.CachedRequest cachedRequest =
+          responseCache.startRequest(rb);
+      if (cachedRequest != null && cachedRequest.respond(rsp)) {
+        return;
+      }
+
       if (rb.outgoing == null) {
         rb.outgoing = new ArrayList<>();
       }
@@ -584,6 +596,9 @@ public class SearchHandler extends RequestHandlerBase
                   params.set(CommonParams.QT, reqPath);
                 } // else if path is /select, then the qt gets passed thru if set
               }
+              if (cachedRequest != null) {
+                params.set(ShardParams.SHARDS_INDEX_VERSION, true);
+              }
               shardHandler1.submit(sreq, shard, params);
             }
           }
@@ -657,6 +672,9 @@ public class SearchHandler extends RequestHandlerBase
             }
 
             rb.finished.add(srsp.getShardRequest());
+            if (cachedRequest != null) {
+              cachedRequest.addShardResponse(srsp);
+            }
 
             // let the components see the responses to the request
             for (SearchComponent c : components) {
@@ -694,6 +712,9 @@ public class SearchHandler extends RequestHandlerBase
         rsp.getResponseHeader().add(ThreadCpuTimer.CPU_TIME, totalShardCpuTime);
         rsp.addToLog(ThreadCpuTimer.CPU_TIME, totalShardCpuTime);
       }
+      if (cachedRequest != null) {
+        cachedRequest.finish(rsp);
+      }
     }
   }
 
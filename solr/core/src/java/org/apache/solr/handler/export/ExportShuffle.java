@@ -0,0 +1,501 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.export;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.LongValues;
+import org.apache.lucene.search.LongValuesSource;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.packed.PackedInts;
+import org.apache.solr.common.IteratorWriter;
+import org.apache.solr.common.MapWriter;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.params.StreamParams;
+import org.apache.solr.common.util.EnvUtils;
+import org.apache.solr.common.util.FastInputStream;
+import org.apache.solr.common.util.FastOutputStream;
+import org.apache.solr.common.util.IOUtils;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.search.HashQParserPlugin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A shuffle of the documents of an export among the workers of a parallel stream. Each worker sends
+ * the same export request to the shard, along with the id of the shuffle, the number of workers and
+ * its own number. The first of these requests to arrive, the producer, starts the export in the
+ * background. The export routes each document to the buffer of its worker, by the hash of its
+ * <code>partitionKeys</code> which the hash filter partitions the documents by. The requests of all
+ * the workers, the producer's included, write the documents of their buffer. The shard thus sorts
+ * and reads the documents once, rather than once per worker.
+ *
+ * <p>The export never waits for a worker: the buffer of a worker holds {@link #MEMORY_BATCHES}
+ * batches of documents in memory, and spills the others to a temporary file of the <code>
+ * solr.export.shuffle.spillDir</code> directory until the worker reads them. The shuffle is aborted
+ * if some workers haven't joined it {@link #JOIN_TIMEOUT_SECONDS} after the first one did, so that
+ * their documents aren't kept for nothing. A worker joining later starts a new shuffle, of which it
+ * is the producer.
+ *
+ * @see HashQParserPlugin
+ */
+public final class ExportShuffle {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  /** The time the workers have to join a shuffle, from the first of them */
+  static final long JOIN_TIMEOUT_SECONDS =
+      EnvUtils.getPropertyAsLong("solr.export.shuffle.join.timeout.sec", 30L);
+
+  /** The time a worker waits for its next documents before failing */
+  static final long TIMEOUT_SECONDS =
+      EnvUtils.getPropertyAsLong("solr.export.shuffle.timeout.sec", 600L);
+
+  /** The directory of the spilled documents, the temp directory of the JVM by default */
+  private static final String SPILL_DIR = EnvUtils.getProperty("solr.export.shuffle.spillDir");
+
+  /** The number of documents handed over to a worker at once */
+  static final int BATCH_SIZE = 256;
+
+  /** The number of batches of documents of a worker held in memory, the others are spilled */
+  static final int MEMORY_BATCHES = 64;
+
+  private final ConcurrentMap<String, ExportShuffle> shuffles;
+  private final String id;
+  private final int workers;
+  private final long startNanos = System.nanoTime();
+  private final Buffer[] buffers;
+  // guarded by this
+  private final boolean[] joined;
+  private int numJoined;
+  private int numClosed;
+  private volatile Throwable error;
+
+  private ExportShuffle(ConcurrentMap<String, ExportShuffle> shuffles, String id, int workers) {
+    this.shuffles = shuffles;
+    this.id = id;
+    this.workers = workers;
+    this.buffers = new Buffer[workers];
+    for (int i = 0; i < workers; i++) {
+      buffers[i] = new Buffer();
+    }
+    this.joined = new boolean[workers];
+  }
+
+  /**
+   * Joins the shuffle of an export request, from the {@link StreamParams#SHUFFLE_ID}, {@link
+   * StreamParams#SHUFFLE_WORKERS} and {@link StreamParams#SHUFFLE_WORKER} parameters.
+   *
+   * @param shuffles the shuffles of the core, by id
+   */
+  public static Partition join(ConcurrentMap<String, ExportShuffle> shuffles, SolrParams params) {
+    String id = params.required().get(StreamParams.SHUFFLE_ID);
+    int workers = params.required().getInt(StreamParams.SHUFFLE_WORKERS);
+    int worker = params.required().getInt(StreamParams.SHUFFLE_WORKER);
+    if (workers < 2 || worker < 0 || worker >= workers) {
+      throw new SolrException(
+          SolrException.ErrorCode.BAD_REQUEST,
+          "Invalid worker " + worker + " of " + workers + " workers for shuffle " + id);
+    }
+    return shuffles
+        .computeIfAbsent(id, k -> new ExportShuffle(shuffles, k, workers))
+        .join(worker, workers);
+  }
+
+  private synchronized Partition join(int worker, int workers) {
+    if (workers != this.workers) {
+      throw new SolrException(
+          SolrException.ErrorCode.BAD_REQUEST,
+          "Shuffle " + id + " has " + this.workers + " workers, not " + workers);
+    }
+    if (joined[worker]) {
+      throw new SolrException(
+          SolrException.ErrorCode.BAD_REQUEST,
+          "Worker " + worker + " already joined shuffle " + id);
+    }
+    joined[worker] = true;
+    notifyAll();
+    return new Partition(worker, numJoined++ == 0);
+  }
+
+  /** Fails if the join timeout elapsed and some workers haven't joined yet */
+  private synchronized void checkJoined() throws IOException {
+    if (numJoined < workers
+        && System.nanoTime() - startNanos > TimeUnit.SECONDS.toNanos(JOIN_TIMEOUT_SECONDS)) {
+      throw new IOException(missingWorkers());
+    }
+  }
+
+  /** Waits for all the workers to join, and aborts the shuffle if some don't in time */
+  private void awaitJoins() {
+    synchronized (this) {
+      long deadline = startNanos + TimeUnit.SECONDS.toNanos(JOIN_TIMEOUT_SECONDS);
+      try {
+        for (long remaining = deadline - System.nanoTime();
+            numJoined < workers && error == null && remaining > 0;
+            remaining = deadline - System.nanoTime()) {
+          TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if (numJoined == workers || error != null) {
+        return;
+      }
+    }
+    abort(new SolrException(SolrException.ErrorCode.SERVER_ERROR, missingWorkers()));
+  }
+
+  private synchronized String missingWorkers() {
+    List<Integer> missing = new ArrayList<>();
+    for (int w = 0; w < workers; w++) {
+      if (!joined[w]) {
+        missing.add(w);
+      }
+    }
+    return "Workers "
+        + missing
+        + " didn't join shuffle "
+        + id
+        + " within "
+        + JOIN_TIMEOUT_SECONDS
+        + " seconds";
+  }
+
+  private synchronized void closed() {
+    if (++numClosed == workers) {
+      shuffles.remove(id, this);
+    }
+  }
+
+  /**
+   * Fails the shuffle: the workers fail as they read their next documents, and the documents of the
+   * workers which haven't joined are dropped.
+   */
+  private void abort(Throwable t) {
+    synchronized (this) {
+      if (error != null) {
+        return;
+      }
+      error = t;
+      for (int w = 0; w < workers; w++) {
+        if (!joined[w]) {
+          buffers[w].close();
+        }
+      }
+    }
+    shuffles.remove(id, this);
+    for (Buffer buffer : buffers) {
+      buffer.wakeUp();
+    }
+  }
+
+  /**
+   * The documents routed to a worker, in order. The first batches are held in memory, the others
+   * are spilled to a temporary file as long as the worker hasn't read the ones before them.
+   */
+  private final class Buffer {
+    // guarded by this
+    private final ArrayDeque<List<?>> batches = new ArrayDeque<>();
+    private Path spillPath;
+    private FastOutputStream spillOut;
+    private JavaBinCodec spillCodec;
+    // the batches of the spill file the worker didn't read yet
+    private long spilled;
+    private boolean ended;
+    private volatile boolean closed;
+    // read by the worker only
+    private FastInputStream spillIn;
+    private JavaBinCodec readCodec;
+
+    boolean isClosed() {
+      return closed;
+    }
+
+    synchronized void add(List<?> batch) throws IOException {
+      if (closed) {
+        return;
+      }
+      if (spilled == 0 && batches.size() < MEMORY_BATCHES) {
+        batches.add(batch);
+      } else {
+        spill(batch);
+        spilled++;
+      }
+      notifyAll();
+    }
+
+    private void spill(List<?> batch) throws IOException {
+      if (spillOut == null) {
+        Path dir = Path.of(SPILL_DIR == null ? System.getProperty("java.io.tmpdir") : SPILL_DIR);
+        spillPath = Files.createTempFile(Files.createDirectories(dir), "solr-shuffle-", ".bin");
+        spillOut = new FastOutputStream(Files.newOutputStream(spillPath));
+        spillCodec = new JavaBinCodec();
+        spillCodec.init(spillOut);
+        log.debug("Spilling the documents of shuffle {} to {}", id, spillPath);
+      }
+      spillCodec.writeVal(batch);
+      // the worker reads the batch as soon as it is counted
+      spillOut.flushBuffer();
+    }
+
+    synchronized void end() {
+      ended = true;
+      notifyAll();
+    }
+
+    synchronized void wakeUp() {
+      notifyAll();
+    }
+
+    /** Returns the next batch of documents, or null after the last one */
+    List<?> take() throws IOException {
+      synchronized (this) {
+        try {
+          for (long waited = 0; ; waited++) {
+            Throwable t = error;
+            if (t != null) {
+              throw new IOException(
+                  "The export of shuffle " + id + " failed: " + t.getMessage(), t);
+            }
+            if (!batches.isEmpty()) {
+              return batches.poll();
+            }
+            if (spilled > 0) {
+              spilled--;
+              break;
+            }
+            if (ended) {
+              return null;
+            }
+            if (waited == TIMEOUT_SECONDS) {
+              throw new IOException("Timed out waiting for the documents of shuffle " + id);
+            }
+            wait(1000);
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted shuffle " + id);
+        }
+      }
+      // the batch was written before it was counted, the producer only appends to the file
+      if (spillIn == null) {
+        spillIn = new FastInputStream(Files.newInputStream(spillPath));
+        readCodec = new JavaBinCodec();
+      }
+      return (List<?>) readCodec.readVal(spillIn);
+    }
+
+    /** Drops the documents of the buffer, which the worker doesn't read anymore */
+    synchronized void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      batches.clear();
+      IOUtils.closeQuietly(spillOut);
+      IOUtils.closeQuietly(spillIn);
+      if (spillPath != null) {
+        try {
+          Files.deleteIfExists(spillPath);
+        } catch (IOException e) {
+          log.warn("Could not delete the spilled documents of shuffle {}: {}", id, spillPath, e);
+        }
+      }
+    }
+  }
+
+  /** The part of a worker in a shuffle */
+  public final class Partition {
+    private final int worker;
+    private final boolean producer;
+    private PackedInts.Reader[] docWorkers;
+    private List<Object>[] batches;
+    private CountDownLatch produced;
+    private boolean closed;
+
+    private Partition(int worker, boolean producer) {
+      this.worker = worker;
+      this.producer = producer;
+    }
+
+    public int getWorker() {
+      return worker;
+    }
+
+    /** Returns true if the request of this worker starts the export for all the workers */
+    public boolean isProducer() {
+      return producer;
+    }
+
+    /**
+     * Runs the export of the shuffle in the background, which routes the documents of all the
+     * workers to their buffers. The request of the producer must stay open until the export ends,
+     * which {@link #close()} waits for.
+     */
+    void produce(SolrCore core, Callable<?> export) {
+      produced = new CountDownLatch(1);
+      Runnable task =
+          () -> {
+            try {
+              export.call();
+            } catch (Exception | Error e) {
+              fail(e);
+            } finally {
+              endProduction();
+              produced.countDown();
+            }
+            awaitJoins();
+          };
+      try {
+        core.runAsync(task);
+      } catch (RejectedExecutionException e) {
+        fail(e);
+        produced.countDown();
+      }
+    }
+
+    /** Computes the worker of each document to export, by the hash of its partition keys */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void computeWorkers(SolrQueryRequest req, List<LeafReaderContext> leaves, FixedBitSet[] sets)
+        throws IOException {
+      String keyParam = req.getParams().get("partitionKeys");
+      if (keyParam == null) {
+        throw new SolrException(
+            SolrException.ErrorCode.BAD_REQUEST, "partitionKeys must be set to shuffle an export");
+      }
+      String[] keys = keyParam.replace(" ", "").split(",");
+      for (String key : keys) {
+        req.getSchema().getField(key);
+      }
+      LongValuesSource hashes = HashQParserPlugin.getHashCodeValuesSource(keys);
+      int bitsPerValue = PackedInts.bitsRequired(workers - 1);
+      docWorkers = new PackedInts.Reader[leaves.size()];
+      for (LeafReaderContext leaf : leaves) {
+        FixedBitSet set = sets == null ? null : sets[leaf.ord];
+        if (set == null) {
+          continue;
+        }
+        PackedInts.Mutable workersOfLeaf =
+            PackedInts.getMutable(leaf.reader().maxDoc(), bitsPerValue, PackedInts.COMPACT);
+        LongValues values = hashes.getValues(leaf, null);
+        DocIdSetIterator it = new BitSetIterator(set, 0L);
+        for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+          values.advanceExact(doc);
+          workersOfLeaf.set(doc, HashQParserPlugin.getWorker(values.longValue(), workers));
+        }
+        docWorkers[leaf.ord] = workersOfLeaf;
+      }
+      batches = new List[workers];
+    }
+
+    /** Routes a document of the export to the buffer of its worker */
+    void route(SortDoc doc, MapWriter fields) throws IOException {
+      int w = (int) docWorkers[doc.ord].get(doc.docId);
+      if (buffers[w].isClosed()) {
+        return;
+      }
+      List<Object> batch = batches[w];
+      if (batch == null) {
+        batch = batches[w] = new ArrayList<>(BATCH_SIZE);
+      }
+      // the field writers read the doc values of the export, the fields are read now
+      batch.add(fields.toMap(new LinkedHashMap<>()));
+      if (batch.size() == BATCH_SIZE) {
+        batches[w] = null;
+        checkJoined();
+        buffers[w].add(batch);
+      }
+    }
+
+    /** Hands the last documents over to the workers, unless the export failed */
+    private void endProduction() {
+      if (error != null) {
+        return;
+      }
+      try {
+        for (int w = 0; w < workers; w++) {
+          if (batches != null && batches[w] != null) {
+            buffers[w].add(batches[w]);
+          }
+          buffers[w].end();
+        }
+      } catch (IOException e) {
+        fail(e);
+      }
+    }
+
+    /** Writes the documents of this worker as the export routes them */
+    void writeDocs(IteratorWriter.ItemWriter writer) throws IOException {
+      Buffer buffer = buffers[worker];
+      for (List<?> batch = buffer.take(); batch != null; batch = buffer.take()) {
+        for (Object doc : batch) {
+          writer.add(doc);
+        }
+      }
+    }
+
+    /** Fails the export, and so the shuffle */
+    void fail(Throwable t) {
+      abort(t);
+    }
+
+    /**
+     * Ends the part of this worker, dropping the documents it didn't read. The producer waits for
+     * the export to end, which runs with its request.
+     */
+    void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      buffers[worker].close();
+      if (produced != null) {
+        boolean interrupted = false;
+        while (true) {
+          try {
+            produced.await();
+            break;
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      closed();
+    }
+  }
+}
@@ -128,6 +128,7 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
   FixedBitSet[] sets = null;
   PushWriter writer;
   private String wt;
+  private final ExportShuffle.Partition shuffle;
 
   public ExportWriter(
       SolrQueryRequest req,
@@ -136,6 +137,20 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
       StreamContext initialStreamContext,
       SolrMetricsContext solrMetricsContext,
       String metricsPath) {
+    this(req, res, wt, initialStreamContext, solrMetricsContext, metricsPath, null);
+  }
+
+  /**
+   * @param shuffle the part of the request in a shuffle of the documents among workers, or null
+   */
+  public ExportWriter(
+      SolrQueryRequest req,
+      SolrQueryResponse res,
+      String wt,
+      StreamContext initialStreamContext,
+      SolrMetricsContext solrMetricsContext,
+      String metricsPath,
+      ExportShuffle.Partition shuffle) {
     this.req = req;
     this.res = res;
     this.wt = wt;
@@ -144,6 +159,7 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
     this.metricsPath = metricsPath;
     this.priorityQueueSize = req.getParams().getInt(QUEUE_SIZE_PARAM, DEFAULT_QUEUE_SIZE);
     this.batchSize = DEFAULT_BATCH_SIZE;
+    this.shuffle = shuffle;
   }
 
   @Override
@@ -174,6 +190,9 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
 
   protected void writeException(Exception e, PushWriter w, boolean logException)
       throws IOException {
+    if (shuffle != null) {
+      shuffle.fail(e);
+    }
     w.writeMap(
         mw -> {
           mw.put("responseHeader", singletonMap("status", 400))
@@ -192,10 +211,33 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
 
   @Override
   public void write(OutputStream os) throws IOException {
-    _write(os);
+    if (shuffle == null) {
+      _write(os);
+      return;
+    }
+    try {
+      if (shuffle.isProducer()) {
+        // the export runs apart from the request, which reads the documents of its worker like the
+        // requests of the other workers, so that the export never waits for a worker
+        ExportWriter export =
+            new ExportWriter(
+                req, res, wt, initialStreamContext, solrMetricsContext, metricsPath, shuffle);
+        shuffle.produce(
+            req.getCore(),
+            () -> {
+              try (export) {
+                export._write(OutputStream.nullOutputStream());
+              }
+              return null;
+            });
+      }
+      writeShuffled(os);
+    } finally {
+      shuffle.close();
+    }
   }
 
-  private void _write(OutputStream os) throws IOException {
+  private void initWriter(OutputStream os) throws IOException {
     QueryResponseWriter rw = req.getCore().getResponseWriters().get(wt);
     if (rw instanceof JacksonJsonWriter) {
       writer = ((JacksonJsonWriter) rw).getWriter(os, req, res);
@@ -206,10 +248,16 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
       respWriter = new OutputStreamWriter(os, StandardCharsets.UTF_8);
       writer = JSONResponseWriter.getPushWriter(respWriter, req, res);
     }
+  }
+
+  private void _write(OutputStream os) throws IOException {
+    initWriter(os);
     Exception exception = res.getException();
     if (exception != null) {
       if (!(exception instanceof IgnoreException)) {
         writeException(exception, writer, false);
+      } else if (shuffle != null) {
+        shuffle.fail(exception);
       }
       return;
     }
@@ -296,6 +344,9 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
 
     try {
       fieldWriters = getFieldWriters(fields, req);
+      if (shuffle != null) {
+        shuffle.computeWorkers(req, req.getSearcher().getTopReaderContext().leaves(), sets);
+      }
     } catch (Exception e) {
       writeException(e, writer, true);
       return;
@@ -346,6 +397,10 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
           });
     } catch (java.io.EOFException e) {
       log.info("Caught Eof likely caused by early client disconnect");
+      if (shuffle != null) {
+        // the documents of the other workers weren't all routed
+        shuffle.fail(e);
+      }
     }
 
     if (streamContext != null) {
@@ -353,6 +408,28 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
     }
   }
 
+  /** Writes the documents the export of the shuffle routes to this worker */
+  private void writeShuffled(OutputStream os) throws IOException {
+    initWriter(os);
+    IteratorWriter docs =
+        iw -> {
+          try {
+            shuffle.writeDocs(iw);
+          } catch (IOException e) {
+            iw.add((MapWriter) ew -> Tuple.EXCEPTION(e, true).writeMap(ew));
+          }
+        };
+    try {
+      writer.writeMap(
+          m -> {
+            m.put("responseHeader", singletonMap("status", 0));
+            m.put("response", (MapWriter) mw -> mw.put("docs", docs));
+          });
+    } catch (java.io.EOFException e) {
+      log.info("Caught Eof likely caused by early client disconnect");
+    }
+  }
+
   private TupleStream createTupleStream() throws IOException {
     StreamFactory streamFactory = (StreamFactory) initialStreamContext.getStreamFactory().clone();
     // Set the sort in the stream factory so it can be used during initialization.
@@ -451,7 +528,12 @@ public class ExportWriter implements SolrCore.RawWriter, Closeable {
                 // reduction in the number of output items, unlike when using
                 // streaming expressions
                 final SortDoc currentDoc = buffer.outDocs[i];
-                writer.add((MapWriter) ew -> writeDoc(currentDoc, leaves, ew, fieldWriters));
+                MapWriter doc = ew -> writeDoc(currentDoc, leaves, ew, fieldWriters);
+                if (shuffle == null) {
+                  writer.add(doc);
+                } else {
+                  shuffle.route(currentDoc, doc);
+                }
               }
               // log.debug("--- writer exchanging from {}", buffer);
               long startExchangeBuffers = System.nanoTime();
@@ -18,9 +18,11 @@ package org.apache.solr.response;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexableField;
@@ -53,10 +55,18 @@ import org.apache.solr.search.ReturnFields;
 import org.apache.solr.search.SolrDocumentFetcher;
 import org.apache.solr.search.SolrReturnFields;
 
-/** This streams SolrDocuments from a DocList and applies transformer */
+/**
+ * This streams SolrDocuments from a DocList and applies transformer
+ *
+ * <p>The fields of the documents are fetched in batches of up to {@link #BATCH_SIZE} documents,
+ * see {@link SolrDocumentFetcher#solrDocs(int[], SolrReturnFields)}.
+ */
 public class DocsStreamer implements Iterator<SolrDocument> {
   public static final Set<Class<? extends FieldType>> KNOWN_TYPES = new HashSet<>();
 
+  /** The maximum number of documents whose fields are fetched together */
+  public static final int BATCH_SIZE = 128;
+
   private final org.apache.solr.response.ResultContext rctx;
   private final SolrDocumentFetcher docFetcher; // a collaborator of SolrIndexSearcher
   private final DocList docs;
@@ -65,6 +75,14 @@ public class DocsStreamer implements Iterator<SolrDocument> {
   private final DocIterator docIterator;
 
   private final SolrReturnFields solrReturnFields;
+  private final boolean doScore;
+
+  // the current batch of documents
+  private final int[] batchIds;
+  private final float[] batchScores;
+  private SolrDocument[] batchDocs;
+  private int batchSize;
+  private int batchIdx;
 
   private int idx = -1;
 
@@ -75,6 +93,11 @@ public class DocsStreamer implements Iterator<SolrDocument> {
     docIterator = this.docs.iterator();
     docFetcher = rctx.getDocFetcher();
     solrReturnFields = (SolrReturnFields) rctx.getReturnFields();
+    doScore = transformer != null && rctx.wantsScores();
+
+    final int maxBatchSize = Math.min(BATCH_SIZE, docs.size());
+    batchIds = new int[maxBatchSize];
+    batchScores = doScore ? new float[maxBatchSize] : null;
 
     if (transformer != null) transformer.setContext(rctx);
   }
@@ -85,20 +108,24 @@ public class DocsStreamer implements Iterator<SolrDocument> {
 
   @Override
   public boolean hasNext() {
-    return docIterator.hasNext();
+    return batchIdx < batchSize || docIterator.hasNext();
   }
 
   @Override
   public SolrDocument next() {
-    int id = docIterator.nextDoc();
+    if (batchIdx == batchSize) {
+      nextBatch();
+    }
+    int id = batchIds[batchIdx];
+    SolrDocument sdoc = batchDocs[batchIdx];
+    float score = doScore ? batchScores[batchIdx] : 0f;
+    batchDocs[batchIdx++] = null;
     idx++;
-    SolrDocument sdoc = docFetcher.solrDoc(id, solrReturnFields);
 
     if (transformer != null) {
-      boolean doScore = rctx.wantsScores();
       try {
         if (doScore) {
-          transformer.transform(sdoc, id, docIterator.score());
+          transformer.transform(sdoc, id, score);
         } else {
           transformer.transform(sdoc, id);
         }
@@ -110,6 +137,25 @@ public class DocsStreamer implements Iterator<SolrDocument> {
     return sdoc;
   }
 
+  private void nextBatch() {
+    batchSize = 0;
+    batchIdx = 0;
+    while (batchSize < batchIds.length && docIterator.hasNext()) {
+      batchIds[batchSize] = docIterator.nextDoc();
+      if (doScore) {
+        batchScores[batchSize] = docIterator.score();
+      }
+      batchSize++;
+    }
+    if (batchSize == 0) {
+      throw new NoSuchElementException();
+    }
+    batchDocs =
+        docFetcher.solrDocs(
+            batchSize == batchIds.length ? batchIds : Arrays.copyOf(batchIds, batchSize),
+            solrReturnFields);
+  }
+
   /**
    * This method is less efficient then the 3 arg version because it may convert some fields that
    * are not needed
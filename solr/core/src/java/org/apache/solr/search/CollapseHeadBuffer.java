@@ -0,0 +1,571 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.IntroSorter;
+import org.apache.lucene.util.PriorityQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A memory bounded buffer of <code>(collapse key, score, global doc)</code> entries used by the
+ * {@link CollapsingQParserPlugin#HINT_COMPACT} collapse strategy.
+ *
+ * <p>Entries are appended as documents are collected, so memory usage is proportional to the number
+ * of matching documents rather than to the number of distinct values in the collapse field. Once
+ * the buffer reaches its budget it is sorted and reduced in place to one entry (the current group
+ * head) per key; if that does not free at least half of the buffer, the reduced entries are written
+ * to a temporary file as a sorted run. {@link #forEachHead} merges the in-memory entries with any
+ * spilled runs and reports the final head of every group in key order, and {@link #sortHeadsByDoc}
+ * replays them in doc order within the same budget, sorting them in place or, once the buffer
+ * spilled, through sorted runs of docs.
+ *
+ * <p>Instances are not thread safe, and must be {@link #close}d to release spill files and return
+ * the buffers to a small shared pool for reuse by subsequent requests.
+ *
+ * @lucene.internal
+ */
+final class CollapseHeadBuffer implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  /** Heap bytes used by each buffered entry: an int key plus a long packing score bits and doc */
+  static final int BYTES_PER_ENTRY = Integer.BYTES + Long.BYTES;
+
+  /** The smallest number of entries a buffer may hold, regardless of the configured budget */
+  static final int MIN_ENTRIES = 2;
+
+  private static final int INITIAL_ENTRIES = 1024;
+
+  /** Buffers larger than this (in entries) are left to the GC rather than pooled */
+  private static final int MAX_POOLED_ENTRIES = 1 << 18;
+
+  private static final int MAX_POOLED_BUFFERS = 4;
+
+  private static final ConcurrentLinkedQueue<Buffers> POOL = new ConcurrentLinkedQueue<>();
+  private static final AtomicInteger POOL_SIZE = new AtomicInteger();
+
+  private record Buffers(int[] keys, long[] scoreDocs) {}
+
+  /** Receives the final group heads, in increasing key order */
+  @FunctionalInterface
+  interface HeadConsumer {
+    void accept(int key, float score, int globalDoc) throws IOException;
+  }
+
+  /** Receives the final group heads, in increasing key order, and returns whether to keep them */
+  @FunctionalInterface
+  interface HeadFilter {
+    boolean accept(int key, float score, int globalDoc) throws IOException;
+  }
+
+  private final int maxEntries;
+  private final List<Path> spillFiles = new ArrayList<>();
+  private final List<Path> docSpillFiles = new ArrayList<>();
+  private int[] keys;
+  private long[] scoreDocs;
+  private int size;
+  private long spilledBytes;
+
+  /**
+   * @param maxBufferBytes the (approximate) maximum heap size of the buffered entries before they
+   *     are reduced and, if necessary, spilled to disk.
+   */
+  CollapseHeadBuffer(long maxBufferBytes) {
+    final long entries = maxBufferBytes / BYTES_PER_ENTRY;
+    this.maxEntries = (int) Math.max(MIN_ENTRIES, Math.min(ArrayUtil.MAX_ARRAY_LENGTH, entries));
+    final Buffers pooled = POOL.poll();
+    if (pooled != null) {
+      POOL_SIZE.decrementAndGet();
+      this.keys = pooled.keys();
+      this.scoreDocs = pooled.scoreDocs();
+    } else {
+      final int initial = Math.min(INITIAL_ENTRIES, maxEntries);
+      this.keys = new int[initial];
+      this.scoreDocs = new long[initial];
+    }
+  }
+
+  /** Buffers a candidate group head */
+  void add(int key, float score, int globalDoc) throws IOException {
+    if (size >= maxEntries) {
+      compact();
+    } else if (size == keys.length) {
+      final int newLength = Math.min(maxEntries, ArrayUtil.oversize(size + 1, Long.BYTES));
+      keys = ArrayUtil.growExact(keys, newLength);
+      scoreDocs = ArrayUtil.growExact(scoreDocs, newLength);
+    }
+    keys[size] = key;
+    scoreDocs[size] = pack(score, globalDoc);
+    size++;
+  }
+
+  /** Number of bytes written to spill files so far */
+  long getSpilledBytes() {
+    return spilledBytes;
+  }
+
+  /** Number of sorted runs spilled to disk so far */
+  int getSpillCount() {
+    return spillFiles.size() + docSpillFiles.size();
+  }
+
+  /**
+   * Reports the head (highest score, lowest doc on ties) of every buffered group, in increasing key
+   * order. May only be called once.
+   */
+  void forEachHead(HeadConsumer consumer) throws IOException {
+    reduce();
+    if (spillFiles.isEmpty()) {
+      for (int i = 0; i < size; i++) {
+        consumer.accept(keys[i], score(scoreDocs[i]), doc(scoreDocs[i]));
+      }
+      return;
+    }
+
+    final List<Run> runs = new ArrayList<>(spillFiles.size() + 1);
+    try {
+      for (Path file : spillFiles) {
+        runs.add(new FileRun(file));
+      }
+      runs.add(new MemoryRun(keys, scoreDocs, size));
+
+      final PriorityQueue<Run> queue =
+          new PriorityQueue<>(runs.size()) {
+            @Override
+            protected boolean lessThan(Run a, Run b) {
+              return compareEntries(a.key, a.scoreDoc, b.key, b.scoreDoc) < 0;
+            }
+          };
+      for (Run run : runs) {
+        if (run.next()) {
+          queue.add(run);
+        }
+      }
+
+      // within a run keys are unique, and across runs the best entry for a key sorts first
+      boolean first = true;
+      int lastKey = 0;
+      while (queue.size() > 0) {
+        final Run top = queue.top();
+        if (first || top.key != lastKey) {
+          consumer.accept(top.key, score(top.scoreDoc), doc(top.scoreDoc));
+          lastKey = top.key;
+          first = false;
+        }
+        if (top.next()) {
+          queue.updateTop();
+        } else {
+          queue.pop();
+        }
+      }
+    } finally {
+      IOUtils.close(runs);
+    }
+  }
+
+  /**
+   * Returns the heads kept by a filter, which receives every head in increasing key order as {@link
+   * #forEachHead} does, in increasing doc order. The heads are sorted in the buffer itself, or, if
+   * it spilled, through sorted runs of docs of the same size as its runs. May only be called once,
+   * instead of {@link #forEachHead}, and the heads must be read before the buffer is closed.
+   */
+  DocHeads sortHeadsByDoc(HeadFilter filter) throws IOException {
+    if (spillFiles.isEmpty()) {
+      reduce();
+      int upto = 0;
+      for (int i = 0; i < size; i++) {
+        final int doc = doc(scoreDocs[i]);
+        final float score = score(scoreDocs[i]);
+        if (filter.accept(keys[i], score, doc)) {
+          scoreDocs[upto++] = packByDoc(doc, score);
+        }
+      }
+      size = upto;
+      Arrays.sort(scoreDocs, 0, size);
+      return new DocHeads(List.of(new MemoryDocRun(scoreDocs, size)));
+    }
+
+    // the buffer is spilled too, so that its arrays hold the docs of the heads while they're merged
+    if (size > 0) {
+      reduce();
+      spill();
+    }
+    final List<Path> keyRuns = new ArrayList<>(spillFiles);
+    forEachHead(
+        (key, score, doc) -> {
+          if (filter.accept(key, score, doc)) {
+            if (size == maxEntries) {
+              spillDocs();
+            } else if (size == scoreDocs.length) {
+              // the keys grow along, the arrays being pooled together
+              final int newLength = Math.min(maxEntries, ArrayUtil.oversize(size + 1, Long.BYTES));
+              keys = ArrayUtil.growExact(keys, newLength);
+              scoreDocs = ArrayUtil.growExact(scoreDocs, newLength);
+            }
+            scoreDocs[size++] = packByDoc(doc, score);
+          }
+        });
+    IOUtils.deleteFilesIgnoringExceptions(keyRuns);
+    Arrays.sort(scoreDocs, 0, size);
+
+    final List<DocRun> runs = new ArrayList<>(docSpillFiles.size() + 1);
+    boolean success = false;
+    try {
+      for (Path file : docSpillFiles) {
+        runs.add(new FileDocRun(file));
+      }
+      runs.add(new MemoryDocRun(scoreDocs, size));
+      success = true;
+      return new DocHeads(runs);
+    } finally {
+      if (!success) {
+        IOUtils.closeWhileHandlingException(runs);
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      IOUtils.deleteFilesIgnoringExceptions(spillFiles);
+      spillFiles.clear();
+      IOUtils.deleteFilesIgnoringExceptions(docSpillFiles);
+      docSpillFiles.clear();
+    } finally {
+      if (keys != null && keys.length <= MAX_POOLED_ENTRIES) {
+        if (POOL_SIZE.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+          POOL.offer(new Buffers(keys, scoreDocs));
+        } else {
+          POOL_SIZE.decrementAndGet();
+        }
+      }
+      keys = null;
+      scoreDocs = null;
+      size = 0;
+    }
+  }
+
+  /** Reduces the buffer to group heads, spilling them if that didn't free enough space */
+  private void compact() throws IOException {
+    reduce();
+    if (size > maxEntries / 2) {
+      spill();
+    }
+  }
+
+  /** Sorts the buffer by key (best entry first) and keeps only the first entry for each key */
+  private void reduce() {
+    if (size <= 1) {
+      return;
+    }
+    new EntrySorter().sort(0, size);
+    int upto = 0;
+    for (int i = 1; i < size; i++) {
+      if (keys[i] != keys[upto]) {
+        upto++;
+        keys[upto] = keys[i];
+        scoreDocs[upto] = scoreDocs[i];
+      }
+    }
+    size = upto + 1;
+  }
+
+  private void spill() throws IOException {
+    final Path file = Files.createTempFile("solr-collapse-", ".spill");
+    spillFiles.add(file);
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+      out.writeInt(size);
+      for (int i = 0; i < size; i++) {
+        out.writeInt(keys[i]);
+        out.writeLong(scoreDocs[i]);
+      }
+    }
+    spilledBytes += Integer.BYTES + (long) size * BYTES_PER_ENTRY;
+    if (log.isDebugEnabled()) {
+      log.debug(
+          "Spilled {} collapse group heads to {} (total spilled bytes: {})",
+          size,
+          file,
+          spilledBytes);
+    }
+    size = 0;
+  }
+
+  /** Writes the docs of heads, packed by {@link #packByDoc}, to a run sorted by doc */
+  private void spillDocs() throws IOException {
+    Arrays.sort(scoreDocs, 0, size);
+    final Path file = Files.createTempFile("solr-collapse-", ".spill");
+    docSpillFiles.add(file);
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+      out.writeInt(size);
+      for (int i = 0; i < size; i++) {
+        out.writeLong(scoreDocs[i]);
+      }
+    }
+    spilledBytes += Integer.BYTES + (long) size * Long.BYTES;
+    size = 0;
+  }
+
+  static long pack(float score, int globalDoc) {
+    return (((long) Float.floatToIntBits(score)) << 32) | (globalDoc & 0xFFFFFFFFL);
+  }
+
+  static float score(long scoreDoc) {
+    return Float.intBitsToFloat((int) (scoreDoc >>> 32));
+  }
+
+  static int doc(long scoreDoc) {
+    return (int) scoreDoc;
+  }
+
+  /** Packs a doc and score such that sorting the packed values sorts by doc */
+  static long packByDoc(int globalDoc, float score) {
+    return (((long) globalDoc) << 32) | (Float.floatToRawIntBits(score) & 0xFFFFFFFFL);
+  }
+
+  /** Orders by key, then by descending score, then by ascending doc */
+  static int compareEntries(int key1, long scoreDoc1, int key2, long scoreDoc2) {
+    int cmp = Integer.compare(key1, key2);
+    if (cmp != 0) {
+      return cmp;
+    }
+    cmp = Float.compare(score(scoreDoc2), score(scoreDoc1));
+    if (cmp != 0) {
+      return cmp;
+    }
+    return Integer.compare(doc(scoreDoc1), doc(scoreDoc2));
+  }
+
+  private final class EntrySorter extends IntroSorter {
+    private int pivotKey;
+    private long pivotScoreDoc;
+
+    @Override
+    protected void swap(int i, int j) {
+      final int key = keys[i];
+      keys[i] = keys[j];
+      keys[j] = key;
+      final long scoreDoc = scoreDocs[i];
+      scoreDocs[i] = scoreDocs[j];
+      scoreDocs[j] = scoreDoc;
+    }
+
+    @Override
+    protected int compare(int i, int j) {
+      return compareEntries(keys[i], scoreDocs[i], keys[j], scoreDocs[j]);
+    }
+
+    @Override
+    protected void setPivot(int i) {
+      pivotKey = keys[i];
+      pivotScoreDoc = scoreDocs[i];
+    }
+
+    @Override
+    protected int comparePivot(int j) {
+      return compareEntries(pivotKey, pivotScoreDoc, keys[j], scoreDocs[j]);
+    }
+  }
+
+  private abstract static class Run implements Closeable {
+    int key;
+    long scoreDoc;
+
+    abstract boolean next() throws IOException;
+
+    @Override
+    public void close() throws IOException {}
+  }
+
+  private static final class MemoryRun extends Run {
+    private final int[] keys;
+    private final long[] scoreDocs;
+    private final int size;
+    private int upto = -1;
+
+    MemoryRun(int[] keys, long[] scoreDocs, int size) {
+      this.keys = keys;
+      this.scoreDocs = scoreDocs;
+      this.size = size;
+    }
+
+    @Override
+    boolean next() {
+      if (++upto < size) {
+        key = keys[upto];
+        scoreDoc = scoreDocs[upto];
+        return true;
+      }
+      return false;
+    }
+  }
+
+  private static final class FileRun extends Run {
+    private final DataInputStream in;
+    private int remaining;
+
+    FileRun(Path file) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+      this.remaining = in.readInt();
+    }
+
+    @Override
+    boolean next() throws IOException {
+      if (remaining == 0) {
+        return false;
+      }
+      remaining--;
+      key = in.readInt();
+      scoreDoc = in.readLong();
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /** The heads kept by {@link #sortHeadsByDoc}, in increasing doc order */
+  static final class DocHeads implements Closeable {
+    private final List<DocRun> runs;
+    private final PriorityQueue<DocRun> queue;
+    private int doc = -1;
+    private float score;
+
+    private DocHeads(List<DocRun> runs) throws IOException {
+      this.runs = runs;
+      this.queue =
+          new PriorityQueue<>(runs.size()) {
+            @Override
+            protected boolean lessThan(DocRun a, DocRun b) {
+              return a.docScore < b.docScore;
+            }
+          };
+      for (DocRun run : runs) {
+        if (run.next()) {
+          queue.add(run);
+        }
+      }
+    }
+
+    /** Moves to the next head, returning false once there is none */
+    boolean next() throws IOException {
+      if (queue.size() == 0) {
+        doc = DocIdSetIterator.NO_MORE_DOCS;
+        return false;
+      }
+      final DocRun top = queue.top();
+      doc = (int) (top.docScore >>> 32);
+      score = Float.intBitsToFloat((int) top.docScore);
+      if (top.next()) {
+        queue.updateTop();
+      } else {
+        queue.pop();
+      }
+      return true;
+    }
+
+    /** The doc of the current head, -1 before the first one, or NO_MORE_DOCS after the last one */
+    int doc() {
+      return doc;
+    }
+
+    float score() {
+      return score;
+    }
+
+    @Override
+    public void close() throws IOException {
+      IOUtils.close(runs);
+    }
+  }
+
+  private abstract static class DocRun implements Closeable {
+    long docScore;
+
+    abstract boolean next() throws IOException;
+
+    @Override
+    public void close() throws IOException {}
+  }
+
+  private static final class MemoryDocRun extends DocRun {
+    private final long[] docScores;
+    private final int size;
+    private int upto = -1;
+
+    MemoryDocRun(long[] docScores, int size) {
+      this.docScores = docScores;
+      this.size = size;
+    }
+
+    @Override
+    boolean next() {
+      if (++upto < size) {
+        docScore = docScores[upto];
+        return true;
+      }
+      return false;
+    }
+  }
+
+  private static final class FileDocRun extends DocRun {
+    private final DataInputStream in;
+    private int remaining;
+
+    FileDocRun(Path file) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+      this.remaining = in.readInt();
+    }
+
+    @Override
+    boolean next() throws IOException {
+      if (remaining == 0) {
+        return false;
+      }
+      remaining--;
+      docScore = in.readLong();
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
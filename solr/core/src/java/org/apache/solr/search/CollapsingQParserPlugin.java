@@ -20,8 +20,10 @@ import static org.apache.solr.common.params.CommonParams.SORT;
 
 import com.carrotsearch.hppc.FloatArrayList;
 import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
 import com.carrotsearch.hppc.IntIntHashMap;
 import com.carrotsearch.hppc.IntLongHashMap;
+import com.carrotsearch.hppc.LongArrayList;
 import com.carrotsearch.hppc.cursors.IntIntCursor;
 import com.carrotsearch.hppc.cursors.IntLongCursor;
 import com.carrotsearch.hppc.procedures.IntProcedure;
@@ -29,6 +31,7 @@ import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Iterator;
@@ -51,6 +54,8 @@ import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.queries.function.FunctionQuery;
 import org.apache.lucene.queries.function.FunctionValues;
 import org.apache.lucene.queries.function.ValueSource;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.FieldComparator;
 import org.apache.lucene.search.IndexSearcher;
@@ -60,6 +65,7 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.QueryVisitor;
 import org.apache.lucene.search.Scorable;
 import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.util.ArrayUtil;
@@ -139,6 +145,28 @@ public class CollapsingQParserPlugin extends QParserPlugin {
    */
   public static final String HINT_BLOCK = "block";
 
+  /**
+   * Indicates that the group heads should be selected using a compact, memory bounded structure
+   * sized by the number of matching documents instead of by the number of unique values in the
+   * collapse field. This is intended for collapse fields with a very high cardinality, where the
+   * default strategies allocate large per-request arrays or maps. Candidate group heads are
+   * buffered up to {@link #MAX_BUFFER_BYTES} bytes, after which they are reduced and, if needed,
+   * spilled to disk as sorted runs that are merged once collection completes, and sorted by doc
+   * within the same budget.
+   *
+   * <p>This hint is currently only used when selecting group heads by score; it is ignored for
+   * min/max/sort group head selectors and when the block collapse strategy can be used.
+   */
+  public static final String HINT_COMPACT = "compact";
+
+  /**
+   * Local param specifying the (approximate) maximum number of heap bytes used to buffer candidate
+   * group heads when using {@link #HINT_COMPACT}.
+   */
+  public static final String MAX_BUFFER_BYTES = "maxBufferBytes";
+
+  static final long DEFAULT_MAX_BUFFER_BYTES = 16L * 1024 * 1024;
+
   /**
    * If elevation is used in combination with the collapse query parser, we can define that we only
    * want to return the representative and not all elevated docs by setting this parameter to false
@@ -302,6 +330,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
     private NullPolicy nullPolicy;
     private Set<BytesRef> boosted; // ordered by "priority"
     private int size;
+    private long maxBufferBytes;
 
     public String getField() {
       return this.collapseField;
@@ -411,6 +440,13 @@ public class CollapsingQParserPlugin extends QParserPlugin {
 
       this.hint = localParams.get("hint");
       this.size = localParams.getInt("size", 100000); // Only used for collapsing on int fields.
+      // Only used with the compact hint.
+      this.maxBufferBytes = localParams.getLong(MAX_BUFFER_BYTES, DEFAULT_MAX_BUFFER_BYTES);
+      if (this.maxBufferBytes <= 0) {
+        throw new SolrException(
+            SolrException.ErrorCode.BAD_REQUEST,
+            "'" + MAX_BUFFER_BYTES + "' must be positive: " + this.maxBufferBytes);
+      }
 
       {
         final SolrRequestInfo info = SolrRequestInfo.getRequestInfo();
@@ -477,6 +513,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
             this.needsScores4Collapsing,
             this.needsScores,
             this.size,
+            this.maxBufferBytes,
             boostDocsMap,
             searcher);
 
@@ -810,6 +847,334 @@ public class CollapsingQParserPlugin extends QParserPlugin {
     }
   }
 
+  /**
+   * Collapses on either ordinal or integer values using the score to select the group head, using a
+   * {@link CollapseHeadBuffer} sized by the number of matching documents rather than by the number
+   * of unique values in the collapse field.
+   *
+   * <p>Since the collapse keys are global (top level ordinals or field values) and buffered group
+   * heads can be merged, this collector also supports collecting index slices concurrently, see
+   * {@link #getParallelCollectorManager()}.
+   *
+   * @see #HINT_COMPACT
+   * @lucene.internal
+   */
+  static class CompactScoreCollector extends DelegatingCollector {
+
+    private LeafReaderContext[] contexts;
+    private FixedBitSet collapsedSet;
+    // exactly one of collapseValues (ordinals) or field (numeric values) is non-null
+    private final SortedDocValues collapseValues;
+    private final String field;
+    private OrdinalMap ordinalMap;
+    private MultiDocValues.MultiSortedDocValues multiSortedDocValues;
+    private int maxDoc;
+    private int nullPolicy;
+    private final long maxBufferBytes;
+    private final int numSlices;
+    private boolean collectElevatedDocsWhenCollapsing;
+
+    private final BoostedDocsCollector boostedDocsCollector;
+
+    // collects sequentially, and is what concurrently collected heads are merged into
+    private final HeadsCollector heads;
+
+    public CompactScoreCollector(
+        int maxDoc,
+        int segments,
+        DocValuesProducer collapseValuesProducer,
+        String field,
+        int nullPolicy,
+        long maxBufferBytes,
+        IntIntHashMap boostDocsMap,
+        IndexSearcher searcher,
+        boolean collectElevatedDocsWhenCollapsing)
+        throws IOException {
+      assert (collapseValuesProducer == null) != (field == null);
+      this.maxDoc = maxDoc;
+      this.contexts = new LeafReaderContext[segments];
+      this.collectElevatedDocsWhenCollapsing = collectElevatedDocsWhenCollapsing;
+      List<LeafReaderContext> con = searcher.getTopReaderContext().leaves();
+      for (int i = 0; i < con.size(); i++) {
+        contexts[i] = con.get(i);
+      }
+
+      this.collapsedSet = new FixedBitSet(maxDoc);
+      this.field = field;
+      if (collapseValuesProducer != null) {
+        this.collapseValues = collapseValuesProducer.getSorted(null);
+        if (collapseValues instanceof MultiDocValues.MultiSortedDocValues) {
+          this.multiSortedDocValues = (MultiDocValues.MultiSortedDocValues) collapseValues;
+          this.ordinalMap = multiSortedDocValues.mapping;
+        }
+      } else {
+        this.collapseValues = null;
+      }
+      this.nullPolicy = nullPolicy;
+      this.maxBufferBytes = maxBufferBytes;
+      this.numSlices = Math.max(1, searcher.getSlices().length);
+      this.boostedDocsCollector = BoostedDocsCollector.build(boostDocsMap);
+      this.heads = new HeadsCollector(maxBufferBytes, boostedDocsCollector);
+    }
+
+    @Override
+    public ScoreMode scoreMode() {
+      return ScoreMode.COMPLETE;
+    }
+
+    @Override
+    public void setScorer(Scorable scorer) throws IOException {
+      heads.setScorer(scorer);
+    }
+
+    @Override
+    protected void doSetNextReader(LeafReaderContext context) throws IOException {
+      this.contexts[context.ord] = context;
+      this.docBase = context.docBase;
+      heads.getLeafCollector(context);
+    }
+
+    @Override
+    public void collect(int contextDoc) throws IOException {
+      heads.collect(contextDoc);
+    }
+
+    /**
+     * Collects each index slice into its own buffer, merging them into this collector once all
+     * slices are done. Elevated documents must be seen in global doc order, so this is not
+     * supported when any documents are boosted by the QueryElevationComponent.
+     */
+    @Override
+    public CollectorManager<? extends Collector, ?> getParallelCollectorManager() {
+      if (boostedDocsCollector.hasBoosts()
+          || (collapseValues != null && ordinalMap == null && contexts.length > 1)) {
+        // top level (non ordinal mapped) doc values can only be iterated in global doc order
+        return null;
+      }
+      final long sliceBufferBytes = Math.max(1L, maxBufferBytes / numSlices);
+      return new CollectorManager<HeadsCollector, Void>() {
+        @Override
+        public HeadsCollector newCollector() {
+          return new HeadsCollector(sliceBufferBytes, null);
+        }
+
+        @Override
+        public Void reduce(Collection<HeadsCollector> collectors) throws IOException {
+          try {
+            for (HeadsCollector collector : collectors) {
+              heads.merge(collector);
+            }
+          } finally {
+            for (HeadsCollector collector : collectors) {
+              collector.buffer.close();
+            }
+          }
+          return null;
+        }
+      };
+    }
+
+    @Override
+    public void complete() throws IOException {
+      try {
+        if (contexts.length == 0) {
+          return;
+        }
+        collectGroupHeads();
+      } finally {
+        heads.buffer.close();
+      }
+
+      if (delegate instanceof DelegatingCollector) {
+        ((DelegatingCollector) delegate).complete();
+      }
+    }
+
+    private void collectGroupHeads() throws IOException {
+      // Handle the boosted docs.
+      final IntHashSet boostedKeys = new IntHashSet();
+      boostedDocsCollector.purgeGroupsThatHaveBoostedDocs(
+          collapsedSet,
+          boostedKeys::add,
+          () -> {
+            heads.nullDoc = -1;
+          });
+
+      // Build the sorted DocSet of group heads; their scores are replayed in doc order by the
+      // buffer, within its budget
+      if (heads.nullDoc > -1) {
+        collapsedSet.set(heads.nullDoc);
+      }
+      try (CollapseHeadBuffer.DocHeads docHeads =
+          heads.buffer.sortHeadsByDoc(
+              (key, score, doc) -> {
+                if (boostedKeys.contains(key)) {
+                  return false;
+                }
+                collapsedSet.set(doc);
+                return true;
+              })) {
+        if (heads.buffer.getSpillCount() > 0 && log.isDebugEnabled()) {
+          log.debug(
+              "Compact collapse spilled {} runs ({} bytes)",
+              heads.buffer.getSpillCount(),
+              heads.buffer.getSpilledBytes());
+        }
+        collectGroupHeads(docHeads);
+      }
+    }
+
+    private void collectGroupHeads(CollapseHeadBuffer.DocHeads docHeads) throws IOException {
+      // with nullPolicy=expand each null doc is its own group
+      final long[] nullDocScores = heads.nullDocScores.toArray();
+      Arrays.sort(nullDocScores);
+      for (long nullDocScore : nullDocScores) {
+        collapsedSet.set((int) (nullDocScore >>> 32));
+      }
+
+      int currentContext = 0;
+      int currentDocBase = 0;
+      int nextDocBase =
+          currentContext + 1 < contexts.length ? contexts[currentContext + 1].docBase : maxDoc;
+      leafDelegate = delegate.getLeafCollector(contexts[currentContext]);
+      ScoreAndDoc dummy = new ScoreAndDoc();
+      leafDelegate.setScorer(dummy);
+      DocIdSetIterator it = new BitSetIterator(collapsedSet, 0L); // cost is not useful here
+      final MergeBoost mergeBoost = boostedDocsCollector.getMergeBoost();
+      int globalDoc = -1;
+      int nullIndex = 0;
+      docHeads.next();
+      while ((globalDoc = it.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+        while (globalDoc >= nextDocBase) {
+          currentContext++;
+          currentDocBase = contexts[currentContext].docBase;
+          nextDocBase =
+              currentContext + 1 < contexts.length ? contexts[currentContext + 1].docBase : maxDoc;
+          leafDelegate = delegate.getLeafCollector(contexts[currentContext]);
+          leafDelegate.setScorer(dummy);
+        }
+
+        final int contextDoc = globalDoc - currentDocBase;
+        if (docHeads.doc() == globalDoc) {
+          dummy.score = docHeads.score();
+          docHeads.next();
+        } else if (nullIndex < nullDocScores.length
+            && (int) (nullDocScores[nullIndex] >>> 32) == globalDoc) {
+          dummy.score = Float.intBitsToFloat((int) nullDocScores[nullIndex++]);
+        } else if (mergeBoost.boost(globalDoc)) {
+          // It's an elevated doc so no score is needed (and should not have been populated)
+          dummy.score = 0F;
+        } else if (nullPolicy == NullPolicy.COLLAPSE.getCode()) {
+          dummy.score = heads.nullScore;
+        }
+
+        dummy.docId = contextDoc;
+        leafDelegate.collect(contextDoc);
+      }
+    }
+
+    /** Collects candidate group heads for all (or, when collecting concurrently, some) segments */
+    private final class HeadsCollector extends SimpleCollector {
+      private final CollapseHeadBuffer buffer;
+      private final BoostedDocsCollector boosted; // null when collecting concurrently
+      private final LongArrayList nullDocScores = new LongArrayList();
+      private float nullScore = -Float.MAX_VALUE;
+      private int nullDoc = -1;
+      private Scorable scorer;
+      private int docBase;
+      private SortedDocValues segmentValues;
+      private LongValues segmentOrdinalMap;
+      private NumericDocValues numericValues;
+
+      HeadsCollector(long maxBufferBytes, BoostedDocsCollector boosted) {
+        this.buffer = new CollapseHeadBuffer(maxBufferBytes);
+        this.boosted = boosted;
+      }
+
+      @Override
+      public ScoreMode scoreMode() {
+        return ScoreMode.COMPLETE;
+      }
+
+      @Override
+      public void setScorer(Scorable scorer) {
+        this.scorer = scorer;
+      }
+
+      @Override
+      protected void doSetNextReader(LeafReaderContext context) throws IOException {
+        this.docBase = context.docBase;
+        if (field != null) {
+          this.numericValues = DocValues.getNumeric(context.reader(), field);
+        } else if (ordinalMap != null) {
+          this.segmentValues = multiSortedDocValues.values[context.ord];
+          this.segmentOrdinalMap = ordinalMap.getGlobalOrds(context.ord);
+        } else {
+          this.segmentValues = collapseValues;
+        }
+      }
+
+      @Override
+      public void collect(int contextDoc) throws IOException {
+        final int globalDoc = contextDoc + docBase;
+        boolean hasKey = false;
+        int key = 0;
+        if (field != null) {
+          if (numericValues.advanceExact(contextDoc)) {
+            key = (int) numericValues.longValue();
+            hasKey = true;
+          }
+        } else if (ordinalMap != null) {
+          // Handle ordinalMapping case
+          if (segmentValues.advanceExact(contextDoc)) {
+            key = (int) segmentOrdinalMap.get(segmentValues.ordValue());
+            hasKey = true;
+          }
+        } else {
+          // Handle top Level FieldCache or Single Segment Case
+          if (segmentValues.advanceExact(globalDoc)) {
+            key = segmentValues.ordValue();
+            hasKey = true;
+          }
+        }
+
+        if (collectElevatedDocsWhenCollapsing && boosted != null) {
+          // Check to see if we have documents boosted by the QueryElevationComponent
+          if (hasKey) {
+            if (boosted.collectIfBoosted(key, globalDoc)) return;
+          } else {
+            if (boosted.collectInNullGroupIfBoosted(globalDoc)) return;
+          }
+        }
+
+        if (hasKey) {
+          buffer.add(key, scorer.score(), globalDoc);
+        } else if (nullPolicy == NullPolicy.COLLAPSE.getCode()) {
+          float score = scorer.score();
+          if (score > nullScore) {
+            nullScore = score;
+            nullDoc = globalDoc;
+          }
+        } else if (nullPolicy == NullPolicy.EXPAND.getCode()) {
+          nullDocScores.add(CollapseHeadBuffer.packByDoc(globalDoc, scorer.score()));
+        }
+      }
+
+      /** Merges the heads collected by another collector (over other segments) into this one */
+      void merge(HeadsCollector other) throws IOException {
+        other.buffer.forEachHead(buffer::add);
+        if (other.nullDoc > -1
+            && (nullDoc == -1
+                || other.nullScore > nullScore
+                || (other.nullScore == nullScore && other.nullDoc < nullDoc))) {
+          nullScore = other.nullScore;
+          nullDoc = other.nullDoc;
+        }
+        nullDocScores.addAll(other.nullDocScores);
+      }
+    }
+  }
+
   /**
    * Collapses on an integer field using the score to select the group head.
    *
@@ -2063,6 +2428,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
         boolean needsScores4Collapsing,
         boolean needsScores,
         int size,
+        long maxBufferBytes,
         IntIntHashMap boostDocs,
         SolrIndexSearcher searcher)
         throws IOException {
@@ -2086,6 +2452,17 @@ public class CollapsingQParserPlugin extends QParserPlugin {
             HINT_BLOCK);
       }
 
+      // compact collapsing trades some CPU for memory, and is only implemented for score selection
+      final boolean compactCollapse =
+          HINT_COMPACT.equals(hint)
+              && !blockCollapse
+              && GroupHeadSelectorType.SCORE.equals(groupHeadSelector.type);
+      if (HINT_COMPACT.equals(hint) && !compactCollapse) {
+        log.debug(
+            "Query specifies hint={} but other local params prevent the use of compact collapse",
+            HINT_COMPACT);
+      }
+
       FieldType collapseFieldType = searcher.getSchema().getField(collapseField).getType();
 
       if (collapseFieldType instanceof StrField) {
@@ -2153,6 +2530,18 @@ public class CollapsingQParserPlugin extends QParserPlugin {
           if (blockCollapse) {
             return new BlockOrdScoreCollector(collapseField, nullPolicy, boostDocs);
           }
+          if (compactCollapse) {
+            return new CompactScoreCollector(
+                maxDoc,
+                leafCount,
+                docValuesProducer,
+                null,
+                nullPolicy,
+                maxBufferBytes,
+                boostDocs,
+                searcher,
+                collectElevatedDocsWhenCollapsing);
+          }
           return new OrdScoreCollector(
               maxDoc,
               leafCount,
@@ -2166,6 +2555,18 @@ public class CollapsingQParserPlugin extends QParserPlugin {
           if (blockCollapse) {
             return new BlockIntScoreCollector(collapseField, nullPolicy, boostDocs);
           }
+          if (compactCollapse) {
+            return new CompactScoreCollector(
+                maxDoc,
+                leafCount,
+                null,
+                collapseField,
+                nullPolicy,
+                maxBufferBytes,
+                boostDocs,
+                searcher,
+                collectElevatedDocsWhenCollapsing);
+          }
 
           return new IntScoreCollector(
               maxDoc,
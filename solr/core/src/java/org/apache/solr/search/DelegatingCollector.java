@@ -19,6 +19,7 @@ package org.apache.solr.search;
 import java.io.IOException;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
 import org.apache.lucene.search.LeafCollector;
 import org.apache.lucene.search.Scorable;
 import org.apache.lucene.search.ScoreMode;
@@ -93,6 +94,20 @@ public class DelegatingCollector extends SimpleCollector {
     super.finish();
   }
 
+  /**
+   * Returns a {@link CollectorManager} that can perform the collection phase of this (outermost)
+   * post filter concurrently across index slices, or null if this collector must see every matching
+   * document itself, which is the default.
+   *
+   * <p>When a manager is returned it is used <em>instead</em> of this collector to collect the
+   * matching documents, and its <code>reduce</code> must leave this collector in the same state as
+   * if it had collected them all, such that {@link #complete()} can then pass the results on to the
+   * delegate as usual.
+   */
+  public CollectorManager<? extends Collector, ?> getParallelCollectorManager() {
+    return null;
+  }
+
   /** since 9.4 */
   public void complete() throws IOException {
     if (delegate instanceof DelegatingCollector) {
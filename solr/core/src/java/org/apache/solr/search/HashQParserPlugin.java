@@ -50,6 +50,20 @@ public class HashQParserPlugin extends QParserPlugin {
     return new HashQParser(query, localParams, params, request);
   }
 
+  /**
+   * Returns the hash of the values of some fields of the documents, by which the hash filter
+   * partitions them among the workers. The fields must have doc values.
+   */
+  public static LongValuesSource getHashCodeValuesSource(String[] fields) {
+    return new HashCodeValuesSource(fields);
+  }
+
+  /** Returns the worker, among <code>workers</code>, of a document with a hash */
+  public static int getWorker(long hashCode, int workers) {
+    // the hash filter compares the hash as a double
+    return (int) Math.floorMod(Math.abs((long) (double) hashCode), (long) workers);
+  }
+
   private static class HashQParser extends QParser {
 
     public HashQParser(
@@ -233,7 +247,7 @@ public class HashQParserPlugin extends QParserPlugin {
 
     @Override
     public boolean test(double hashAsDouble) {
-      return Math.abs((long) hashAsDouble) % workers == worker;
+      return getWorker((long) hashAsDouble, workers) == worker;
     }
 
     @Override
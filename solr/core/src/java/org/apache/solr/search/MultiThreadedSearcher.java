@@ -293,19 +293,31 @@ public class MultiThreadedSearcher {
     private final QueryCommand cmd;
     private final Collector[] firstCollectors;
     private final int firstTopDocsCollectorIndex;
+    // shares the minimum competitive score or sort value of the collectors of the slices, if any
+    private final CollectorManager<? extends TopDocsCollector<?>, ?> topDocsCollectorManager;
 
     public TopDocsCM(
-        int len, QueryCommand cmd, Collector[] firstCollectors, int firstTopDocsCollectorIndex) {
+        int len, QueryCommand cmd, Collector[] firstCollectors, int firstTopDocsCollectorIndex)
+        throws IOException {
       this.len = len;
       this.cmd = cmd;
       this.firstCollectors = firstCollectors;
       this.firstTopDocsCollectorIndex = firstTopDocsCollectorIndex;
+      // the slices only share it, like the shards do, if the request shares it with other shards,
+      // see ShardParams#DISTRIB_SHARED_MIN_SCORE
+      this.topDocsCollectorManager =
+          cmd.getSharedMinCompetitiveScore() != null
+              ? searcher.buildTopDocsCollectorManager(len, cmd)
+              : null;
     }
 
     @Override
     public Collector newCollector() throws IOException {
       @SuppressWarnings("rawtypes")
-      TopDocsCollector collector = searcher.buildTopDocsCollector(len, cmd);
+      TopDocsCollector collector =
+          topDocsCollectorManager != null
+              ? topDocsCollectorManager.newCollector()
+              : searcher.buildTopDocsCollector(len, cmd);
       if (firstCollectors[firstTopDocsCollectorIndex] == null) {
         firstCollectors[firstTopDocsCollectorIndex] = collector;
       }
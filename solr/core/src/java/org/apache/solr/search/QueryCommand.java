@@ -42,6 +42,7 @@ public class QueryCommand {
   private int minExactCount = Integer.MAX_VALUE;
   private CursorMark cursorMark;
   private boolean distribStatsDisabled;
+  private SharedMinCompetitiveScore sharedMinCompetitiveScore;
 
   public CursorMark getCursorMark() {
     return cursorMark;
@@ -241,6 +242,16 @@ public class QueryCommand {
     return distribStatsDisabled;
   }
 
+  public SharedMinCompetitiveScore getSharedMinCompetitiveScore() {
+    return sharedMinCompetitiveScore;
+  }
+
+  public QueryCommand setSharedMinCompetitiveScore(
+      SharedMinCompetitiveScore sharedMinCompetitiveScore) {
+    this.sharedMinCompetitiveScore = sharedMinCompetitiveScore;
+    return this;
+  }
+
   /** Calls {@link SolrIndexSearcher#search(QueryCommand)}. */
   public QueryResult search(SolrIndexSearcher searcher) throws IOException {
     return searcher.search(this);
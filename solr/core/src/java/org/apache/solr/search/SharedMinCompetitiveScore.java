@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FilterCollector;
+import org.apache.lucene.search.FilterLeafCollector;
+import org.apache.lucene.search.FilterScorable;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.Scorable;
+import org.apache.solr.common.SolrException;
+
+/**
+ * The minimum competitive score of the top documents of the shard requests of a distributed search,
+ * shared by the requests which are served by the same node.
+ *
+ * <p>The top N documents of the merged results are made of the top N documents of each shard, so a
+ * document scoring lower than the N-th best document of any shard can't be among them. Once the
+ * collector of the top documents of a shard request starts skipping non-competitive documents,
+ * i.e. once it collected more than its <code>minExactCount</code> hits, the score of its N-th best
+ * document is published here, and the best published score is used as the minimum competitive
+ * score of the other requests sharing it. Scorers such as block-max WAND can then skip the
+ * documents which could only make the top documents of their own shard.
+ *
+ * @see org.apache.solr.common.params.ShardParams#DISTRIB_SHARED_MIN_SCORE
+ */
+public final class SharedMinCompetitiveScore {
+
+  /** How many documents are collected between two reads of the shared score */
+  private static final int CHECK_INTERVAL = 0x3ff;
+
+  private static final Cache<Key, SharedMinCompetitiveScore> SHARED =
+      Caffeine.newBuilder().expireAfterAccess(Duration.ofMinutes(1)).maximumSize(10_000).build();
+
+  // the bits of a non-negative float, whose order is the order of the float values
+  private final AtomicInteger scoreBits = new AtomicInteger(Float.floatToIntBits(0f));
+
+  private SharedMinCompetitiveScore() {}
+
+  /**
+   * Returns the score shared by the shard requests of the distributed search <code>id</code>. The
+   * id is sent by the coordinator, and so could be sent by any client, which is why the score is
+   * also scoped by the collection and the user principal of the shard request: requests of other
+   * collections or users never share it.
+   *
+   * @param id the random UUID generated by the coordinator for the shard requests of a search
+   * @param collection the collection, or core if not in SolrCloud mode, of the shard request
+   * @param principal the name of the user principal of the shard request, if any
+   * @throws SolrException if the id isn't a random UUID
+   */
+  public static SharedMinCompetitiveScore get(String id, String collection, String principal) {
+    final UUID uuid;
+    try {
+      uuid = UUID.fromString(id);
+    } catch (IllegalArgumentException e) {
+      throw new SolrException(
+          SolrException.ErrorCode.BAD_REQUEST, "Invalid shared min score id: " + id, e);
+    }
+    if (uuid.version() != 4 || !uuid.toString().equals(id)) {
+      throw new SolrException(
+          SolrException.ErrorCode.BAD_REQUEST, "Invalid shared min score id: " + id);
+    }
+    return SHARED.get(new Key(uuid, collection, principal), k -> new SharedMinCompetitiveScore());
+  }
+
+  /** Returns the best N-th best score published so far */
+  public float getScore() {
+    return Float.intBitsToFloat(scoreBits.get());
+  }
+
+  /** Publishes the N-th best score of a shard request */
+  void accumulate(float score) {
+    if (score > 0) {
+      scoreBits.accumulateAndGet(Float.floatToIntBits(score), Math::max);
+    }
+  }
+
+  /**
+   * Wraps a collector of the top documents by score, so that its scorers skip the documents which
+   * aren't competitive with the shared score, and that its own minimum competitive score is shared.
+   */
+  Collector wrap(Collector collector) {
+    return new FilterCollector(collector) {
+      @Override
+      public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+        return new SharingLeafCollector(super.getLeafCollector(context));
+      }
+    };
+  }
+
+  private record Key(UUID id, String collection, String principal) {}
+
+  private final class SharingLeafCollector extends FilterLeafCollector {
+    private SharingScorable scorer;
+    private int collected;
+
+    SharingLeafCollector(LeafCollector in) {
+      super(in);
+    }
+
+    @Override
+    public void setScorer(Scorable scorer) throws IOException {
+      this.scorer = new SharingScorable(scorer);
+      super.setScorer(this.scorer);
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+      super.collect(doc);
+      if ((++collected & CHECK_INTERVAL) == 0) {
+        scorer.update();
+      }
+    }
+  }
+
+  private final class SharingScorable extends FilterScorable {
+    // the minimum competitive score set by the wrapped collector
+    private float localMinScore;
+    // the minimum competitive score set on the scorer, which must never decrease
+    private float minScore;
+
+    SharingScorable(Scorable in) {
+      super(in);
+    }
+
+    @Override
+    public void setMinCompetitiveScore(float minScore) throws IOException {
+      if (minScore > localMinScore) {
+        localMinScore = minScore;
+        // ties with the N-th best document of the shard aren't competitive in the shard, but may
+        // be in the merged results
+        accumulate(Math.nextDown(minScore));
+      }
+      update();
+    }
+
+    void update() throws IOException {
+      // only skip once the wrapped collector does, so that hits are still counted up to
+      // minExactCount
+      if (localMinScore <= 0) {
+        return;
+      }
+      final float score = Math.max(localMinScore, getScore());
+      if (score > minScore) {
+        minScore = score;
+        in.setMinCompetitiveScore(score);
+      }
+    }
+  }
+}
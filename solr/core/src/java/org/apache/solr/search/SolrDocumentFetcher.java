@@ -91,6 +91,8 @@ public class SolrDocumentFetcher {
 
   private final SolrCache<Integer, Document> documentCache;
 
+  private final StoredFieldsCache storedFieldsCache;
+
   private final Set<String> allStored;
 
   private final Set<String> dvsCanSubstituteStored;
@@ -126,6 +128,7 @@ public class SolrDocumentFetcher {
     this.nLeaves = template.nLeaves;
     this.enableLazyFieldLoading = template.enableLazyFieldLoading;
     this.documentCache = template.documentCache;
+    this.storedFieldsCache = template.storedFieldsCache;
     this.nonStoredDVsUsedAsStored = template.nonStoredDVsUsedAsStored;
     this.allNonStoredDVs = template.allNonStoredDVs;
     this.nonStoredDVsWithoutCopyTargets = template.nonStoredDVsWithoutCopyTargets;
@@ -155,8 +158,10 @@ public class SolrDocumentFetcher {
           solrConfig.documentCacheConfig == null
               ? null
               : solrConfig.documentCacheConfig.newInstance();
+      storedFieldsCache = searcher.getCore().getStoredFieldsCache();
     } else {
       documentCache = null;
+      storedFieldsCache = null;
     }
 
     // lazy loading makes no sense if we don't have a `documentCache`
@@ -309,10 +314,19 @@ public class SolrDocumentFetcher {
   private Document docNC(int i, Set<String> fields) throws IOException {
     final SolrDocumentStoredFieldVisitor visitor =
         new SolrDocumentStoredFieldVisitor(fields, searcher.getIndexReader(), i);
-    storedFields.document(i, visitor);
+    visitStoredFields(i, visitor);
     return visitor.getDocument();
   }
 
+  /** Visits the stored fields of a document, through the {@link StoredFieldsCache} if any. */
+  private void visitStoredFields(int docId, StoredFieldVisitor visitor) throws IOException {
+    if (storedFieldsCache != null) {
+      storedFieldsCache.document(searcher.getLeafContexts(), docId, storedFields, visitor);
+    } else {
+      storedFields.document(docId, visitor);
+    }
+  }
+
   /**
    * This is an optimized version for populating a SolrDocument that:
    *
@@ -345,6 +359,25 @@ public class SolrDocumentFetcher {
     return solrReturnFields.getFetchOptimizer(rfoSupplier).getSolrDoc(luceneDocId);
   }
 
+  /**
+   * Returns the {@link SolrDocument}s of several documents, like {@link #solrDoc(int,
+   * SolrReturnFields)} does for each of them.
+   *
+   * <p>The documents are read in the order of their ids rather than in the given order, so that
+   * their stored fields are read sequentially, and the values of their docValues fields are read
+   * one field at a time, so that the docValues iterators of each field only ever advance.
+   *
+   * @param luceneDocIds The Lucene doc IDs
+   * @param solrReturnFields the structure holding the fields to be returned, see {@link
+   *     #solrDoc(int, SolrReturnFields)}
+   * @return The SolrDocuments with values requested, in the order of <code>luceneDocIds</code>
+   */
+  public SolrDocument[] solrDocs(int[] luceneDocIds, SolrReturnFields solrReturnFields) {
+    Supplier<RetrieveFieldsOptimizer> rfoSupplier =
+        () -> new RetrieveFieldsOptimizer(solrReturnFields);
+    return solrReturnFields.getFetchOptimizer(rfoSupplier).getSolrDocs(luceneDocIds);
+  }
+
   /**
    * {@link StoredFieldVisitor} which loads the specified fields eagerly (or all if null). If {@link
    * #enableLazyFieldLoading} then the rest get special lazy field entries. Designated "large"
@@ -409,7 +442,7 @@ public class SolrDocumentFetcher {
       Document cached = doc(docId);
       visitFromCached(cached, visitor);
     } else {
-      storedFields.document(docId, visitor);
+      visitStoredFields(docId, visitor);
     }
   }
 
@@ -902,22 +935,7 @@ public class SolrDocumentFetcher {
 
       SolrDocument sdoc = null;
       try {
-        if (returnStoredFields()) {
-          Document doc = doc(luceneDocId, getStoredFields());
-          // make sure to use the schema from the searcher and not the request (cross-core)
-          sdoc =
-              DocsStreamer.convertLuceneDocToSolrDoc(doc, searcher.getSchema(), getReturnFields());
-          if (returnDVFields() == false) {
-            solrReturnFields.setFieldSources(SolrReturnFields.FIELD_SOURCES.ALL_FROM_STORED);
-            return sdoc;
-          } else {
-            solrReturnFields.setFieldSources(SolrReturnFields.FIELD_SOURCES.MIXED_SOURCES);
-          }
-        } else {
-          // no need to get stored fields of the document, see SOLR-5968
-          sdoc = new SolrDocument();
-          solrReturnFields.setFieldSources(SolrReturnFields.FIELD_SOURCES.ALL_FROM_DV);
-        }
+        sdoc = getStoredSolrDoc(luceneDocId);
 
         // decorate the document with non-stored docValues fields
         if (returnDVFields()) {
@@ -931,5 +949,73 @@ public class SolrDocumentFetcher {
       }
       return sdoc;
     }
+
+    private SolrDocument[] getSolrDocs(int[] luceneDocIds) {
+      // the positions of the ids, sorted by id
+      final long[] sortedIds = new long[luceneDocIds.length];
+      for (int i = 0; i < luceneDocIds.length; i++) {
+        sortedIds[i] = ((long) luceneDocIds[i] << 32) | i;
+      }
+      Arrays.sort(sortedIds);
+
+      final SolrDocument[] sdocs = new SolrDocument[luceneDocIds.length];
+      int luceneDocId = -1;
+      try {
+        for (long sortedId : sortedIds) {
+          luceneDocId = (int) (sortedId >>> 32);
+          sdocs[(int) sortedId] = getStoredSolrDoc(luceneDocId);
+        }
+
+        // decorate the documents with non-stored docValues fields, column by column
+        if (returnDVFields()) {
+          final List<LeafReaderContext> leafContexts = searcher.getLeafContexts();
+          for (String fieldName : getDvFields()) {
+            DocValuesIteratorCache.FieldDocValuesSupplier e = reuseDvIters.getSupplier(fieldName);
+            if (e == null) {
+              continue;
+            }
+            int subIndex = 0;
+            for (long sortedId : sortedIds) {
+              luceneDocId = (int) (sortedId >>> 32);
+              while (subIndex + 1 < leafContexts.size()
+                  && leafContexts.get(subIndex + 1).docBase <= luceneDocId) {
+                subIndex++;
+              }
+              final LeafReaderContext leafContext = leafContexts.get(subIndex);
+              Object fieldValue =
+                  decodeDVField(
+                      luceneDocId - leafContext.docBase, leafContext.reader(), subIndex, e);
+              if (fieldValue != null) {
+                sdocs[(int) sortedId].setField(fieldName, fieldValue);
+              }
+            }
+          }
+        }
+      } catch (IOException e) {
+        throw new SolrException(
+            SolrException.ErrorCode.SERVER_ERROR,
+            "Error reading document with docId " + luceneDocId,
+            e);
+      }
+      return sdocs;
+    }
+
+    /** Returns a document with the stored fields to return, if any. */
+    private SolrDocument getStoredSolrDoc(int luceneDocId) throws IOException {
+      if (returnStoredFields()) {
+        Document doc = doc(luceneDocId, getStoredFields());
+        if (returnDVFields() == false) {
+          solrReturnFields.setFieldSources(SolrReturnFields.FIELD_SOURCES.ALL_FROM_STORED);
+        } else {
+          solrReturnFields.setFieldSources(SolrReturnFields.FIELD_SOURCES.MIXED_SOURCES);
+        }
+        // make sure to use the schema from the searcher and not the request (cross-core)
+        return DocsStreamer.convertLuceneDocToSolrDoc(doc, searcher.getSchema(), getReturnFields());
+      } else {
+        // no need to get stored fields of the document, see SOLR-5968
+        solrReturnFields.setFieldSources(SolrReturnFields.FIELD_SOURCES.ALL_FROM_DV);
+        return new SolrDocument();
+      }
+    }
   }
 }
@@ -60,6 +60,7 @@ import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.CollectionStatistics;
 import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.FieldDoc;
@@ -81,8 +82,10 @@ import org.apache.lucene.search.TimeLimitingCollector;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopDocsCollector;
 import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldCollectorManager;
 import org.apache.lucene.search.TopFieldDocs;
 import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.TopScoreDocCollectorManager;
 import org.apache.lucene.search.TotalHitCountCollector;
 import org.apache.lucene.search.TotalHits;
 import org.apache.lucene.search.TotalHits.Relation;
@@ -117,6 +120,7 @@ import org.apache.solr.response.SolrQueryResponse;
 import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.search.facet.UnInvertedField;
+import org.apache.solr.search.join.CrossCollectionJoinQuery;
 import org.apache.solr.search.stats.StatsCache;
 import org.apache.solr.search.stats.StatsSource;
 import org.apache.solr.uninverting.UninvertingReader;
@@ -316,7 +320,16 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     }
 
     try {
-      super.search(query, collector);
+      final CollectorManager<? extends Collector, ?> parallelCollectorManager =
+          (collector == postFilter && cmd.getMultiThreaded())
+              ? postFilter.getParallelCollectorManager()
+              : null;
+      if (parallelCollectorManager != null) {
+        // the post filter collects concurrently, and only passes its results on in complete()
+        super.search(query, parallelCollectorManager);
+      } else {
+        super.search(query, collector);
+      }
     } catch (TimeLimitingCollector.TimeExceededException
         | ExitableDirectoryReader.ExitingReaderException
         | CancellableCollector.QueryCancelledException x) {
@@ -715,6 +728,18 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
           });
     }
 
+    final CacheConfig joinIndexCacheConfig =
+        solrConfig.userCacheConfigs.get(TopLevelJoinIndex.CACHE_NAME);
+    if (joinIndexCacheConfig != null && joinIndexCacheConfig.getRegenerator() == null) {
+      joinIndexCacheConfig.setRegenerator(TopLevelJoinIndex.REGENERATOR);
+    }
+
+    final CacheConfig joinKeyCacheConfig =
+        solrConfig.userCacheConfigs.get(CrossCollectionJoinQuery.KEY_CACHE_NAME);
+    if (joinKeyCacheConfig != null && joinKeyCacheConfig.getRegenerator() == null) {
+      joinKeyCacheConfig.setRegenerator(CrossCollectionJoinQuery.KEY_CACHE_REGENERATOR);
+    }
+
     if (solrConfig.queryResultCacheConfig != null
         && solrConfig.queryResultCacheConfig.getRegenerator() == null) {
       final int queryResultWindowSize = solrConfig.queryResultWindowSize;
@@ -1564,6 +1589,16 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     return sortFields.length > 1 || sortFields[0].getType() != Type.SCORE;
   }
 
+  private static boolean isSortedByScore(final Sort sort) {
+    if (sort == null) {
+      return true;
+    }
+    final SortField[] sortFields = sort.getSort();
+    return sortFields.length == 1
+        && sortFields[0].getType() == Type.SCORE
+        && !sortFields[0].getReverse();
+  }
+
   private boolean useFilterCacheForDynamicScoreQuery(boolean needSort, QueryCommand cmd) {
     if (!useFilterForSortedQuery) {
       // under no circumstance use filterCache
@@ -1655,7 +1690,9 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       // If we are going to generate the result, bump up to the
       // next resultWindowSize for better caching.
 
-      if ((flags & NO_SET_QCACHE) == 0) {
+      // the top documents collected with a shared minimum competitive score may miss some of the
+      // top documents of this index
+      if ((flags & NO_SET_QCACHE) == 0 && cmd.getSharedMinCompetitiveScore() == null) {
         // handle 0 special case as well as avoid idiv in the common case.
         if (maxDocRequested < queryResultWindowSize) {
           supersetMaxDoc = queryResultWindowSize;
@@ -1870,6 +1907,33 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     }
   }
 
+  /**
+   * Helper method for creating the {@link CollectorManager} of the {@link TopDocsCollector}s of a
+   * search over concurrent slices of the index. Unlike the collectors of {@link
+   * #buildTopDocsCollector}, the collectors of a manager share the minimum competitive score or
+   * sort value of their top documents, so that each slice skips the documents which aren't
+   * competitive in the others. Only used for the shard requests of searches sharing their minimum
+   * competitive score, see {@link QueryCommand#getSharedMinCompetitiveScore()}.
+   *
+   * @return null if the top documents are collected by a {@link RankQuery}
+   */
+  CollectorManager<? extends TopDocsCollector<?>, ?> buildTopDocsCollectorManager(
+      int len, QueryCommand cmd) throws IOException {
+    if (cmd.getQuery() instanceof RankQuery) {
+      return null;
+    }
+    int minNumFound = cmd.getMinExactCount();
+    if (null == cmd.getSort()) {
+      return new TopScoreDocCollectorManager(len, null, minNumFound);
+    } else {
+      final Sort weightedSort = weightSort(cmd.getSort());
+      final CursorMark cursor = cmd.getCursorMark();
+
+      final FieldDoc searchAfter = (null != cursor ? cursor.getSearchAfterFieldDoc() : null);
+      return new TopFieldCollectorManager(weightedSort, len, searchAfter, minNumFound);
+    }
+  }
+
   private void getDocListNC(QueryResult qr, QueryCommand cmd) throws IOException {
     final int len = cmd.getSupersetMaxDoc();
     int last = len;
@@ -1956,6 +2020,11 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
           maxScoreCollector = new MaxScoreCollector();
           collector = MultiCollector.wrap(topCollector, maxScoreCollector);
         }
+        if (cmd.getSharedMinCompetitiveScore() != null
+            && isSortedByScore(cmd.getSort())
+            && !(cmd.getQuery() instanceof RankQuery)) {
+          collector = cmd.getSharedMinCompetitiveScore().wrap(collector);
+        }
         scoreModeUsed =
             buildAndRunCollectorChain(qr, query, collector, cmd, pf.postFilter).scoreMode();
 
@@ -2503,6 +2572,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     for (SolrCache<?, ?> solrCache : cacheList) {
       solrCache.initialSearcher(this);
     }
+    statsCache.warm(this);
   }
 
   /** Warm this searcher based on an old one (primarily for auto-cache warming). */
@@ -2545,6 +2615,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
         log.debug("autowarming result for [{}]\n\t{}", this, cacheList[i]);
       }
     }
+    statsCache.warm(this);
     warmupTime =
         TimeUnit.MILLISECONDS.convert(System.nanoTime() - warmingStartTime, TimeUnit.NANOSECONDS);
   }
@@ -0,0 +1,599 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.StoredFieldVisitor;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.store.ByteBuffersDataInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.solr.core.SolrInfoBean;
+import org.apache.solr.metrics.MetricsMap;
+import org.apache.solr.metrics.SolrMetricsContext;
+
+/**
+ * A cache of the stored fields of documents, shared by the searchers of a core.
+ *
+ * <p>Unlike the <code>documentCache</code>, which holds the {@link org.apache.lucene.document
+ * Document} objects of the documents read by a single searcher, this cache holds the decompressed
+ * values of the stored fields of each document in a compact binary encoding, off-heap. Entries are
+ * keyed by the core of their segment and their id within it, so they remain valid for the segments
+ * which are unchanged when a new searcher is opened, and are evicted once the segment is closed, or
+ * on a least recently used basis once the configured amount of memory is used. It is configured in
+ * the <code>query</code> section of <code>solrconfig.xml</code>:
+ *
+ * <pre>
+ * &lt;storedFieldsCache maxRamMB="256" maxEntrySizeKB="512"/&gt;
+ * </pre>
+ *
+ * <p>The entries are stored in pages of {@value #PAGE_SIZE} bytes, sliced from direct buffers of
+ * {@value #SLAB_SIZE} bytes which are allocated as needed up to <code>maxRamMB</code>, and reused:
+ * the pages of an entry are returned to the pool once it is evicted and no longer read. Note that
+ * these buffers count against the <code>-XX:MaxDirectMemorySize</code> of the JVM.
+ *
+ * <p>A document is only cached when it is read by a visitor which needs all its fields, so that
+ * visitors skipping fields, e.g. with lazy field loading, still skip them on a miss. A cached
+ * document can serve any visitor. Documents whose encoding is larger than <code>maxEntrySizeKB
+ * </code> aren't cached.
+ */
+public class StoredFieldsCache implements SolrInfoBean {
+
+  /** Name of the cache in the <code>query</code> section of <code>solrconfig.xml</code> */
+  public static final String NAME = "storedFieldsCache";
+
+  public static final String MAX_RAM_MB_PARAM = SolrCache.MAX_RAM_MB_PARAM;
+  public static final String MAX_ENTRY_SIZE_KB_PARAM = "maxEntrySizeKB";
+
+  /** Default for {@link #MAX_ENTRY_SIZE_KB_PARAM} */
+  public static final int DEFAULT_MAX_ENTRY_SIZE_KB = 512;
+
+  /** Size of the pages of the entries, a power of two as {@link ByteBuffersDataInput} requires */
+  static final int PAGE_SIZE = 1024;
+
+  /** Size of the direct buffers the pages are sliced from */
+  static final int SLAB_SIZE = 1024 * PAGE_SIZE;
+
+  // estimated heap usage of an entry, besides its pages
+  private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+  private static final byte STRING = 0;
+  private static final byte BINARY = 1;
+  private static final byte INT = 2;
+  private static final byte LONG = 3;
+  private static final byte FLOAT = 4;
+  private static final byte DOUBLE = 5;
+
+  private final Cache<Key, Entry> cache;
+  private final long maxRamBytes;
+  private final int maxEntryBytes;
+  private final PagePool pagePool;
+
+  // the ids of the cached documents of each segment core, which are evicted once it is closed
+  private final Map<IndexReader.CacheKey, Set<Integer>> segments = new ConcurrentHashMap<>();
+
+  private final LongAdder inserts = new LongAdder();
+  private final LongAdder hitBytes = new LongAdder();
+  private final LongAdder insertBytes = new LongAdder();
+  private final LongAdder oversized = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+
+  private SolrMetricsContext solrMetricsContext;
+
+  public StoredFieldsCache(long maxRamBytes, int maxEntryBytes) {
+    this.maxRamBytes = maxRamBytes;
+    this.maxEntryBytes = maxEntryBytes;
+    this.pagePool = new PagePool((int) Math.max(1, (maxRamBytes + SLAB_SIZE - 1) / SLAB_SIZE));
+    this.cache =
+        Caffeine.newBuilder()
+            .maximumWeight(maxRamBytes)
+            .weigher((Key k, Entry v) -> v.pages.length * PAGE_SIZE + ENTRY_OVERHEAD_BYTES)
+            .removalListener(
+                (Key k, Entry v, RemovalCause cause) -> {
+                  if (cause != RemovalCause.REPLACED) {
+                    final Set<Integer> docIds = segments.get(k.coreKey());
+                    if (docIds != null) {
+                      docIds.remove(k.docId());
+                    }
+                  }
+                  v.release();
+                })
+            .executor(Runnable::run)
+            .recordStats()
+            .build();
+  }
+
+  /**
+   * Visits the stored fields of a document, reading them from this cache, or from <code>
+   * storedFields</code> and caching them.
+   *
+   * @param leaves the leaves of the reader of <code>storedFields</code>
+   * @param docId the id of the document in the reader of <code>storedFields</code>
+   */
+  public void document(
+      List<LeafReaderContext> leaves,
+      int docId,
+      StoredFields storedFields,
+      StoredFieldVisitor visitor)
+      throws IOException {
+    final LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+    final IndexReader.CacheHelper cacheHelper = leaf.reader().getCoreCacheHelper();
+    if (cacheHelper == null) {
+      storedFields.document(docId, visitor);
+      return;
+    }
+    final FieldInfos fieldInfos = leaf.reader().getFieldInfos();
+    final Key key = new Key(cacheHelper.getKey(), docId - leaf.docBase);
+
+    final Entry cached = cache.getIfPresent(key);
+    // an entry evicted meanwhile may be released already
+    if (cached != null && cached.acquire()) {
+      try {
+        hitBytes.add(cached.length);
+        visit(cached.dataInput(), fieldInfos, visitor);
+      } finally {
+        cached.release();
+      }
+      return;
+    }
+
+    final EncodingVisitor encodingVisitor = new EncodingVisitor(visitor, maxEntryBytes);
+    storedFields.document(docId, encodingVisitor);
+    if (encodingVisitor.oversized) {
+      oversized.increment();
+    } else if (encodingVisitor.complete) {
+      put(leaf.reader(), cacheHelper, key, encodingVisitor.out);
+    }
+  }
+
+  private void put(
+      IndexReader reader, IndexReader.CacheHelper cacheHelper, Key key, ByteBuffersDataOutput out)
+      throws IOException {
+    // the segment can't be closed while its reader is referenced, so its closed listener either
+    // ran before, and the reader is closed already, or runs after the entry is inserted and evicts
+    // it, rather than leaving it, and its set of ids, behind
+    if (!reader.tryIncRef()) {
+      return;
+    }
+    try {
+      insert(cacheHelper, key, out);
+    } finally {
+      reader.decRef();
+    }
+  }
+
+  private void insert(IndexReader.CacheHelper cacheHelper, Key key, ByteBuffersDataOutput out) {
+    final int length = (int) out.size();
+    final int numPages = Math.max(1, (length + PAGE_SIZE - 1) / PAGE_SIZE);
+    ByteBuffer[] pages = pagePool.acquire(numPages);
+    if (pages == null) {
+      // evictions may be pending
+      cache.cleanUp();
+      pages = pagePool.acquire(numPages);
+      if (pages == null) {
+        rejected.increment();
+        return;
+      }
+    }
+    int page = 0;
+    for (ByteBuffer buffer : out.toBufferList()) {
+      while (buffer.hasRemaining()) {
+        if (!pages[page].hasRemaining()) {
+          page++;
+        }
+        final int n = Math.min(buffer.remaining(), pages[page].remaining());
+        pages[page].put(buffer.slice(buffer.position(), n));
+        buffer.position(buffer.position() + n);
+      }
+    }
+    final Entry entry = new Entry(pages, length);
+
+    final Set<Integer> docIds =
+        segments.computeIfAbsent(
+            key.coreKey(),
+            coreKey -> {
+              cacheHelper.addClosedListener(this::evictSegment);
+              return ConcurrentHashMap.newKeySet();
+            });
+    docIds.add(key.docId());
+    if (cache.asMap().putIfAbsent(key, entry) != null) {
+      // cached by a concurrent read of the same document
+      entry.release();
+      return;
+    }
+    if (segments.get(key.coreKey()) != docIds) {
+      // the segment was evicted meanwhile, possibly before the entry was inserted, e.g. if the
+      // reader is a wrapper whose references don't keep the segment open
+      cache.asMap().remove(key, entry);
+      return;
+    }
+    inserts.increment();
+    insertBytes.add(length);
+  }
+
+  private void evictSegment(IndexReader.CacheKey coreKey) {
+    final Set<Integer> docIds = segments.remove(coreKey);
+    if (docIds != null) {
+      for (Integer docId : docIds) {
+        cache.invalidate(new Key(coreKey, docId));
+      }
+    }
+  }
+
+  /** Replays the encoded stored fields of a document to a visitor */
+  private static void visit(
+      ByteBuffersDataInput in, FieldInfos fieldInfos, StoredFieldVisitor visitor)
+      throws IOException {
+    while (in.position() < in.size()) {
+      final FieldInfo fieldInfo = fieldInfos.fieldInfo(in.readVInt());
+      final byte type = in.readByte();
+      final StoredFieldVisitor.Status status = visitor.needsField(fieldInfo);
+      if (status == StoredFieldVisitor.Status.STOP) {
+        return;
+      }
+      final boolean skip = status == StoredFieldVisitor.Status.NO;
+      switch (type) {
+        case STRING:
+          {
+            final byte[] bytes = new byte[in.readVInt()];
+            in.readBytes(bytes, 0, bytes.length);
+            if (!skip) {
+              visitor.stringField(fieldInfo, new String(bytes, StandardCharsets.UTF_8));
+            }
+            break;
+          }
+        case BINARY:
+          {
+            final byte[] bytes = new byte[in.readVInt()];
+            in.readBytes(bytes, 0, bytes.length);
+            if (!skip) {
+              visitor.binaryField(fieldInfo, bytes);
+            }
+            break;
+          }
+        case INT:
+          {
+            final int value = in.readZInt();
+            if (!skip) {
+              visitor.intField(fieldInfo, value);
+            }
+            break;
+          }
+        case LONG:
+          {
+            final long value = in.readZLong();
+            if (!skip) {
+              visitor.longField(fieldInfo, value);
+            }
+            break;
+          }
+        case FLOAT:
+          {
+            final float value = Float.intBitsToFloat(in.readInt());
+            if (!skip) {
+              visitor.floatField(fieldInfo, value);
+            }
+            break;
+          }
+        case DOUBLE:
+          {
+            final double value = Double.longBitsToDouble(in.readLong());
+            if (!skip) {
+              visitor.doubleField(fieldInfo, value);
+            }
+            break;
+          }
+        default:
+          throw new IllegalStateException("Unknown stored field type: " + type);
+      }
+    }
+  }
+
+  /**
+   * Forwards the stored fields of a document to a visitor, and encodes them, each prefixed by its
+   * number and type. The encoding is only complete if the visitor needs all the fields, and is
+   * dropped once it is larger than the maximum size of an entry.
+   */
+  private static class EncodingVisitor extends StoredFieldVisitor {
+    private final StoredFieldVisitor in;
+    private final int maxBytes;
+    private final ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+    private boolean complete = true;
+    private boolean oversized;
+
+    EncodingVisitor(StoredFieldVisitor in, int maxBytes) {
+      this.in = in;
+      this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public Status needsField(FieldInfo fieldInfo) throws IOException {
+      final Status status = in.needsField(fieldInfo);
+      if (status != Status.YES) {
+        complete = false;
+      }
+      return status;
+    }
+
+    private boolean encoding() {
+      return complete && !oversized;
+    }
+
+    private void writeHeader(FieldInfo fieldInfo, byte type) throws IOException {
+      out.writeVInt(fieldInfo.number);
+      out.writeByte(type);
+    }
+
+    private void checkSize() {
+      if (out.size() > maxBytes) {
+        oversized = true;
+        out.reset();
+      }
+    }
+
+    @Override
+    public void stringField(FieldInfo fieldInfo, String value) throws IOException {
+      if (encoding()) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeHeader(fieldInfo, STRING);
+        out.writeVInt(bytes.length);
+        out.writeBytes(bytes);
+        checkSize();
+      }
+      in.stringField(fieldInfo, value);
+    }
+
+    @Override
+    public void binaryField(FieldInfo fieldInfo, byte[] value) throws IOException {
+      if (encoding()) {
+        writeHeader(fieldInfo, BINARY);
+        out.writeVInt(value.length);
+        out.writeBytes(value);
+        checkSize();
+      }
+      in.binaryField(fieldInfo, value);
+    }
+
+    @Override
+    public void intField(FieldInfo fieldInfo, int value) throws IOException {
+      if (encoding()) {
+        writeHeader(fieldInfo, INT);
+        out.writeZInt(value);
+        checkSize();
+      }
+      in.intField(fieldInfo, value);
+    }
+
+    @Override
+    public void longField(FieldInfo fieldInfo, long value) throws IOException {
+      if (encoding()) {
+        writeHeader(fieldInfo, LONG);
+        out.writeZLong(value);
+        checkSize();
+      }
+      in.longField(fieldInfo, value);
+    }
+
+    @Override
+    public void floatField(FieldInfo fieldInfo, float value) throws IOException {
+      if (encoding()) {
+        writeHeader(fieldInfo, FLOAT);
+        out.writeInt(Float.floatToIntBits(value));
+        checkSize();
+      }
+      in.floatField(fieldInfo, value);
+    }
+
+    @Override
+    public void doubleField(FieldInfo fieldInfo, double value) throws IOException {
+      if (encoding()) {
+        writeHeader(fieldInfo, DOUBLE);
+        out.writeLong(Double.doubleToLongBits(value));
+        checkSize();
+      }
+      in.doubleField(fieldInfo, value);
+    }
+  }
+
+  /** The encoded stored fields of a document, in pages of the pool */
+  private final class Entry {
+    private final ByteBuffer[] pages;
+    private final int length;
+    // one reference is held by the cache, and one by each read of the entry
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    Entry(ByteBuffer[] pages, int length) {
+      this.pages = pages;
+      this.length = length;
+    }
+
+    /** Adds a reference to this entry, unless its pages were released already */
+    boolean acquire() {
+      int count;
+      do {
+        count = refCount.get();
+        if (count == 0) {
+          return false;
+        }
+      } while (!refCount.compareAndSet(count, count + 1));
+      return true;
+    }
+
+    /** Removes a reference to this entry, returning its pages to the pool once there are none */
+    void release() {
+      if (refCount.decrementAndGet() == 0) {
+        pagePool.release(pages);
+      }
+    }
+
+    ByteBuffersDataInput dataInput() {
+      final List<ByteBuffer> buffers = new ArrayList<>(pages.length);
+      for (int i = 0; i < pages.length; i++) {
+        final int pageLength = i < pages.length - 1 ? PAGE_SIZE : length - i * PAGE_SIZE;
+        buffers.add(pages[i].slice(0, pageLength).asReadOnlyBuffer());
+      }
+      return new ByteBuffersDataInput(buffers);
+    }
+  }
+
+  /**
+   * The free pages of the entries, sliced from slabs which are allocated on demand, up to a maximum
+   * number of slabs, and never freed.
+   */
+  private static final class PagePool {
+    private final int maxSlabs;
+    private final AtomicInteger slabs = new AtomicInteger();
+    private final AtomicInteger usedPages = new AtomicInteger();
+    private final Queue<ByteBuffer> freePages = new ConcurrentLinkedQueue<>();
+
+    PagePool(int maxSlabs) {
+      this.maxSlabs = maxSlabs;
+    }
+
+    /** Returns the given number of pages, or null if there aren't that many left */
+    ByteBuffer[] acquire(int numPages) {
+      final ByteBuffer[] pages = new ByteBuffer[numPages];
+      for (int i = 0; i < numPages; i++) {
+        ByteBuffer page = freePages.poll();
+        if (page == null) {
+          page = allocateSlab();
+        }
+        if (page == null) {
+          release(Arrays.copyOf(pages, i));
+          return null;
+        }
+        pages[i] = page;
+        usedPages.incrementAndGet();
+      }
+      return pages;
+    }
+
+    /** Allocates a new slab, returning its first page and adding the others to the free ones */
+    private ByteBuffer allocateSlab() {
+      if (slabs.incrementAndGet() > maxSlabs) {
+        slabs.decrementAndGet();
+        return null;
+      }
+      final ByteBuffer slab = ByteBuffer.allocateDirect(SLAB_SIZE);
+      for (int offset = PAGE_SIZE; offset < SLAB_SIZE; offset += PAGE_SIZE) {
+        freePages.add(slab.slice(offset, PAGE_SIZE));
+      }
+      return slab.slice(0, PAGE_SIZE);
+    }
+
+    void release(ByteBuffer[] pages) {
+      for (ByteBuffer page : pages) {
+        page.clear();
+        freePages.add(page);
+        usedPages.decrementAndGet();
+      }
+    }
+  }
+
+  /** The id of a document within the core of its segment */
+  private record Key(IndexReader.CacheKey coreKey, int docId) {}
+
+  @Override
+  public String getName() {
+    return this.getClass().getName();
+  }
+
+  @Override
+  public String getDescription() {
+    return "Off-heap cache of the stored fields of documents, by segment";
+  }
+
+  @Override
+  public Category getCategory() {
+    return Category.CACHE;
+  }
+
+  @Override
+  public SolrMetricsContext getSolrMetricsContext() {
+    return solrMetricsContext;
+  }
+
+  @Override
+  public void initializeMetrics(SolrMetricsContext parentContext, String scope) {
+    this.solrMetricsContext = parentContext;
+    MetricsMap metricsMap =
+        new MetricsMap(
+            map -> {
+              CacheStats stats = cache.stats();
+              long hits = stats.hitCount();
+              long lookups = stats.requestCount();
+              map.put(SolrCache.LOOKUPS_PARAM, lookups);
+              map.put(SolrCache.HITS_PARAM, hits);
+              map.put(SolrCache.HIT_RATIO_PARAM, lookups == 0 ? 1.0 : (double) hits / lookups);
+              map.put(SolrCache.INSERTS_PARAM, inserts.sum());
+              map.put(SolrCache.EVICTIONS_PARAM, stats.evictionCount());
+              map.put(SolrCache.SIZE_PARAM, cache.estimatedSize());
+              map.put("oversized", oversized.sum());
+              map.put("rejected", rejected.sum());
+              map.put(
+                  SolrCache.RAM_BYTES_USED_PARAM,
+                  cache.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L));
+              map.put(MAX_RAM_MB_PARAM, maxRamBytes / (1024L * 1024L));
+              map.put("allocatedBytes", (long) pagePool.slabs.get() * SLAB_SIZE);
+              map.put("usedBytes", (long) pagePool.usedPages.get() * PAGE_SIZE);
+              map.put("hitBytes", hitBytes.sum());
+              map.put("insertBytes", insertBytes.sum());
+              map.put("bytesPerHit", hits == 0 ? 0 : hitBytes.sum() / hits);
+            });
+    solrMetricsContext.gauge(metricsMap, true, NAME, Category.CACHE.toString(), scope);
+  }
+
+  // for unit tests only
+  @VisibleForTesting
+  long size() {
+    cache.cleanUp();
+    return cache.estimatedSize();
+  }
+
+  // for unit tests only
+  @VisibleForTesting
+  int usedPages() {
+    return pagePool.usedPages.get();
+  }
+
+  /** Evicts all the entries of this cache */
+  public void clear() {
+    cache.invalidateAll();
+    cache.cleanUp();
+  }
+}
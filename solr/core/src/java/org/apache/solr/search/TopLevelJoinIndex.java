@@ -0,0 +1,356 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.TimeUnit;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.LongBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.packed.PackedInts;
+import org.apache.lucene.util.packed.PagedMutable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A searcher scoped index used by {@link TopLevelJoinQuery} to map the top-level ordinals of the
+ * "from" field to documents of the "to" searcher, independent of the "from" query.
+ *
+ * <p>The index consists of a packed map from each "from" ordinal to the "to" ordinal of the same
+ * term (omitted for self-joins, where the two are identical) and, when it fits in a single array, a
+ * "to" ordinal to live "to" document postings list. With both available a join is resolved by
+ * OR-ing the postings of the matching ordinals into a bitset, instead of looking up every matching
+ * term and checking the ordinals of every candidate "to" document.
+ *
+ * <p>Instances are only built and cached when a user cache named {@link #CACHE_NAME} is configured,
+ * which is expected to be size or <code>maxRamMB</code> bounded and provides the usual cache
+ * metrics. Same-core entries are rebuilt when the cache is autowarmed; cross-core entries are
+ * rebuilt lazily once the "from" core opens a new searcher.
+ *
+ * @lucene.internal
+ */
+public final class TopLevelJoinIndex implements Accountable {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final long BASE_RAM_BYTES_USED =
+      RamUsageEstimator.shallowSizeOfInstance(TopLevelJoinIndex.class);
+
+  /** Name of the user cache holding join indexes */
+  public static final String CACHE_NAME = "joinIndexCache";
+
+  private static final int ORD_MAP_PAGE_SIZE = 1 << 16;
+
+  /** Key of a join index in the "to" searcher's {@link #CACHE_NAME} cache */
+  record Key(String fromCore, String fromField, String toField) {}
+
+  /**
+   * Regenerates same-core join indexes for a new searcher. Cross-core entries are dropped, since
+   * their "from" core may not have opened a new searcher.
+   */
+  static final CacheRegenerator REGENERATOR =
+      new CacheRegenerator() {
+        @Override
+        public <K, V> boolean regenerateItem(
+            SolrIndexSearcher newSearcher,
+            SolrCache<K, V> newCache,
+            SolrCache<K, V> oldCache,
+            K oldKey,
+            V oldVal)
+            throws IOException {
+          if (oldKey instanceof Key key && key.fromCore() == null) {
+            getJoinIndex(newSearcher, key.fromField(), newSearcher, key.toField());
+          }
+          return true;
+        }
+      };
+
+  private final IndexReader.CacheKey fromReaderKey;
+  private final long fromValueCount;
+  private final long toValueCount;
+  // to ordinal + 1 for each from ordinal (0 when the term is missing); null for self-joins
+  private final PagedMutable fromToOrds;
+  // CSR encoded "to" ordinal to doc postings; null if they would not fit in a single array
+  private final int[] toOrdStarts;
+  private final int[] toDocs;
+
+  private TopLevelJoinIndex(
+      IndexReader.CacheKey fromReaderKey,
+      long fromValueCount,
+      long toValueCount,
+      PagedMutable fromToOrds,
+      int[] toOrdStarts,
+      int[] toDocs) {
+    this.fromReaderKey = fromReaderKey;
+    this.fromValueCount = fromValueCount;
+    this.toValueCount = toValueCount;
+    this.fromToOrds = fromToOrds;
+    this.toOrdStarts = toOrdStarts;
+    this.toDocs = toDocs;
+  }
+
+  /**
+   * Returns the join index for the given fields, building and caching it if necessary, or null if
+   * the "to" searcher has no {@link #CACHE_NAME} cache configured.
+   */
+  @SuppressWarnings("unchecked")
+  public static TopLevelJoinIndex getJoinIndex(
+      SolrIndexSearcher fromSearcher,
+      String fromField,
+      SolrIndexSearcher toSearcher,
+      String toField)
+      throws IOException {
+    final SolrCache<Key, TopLevelJoinIndex> cache = toSearcher.getCache(CACHE_NAME);
+    if (cache == null) {
+      return null;
+    }
+
+    final boolean sameCore = fromSearcher == toSearcher;
+    final IndexReader.CacheKey fromReaderKey =
+        sameCore ? null : readerCacheKey(fromSearcher.getIndexReader());
+    if (!sameCore && fromReaderKey == null) {
+      return null; // no way to tell when the "from" side changes
+    }
+
+    final Key key =
+        new Key(sameCore ? null : fromSearcher.getCore().getName(), fromField, toField);
+    final TopLevelJoinIndex joinIndex =
+        cache.computeIfAbsent(key, k -> build(fromSearcher, fromField, toSearcher, toField));
+    if (joinIndex.fromReaderKey == fromReaderKey) {
+      return joinIndex;
+    }
+
+    // the "from" core has opened a new searcher since this entry was built
+    final TopLevelJoinIndex rebuilt = build(fromSearcher, fromField, toSearcher, toField);
+    cache.put(key, rebuilt);
+    return rebuilt;
+  }
+
+  private static IndexReader.CacheKey readerCacheKey(IndexReader reader) {
+    final IndexReader.CacheHelper helper = reader.getReaderCacheHelper();
+    return helper == null ? null : helper.getKey();
+  }
+
+  static TopLevelJoinIndex build(
+      SolrIndexSearcher fromSearcher,
+      String fromField,
+      SolrIndexSearcher toSearcher,
+      String toField)
+      throws IOException {
+    final long startNanos = System.nanoTime();
+    final boolean sameCore = fromSearcher == toSearcher;
+    final SortedSetDocValues fromDocValues =
+        DocValues.getSortedSet(fromSearcher.getSlowAtomicReader(), fromField);
+    final SortedSetDocValues toDocValues =
+        DocValues.getSortedSet(toSearcher.getSlowAtomicReader(), toField);
+    final long fromValueCount = fromDocValues.getValueCount();
+    final long toValueCount = toDocValues.getValueCount();
+
+    final PagedMutable fromToOrds =
+        sameCore && fromField.equals(toField)
+            ? null
+            : buildOrdinalMap(fromDocValues, fromValueCount, toDocValues, toValueCount);
+
+    int[] toOrdStarts = null;
+    int[] toDocs = null;
+    if (toValueCount < ArrayUtil.MAX_ARRAY_LENGTH) {
+      toOrdStarts = new int[(int) toValueCount + 1];
+      final long numPostings = countPostings(toSearcher, toField, toOrdStarts);
+      if (numPostings <= ArrayUtil.MAX_ARRAY_LENGTH) {
+        toDocs = fillPostings(toSearcher, toField, toOrdStarts, (int) numPostings);
+      } else {
+        toOrdStarts = null;
+      }
+    }
+
+    final TopLevelJoinIndex joinIndex =
+        new TopLevelJoinIndex(
+            sameCore ? null : readerCacheKey(fromSearcher.getIndexReader()),
+            fromValueCount,
+            toValueCount,
+            fromToOrds,
+            toOrdStarts,
+            toDocs);
+    if (log.isDebugEnabled()) {
+      log.debug(
+          "Built join index from={} to={} in {}ms: {}",
+          fromField,
+          toField,
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+          joinIndex);
+    }
+    return joinIndex;
+  }
+
+  /** Maps from ordinals to to ordinals by walking both (sorted) term dictionaries in lockstep */
+  private static PagedMutable buildOrdinalMap(
+      SortedSetDocValues fromDocValues,
+      long fromValueCount,
+      SortedSetDocValues toDocValues,
+      long toValueCount)
+      throws IOException {
+    final PagedMutable fromToOrds =
+        new PagedMutable(
+            Math.max(1, fromValueCount),
+            ORD_MAP_PAGE_SIZE,
+            PackedInts.bitsRequired(toValueCount),
+            PackedInts.COMPACT);
+    final TermsEnum fromTerms = fromDocValues.termsEnum();
+    final TermsEnum toTerms = toDocValues.termsEnum();
+    BytesRef toTerm = toTerms.next();
+    for (BytesRef fromTerm = fromTerms.next();
+        fromTerm != null && toTerm != null;
+        fromTerm = fromTerms.next()) {
+      int cmp = toTerm.compareTo(fromTerm);
+      if (cmp < 0) {
+        if (toTerms.seekCeil(fromTerm) == TermsEnum.SeekStatus.END) {
+          break;
+        }
+        toTerm = toTerms.term();
+        cmp = toTerm.compareTo(fromTerm);
+      }
+      if (cmp == 0) {
+        fromToOrds.set(fromTerms.ord(), toTerms.ord() + 1);
+      }
+    }
+    return fromToOrds;
+  }
+
+  /** Counts the live postings of each to ordinal into <code>toOrdStarts[ord + 1]</code> */
+  private static long countPostings(SolrIndexSearcher toSearcher, String toField, int[] toOrdStarts)
+      throws IOException {
+    final SortedSetDocValues toDocValues =
+        DocValues.getSortedSet(toSearcher.getSlowAtomicReader(), toField);
+    final Bits liveDocs = toSearcher.getLiveDocsBits();
+    long numPostings = 0;
+    for (int doc = toDocValues.nextDoc();
+        doc != DocIdSetIterator.NO_MORE_DOCS;
+        doc = toDocValues.nextDoc()) {
+      if (liveDocs != null && !liveDocs.get(doc)) {
+        continue;
+      }
+      for (long ord = toDocValues.nextOrd();
+          ord != SortedSetDocValues.NO_MORE_ORDS;
+          ord = toDocValues.nextOrd()) {
+        toOrdStarts[(int) ord + 1]++;
+        numPostings++;
+      }
+    }
+    return numPostings;
+  }
+
+  private static int[] fillPostings(
+      SolrIndexSearcher toSearcher, String toField, int[] toOrdStarts, int numPostings)
+      throws IOException {
+    for (int i = 1; i < toOrdStarts.length; i++) {
+      toOrdStarts[i] += toOrdStarts[i - 1];
+    }
+    final int[] toDocs = new int[numPostings];
+    final int[] upto = ArrayUtil.copyOfSubArray(toOrdStarts, 0, toOrdStarts.length - 1);
+    final SortedSetDocValues toDocValues =
+        DocValues.getSortedSet(toSearcher.getSlowAtomicReader(), toField);
+    final Bits liveDocs = toSearcher.getLiveDocsBits();
+    for (int doc = toDocValues.nextDoc();
+        doc != DocIdSetIterator.NO_MORE_DOCS;
+        doc = toDocValues.nextDoc()) {
+      if (liveDocs != null && !liveDocs.get(doc)) {
+        continue;
+      }
+      for (long ord = toDocValues.nextOrd();
+          ord != SortedSetDocValues.NO_MORE_ORDS;
+          ord = toDocValues.nextOrd()) {
+        toDocs[upto[(int) ord]++] = doc;
+      }
+    }
+    return toDocs;
+  }
+
+  /** Translates a set of "from" ordinals into the set of "to" ordinals for the same terms */
+  public LongBitSet toOrdinals(LongBitSet fromOrds) {
+    final LongBitSet toOrds = new LongBitSet(toValueCount);
+    if (fromToOrds == null) {
+      toOrds.or(fromOrds);
+      return toOrds;
+    }
+    final long length = Math.min(fromOrds.length(), fromValueCount);
+    for (long fromOrd = length == 0 ? -1 : fromOrds.nextSetBit(0);
+        fromOrd >= 0 && fromOrd < length;
+        fromOrd = fromOrd + 1 < length ? fromOrds.nextSetBit(fromOrd + 1) : -1) {
+      final long toOrdPlusOne = fromToOrds.get(fromOrd);
+      if (toOrdPlusOne != 0) {
+        toOrds.set(toOrdPlusOne - 1);
+      }
+    }
+    return toOrds;
+  }
+
+  /** True if {@link #toDocs} can be used */
+  public boolean hasPostings() {
+    return toDocs != null;
+  }
+
+  /**
+   * Returns the live "to" documents having any of the given "to" ordinals.
+   *
+   * @see #hasPostings()
+   */
+  public BitDocSet toDocs(LongBitSet toOrds, int maxDoc) {
+    assert hasPostings();
+    final FixedBitSet bits = new FixedBitSet(maxDoc);
+    final long length = Math.min(toOrds.length(), toValueCount);
+    for (long ord = length == 0 ? -1 : toOrds.nextSetBit(0);
+        ord >= 0 && ord < length;
+        ord = ord + 1 < length ? toOrds.nextSetBit(ord + 1) : -1) {
+      for (int i = toOrdStarts[(int) ord], end = toOrdStarts[(int) ord + 1]; i < end; i++) {
+        bits.set(toDocs[i]);
+      }
+    }
+    return new BitDocSet(bits);
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED
+        + (fromToOrds == null ? 0 : fromToOrds.ramBytesUsed())
+        + (toOrdStarts == null ? 0 : RamUsageEstimator.sizeOf(toOrdStarts))
+        + (toDocs == null ? 0 : RamUsageEstimator.sizeOf(toDocs));
+  }
+
+  @Override
+  public String toString() {
+    return "TopLevelJoinIndex(fromValues="
+        + fromValueCount
+        + ", toValues="
+        + toValueCount
+        + ", ordMap="
+        + (fromToOrds != null)
+        + ", postings="
+        + (toDocs == null ? -1 : toDocs.length)
+        + ", ramBytes="
+        + ramBytesUsed()
+        + ")";
+  }
+}
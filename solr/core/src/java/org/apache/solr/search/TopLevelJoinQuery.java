@@ -45,6 +45,10 @@ import org.slf4j.LoggerFactory;
 /**
  * {@link JoinQuery} implementation using global (top-level) DocValues ordinals to efficiently
  * compare values in the "from" and "to" fields.
+ *
+ * <p>If the "to" core has a {@link TopLevelJoinIndex#CACHE_NAME} cache configured, the mapping of
+ * "from" ordinals to "to" documents is precomputed once per searcher by {@link TopLevelJoinIndex}
+ * and reused by every query joining the same fields.
  */
 public class TopLevelJoinQuery extends JoinQuery implements SolrSearcherRequirer {
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
@@ -80,10 +84,24 @@ public class TopLevelJoinQuery extends JoinQuery implements SolrSearcherRequirer
 
       final LongBitSet fromOrdBitSet =
           findFieldOrdinalsMatchingQuery(q, fromField, fromSearcher, topLevelFromDocValues);
-      final LongBitSet toOrdBitSet = new LongBitSet(topLevelToDocValues.getValueCount());
-      final BitsetBounds toBitsetBounds =
-          convertFromOrdinalsIntoToField(
-              fromOrdBitSet, topLevelFromDocValues, toOrdBitSet, topLevelToDocValues);
+      final TopLevelJoinIndex joinIndex =
+          TopLevelJoinIndex.getJoinIndex(fromSearcher, fromField, toSearcher, toField);
+      final LongBitSet toOrdBitSet;
+      final BitsetBounds toBitsetBounds;
+      if (joinIndex != null) {
+        toOrdBitSet = joinIndex.toOrdinals(fromOrdBitSet);
+        if (joinIndex.hasPostings()) {
+          return createDocSetWeight(joinIndex.toDocs(toOrdBitSet, toSearcher.maxDoc()), boost);
+        }
+        toBitsetBounds =
+            new BitsetBounds(
+                toOrdBitSet.nextSetBit(0), toOrdBitSet.prevSetBit(toOrdBitSet.length() - 1));
+      } else {
+        toOrdBitSet = new LongBitSet(topLevelToDocValues.getValueCount());
+        toBitsetBounds =
+            convertFromOrdinalsIntoToField(
+                fromOrdBitSet, topLevelFromDocValues, toOrdBitSet, topLevelToDocValues);
+      }
 
       final boolean toMultivalued = toSearcher.getSchema().getFieldOrNull(toField).multiValued();
       return new ConstantScoreWeight(this, boost) {
@@ -154,6 +172,24 @@ public class TopLevelJoinQuery extends JoinQuery implements SolrSearcherRequirer
     };
   }
 
+  private Weight createDocSetWeight(DocSet toDocs, float boost) {
+    return new ConstantScoreWeight(this, boost) {
+      @Override
+      public Scorer scorer(LeafReaderContext context) throws IOException {
+        final DocIdSetIterator disi = toDocs.iterator(context);
+        if (disi == null) {
+          return null;
+        }
+        return new ConstantScoreScorer(this, this.score(), scoreMode, disi);
+      }
+
+      @Override
+      public boolean isCacheable(LeafReaderContext ctx) {
+        return false;
+      }
+    };
+  }
+
   private SortedSetDocValues validateAndFetchDocValues(
       SolrIndexSearcher solrSearcher, String fieldName, String querySide) throws IOException {
     final IndexSchema schema = solrSearcher.getSchema();
@@ -23,6 +23,7 @@ import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
 import org.apache.lucene.index.ExitableDirectoryReader;
 import org.apache.lucene.queries.function.ValueSource;
 import org.apache.lucene.search.Collector;
@@ -41,6 +42,7 @@ import org.apache.solr.request.SolrRequestInfo;
 import org.apache.solr.schema.FieldType;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.search.BitDocSet;
+import org.apache.solr.search.DelegatingCollector;
 import org.apache.solr.search.DocSet;
 import org.apache.solr.search.DocSetCollector;
 import org.apache.solr.search.DocSetUtil;
@@ -57,6 +59,11 @@ import org.slf4j.LoggerFactory;
  * Responsible for executing a search with a number of {@link Command} instances. A typical search
  * can have more then one {@link Command} instances.
  *
+ * <p>The commands are usually collected in a single pass over the index. When the query command is
+ * multi threaded, and the commands neither truncate groups nor are post filtered, the commands are
+ * instead collected concurrently, each with its own pass over the index, using the task executor
+ * of the searcher.
+ *
  * @lucene.experimental
  */
 public class CommandHandler {
@@ -147,9 +154,12 @@ public class CommandHandler {
 
   public void execute() throws IOException {
     final int nrOfCommands = commands.size();
+    List<List<Collector>> commandCollectors = new ArrayList<>(nrOfCommands);
     List<Collector> collectors = new ArrayList<>(nrOfCommands);
     for (Command<?> command : commands) {
-      collectors.addAll(command.create());
+      List<Collector> created = command.create();
+      commandCollectors.add(created);
+      collectors.addAll(created);
     }
 
     ProcessedFilter filter = searcher.getProcessedFilter(queryCommand.getFilterList());
@@ -157,6 +167,8 @@ public class CommandHandler {
 
     if (truncateGroups) {
       docSet = computeGroupedDocSet(query, filter, collectors);
+    } else if (isConcurrent(filter, commandCollectors)) {
+      docSet = searchConcurrently(query, filter, commandCollectors);
     } else if (needDocSet) {
       docSet = computeDocSet(query, filter, collectors);
     } else if (!collectors.isEmpty()) {
@@ -171,6 +183,93 @@ public class CommandHandler {
     }
   }
 
+  /**
+   * Whether to collect the commands concurrently, which is only worth it if more than one command
+   * has collectors. Post filters delegate to a single collector, and so rule it out.
+   */
+  private boolean isConcurrent(ProcessedFilter filter, List<List<Collector>> commandCollectors) {
+    if (!queryCommand.getMultiThreaded() || filter.postFilter != null) {
+      return false;
+    }
+    int nrOfCollectingCommands = 0;
+    for (List<Collector> collectors : commandCollectors) {
+      if (!collectors.isEmpty()) {
+        nrOfCollectingCommands++;
+      }
+    }
+    return nrOfCollectingCommands > 1;
+  }
+
+  /**
+   * Collects each command in its own search, running the searches concurrently with the task
+   * executor of the searcher. The hit count and the {@link DocSet}, if needed, are collected with
+   * the first command. Each search runs with the request info of the request thread, see {@link
+   * #callWithRequestInfo}.
+   *
+   * @return the {@link DocSet} of the query, or null if it isn't needed
+   */
+  private DocSet searchConcurrently(
+      Query query, ProcessedFilter filter, List<List<Collector>> commandCollectors)
+      throws IOException {
+    final Query filteredQuery = QueryUtils.combineQueryAndFilter(query, filter.filter);
+    final DocSetCollector docSetCollector =
+        needDocSet ? new DocSetCollector(searcher.maxDoc()) : null;
+    final SolrRequestInfo requestInfo = SolrRequestInfo.getRequestInfo();
+
+    List<Callable<Integer>> tasks = new ArrayList<>(commandCollectors.size());
+    for (List<Collector> collectors : commandCollectors) {
+      if (collectors.isEmpty()) {
+        continue;
+      }
+      final boolean first = tasks.isEmpty();
+      final List<Collector> taskCollectors = new ArrayList<>(collectors);
+      if (first && docSetCollector != null) {
+        taskCollectors.add(docSetCollector);
+      }
+      tasks.add(
+          () ->
+              callWithRequestInfo(
+                  requestInfo,
+                  () ->
+                      searchWithTimeLimiter(
+                          filteredQuery,
+                          null,
+                          MultiCollector.wrap(taskCollectors),
+                          first && includeHitCount)));
+    }
+
+    List<Integer> hitCounts = searcher.getTaskExecutor().invokeAll(tasks);
+    if (includeHitCount) {
+      totalHitCount = hitCounts.get(0);
+    }
+    return docSetCollector == null ? null : DocSetUtil.getDocSet(docSetCollector, searcher);
+  }
+
+  /**
+   * Calls the task with the given request info of the request thread. The query limits of the
+   * request, e.g. timeAllowed and cpuAllowed, are looked up through the request info of the
+   * searching thread, and so would not apply to a search on an executor thread without one. The
+   * executor threads of the searcher inherit the request info of the submitting thread, and the
+   * task may also run on the request thread itself; then the task is simply called. Otherwise a
+   * request info for the same request is set for the duration of the task, which shares the query
+   * limits of the request since these are kept in the request context.
+   */
+  private static <T> T callWithRequestInfo(SolrRequestInfo requestInfo, Callable<T> task)
+      throws Exception {
+    if (requestInfo == null || SolrRequestInfo.getRequestInfo() != null) {
+      return task.call();
+    }
+    SolrRequestInfo taskRequestInfo =
+        new SolrRequestInfo(requestInfo.getReq(), requestInfo.getRsp());
+    taskRequestInfo.setResponseBuilder(requestInfo.getResponseBuilder());
+    SolrRequestInfo.setRequestInfo(taskRequestInfo);
+    try {
+      return task.call();
+    } finally {
+      SolrRequestInfo.clearRequestInfo();
+    }
+  }
+
   private static Collector NO_OP_COLLECTOR =
       new SimpleCollector() {
         @Override
@@ -245,6 +344,25 @@ public class CommandHandler {
    */
   private void searchWithTimeLimiter(Query query, ProcessedFilter filter, Collector collector)
       throws IOException {
+    int hitCount =
+        searchWithTimeLimiter(
+            QueryUtils.combineQueryAndFilter(query, filter.filter),
+            filter.postFilter,
+            collector,
+            includeHitCount);
+    if (includeHitCount) {
+      totalHitCount = hitCount;
+    }
+  }
+
+  /**
+   * Invokes search with the specified (already filtered) query, post filter and collector.
+   *
+   * @return the number of hits, if counted, or 0
+   */
+  private int searchWithTimeLimiter(
+      Query query, DelegatingCollector postFilter, Collector collector, boolean countHits)
+      throws IOException {
     if (queryCommand.getTimeAllowed() > 0) {
       collector =
           new TimeLimitingCollector(
@@ -252,15 +370,13 @@ public class CommandHandler {
     }
 
     TotalHitCountCollector hitCountCollector = new TotalHitCountCollector();
-    if (includeHitCount) {
+    if (countHits) {
       collector = MultiCollector.wrap(collector, hitCountCollector);
     }
 
-    query = QueryUtils.combineQueryAndFilter(query, filter.filter);
-
-    if (filter.postFilter != null) {
-      filter.postFilter.setLastDelegate(collector);
-      collector = filter.postFilter;
+    if (postFilter != null) {
+      postFilter.setLastDelegate(collector);
+      collector = postFilter;
     }
 
     try {
@@ -270,9 +386,7 @@ public class CommandHandler {
       log.warn("Query: {}; ", query, x);
     }
 
-    if (includeHitCount) {
-      totalHitCount = hitCountCollector.getTotalHits();
-    }
+    return countHits ? hitCountCollector.getTotalHits() : 0;
   }
 
   public int getTotalHitCount() {
@@ -20,8 +20,11 @@ import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.GroupParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.handler.component.MoreLikeThisComponent;
+import org.apache.solr.handler.component.PhrasesIdentificationComponent;
 import org.apache.solr.handler.component.ResponseBuilder;
 import org.apache.solr.handler.component.ShardRequest;
+import org.apache.solr.search.Grouping;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.search.grouping.GroupingSpecification;
 import org.apache.solr.search.grouping.distributed.ShardRequestFactory;
@@ -71,6 +74,9 @@ public class SearchGroupsRequestFactory implements ShardRequestFactory {
     // in this first phase, request only the unique key field
     // and any fields needed for merging.
     sreq.params.set(GroupParams.GROUP_DISTRIBUTED_FIRST, "true");
+    if (!isSinglePassAllowed(rb)) {
+      sreq.params.remove(GroupParams.GROUP_SINGLE_PASS_MAX_GROUPS);
+    }
 
     if ((rb.getFieldFlags() & SolrIndexSearcher.GET_SCORES) != 0
         || rb.getSortSpec().includesScore()) {
@@ -80,4 +86,21 @@ public class SearchGroupsRequestFactory implements ShardRequestFactory {
     }
     return new ShardRequest[] {sreq};
   }
+
+  /**
+   * Whether the shards may return their top groups in this first phase. The second phase is still
+   * needed for group queries, and by components which rely on its {@link
+   * ShardRequest#PURPOSE_GET_TOP_IDS} requests, such as faceting and statistics on the {@link
+   * org.apache.solr.search.DocSet} of the query.
+   */
+  private boolean isSinglePassAllowed(ResponseBuilder rb) {
+    GroupingSpecification groupingSpecification = rb.getGroupingSpec();
+    return groupingSpecification.getQueries().length == 0
+        && groupingSpecification.getResponseFormat() == Grouping.Format.grouped
+        && !groupingSpecification.isMain()
+        && !rb.isNeedDocSet()
+        && !rb.isDebug()
+        && !rb.req.getParams().getBool(MoreLikeThisComponent.COMPONENT_NAME, false)
+        && !rb.req.getParams().getBool(PhrasesIdentificationComponent.COMPONENT_NAME, false);
+  }
 }
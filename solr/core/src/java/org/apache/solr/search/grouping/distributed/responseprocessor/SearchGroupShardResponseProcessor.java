@@ -30,6 +30,7 @@ import org.apache.lucene.search.grouping.SearchGroup;
 import org.apache.lucene.util.BytesRef;
 import org.apache.solr.client.solrj.SolrResponse;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.params.GroupParams;
 import org.apache.solr.common.params.ShardParams;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
@@ -171,5 +172,30 @@ public class SearchGroupShardResponseProcessor implements ShardResponseProcessor
             .put(mergedTopGroup, tempSearchGroupToShards.get(groupField).get(mergedTopGroup));
       }
     }
+
+    if (isSinglePass(rb, shardRequest)) {
+      new TopGroupsShardResponseProcessor().process(rb, shardRequest);
+    }
+  }
+
+  /**
+   * Whether all shards returned their top groups along with their search groups, see {@link
+   * GroupParams#GROUP_SINGLE_PASS_MAX_GROUPS}.
+   */
+  private boolean isSinglePass(ResponseBuilder rb, ShardRequest shardRequest) {
+    if (shardRequest.params.getInt(GroupParams.GROUP_SINGLE_PASS_MAX_GROUPS, 0) <= 0) {
+      return false;
+    }
+    boolean anySecondPhase = false;
+    for (ShardResponse srsp : shardRequest.responses) {
+      if (srsp.getException() != null) {
+        continue; // only possible when tolerant, see above
+      }
+      if (SolrResponseUtil.getSubsectionFromShardResponse(rb, srsp, "secondPhase", true) == null) {
+        return false;
+      }
+      anySecondPhase = true;
+    }
+    return anySecondPhase;
   }
 }
@@ -20,6 +20,7 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,9 +28,12 @@ import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TotalHits;
 import org.apache.lucene.search.grouping.GroupDocs;
+import org.apache.lucene.search.grouping.SearchGroup;
 import org.apache.lucene.search.grouping.TopGroups;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CharsRefBuilder;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.common.params.ShardParams;
 import org.apache.solr.common.util.NamedList;
@@ -39,6 +43,7 @@ import org.apache.solr.handler.component.ResponseBuilder;
 import org.apache.solr.handler.component.ShardDoc;
 import org.apache.solr.handler.component.ShardRequest;
 import org.apache.solr.handler.component.ShardResponse;
+import org.apache.solr.schema.FieldType;
 import org.apache.solr.search.Grouping;
 import org.apache.solr.search.SortSpec;
 import org.apache.solr.search.grouping.distributed.ShardResponseProcessor;
@@ -83,6 +88,9 @@ public class TopGroupsShardResponseProcessor implements ShardResponseProcessor {
     }
 
     TopGroupsResultTransformer serializer = new TopGroupsResultTransformer(rb);
+    // top groups returned along with the search groups are all the groups of the shards, see
+    // SearchGroupShardResponseProcessor
+    boolean singlePass = (shardRequest.purpose & ShardRequest.PURPOSE_GET_TOP_GROUPS) != 0;
 
     NamedList<Object> shardInfo = null;
     if (rb.req.getParams().getBool(ShardParams.SHARDS_INFO, false)) {
@@ -137,6 +145,9 @@ public class TopGroupsShardResponseProcessor implements ShardResponseProcessor {
         if (topGroups == null) {
           continue;
         }
+        if (singlePass) {
+          topGroups = alignToMergedSearchGroups(rb, entry.getKey(), topGroups);
+        }
         if (individualShardInfo != null) { // keep track of this when shards.info=true
           numFound += topGroups.totalHitCount;
           if (Float.isNaN(maxScore) || topGroups.maxScore > maxScore) maxScore = topGroups.maxScore;
@@ -223,6 +234,67 @@ public class TopGroupsShardResponseProcessor implements ShardResponseProcessor {
     fillResultIds(rb);
   }
 
+  /**
+   * Returns the groups of the top groups of a shard which are among the merged search groups of a
+   * field, in the same order, as {@link TopGroups#merge} requires. Groups the shard doesn't have are
+   * returned without documents, like the second phase does.
+   */
+  @SuppressWarnings("unchecked")
+  private static TopGroups<BytesRef> alignToMergedSearchGroups(
+      ResponseBuilder rb, String field, TopGroups<BytesRef> topGroups) {
+    Map<BytesRef, GroupDocs<BytesRef>> shardGroups = new HashMap<>();
+    GroupDocs<BytesRef> nullGroup = null;
+    for (GroupDocs<BytesRef> group : topGroups.groups) {
+      if (group.groupValue == null) {
+        nullGroup = group;
+      } else {
+        shardGroups.put(group.groupValue, group);
+      }
+    }
+
+    Collection<SearchGroup<BytesRef>> mergedSearchGroups = rb.mergedSearchGroups.get(field);
+    if (mergedSearchGroups == null) {
+      mergedSearchGroups = List.of();
+    }
+    FieldType fieldType = rb.req.getSchema().getField(field).getType();
+    List<GroupDocs<BytesRef>> groups = new ArrayList<>(mergedSearchGroups.size());
+    int totalGroupedHitCount = 0;
+    for (SearchGroup<BytesRef> searchGroup : mergedSearchGroups) {
+      // the values of the top groups are readable, those of the search groups indexed
+      BytesRef groupValue = null;
+      GroupDocs<BytesRef> group = nullGroup;
+      if (searchGroup.groupValue != null) {
+        groupValue =
+            new BytesRef(fieldType.indexedToReadable(searchGroup.groupValue, new CharsRefBuilder()));
+        group = shardGroups.get(groupValue);
+      }
+      if (group == null) {
+        group =
+            new GroupDocs<>(
+                Float.NaN,
+                Float.NaN,
+                new TotalHits(0, TotalHits.Relation.EQUAL_TO),
+                new ScoreDoc[0],
+                groupValue,
+                null);
+      }
+      totalGroupedHitCount += (int) group.totalHits.value;
+      groups.add(group);
+    }
+
+    TopGroups<BytesRef> alignedTopGroups =
+        new TopGroups<>(
+            topGroups.groupSort,
+            topGroups.withinGroupSort,
+            topGroups.totalHitCount,
+            totalGroupedHitCount,
+            groups.toArray((GroupDocs<BytesRef>[]) Array.newInstance(GroupDocs.class, 0)),
+            topGroups.maxScore);
+    return topGroups.totalGroupCount == null
+        ? alignedTopGroups
+        : new TopGroups<>(alignedTopGroups, topGroups.totalGroupCount);
+  }
+
   /**
    * Fill the {@link ResponseBuilder}'s <code>resultIds</code> field.
    *
@@ -17,6 +17,7 @@
 
 package org.apache.solr.search.join;
 
+import com.carrotsearch.hppc.LongArrayList;
 import java.io.IOException;
 import java.util.Locale;
 import java.util.Map;
@@ -35,8 +36,14 @@ import org.apache.lucene.search.QueryVisitor;
 import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefArray;
 import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.BytesRefIterator;
+import org.apache.lucene.util.Counter;
 import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.solr.client.solrj.io.SolrClientCache;
 import org.apache.solr.client.solrj.io.Tuple;
 import org.apache.solr.client.solrj.io.eq.FieldEqualitor;
@@ -57,13 +64,46 @@ import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.schema.FieldType;
 import org.apache.solr.search.BitDocSet;
+import org.apache.solr.search.CacheRegenerator;
+import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocSet;
 import org.apache.solr.search.DocSetUtil;
+import org.apache.solr.search.SolrCache;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.search.SolrSearcherRequirer;
 
 public class CrossCollectionJoinQuery extends Query implements SolrSearcherRequirer {
 
+  /**
+   * Name of the optional user cache holding remote join keys, so that they survive local commits
+   * for up to the query's ttl
+   */
+  public static final String KEY_CACHE_NAME = "crossCollectionJoinKeyCache";
+
+  /** Keys sets larger than this are not cached */
+  static final long MAX_RECORDED_KEY_BYTES = 64L * 1024 * 1024;
+
+  /** Maximum number of point keys resolved by a single set query */
+  static final int POINT_BATCH_SIZE = 1 << 16;
+
+  /** The point batch size in use, only lowered by tests to exercise several batches */
+  static int pointBatchSize = POINT_BATCH_SIZE;
+
+  /** Copies unexpired remote join keys into the new searcher's cache */
+  public static final CacheRegenerator KEY_CACHE_REGENERATOR =
+      new CacheRegenerator() {
+        @Override
+        public <K, V> boolean regenerateItem(
+            SolrIndexSearcher newSearcher,
+            SolrCache<K, V> newCache,
+            SolrCache<K, V> oldCache,
+            K oldKey,
+            V oldVal) {
+          newCache.put(oldKey, oldVal);
+          return true;
+        }
+      };
+
   protected final String query;
   protected final String zkHost;
   protected final String solrUrl;
@@ -111,8 +151,58 @@ public class CrossCollectionJoinQuery extends Query implements SolrSearcherRequi
     void collect(Object value) throws IOException;
 
     DocSet getDocSet() throws IOException;
+
+    /** Starts keeping a copy of the collected keys, to be returned by {@link #getRecordedKeys} */
+    void recordKeys();
+
+    /** Returns the recorded keys, or null if none were recorded or there were too many */
+    JoinKeys getRecordedKeys();
+
+    /** Collects keys previously returned by {@link #getRecordedKeys} */
+    void replay(JoinKeys keys) throws IOException;
   }
 
+  /**
+   * Remote join keys, in the indexed form of the "to" field, cached in the {@link
+   * #KEY_CACHE_NAME} cache so that they can be reused without contacting the remote collection
+   * until the query's ttl expires, even after the local searcher changes.
+   */
+  static final class JoinKeys implements Accountable {
+    private static final long BASE_RAM_BYTES_USED =
+        RamUsageEstimator.shallowSizeOfInstance(JoinKeys.class);
+
+    final long createdNanos = System.nanoTime();
+    final BytesRefArray terms;
+    final long[] points;
+
+    JoinKeys(BytesRefArray terms, long[] points) {
+      this.terms = terms;
+      this.points = points;
+    }
+
+    boolean isExpired(int ttl) {
+      return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - createdNanos) >= ttl;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED
+          + (terms == null ? 0 : terms.ramBytesUsed())
+          + (points == null ? 0 : RamUsageEstimator.sizeOf(points));
+    }
+  }
+
+  /** Key of a {@link JoinKeys} entry, identifying the remote request that produced the keys */
+  record JoinKeysCacheKey(
+      String zkHost,
+      String solrUrl,
+      String collection,
+      String query,
+      String fromField,
+      String toField,
+      String hashRangeFq,
+      String otherParams) {}
+
   private static class TermsJoinKeyCollector implements JoinKeyCollector {
 
     FieldType fieldType;
@@ -124,6 +214,8 @@ public class CrossCollectionJoinQuery extends Query implements SolrSearcherRequi
 
     FixedBitSet bitSet;
 
+    BytesRefArray recorded;
+
     public TermsJoinKeyCollector(FieldType fieldType, Terms terms, SolrIndexSearcher searcher)
         throws IOException {
       this.fieldType = fieldType;
@@ -138,12 +230,41 @@ public class CrossCollectionJoinQuery extends Query implements SolrSearcherRequi
     @Override
     public void collect(Object value) throws IOException {
       fieldType.readableToIndexed((String) value, bytes);
-      if (termsEnum.seekExact(bytes.get())) {
+      if (recorded != null) {
+        if (recorded.ramBytesUsed() < MAX_RECORDED_KEY_BYTES) {
+          recorded.append(bytes.get());
+        } else {
+          recorded = null;
+        }
+      }
+      collectIndexed(bytes.get());
+    }
+
+    private void collectIndexed(BytesRef term) throws IOException {
+      if (termsEnum.seekExact(term)) {
         postingsEnum = termsEnum.postings(postingsEnum, PostingsEnum.NONE);
         bitSet.or(postingsEnum);
       }
     }
 
+    @Override
+    public void recordKeys() {
+      recorded = new BytesRefArray(Counter.newCounter());
+    }
+
+    @Override
+    public JoinKeys getRecordedKeys() {
+      return recorded == null ? null : new JoinKeys(recorded, null);
+    }
+
+    @Override
+    public void replay(JoinKeys keys) throws IOException {
+      final BytesRefIterator terms = keys.terms.iterator();
+      for (BytesRef term = terms.next(); term != null; term = terms.next()) {
+        collectIndexed(term);
+      }
+    }
+
     @Override
     public DocSet getDocSet() throws IOException {
       if (searcher.getIndexReader().hasDeletions()) {
@@ -153,9 +274,16 @@ public class CrossCollectionJoinQuery extends Query implements SolrSearcherRequi
     }
   }
 
+  /**
+   * Collects point keys in batches of at most {@link #POINT_BATCH_SIZE} values, each of which is
+   * resolved to local documents by a set query as soon as it fills up, so neither the number of
+   * buffered keys nor the size of the generated queries grows with the remote result size.
+   */
   private class PointJoinKeyCollector extends GraphPointsCollector implements JoinKeyCollector {
 
     SolrIndexSearcher searcher;
+    FixedBitSet bitSet;
+    LongArrayList recorded;
 
     public PointJoinKeyCollector(SolrIndexSearcher searcher) {
       super(searcher.getSchema().getField(toField), null, null);
@@ -165,19 +293,71 @@ public class CrossCollectionJoinQuery extends Query implements SolrSearcherRequi
     @Override
     public void collect(Object value) throws IOException {
       if (value instanceof Long || value instanceof Integer) {
-        set.add(((Number) value).longValue());
+        final long key = ((Number) value).longValue();
+        if (recorded != null) {
+          if (recorded.size() < MAX_RECORDED_KEY_BYTES / Long.BYTES) {
+            recorded.add(key);
+          } else {
+            recorded = null;
+          }
+        }
+        collectKey(key);
       } else {
         throw new UnsupportedOperationException("Unsupported field type for XCJFQuery");
       }
     }
 
-    @Override
-    public DocSet getDocSet() throws IOException {
+    private void collectKey(long key) throws IOException {
+      set.add(key);
+      if (set.size() >= pointBatchSize) {
+        flush();
+      }
+    }
+
+    private void flush() throws IOException {
       Query query = getResultQuery(searcher.getSchema().getField(toField), false);
+      set.clear();
       if (query == null) {
-        return DocSet.empty();
+        return;
+      }
+      if (bitSet == null) {
+        bitSet = new FixedBitSet(searcher.maxDoc());
+      }
+      for (DocIterator it = DocSetUtil.createDocSet(searcher, query, null).iterator();
+          it.hasNext(); ) {
+        bitSet.set(it.nextDoc());
       }
-      return DocSetUtil.createDocSet(searcher, query, null);
+    }
+
+    @Override
+    public void recordKeys() {
+      recorded = new LongArrayList();
+    }
+
+    @Override
+    public JoinKeys getRecordedKeys() {
+      return recorded == null ? null : new JoinKeys(null, recorded.toArray());
+    }
+
+    @Override
+    public void replay(JoinKeys keys) throws IOException {
+      for (long key : keys.points) {
+        collectKey(key);
+      }
+    }
+
+    @Override
+    public DocSet getDocSet() throws IOException {
+      if (bitSet == null) {
+        // everything fit in a single batch
+        Query query = getResultQuery(searcher.getSchema().getField(toField), false);
+        if (query == null) {
+          return DocSet.empty();
+        }
+        return DocSetUtil.createDocSet(searcher, query, null);
+      }
+      flush();
+      return new BitDocSet(bitSet);
     }
   }
 
@@ -216,7 +396,8 @@ public class CrossCollectionJoinQuery extends Query implements SolrSearcherRequi
       }
     }
 
-    private TupleStream createCloudSolrStream(SolrClientCache solrClientCache) throws IOException {
+    private TupleStream createCloudSolrStream(SolrClientCache solrClientCache, String fq)
+        throws IOException {
       String streamZkHost;
       if (zkHost != null) {
         streamZkHost = zkHost;
@@ -226,7 +407,6 @@ public class CrossCollectionJoinQuery extends Query implements SolrSearcherRequi
 
       ModifiableSolrParams params = new ModifiableSolrParams(otherParams);
       params.set(CommonParams.Q, query);
-      String fq = createHashRangeFq();
       if (fq != null) {
         params.add(CommonParams.FQ, fq);
       }
@@ -244,12 +424,11 @@ public class CrossCollectionJoinQuery extends Query implements SolrSearcherRequi
       return uniqueStream;
     }
 
-    private TupleStream createSolrStream() {
+    private TupleStream createSolrStream(String fq) {
       StreamExpression searchExpr =
           new StreamExpression("search")
               .withParameter(collection)
               .withParameter(new StreamExpressionNamedParameter(CommonParams.Q, query));
-      String fq = createHashRangeFq();
       if (fq != null) {
         searchExpr.withParameter(new StreamExpressionNamedParameter(CommonParams.FQ, fq));
       }
@@ -277,15 +456,8 @@ public class CrossCollectionJoinQuery extends Query implements SolrSearcherRequi
       return new SolrStream(solrUrl + "/" + collection, params);
     }
 
+    @SuppressWarnings("unchecked")
     private DocSet getDocSet() throws IOException {
-      SolrClientCache solrClientCache = searcher.getCore().getCoreContainer().getSolrClientCache();
-      TupleStream solrStream;
-      if (zkHost != null || solrUrl == null) {
-        solrStream = createCloudSolrStream(solrClientCache);
-      } else {
-        solrStream = createSolrStream();
-      }
-
       FieldType fieldType = searcher.getSchema().getFieldType(toField);
       JoinKeyCollector collector;
       if (fieldType.isPointField()) {
@@ -298,6 +470,29 @@ public class CrossCollectionJoinQuery extends Query implements SolrSearcherRequi
         collector = new TermsJoinKeyCollector(fieldType, terms, searcher);
       }
 
+      String fq = createHashRangeFq();
+      SolrCache<JoinKeysCacheKey, JoinKeys> keyCache = searcher.getCache(KEY_CACHE_NAME);
+      JoinKeysCacheKey cacheKey = null;
+      if (keyCache != null) {
+        cacheKey =
+            new JoinKeysCacheKey(
+                zkHost, solrUrl, collection, query, fromField, toField, fq, otherParamsString);
+        JoinKeys keys = keyCache.get(cacheKey);
+        if (keys != null && !keys.isExpired(ttl)) {
+          collector.replay(keys);
+          return collector.getDocSet();
+        }
+        collector.recordKeys();
+      }
+
+      SolrClientCache solrClientCache = searcher.getCore().getCoreContainer().getSolrClientCache();
+      TupleStream solrStream;
+      if (zkHost != null || solrUrl == null) {
+        solrStream = createCloudSolrStream(solrClientCache, fq);
+      } else {
+        solrStream = createSolrStream(fq);
+      }
+
       try {
         solrStream.open();
         while (true) {
@@ -320,6 +515,12 @@ public class CrossCollectionJoinQuery extends Query implements SolrSearcherRequi
         solrStream.close();
       }
 
+      if (cacheKey != null) {
+        JoinKeys keys = collector.getRecordedKeys();
+        if (keys != null) {
+          keyCache.put(cacheKey, keys);
+        }
+      }
       return collector.getDocSet();
     }
 
@@ -21,7 +21,11 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanClause.Occur;
@@ -37,16 +41,21 @@ import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.util.BitSetIterator;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.BytesRefHash;
 import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.LongBitSet;
+import org.apache.lucene.util.LongValues;
 import org.apache.lucene.util.automaton.Automaton;
 import org.apache.lucene.util.automaton.DaciukMihovAutomatonBuilder;
 import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.StrField;
 import org.apache.solr.search.BitDocSet;
 import org.apache.solr.search.DocSet;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.search.SolrSearcherRequirer;
+import org.apache.solr.search.TopLevelJoinIndex;
 
 /**
  * GraphQuery - search for nodes and traverse edges in an index.
@@ -73,6 +82,15 @@ public class GraphQuery extends Query implements SolrSearcherRequirer {
   /** A query to apply while traversing the graph to filter out edges */
   private Query traversalFilter;
 
+  /**
+   * If not null, only documents on a walk of at most maxDepth edges from a document matching the
+   * initial query to a document matching this query are returned, that is documents whose distance
+   * from a root plus their distance to a target is at most maxDepth. Walks may revisit documents,
+   * so this includes documents only reachable through a target, such as the rest of a cycle that
+   * leads back to it.
+   */
+  private Query targetQuery;
+
   /** The max depth to traverse the graph, -1 means no limit. */
   private int maxDepth = -1;
 
@@ -131,6 +149,9 @@ public class GraphQuery extends Query implements SolrSearcherRequirer {
     if (traversalFilter != null) {
       sb.append(" [TraversalFilter: ").append(traversalFilter.toString()).append(']');
     }
+    if (targetQuery != null) {
+      sb.append(" [TargetQuery: ").append(targetQuery.toString()).append(']');
+    }
     sb.append("[maxDepth=").append(maxDepth).append(']');
     sb.append("[returnRoot=").append(returnRoot).append(']');
     sb.append("[onlyLeafNodes=").append(onlyLeafNodes).append(']');
@@ -179,6 +200,13 @@ public class GraphQuery extends Query implements SolrSearcherRequirer {
      * @throws IOException - if a sub search fails... maybe other cases too! :)
      */
     private DocSet getDocSet() throws IOException {
+      final Hop forward = createHop(collectSchemaField, matchSchemaField);
+      if (targetQuery != null) {
+        return getPathDocSet(forward, createHop(matchSchemaField, collectSchemaField));
+      } else if (forward instanceof IndexHop) {
+        return getTraversalDocSet(forward);
+      }
+
       // Size that the bit set needs to be.
       int capacity = fromSearcher.getRawReader().maxDoc();
       // The bit set to contain the results that match the query.
@@ -252,6 +280,234 @@ public class GraphQuery extends Query implements SolrSearcherRequirer {
       }
     }
 
+    /**
+     * Breadth first traversal expanding whole frontiers at once with the given {@link Hop}. Returns
+     * the same documents as the query driven traversal above.
+     */
+    private DocSet getTraversalDocSet(Hop forward) throws IOException {
+      final FixedBitSet rootBits = fromSearcher.getDocSetBits(q).getBits();
+      final FixedBitSet resultBits = rootBits.clone();
+      final FixedBitSet filterBits =
+          traversalFilter == null ? null : fromSearcher.getDocSetBits(traversalFilter).getBits();
+      FixedBitSet frontier = rootBits;
+      for (currentDepth = 0; maxDepth == -1 || currentDepth < maxDepth; currentDepth++) {
+        final FixedBitSet next = forward.neighbors(frontier);
+        if (filterBits != null) {
+          next.and(filterBits);
+        }
+        next.andNot(resultBits);
+        if (isEmpty(next)) {
+          break;
+        }
+        resultBits.or(next);
+        frontier = next;
+      }
+      return finishResult(resultBits, rootBits);
+    }
+
+    /**
+     * Bidirectional traversal returning the documents on a walk of at most maxDepth edges from a
+     * root to a document matching the {@link #getTargetQuery() target query}. Unlike a simple path,
+     * a walk may pass through a target or any other document more than once.
+     *
+     * <p>The graph is first traversed backwards from the targets, recording how many hops each
+     * document is away from the closest target. The forward traversal from the roots then only
+     * keeps (and expands) documents that can still reach a target within the remaining depth, so it
+     * never explores branches that cannot be part of a result path.
+     */
+    private DocSet getPathDocSet(Hop forward, Hop backward) throws IOException {
+      final int depth = maxDepth == -1 ? Integer.MAX_VALUE : maxDepth;
+      final FixedBitSet filterBits =
+          traversalFilter == null ? null : fromSearcher.getDocSetBits(traversalFilter).getBits();
+
+      // backward layers: documents first reached after 0, 1, 2, ... hops from the targets
+      final List<FixedBitSet> layers = new ArrayList<>();
+      final FixedBitSet reachesTarget = fromSearcher.getDocSetBits(targetQuery).getBits().clone();
+      layers.add(reachesTarget.clone());
+      FixedBitSet frontier = reachesTarget;
+      for (int i = 0; i < depth; i++) {
+        final FixedBitSet previous = backward.neighbors(frontier);
+        if (filterBits != null) {
+          previous.and(filterBits);
+        }
+        previous.andNot(reachesTarget);
+        if (isEmpty(previous)) {
+          break;
+        }
+        reachesTarget.or(previous);
+        layers.add(previous);
+        frontier = previous;
+      }
+
+      // forward traversal, pruned to documents within the remaining distance of a target
+      final FixedBitSet rootBits = fromSearcher.getDocSetBits(q).getBits();
+      final FixedBitSet resultBits = rootBits.clone();
+      resultBits.and(reachesTarget);
+      frontier = resultBits;
+      for (currentDepth = 0; currentDepth < depth; currentDepth++) {
+        // documents more than depth - (currentDepth + 1) hops away from a target are now useless
+        final int remaining = depth - (currentDepth + 1);
+        if (remaining + 1 < layers.size()) {
+          reachesTarget.andNot(layers.get(remaining + 1));
+        }
+        final FixedBitSet next = forward.neighbors(frontier);
+        next.and(reachesTarget);
+        if (filterBits != null) {
+          next.and(filterBits);
+        }
+        next.andNot(resultBits);
+        if (isEmpty(next)) {
+          break;
+        }
+        resultBits.or(next);
+        frontier = next;
+      }
+      return finishResult(resultBits, rootBits);
+    }
+
+    private boolean isEmpty(FixedBitSet bits) {
+      return bits.length() == 0 || bits.nextSetBit(0) == DocIdSetIterator.NO_MORE_DOCS;
+    }
+
+    private DocSet finishResult(FixedBitSet resultBits, FixedBitSet rootBits) throws IOException {
+      if (!returnRoot) {
+        resultBits.andNot(rootBits);
+      }
+      final BitDocSet resultSet = new BitDocSet(resultBits);
+      return onlyLeafNodes ? resultSet.intersection(resolveLeafNodes()) : resultSet;
+    }
+
+    /**
+     * Returns a {@link Hop} following edges from the values of <code>collectField</code> to the
+     * documents with the same values in <code>matchField</code>, using a cached {@link
+     * TopLevelJoinIndex} if both are string fields with (SORTED or SORTED_SET) docValues and the
+     * searcher has a join index cache.
+     */
+    private Hop createHop(SchemaField collectField, SchemaField matchField) throws IOException {
+      if (collectField.hasDocValues()
+          && matchField.hasDocValues()
+          && collectField.getType() instanceof StrField
+          && matchField.getType() instanceof StrField) {
+        final TopLevelJoinIndex joinIndex =
+            TopLevelJoinIndex.getJoinIndex(
+                fromSearcher, collectField.getName(), fromSearcher, matchField.getName());
+        if (joinIndex != null && joinIndex.hasPostings()) {
+          return new IndexHop(collectField.getName(), joinIndex);
+        }
+      }
+      return new QueryHop(collectField, matchField);
+    }
+
+    /** Finds the neighbors of a set of documents */
+    private interface Hop {
+      /** Returns a new bit set of the documents adjacent to the given ones */
+      FixedBitSet neighbors(FixedBitSet docs) throws IOException;
+    }
+
+    /**
+     * Collects the edge values of the frontier with a {@link GraphEdgeCollector} and searches for
+     * the documents matching them.
+     */
+    private class QueryHop implements Hop {
+      private final SchemaField collectField;
+      private final SchemaField matchField;
+
+      QueryHop(SchemaField collectField, SchemaField matchField) {
+        this.collectField = collectField;
+        this.matchField = matchField;
+      }
+
+      @Override
+      public FixedBitSet neighbors(FixedBitSet docs) throws IOException {
+        final GraphEdgeCollector collector =
+            collectField.getType().isPointField()
+                ? new GraphPointsCollector(collectField, null, null)
+                : new GraphEdgeCollector.GraphTermsCollector(collectField, null, null);
+        fromSearcher.search(new BitDocSet(docs).makeQuery(), collector);
+        final Query edgeQuery = collector.getResultQuery(matchField, isUseAutn());
+        if (edgeQuery == null) {
+          return new FixedBitSet(docs.length());
+        }
+        return fromSearcher.getDocSetBits(edgeQuery).getBits().clone();
+      }
+    }
+
+    /**
+     * Maps the top-level ordinals of the frontier's edge values to documents with a {@link
+     * TopLevelJoinIndex}. Ordinals are collected in parallel, one task per searcher slice.
+     */
+    private class IndexHop implements Hop {
+      private final String collectField;
+      private final TopLevelJoinIndex joinIndex;
+
+      IndexHop(String collectField, TopLevelJoinIndex joinIndex) {
+        this.collectField = collectField;
+        this.joinIndex = joinIndex;
+      }
+
+      @Override
+      public FixedBitSet neighbors(FixedBitSet docs) throws IOException {
+        final LongBitSet ords = collectOrdinals(docs);
+        return joinIndex.toDocs(joinIndex.toOrdinals(ords), docs.length()).getBits();
+      }
+
+      private LongBitSet collectOrdinals(FixedBitSet docs) throws IOException {
+        final SortedSetDocValues topLevel =
+            DocValues.getSortedSet(fromSearcher.getSlowAtomicReader(), collectField);
+        final long valueCount = topLevel.getValueCount();
+        if (!(topLevel instanceof MultiDocValues.MultiSortedSetDocValues multi)) {
+          final LongBitSet ords = new LongBitSet(valueCount);
+          collectOrdinals(docs, 0, docs.length(), topLevel, LongValues.IDENTITY, ords);
+          return ords;
+        }
+
+        final List<Callable<LongBitSet>> tasks = new ArrayList<>();
+        for (IndexSearcher.LeafSlice slice : fromSearcher.getSlices()) {
+          tasks.add(
+              () -> {
+                final LongBitSet sliceOrds = new LongBitSet(valueCount);
+                for (LeafReaderContext leaf : slice.leaves) {
+                  collectOrdinals(
+                      docs,
+                      leaf.docBase,
+                      leaf.reader().maxDoc(),
+                      multi.values[leaf.ord],
+                      multi.mapping.getGlobalOrds(leaf.ord),
+                      sliceOrds);
+                }
+                return sliceOrds;
+              });
+        }
+        final List<LongBitSet> sliceOrds = fromSearcher.getTaskExecutor().invokeAll(tasks);
+        final LongBitSet ords = sliceOrds.get(0);
+        for (int i = 1; i < sliceOrds.size(); i++) {
+          ords.or(sliceOrds.get(i));
+        }
+        return ords;
+      }
+
+      private void collectOrdinals(
+          FixedBitSet docs,
+          int docBase,
+          int maxDoc,
+          SortedSetDocValues values,
+          LongValues globalOrds,
+          LongBitSet ords)
+          throws IOException {
+        final int end = docBase + maxDoc;
+        final BitSetIterator it = new BitSetIterator(docs, 0L);
+        for (int doc = it.advance(docBase); doc < end; doc = it.nextDoc()) {
+          if (values.advanceExact(doc - docBase)) {
+            for (long ord = values.nextOrd();
+                ord != SortedSetDocValues.NO_MORE_ORDS;
+                ord = values.nextOrd()) {
+              ords.set(globalOrds.get(ord));
+            }
+          }
+        }
+      }
+    }
+
     private DocSet resolveLeafNodes() throws IOException {
       String field = collectSchemaField.getName();
       BooleanQuery.Builder leafNodeQuery = new BooleanQuery.Builder();
@@ -340,6 +596,17 @@ public class GraphQuery extends Query implements SolrSearcherRequirer {
     this.traversalFilter = traversalFilter;
   }
 
+  /**
+   * @return The query matching the end nodes of the paths to return, or null for a plain traversal
+   */
+  public Query getTargetQuery() {
+    return targetQuery;
+  }
+
+  public void setTargetQuery(Query targetQuery) {
+    this.targetQuery = targetQuery;
+  }
+
   public Query getQ() {
     return q;
   }
@@ -427,6 +694,7 @@ public class GraphQuery extends Query implements SolrSearcherRequirer {
     result = prime * result + (returnRoot ? 1231 : 1237);
     result = prime * result + Objects.hashCode(toField);
     result = prime * result + Objects.hashCode(traversalFilter);
+    result = prime * result + Objects.hashCode(targetQuery);
     result = prime * result + (useAutn ? 1231 : 1237);
     return result;
   }
@@ -444,7 +712,8 @@ public class GraphQuery extends Query implements SolrSearcherRequirer {
         && useAutn == other.useAutn
         && Objects.equals(q, other.q)
         && Objects.equals(toField, other.toField)
-        && Objects.equals(traversalFilter, other.traversalFilter);
+        && Objects.equals(traversalFilter, other.traversalFilter)
+        && Objects.equals(targetQuery, other.targetQuery);
   }
 
   @Override
@@ -41,6 +41,8 @@ public class GraphQueryParser extends QParser {
     String traversalFilterS = localParams.get("traversalFilter");
     Query traversalFilter =
         traversalFilterS == null ? null : subQuery(traversalFilterS, null).getQuery();
+    String targetQueryS = localParams.get("targetQuery");
+    Query targetQuery = targetQueryS == null ? null : subQuery(targetQueryS, null).getQuery();
 
     // NOTE: the from/to are reversed from {!join}
     String fromField = localParams.get("from", "node_id");
@@ -66,6 +68,7 @@ public class GraphQueryParser extends QParser {
     gq.setOnlyLeafNodes(onlyLeafNodes);
     gq.setReturnRoot(returnRootNodes);
     gq.setUseAutn(useAutn);
+    gq.setTargetQuery(targetQuery);
     // return the parsed graph query.
     return gq;
   }
@@ -222,6 +222,35 @@ public abstract class StatsCache implements PluginInfoInitialized {
 
   protected abstract StatsSource doGet(SolrQueryRequest req);
 
+  /**
+   * Add the version of the local statistics to the response of a shard request that carries global
+   * stats, so that the requester can tell whether the stats it has cached for this shard are still
+   * current. The default implementation does nothing.
+   *
+   * @param rb response builder
+   * @param searcher current local searcher
+   */
+  public void returnLocalStatsVersion(ResponseBuilder rb, SolrIndexSearcher searcher) {}
+
+  /**
+   * Process the versions of local statistics returned by shards together with their regular
+   * responses, see {@link #returnLocalStatsVersion(ResponseBuilder, SolrIndexSearcher)}. The
+   * default implementation does nothing.
+   *
+   * @param req query request
+   * @param responses responses from shards
+   */
+  public void checkLocalStatsVersions(SolrQueryRequest req, List<ShardResponse> responses) {}
+
+  /**
+   * Called when the searcher this instance belongs to is warmed (or bootstrapped, if it is the first
+   * searcher of the core), so that implementations can prepare statistics off the request path. The
+   * default implementation does nothing.
+   *
+   * @param searcher the new searcher
+   */
+  public void warm(SolrIndexSearcher searcher) {}
+
   /** Clear cached statistics. */
   public void clear() {
     statsCacheMetrics.clear();
@@ -0,0 +1,682 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.stats;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.TermStatistics;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.PriorityQueue;
+import org.apache.lucene.util.StringHelper;
+import org.apache.solr.cloud.CloudDescriptor;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.StrUtils;
+import org.apache.solr.core.PluginInfo;
+import org.apache.solr.handler.component.HttpShardHandler;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.handler.component.ShardRequest;
+import org.apache.solr.handler.component.ShardResponse;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.CaffeineCache;
+import org.apache.solr.search.SolrCache;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Like {@link ExactStatsCache} this implementation sends global statistics to the shards with every
+ * request, but it skips the additional round-trip to retrieve them when the statistics of all terms
+ * of the query are already cached.
+ *
+ * <p>Each shard prepares a summary of its local statistics when its searcher is warmed: the
+ * collection statistics of all indexed fields, and the statistics of the most frequent terms of the
+ * tokenized fields (or of the fields listed in the <code>summaryFields</code> attribute). The
+ * number of terms per field is {@link #DEFAULT_SUMMARY_TERMS} unless set by the <code>
+ * summaryTerms</code> attribute; fields with fewer terms are summarized completely. The most
+ * frequent terms of each segment are found once per segment, and the summary keeps the most
+ * frequent of these across all segments, so that opening a searcher only walks the terms of new
+ * segments. The summary is identified by a version, which is derived from the collection statistics
+ * and the segments of the index, and thus changes whenever documents are added, or when segments
+ * are merged, but not when documents are only deleted, since deletions don't change statistics.
+ *
+ * <p>The requesting node retrieves the summaries of the shards with the first request, and then
+ * keeps them per shard, together with the statistics of terms which were not part of a summary and
+ * had to be retrieved (at most <code>size</code> terms per shard, by default {@link
+ * #DEFAULT_MAX_SIZE}). Shards return the version of their statistics with each regular query
+ * response, and when it differs from the cached one, the statistics of the shard are retrieved
+ * again with the next request. Like with {@link LRUStatsCache} the cached statistics have the same
+ * life-cycle as the local SolrIndexSearcher.
+ *
+ * <p>NOTE: the terms of a query are determined by rewriting it against the local index, see {@link
+ * #approxCheckMissingStats(ResponseBuilder, StatsSource, java.util.function.Consumer,
+ * java.util.function.Consumer)} for the caveats.
+ */
+public class SummaryStatsCache extends ExactStatsCache {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final int DEFAULT_SUMMARY_TERMS = 1000;
+  public static final int DEFAULT_MAX_SIZE = 10000;
+
+  public static final String SUMMARY_TERMS_PARAM = "summaryTerms";
+  public static final String SUMMARY_FIELDS_PARAM = "summaryFields";
+
+  /** Version of the local statistics of a shard. */
+  public static final String VERSION_KEY = "solr.stats.version";
+
+  /** Request for the summary of the local statistics of a shard. */
+  public static final String SUMMARY_KEY = "solr.stats.summary";
+
+  /** Collection statistics of all the fields of a shard. */
+  public static final String SUMMARY_COL_STATS_KEY = "solr.stats.summary.col";
+
+  /** Map of the most frequent terms of a shard and {@link TermStats}. */
+  public static final String SUMMARY_TERM_STATS_KEY = "solr.stats.summary.term";
+
+  /** Fields whose terms are all part of the summary. */
+  public static final String SUMMARY_COMPLETE_FIELDS_KEY = "solr.stats.summary.complete";
+
+  // terms of the current query, as found by the requester
+  private static final String QUERY_TERMS = "solr.stats.queryTerms";
+
+  // stats of a term a shard doesn't have
+  private static final TermStats ABSENT = new TermStats("", 0, 0);
+
+  // most frequent terms of the fields of the segments, by segment core and then field
+  private static final Map<IndexReader.CacheKey, Map<String, SegmentTerms>> SEGMENT_TERMS =
+      new ConcurrentHashMap<>();
+
+  // reports all terms and fields as missing, to collect them
+  private static final StatsSource NO_STATS =
+      new StatsSource() {
+        @Override
+        public TermStatistics termStatistics(
+            SolrIndexSearcher localSearcher, Term term, int docFreq, long totalTermFreq) {
+          return null;
+        }
+
+        @Override
+        public CollectionStatistics collectionStatistics(
+            SolrIndexSearcher localSearcher, String field) {
+          return null;
+        }
+      };
+
+  private int summaryTerms = DEFAULT_SUMMARY_TERMS;
+  private Set<String> summaryFields;
+  private final Map<String, String> termCacheInitArgs = new HashMap<>();
+
+  // summary of the local stats of the searcher this instance belongs to
+  private volatile Summary localSummary;
+
+  // stats obtained from shard servers, map of <shardName, shardStats>
+  private final Map<String, ShardStats> perShardStats = new ConcurrentHashMap<>();
+
+  @Override
+  public void init(PluginInfo info) {
+    super.init(info);
+    if (info != null && info.attributes != null) {
+      String terms = info.attributes.get(SUMMARY_TERMS_PARAM);
+      if (terms != null) {
+        summaryTerms = Integer.parseInt(terms);
+      }
+      String fields = info.attributes.get(SUMMARY_FIELDS_PARAM);
+      if (fields != null) {
+        summaryFields = new HashSet<>();
+        for (String field : StrUtils.splitSmart(fields, ',')) {
+          summaryFields.add(field.trim());
+        }
+      }
+      String size = info.attributes.get(SolrCache.SIZE_PARAM);
+      if (size != null) {
+        termCacheInitArgs.put(SolrCache.SIZE_PARAM, size);
+      }
+    }
+    termCacheInitArgs.computeIfAbsent(SolrCache.SIZE_PARAM, s -> String.valueOf(DEFAULT_MAX_SIZE));
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    perShardStats.clear();
+  }
+
+  @Override
+  public void warm(SolrIndexSearcher searcher) {
+    try {
+      getLocalSummary(searcher);
+    } catch (IOException e) {
+      log.warn("Error summarizing local stats, will retry on request", e);
+    }
+  }
+
+  @Override
+  protected ShardRequest doRetrieveStatsRequest(ResponseBuilder rb) {
+    // rewrite locally to find the terms of the query
+    Set<Term> queryTerms = new HashSet<>();
+    try {
+      approxCheckMissingStats(rb, NO_STATS, queryTerms::add, f -> {});
+    } catch (IOException e) {
+      log.warn(
+          "Exception checking missing stats for query {}, forcing retrieving stats",
+          rb.getQuery(),
+          e);
+      return retrieveStatsRequest(rb, true, Collections.emptySet());
+    }
+    rb.req.getContext().put(QUERY_TERMS, queryTerms);
+
+    boolean needSummary = false;
+    boolean missing = false;
+    for (String shard : getShards(rb)) {
+      ShardStats shardStats = perShardStats.get(shard);
+      if (shardStats == null || shardStats.summary == null) {
+        needSummary = true;
+        break;
+      }
+      for (Term term : queryTerms) {
+        if (shardStats.getTermStats(term) == null) {
+          missing = true;
+          break;
+        }
+      }
+    }
+    if (!needSummary && !missing) {
+      // since we already incremented the stats decrement it here
+      statsCacheMetrics.retrieveStats.decrement();
+      statsCacheMetrics.useCachedGlobalStats.increment();
+      return null;
+    }
+    return retrieveStatsRequest(rb, needSummary, queryTerms);
+  }
+
+  private ShardRequest retrieveStatsRequest(
+      ResponseBuilder rb, boolean needSummary, Set<Term> queryTerms) {
+    ShardRequest sreq = super.doRetrieveStatsRequest(rb);
+    if (needSummary) {
+      sreq.params.set(SUMMARY_KEY, true);
+    }
+    if (!queryTerms.isEmpty()) {
+      // shards may rewrite the query to different terms, ask for all of ours explicitly so that
+      // the terms they don't return can be cached as absent
+      sreq.params.add(TERMS_KEY, StatsUtil.termsToEncodedString(queryTerms));
+    }
+    return sreq;
+  }
+
+  @Override
+  protected void doReturnLocalStats(ResponseBuilder rb, SolrIndexSearcher searcher) {
+    super.doReturnLocalStats(rb, searcher);
+    Summary summary = getLocalSummaryOrThrow(searcher);
+    rb.rsp.add(VERSION_KEY, summary.version);
+    if (rb.req.getParams().getBool(SUMMARY_KEY, false)) {
+      rb.rsp.add(SUMMARY_COL_STATS_KEY, StatsUtil.colStatsMapToString(summary.colStats));
+      rb.rsp.add(SUMMARY_TERM_STATS_KEY, StatsUtil.termStatsMapToString(summary.termStats));
+      rb.rsp.add(SUMMARY_COMPLETE_FIELDS_KEY, StatsUtil.fieldsToString(summary.completeFields));
+    }
+  }
+
+  @Override
+  public void returnLocalStatsVersion(ResponseBuilder rb, SolrIndexSearcher searcher) {
+    Summary summary = getLocalSummaryOrThrow(searcher);
+    CloudDescriptor cloudDescriptor = searcher.getCore().getCoreDescriptor().getCloudDescriptor();
+    if (cloudDescriptor != null) {
+      rb.rsp.add(ShardParams.SHARD_NAME, cloudDescriptor.getShardId());
+    }
+    rb.rsp.add(VERSION_KEY, summary.version);
+  }
+
+  @Override
+  public void checkLocalStatsVersions(SolrQueryRequest req, List<ShardResponse> responses) {
+    for (ShardResponse r : responses) {
+      NamedList<Object> nl = getResponse(req, r);
+      if (nl == null || nl.get(VERSION_KEY) == null) {
+        continue;
+      }
+      String shard = getShard(r, nl);
+      ShardStats shardStats = perShardStats.get(shard);
+      if (shardStats != null && !shardStats.version.equals(nl.get(VERSION_KEY))) {
+        log.debug("Stats of shard={} changed, version={}", shard, nl.get(VERSION_KEY));
+        perShardStats.remove(shard, shardStats);
+      }
+    }
+  }
+
+  @Override
+  protected void doMergeToGlobalStats(SolrQueryRequest req, List<ShardResponse> responses) {
+    List<ShardStats> responded = new ArrayList<>();
+    for (ShardResponse r : responses) {
+      NamedList<Object> nl = getResponse(req, r);
+      if (nl == null || nl.get(VERSION_KEY) == null) {
+        continue;
+      }
+      String shard = getShard(r, nl);
+      String version = (String) nl.get(VERSION_KEY);
+      String colStatsString = (String) nl.get(SUMMARY_COL_STATS_KEY);
+      ShardStats shardStats;
+      if (colStatsString != null) {
+        Summary summary =
+            new Summary(
+                version,
+                orEmpty(StatsUtil.colStatsMapFromString(colStatsString)),
+                orEmpty(StatsUtil.termStatsMapFromString((String) nl.get(SUMMARY_TERM_STATS_KEY))),
+                StatsUtil.fieldsFromString((String) nl.get(SUMMARY_COMPLETE_FIELDS_KEY)));
+        shardStats = new ShardStats(shard, summary);
+        perShardStats.put(shard, shardStats);
+      } else {
+        shardStats =
+            perShardStats.compute(
+                shard,
+                (s, old) ->
+                    old != null && old.version.equals(version) ? old : new ShardStats(s, version));
+      }
+      responded.add(shardStats);
+    }
+    super.doMergeToGlobalStats(req, responses);
+
+    // the terms we asked for that a shard didn't return don't exist there
+    @SuppressWarnings({"unchecked"})
+    Set<Term> queryTerms = (Set<Term>) req.getContext().get(QUERY_TERMS);
+    if (queryTerms != null) {
+      for (ShardStats shardStats : responded) {
+        for (Term term : queryTerms) {
+          if (shardStats.getTermStats(term) == null) {
+            shardStats.termStats.put(term.toString(), ABSENT);
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  protected void addToPerShardColStats(
+      SolrQueryRequest req, String shard, Map<String, CollectionStats> colStats) {
+    ShardStats shardStats = perShardStats.get(shard);
+    if (shardStats != null) {
+      shardStats.colStats.putAll(colStats);
+    }
+  }
+
+  @Override
+  protected Map<String, CollectionStats> getPerShardColStats(ResponseBuilder rb, String shard) {
+    ShardStats shardStats = perShardStats.get(shard);
+    return shardStats != null ? shardStats.colStats : null;
+  }
+
+  @Override
+  protected void addToPerShardTermStats(
+      SolrQueryRequest req, String shard, String termStatsString) {
+    Map<String, TermStats> termStats = StatsUtil.termStatsMapFromString(termStatsString);
+    ShardStats shardStats = perShardStats.get(shard);
+    if (termStats != null && shardStats != null) {
+      for (Map.Entry<String, TermStats> e : termStats.entrySet()) {
+        shardStats.termStats.put(e.getKey(), e.getValue());
+      }
+    }
+  }
+
+  @Override
+  protected TermStats getPerShardTermStats(SolrQueryRequest req, String t, String shard) {
+    ShardStats shardStats = perShardStats.get(shard);
+    int idx = t.indexOf(':');
+    if (shardStats == null || idx == -1) {
+      return null;
+    }
+    return shardStats.getTermStats(t, t.substring(0, idx));
+  }
+
+  @Override
+  protected void doSendGlobalStats(ResponseBuilder rb, ShardRequest outgoing) {
+    // when the stats were not retrieved for this request, the terms are only known locally
+    @SuppressWarnings({"unchecked"})
+    Set<Term> queryTerms = (Set<Term>) rb.req.getContext().get(QUERY_TERMS);
+    if (queryTerms != null && !queryTerms.isEmpty()) {
+      Set<Term> terms =
+          StatsUtil.termsFromEncodedString((String) rb.req.getContext().get(TERMS_KEY));
+      if (terms.addAll(queryTerms)) {
+        rb.req.getContext().put(TERMS_KEY, StatsUtil.termsToEncodedString(terms));
+      }
+    }
+    super.doSendGlobalStats(rb, outgoing);
+  }
+
+  @Override
+  protected void printStats(SolrQueryRequest req) {
+    log.debug("perShardStats={}", perShardStats);
+  }
+
+  private List<String> getShards(ResponseBuilder rb) {
+    String collectionName = rb.req.getCore().getCoreDescriptor().getCollectionName();
+    if (collectionName == null) {
+      collectionName = rb.req.getCore().getCoreDescriptor().getName();
+    }
+    List<String> shards = new ArrayList<>();
+    for (String shardUrl : rb.shards) {
+      String shard = StatsUtil.shardUrlToShard(collectionName, shardUrl);
+      if (shard != null) {
+        shards.add(shard);
+      }
+    }
+    return shards;
+  }
+
+  private static NamedList<Object> getResponse(SolrQueryRequest req, ShardResponse r) {
+    if (HttpShardHandler.getShardsTolerantAsBool(req) && r.getException() != null) {
+      return null;
+    }
+    if (r.getSolrResponse() == null || r.getSolrResponse().getException() != null) {
+      return null;
+    }
+    return r.getSolrResponse().getResponse();
+  }
+
+  private static String getShard(ShardResponse r, NamedList<Object> nl) {
+    // response's "shard" is really a shardURL, or even a list of URLs
+    String shard = (String) nl.get(ShardParams.SHARD_NAME);
+    return shard != null ? shard : r.getShard();
+  }
+
+  private static <K, V> Map<K, V> orEmpty(Map<K, V> map) {
+    return map != null ? map : Collections.emptyMap();
+  }
+
+  private Summary getLocalSummaryOrThrow(SolrIndexSearcher searcher) {
+    try {
+      return getLocalSummary(searcher);
+    } catch (IOException e) {
+      log.error("Error summarizing local stats", e);
+      throw new SolrException(ErrorCode.SERVER_ERROR, "Error summarizing local stats.", e);
+    }
+  }
+
+  private Summary getLocalSummary(SolrIndexSearcher searcher) throws IOException {
+    Summary summary = localSummary;
+    if (summary == null) {
+      synchronized (this) {
+        summary = localSummary;
+        if (summary == null) {
+          summary = localSummary = summarize(searcher);
+        }
+      }
+    }
+    return summary;
+  }
+
+  private Summary summarize(SolrIndexSearcher searcher) throws IOException {
+    // sorted, so that replicas with the same stats get the same version
+    Map<String, CollectionStats> colStats = new TreeMap<>();
+    Map<String, TermStats> termStats = new HashMap<>();
+    Set<String> completeFields = new HashSet<>();
+    for (FieldInfo fieldInfo : searcher.getFieldInfos()) {
+      if (fieldInfo.getIndexOptions() == IndexOptions.NONE) {
+        continue;
+      }
+      CollectionStatistics stats = searcher.localCollectionStatistics(fieldInfo.name);
+      if (stats == null) {
+        continue;
+      }
+      colStats.put(fieldInfo.name, new CollectionStats(stats));
+      if (isSummaryField(searcher, fieldInfo.name)
+          && summarizeTerms(searcher, fieldInfo.name, termStats)) {
+        completeFields.add(fieldInfo.name);
+      }
+    }
+    long version = 1;
+    for (CollectionStats stats : colStats.values()) {
+      version = 31 * version + stats.field.hashCode();
+      version = 31 * version + stats.maxDoc;
+      version = 31 * version + stats.docCount;
+      version = 31 * version + stats.sumTotalTermFreq;
+      version = 31 * version + stats.sumDocFreq;
+    }
+    // the stats of terms can change while the collection stats stay the same, e.g. when a document
+    // is replaced by one of the same length and then merged away; they can't while the segments
+    // stay the same
+    for (String segment : segmentIds(searcher)) {
+      version = 31 * version + segment.hashCode();
+    }
+    if (log.isDebugEnabled()) {
+      log.debug(
+          "Summarized local stats, fields={}, terms={}, completeFields={}",
+          colStats.size(),
+          termStats.size(),
+          completeFields);
+    }
+    return new Summary(Long.toHexString(version), colStats, termStats, completeFields);
+  }
+
+  private boolean isSummaryField(SolrIndexSearcher searcher, String field) {
+    if (summaryFields != null) {
+      return summaryFields.contains(field);
+    }
+    SchemaField schemaField = searcher.getSchema().getFieldOrNull(field);
+    return schemaField != null && schemaField.getType().isTokenized();
+  }
+
+  /** Identifiers of the segments of the index, sorted, or of the segment cores if unknown. */
+  private static List<String> segmentIds(SolrIndexSearcher searcher) {
+    List<String> ids = new ArrayList<>();
+    for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+      LeafReader reader = FilterLeafReader.unwrap(leaf.reader());
+      if (reader instanceof SegmentReader) {
+        ids.add(StringHelper.idToString(((SegmentReader) reader).getSegmentInfo().info.getId()));
+      } else {
+        IndexReader.CacheHelper cacheHelper = reader.getCoreCacheHelper();
+        ids.add(cacheHelper == null ? reader.toString() : cacheHelper.getKey().toString());
+      }
+    }
+    Collections.sort(ids);
+    return ids;
+  }
+
+  /**
+   * Adds the stats of the most frequent terms of a field to <code>termStats</code>. These are the
+   * most frequent of the terms that are among the most frequent of at least one segment, which
+   * spares walking the terms of all segments whenever a searcher is opened.
+   *
+   * @return true if the field has no other terms
+   */
+  private boolean summarizeTerms(
+      SolrIndexSearcher searcher, String field, Map<String, TermStats> termStats)
+      throws IOException {
+    if (summaryTerms <= 0) {
+      return false;
+    }
+    Terms terms = MultiTerms.getTerms(searcher.getIndexReader(), field);
+    if (terms == null) {
+      return true;
+    }
+    boolean complete = true;
+    Set<BytesRef> candidates = new HashSet<>();
+    for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+      SegmentTerms segmentTerms = getSegmentTerms(leaf.reader(), field);
+      complete &= segmentTerms.complete;
+      candidates.addAll(segmentTerms.terms);
+    }
+
+    PriorityQueue<TermStats> queue =
+        new PriorityQueue<>(summaryTerms) {
+          @Override
+          protected boolean lessThan(TermStats a, TermStats b) {
+            return a.docFreq < b.docFreq;
+          }
+        };
+    TermsEnum termsEnum = terms.iterator();
+    for (BytesRef term : candidates) {
+      if (termsEnum.seekExact(term)) {
+        queue.insertWithOverflow(
+            new TermStats(
+                new Term(field, term).toString(), termsEnum.docFreq(), termsEnum.totalTermFreq()));
+      }
+    }
+    for (TermStats stats : queue) {
+      termStats.put(stats.term, stats);
+    }
+    return complete && candidates.size() <= summaryTerms;
+  }
+
+  /** Returns the most frequent terms of a field of a segment, computing them once per segment */
+  private SegmentTerms getSegmentTerms(LeafReader reader, String field) throws IOException {
+    IndexReader.CacheHelper cacheHelper = reader.getCoreCacheHelper();
+    if (cacheHelper == null) {
+      return segmentTerms(reader, field);
+    }
+    Map<String, SegmentTerms> fields =
+        SEGMENT_TERMS.computeIfAbsent(
+            cacheHelper.getKey(),
+            key -> {
+              cacheHelper.addClosedListener(SEGMENT_TERMS::remove);
+              return new ConcurrentHashMap<>();
+            });
+    SegmentTerms segmentTerms = fields.get(field);
+    if (segmentTerms == null || segmentTerms.maxTerms != summaryTerms) {
+      segmentTerms = segmentTerms(reader, field);
+      fields.put(field, segmentTerms);
+    }
+    return segmentTerms;
+  }
+
+  private SegmentTerms segmentTerms(LeafReader reader, String field) throws IOException {
+    Terms terms = reader.terms(field);
+    if (terms == null) {
+      return new SegmentTerms(summaryTerms, Collections.emptyList(), true);
+    }
+    PriorityQueue<SegmentTerm> queue =
+        new PriorityQueue<>(summaryTerms) {
+          @Override
+          protected boolean lessThan(SegmentTerm a, SegmentTerm b) {
+            return a.docFreq < b.docFreq;
+          }
+        };
+    boolean complete = true;
+    TermsEnum termsEnum = terms.iterator();
+    for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+      int docFreq = termsEnum.docFreq();
+      if (queue.size() == summaryTerms) {
+        complete = false;
+        if (docFreq <= queue.top().docFreq) {
+          continue;
+        }
+      }
+      queue.insertWithOverflow(new SegmentTerm(BytesRef.deepCopyOf(term), docFreq));
+    }
+    List<BytesRef> topTerms = new ArrayList<>(queue.size());
+    for (SegmentTerm segmentTerm : queue) {
+      topTerms.add(segmentTerm.term);
+    }
+    return new SegmentTerms(summaryTerms, topTerms, complete);
+  }
+
+  private record SegmentTerm(BytesRef term, int docFreq) {}
+
+  /** The most frequent terms of a field of a segment. */
+  private record SegmentTerms(int maxTerms, List<BytesRef> terms, boolean complete) {}
+
+  /** Local statistics of a shard, identified by a version. */
+  private static final class Summary {
+    final String version;
+    final Map<String, CollectionStats> colStats;
+    final Map<String, TermStats> termStats;
+    final Set<String> completeFields;
+
+    Summary(
+        String version,
+        Map<String, CollectionStats> colStats,
+        Map<String, TermStats> termStats,
+        Set<String> completeFields) {
+      this.version = version;
+      this.colStats = colStats;
+      this.termStats = termStats;
+      this.completeFields = completeFields;
+    }
+  }
+
+  /** Cached statistics of a shard, for one version of its local statistics. */
+  private final class ShardStats {
+    final String version;
+    // null until retrieved
+    final Summary summary;
+    final Map<String, CollectionStats> colStats = new ConcurrentHashMap<>();
+    // stats of terms which were retrieved because they are not part of the summary
+    final SolrCache<String, TermStats> termStats;
+
+    ShardStats(String shard, Summary summary) {
+      this(shard, summary.version, summary);
+      colStats.putAll(summary.colStats);
+    }
+
+    ShardStats(String shard, String version) {
+      this(shard, version, null);
+    }
+
+    private ShardStats(String shard, String version, Summary summary) {
+      this.version = version;
+      this.summary = summary;
+      CaffeineCache<String, TermStats> cache = new CaffeineCache<>();
+      Map<String, String> map = new HashMap<>(termCacheInitArgs);
+      map.put(CommonParams.NAME, shard);
+      cache.init(map, null, null);
+      cache.setState(SolrCache.State.LIVE);
+      this.termStats = cache;
+    }
+
+    TermStats getTermStats(Term term) {
+      return getTermStats(term.toString(), term.field());
+    }
+
+    TermStats getTermStats(String term, String field) {
+      TermStats stats = termStats.get(term);
+      if (stats == null && summary != null) {
+        stats = summary.termStats.get(term);
+        if (stats == null
+            && (summary.completeFields.contains(field) || !summary.colStats.containsKey(field))) {
+          stats = ABSENT;
+        }
+      }
+      return stats;
+    }
+
+    @Override
+    public String toString() {
+      return "version=" + version + ", colStats=" + colStats + ", termStats=" + termStats.size();
+    }
+  }
+}
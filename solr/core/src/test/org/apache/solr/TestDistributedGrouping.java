@@ -27,6 +27,7 @@ import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.GroupParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.NamedList;
@@ -1617,6 +1618,54 @@ public class TestDistributedGrouping extends BaseDistributedSearchTestCase {
     SolrDocumentList docs = (SolrDocumentList) nl.get("doclist");
     assertEquals(docs.toString(), 4, docs.getNumFound());
 
+    // top groups returned with the search groups, whether all, some or no shards have few groups
+    variantQuery(
+        params(
+            "q",
+            "*:*",
+            "rows",
+            "100",
+            "fl",
+            "id," + i1,
+            "group",
+            "true",
+            "group.field",
+            i1,
+            "group.field",
+            s1dv,
+            "group.limit",
+            "3",
+            "sort",
+            i1 + " asc, id asc"),
+        params(),
+        params(GroupParams.GROUP_SINGLE_PASS_MAX_GROUPS, "1000"),
+        params(GroupParams.GROUP_SINGLE_PASS_MAX_GROUPS, "3"),
+        params(GroupParams.GROUP_SINGLE_PASS_MAX_GROUPS, "1"));
+
+    // grouping commands collected concurrently
+    variantQuery(
+        params(
+            "q",
+            "*:*",
+            "rows",
+            "100",
+            "fl",
+            "id," + i1,
+            "group",
+            "true",
+            "group.field",
+            i1,
+            "group.field",
+            s1dv,
+            "group.query",
+            t1 + ":kings OR " + t1 + ":eggs",
+            "group.limit",
+            "10",
+            "sort",
+            i1 + " asc, id asc"),
+        params(),
+        params(CommonParams.MULTI_THREADED, "true"));
+
     // Can't validate the response, but can check if no errors occur.
     simpleQuery(
         "q",
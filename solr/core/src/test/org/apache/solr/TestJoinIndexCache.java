@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr;
+
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.search.TopLevelJoinIndex;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Tests the join indexes of <code>topLevelDV</code> joins, cached in a joinIndexCache */
+public class TestJoinIndexCache extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeTests() throws Exception {
+    initCore("solrconfig-join-index-cache.xml", "schema12.xml");
+  }
+
+  private void indexEmployeeDocs() {
+    assertU(add(doc("id", "1", "name", "john", "title", "Director", "dept_ss_dv", "Engineering")));
+    assertU(add(doc("id", "2", "name", "mark", "title", "VP", "dept_ss_dv", "Marketing")));
+    assertU(add(doc("id", "3", "name", "nancy", "title", "MTS", "dept_ss_dv", "Sales")));
+    assertU(
+        add(
+            doc(
+                "id",
+                "4",
+                "name",
+                "dave",
+                "title",
+                "MTS",
+                "dept_ss_dv",
+                "Support",
+                "dept_ss_dv",
+                "Engineering")));
+    assertU(add(doc("id", "5", "name", "tina", "title", "VP", "dept_ss_dv", "Engineering")));
+
+    assertU(add(doc("id", "10", "dept_id_indexed_sdv", "Engineering")));
+    assertU(add(doc("id", "11", "dept_id_indexed_sdv", "Marketing")));
+    assertU(add(doc("id", "12", "dept_id_indexed_sdv", "Sales")));
+    assertU(add(doc("id", "13", "dept_id_indexed_sdv", "Support")));
+
+    assertU(commit());
+  }
+
+  @Test
+  public void testTopLevelDVJoinIndexCache() throws Exception {
+    indexEmployeeDocs();
+    ModifiableSolrParams p = params("sort", "id asc", "fl", "id");
+    final String davesDepartments =
+        "/response=={'numFound':2,'start':0,'numFoundExact':true,'docs':[{'id':'10'},{'id':'13'}]}";
+
+    assertJQ(
+        req(p, "q", "{!join from=dept_ss_dv to=dept_id_indexed_sdv method=topLevelDV}name:dave"),
+        davesDepartments);
+    assertTrue(getJoinIndexCacheSize() >= 1);
+
+    // a different "from" query reuses the same join index
+    assertJQ(
+        req(p, "q", "{!join from=dept_ss_dv to=dept_id_indexed_sdv method=topLevelDV}title:MTS"),
+        "/response=={'numFound':3,'start':0,'numFoundExact':true,'docs':[{'id':'10'},{'id':'12'},{'id':'13'}]}");
+    // self join
+    assertJQ(
+        req(p, "q", "{!join from=dept_ss_dv to=dept_ss_dv method=topLevelDV}name:dave"),
+        "/response=={'numFound':3,'start':0,'numFoundExact':true,'docs':[{'id':'1'},{'id':'4'},{'id':'5'}]}");
+    assertTrue(getJoinIndexCacheSize() >= 2);
+
+    // the join indexes are rebuilt when a new searcher is warmed
+    indexEmployeeDocs();
+    assertTrue(getJoinIndexCacheSize() >= 2);
+    assertJQ(
+        req(p, "q", "{!join from=dept_ss_dv to=dept_id_indexed_sdv method=topLevelDV}name:dave"),
+        davesDepartments);
+  }
+
+  private int getJoinIndexCacheSize() throws Exception {
+    return h.getCore()
+        .withSearcher(searcher -> searcher.getCache(TopLevelJoinIndex.CACHE_NAME).size());
+  }
+}
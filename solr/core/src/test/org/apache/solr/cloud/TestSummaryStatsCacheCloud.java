@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.cloud;
+
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.embedded.JettySolrRunner;
+import org.apache.solr.search.stats.SummaryStatsCache;
+import org.junit.Test;
+
+/**
+ * Checks that {@link SummaryStatsCache} scores like a single core, and that the requesting nodes
+ * reuse the statistics of the shards instead of retrieving them with every request.
+ */
+public class TestSummaryStatsCacheCloud extends TestBaseStatsCacheCloud {
+  @Override
+  protected boolean assertSameScores() {
+    return true;
+  }
+
+  @Override
+  protected String getImplementationName() {
+    return SummaryStatsCache.class.getName();
+  }
+
+  @Test
+  public void testCachedStats() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      QueryResponse cloudRsp =
+          solrClient.query(
+              collectionName,
+              params("q", "foo_t:\"bar baz\"", "fl", "*,score", "rows", "" + NUM_DOCS));
+      QueryResponse controlRsp =
+          control.query(
+              "collection1",
+              params("q", "foo_t:\"bar baz\"", "fl", "*,score", "rows", "" + NUM_DOCS));
+      assertResponses(controlRsp, cloudRsp, assertSameScores());
+    }
+
+    // the terms are part of the shards' summaries, so after the first request on a node the
+    // stats don't need to be retrieved anymore
+    long useCachedGlobalStats = 0;
+    for (JettySolrRunner jettySolrRunner : cluster.getJettySolrRunners()) {
+      for (SolrCore core : jettySolrRunner.getCoreContainer().getCores()) {
+        useCachedGlobalStats +=
+            core.withSearcher(
+                searcher ->
+                    searcher.getStatsCache().getCacheMetrics().useCachedGlobalStats.longValue());
+      }
+    }
+    assertTrue("stats were never reused", useCachedGlobalStats > 0);
+  }
+}
@@ -432,6 +432,54 @@ public class DistributedQueryComponentOptimizationTest extends SolrCloudTestCase
         rsp, nonDistribRsp); // make sure distrib and distrib.singlePass return the same thing
   }
 
+  @Test
+  public void testDistribSinglePassDocs() throws Exception {
+    String[] q = {"q", "*:*", "fl", "id,test_sS,score", "sort", "payload asc"};
+    QueryResponse twoPassRsp =
+        cluster.getSolrClient().query(COLLECTION, new SolrQuery(q).setRows(3));
+
+    // each of the top 3 docs is within the top 3 docs of its shard
+    TrackingShardHandlerFactory.RequestTrackingQueue trackingQueue =
+        new TrackingShardHandlerFactory.RequestTrackingQueue();
+    TrackingShardHandlerFactory.setTrackingQueue(cluster, trackingQueue);
+    QueryResponse rsp =
+        cluster
+            .getSolrClient()
+            .query(
+                COLLECTION,
+                new SolrQuery(q).setRows(3).set(ShardParams.DISTRIB_SINGLE_PASS_DOCS, 3));
+    assertFieldValues(rsp.getResults(), id, "7", "1", "6");
+    assertFieldValues(rsp.getResults(), "test_sS", "27", "21", "26");
+    compareResponses(rsp, twoPassRsp);
+    assertEquals(sliceCount, getNumRequests(trackingQueue.getAllRequests()));
+    assertEquals(
+        0, getNumRequests(trackingQueue.getAllRequests(), ShardRequest.PURPOSE_GET_FIELDS));
+
+    // the fields of the other docs are still retrieved in a second pass
+    twoPassRsp = cluster.getSolrClient().query(COLLECTION, new SolrQuery(q).setRows(10));
+    trackingQueue = new TrackingShardHandlerFactory.RequestTrackingQueue();
+    TrackingShardHandlerFactory.setTrackingQueue(cluster, trackingQueue);
+    rsp =
+        cluster
+            .getSolrClient()
+            .query(
+                COLLECTION,
+                new SolrQuery(q).setRows(10).set(ShardParams.DISTRIB_SINGLE_PASS_DOCS, 1));
+    compareResponses(rsp, twoPassRsp);
+    int retrievedDocs = 0;
+    for (List<TrackingShardHandlerFactory.ShardRequestAndParams> requests :
+        trackingQueue.getAllRequests().values()) {
+      for (TrackingShardHandlerFactory.ShardRequestAndParams request : requests) {
+        if ((request.sreq.purpose & ShardRequest.PURPOSE_GET_FIELDS) != 0) {
+          retrievedDocs += StrUtils.splitSmart(request.params.get(ShardParams.IDS), ',').size();
+        }
+      }
+    }
+    // at least the top doc isn't retrieved again
+    assertTrue(retrievedDocs > 0);
+    assertTrue("retrieved " + retrievedDocs + " docs", retrievedDocs < 10);
+  }
+
   @Test
   public void testOptimizations() throws Exception {
 
@@ -708,6 +756,20 @@ public class DistributedQueryComponentOptimizationTest extends SolrCloudTestCase
     return response;
   }
 
+  private int getNumRequests(
+      Map<String, List<TrackingShardHandlerFactory.ShardRequestAndParams>> requests, int purpose) {
+    int numRequests = 0;
+    for (List<TrackingShardHandlerFactory.ShardRequestAndParams> shardRequests :
+        requests.values()) {
+      for (TrackingShardHandlerFactory.ShardRequestAndParams request : shardRequests) {
+        if ((request.sreq.purpose & purpose) != 0) {
+          numRequests++;
+        }
+      }
+    }
+    return numRequests;
+  }
+
   private int getNumRequests(
       Map<String, List<TrackingShardHandlerFactory.ShardRequestAndParams>> requests) {
     int beforeNumRequests = 0;
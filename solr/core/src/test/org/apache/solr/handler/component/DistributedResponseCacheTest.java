@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import com.codahale.metrics.Counter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.BaseDistributedSearchTestCase;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.SolrCore;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test for the caching of distributed responses
+ *
+ * @see DistributedResponseCache
+ */
+public class DistributedResponseCacheTest extends BaseDistributedSearchTestCase {
+
+  public DistributedResponseCacheTest() {
+    stress = 0;
+  }
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    initCore("solrconfig-distrib-response-cache.xml", "schema15.xml");
+  }
+
+  @Test
+  @ShardsFixed(num = 2)
+  public void test() throws Exception {
+    del("*:*");
+
+    index_specific(0, "id", "1", "sort_i", "5");
+    index_specific(0, "id", "2", "sort_i", "50");
+    index_specific(1, "id", "5", "sort_i", "4");
+    index_specific(1, "id", "6", "sort_i", "10");
+    commit();
+
+    // the response is cached by the first request and used by the second
+    List<String> ids = queryIds(ShardParams.DISTRIB_RESPONSE_CACHE_MAX_AGE, "60000");
+    assertEquals(List.of("5", "1", "6", "2"), ids);
+    assertEquals(0, getCount("hits"));
+    assertEquals(ids, queryIds(ShardParams.DISTRIB_RESPONSE_CACHE_MAX_AGE, "60000"));
+    assertEquals(1, getCount("hits"));
+
+    // responses aren't used once the versions of the shards are too old
+    queryIds(ShardParams.DISTRIB_RESPONSE_CACHE_MAX_AGE, "0");
+    assertEquals(ids, queryIds(ShardParams.DISTRIB_RESPONSE_CACHE_MAX_AGE, "0"));
+    assertEquals(1, getCount("hits"));
+    assertTrue(getCount("staleVersions") > 0);
+
+    // nor when caching is disabled
+    queryIds(ShardParams.DISTRIB_RESPONSE_CACHE_MAX_AGE, "60000", CommonParams.CACHE, "false");
+    assertEquals(1, getCount("hits"));
+
+    // nor once the index of a shard other than the one of the coordinator has changed, which the
+    // coordinator learns from the response of that shard to another request
+    index_specific(1, "id", "7", "sort_i", "1");
+    clients.get(1).commit();
+    assertEquals(
+        List.of("7", "5", "1", "6", "2"),
+        queryIds(ShardParams.DISTRIB_RESPONSE_CACHE_MAX_AGE, "60000", "rows", "100"));
+    long staleVersions = getCount("staleVersions");
+    assertEquals(
+        List.of("7", "5", "1", "6", "2"),
+        queryIds(ShardParams.DISTRIB_RESPONSE_CACHE_MAX_AGE, "60000"));
+    assertEquals(1, getCount("hits"));
+    assertEquals(staleVersions + 1, getCount("staleVersions"));
+  }
+
+  @Test
+  @ShardsFixed(num = 1)
+  public void testCopy() {
+    SolrDocument doc = new SolrDocument();
+    doc.setField("id", "1");
+    doc.setField("tags", new ArrayList<>(List.of("a", "b")));
+    SolrDocumentList docs = new SolrDocumentList();
+    docs.setNumFound(1);
+    docs.add(doc);
+
+    SolrDocumentList copy = (SolrDocumentList) DistributedResponseCache.copy(docs);
+    assertNotSame(docs, copy);
+    assertEquals(1, copy.getNumFound());
+    assertNotSame(doc, copy.get(0));
+    assertNotSame(doc.getFieldValue("tags"), copy.get(0).getFieldValue("tags"));
+    assertEquals(doc.getFieldValue("tags"), copy.get(0).getFieldValue("tags"));
+
+    // e.g. a transformer adding a field to a document of a response
+    copy.get(0).setField("extra", "x");
+    assertNull(doc.getFieldValue("extra"));
+
+    assertSame(
+        DistributedResponseCache.UNCOPYABLE,
+        DistributedResponseCache.copy(new NamedList<>(Map.of("value", new Object()))));
+  }
+
+  private List<String> queryIds(String... extraParams) throws Exception {
+    ModifiableSolrParams params = params("q", "*:*", "sort", "sort_i asc", "fl", "id");
+    params.add(params(extraParams));
+    setDistributedParams(params);
+    // always the same coordinator, whose cache is used
+    QueryResponse rsp = clients.get(0).query(params);
+    List<String> ids = new ArrayList<>();
+    for (SolrDocument doc : rsp.getResults()) {
+      ids.add(doc.getFieldValue("id").toString());
+    }
+    return ids;
+  }
+
+  private long getCount(String name) {
+    long count = 0;
+    for (SolrCore core : jettys.get(0).getCoreContainer().getCores()) {
+      Counter counter =
+          core.getCoreMetricManager()
+              .getRegistry()
+              .getCounters()
+              .get("QUERY./select." + DistributedResponseCache.CACHE_NAME + "." + name);
+      if (counter != null) {
+        count += counter.getCount();
+      }
+    }
+    return count;
+  }
+}
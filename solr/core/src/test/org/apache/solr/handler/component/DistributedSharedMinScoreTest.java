@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.solr.BaseDistributedSearchTestCase;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.ShardParams;
+import org.junit.Test;
+
+/**
+ * Test for the sharing of the minimum competitive score between the shard requests of a search
+ *
+ * @see org.apache.solr.search.SharedMinCompetitiveScore
+ */
+public class DistributedSharedMinScoreTest extends BaseDistributedSearchTestCase {
+
+  private static final String[] TERMS = {"a", "b", "c", "d"};
+  private static final int NUM_DOCS = 600;
+
+  public DistributedSharedMinScoreTest() {
+    stress = 0;
+  }
+
+  @Test
+  @ShardsFixed(num = 3)
+  public void test() throws Exception {
+    del("*:*");
+    for (int i = 0; i < NUM_DOCS; i++) {
+      StringBuilder text = new StringBuilder();
+      for (int j = random().nextInt(10); j >= 0; j--) {
+        // skewed, so that the scores of the shards differ
+        text.append(TERMS[random().nextInt(1 + random().nextInt(TERMS.length))]).append(' ');
+      }
+      index_specific(i % clients.size(), "id", Integer.toString(i), "text", text.toString());
+    }
+    commit();
+
+    for (int i = 0; i < 20; i++) {
+      ModifiableSolrParams params =
+          params(
+              "q",
+              TERMS[random().nextInt(TERMS.length)] + " " + TERMS[random().nextInt(TERMS.length)],
+              "df",
+              "text",
+              "fl",
+              "id,score",
+              "rows",
+              Integer.toString(1 + random().nextInt(20)),
+              CommonParams.MULTI_THREADED,
+              Boolean.toString(random().nextBoolean()));
+      setDistributedParams(params);
+      QueryResponse expected = queryServer(params);
+
+      params.set(ShardParams.DISTRIB_SHARED_MIN_SCORE, true);
+      QueryResponse actual = queryServer(params);
+      // the shards may skip documents, but not any of the merged top documents
+      assertEquals(params.toString(), getIdsAndScores(expected), getIdsAndScores(actual));
+      assertTrue(actual.getResults().getNumFound() <= expected.getResults().getNumFound());
+
+      // hits are counted up to minExactCount
+      params.set(CommonParams.MIN_EXACT_COUNT, NUM_DOCS);
+      actual = queryServer(params);
+      assertEquals(params.toString(), getIdsAndScores(expected), getIdsAndScores(actual));
+      assertEquals(expected.getResults().getNumFound(), actual.getResults().getNumFound());
+      assertEquals(Boolean.TRUE, actual.getResults().getNumFoundExact());
+    }
+
+    // only for searches sorted by score
+    ModifiableSolrParams params =
+        params("q", "a", "df", "text", "fl", "id", "sort", "id asc", "rows", "5");
+    setDistributedParams(params);
+    QueryResponse expected = queryServer(params);
+    params.set(ShardParams.DISTRIB_SHARED_MIN_SCORE, true);
+    QueryResponse actual = queryServer(params);
+    assertEquals(expected.getResults().getNumFound(), actual.getResults().getNumFound());
+    assertEquals(Boolean.TRUE, actual.getResults().getNumFoundExact());
+  }
+
+  private static List<String> getIdsAndScores(QueryResponse rsp) {
+    List<String> idsAndScores = new ArrayList<>();
+    for (SolrDocument doc : rsp.getResults()) {
+      idsAndScores.add(doc.getFieldValue("id") + ":" + doc.getFieldValue("score"));
+    }
+    return idsAndScores;
+  }
+}
@@ -81,6 +81,82 @@ public class TestExpandComponent extends SolrTestCaseJ4 {
     _testExpand("group_tf_dv", ".0", ""); // explicit 0 check for 0 vs null group
   }
 
+  public void testMultiThreaded() throws Exception {
+    final String group = random().nextBoolean() ? "group_s_dv" : "group_i";
+    String[][] docs = new String[40][];
+    for (int i = 0; i < docs.length; i++) {
+      docs[i] =
+          new String[] {
+            "id",
+            Integer.toString(i),
+            group,
+            Integer.toString(i % 7),
+            "test_i",
+            Integer.toString(i % 11)
+          };
+    }
+    createIndex(docs);
+
+    for (String expandSort : new String[] {null, "test_i desc, id asc"}) {
+      for (String expandRows : new String[] {"0", "3"}) {
+        ModifiableSolrParams params =
+            params(
+                "q", "*:*",
+                "fq", "{!collapse field=" + group + "}",
+                "defType", "edismax",
+                "bf", "field(test_i)",
+                "sort", "id asc",
+                "expand", "true",
+                "expand.rows", expandRows,
+                "omitHeader", "true");
+        if (expandSort != null) {
+          params.add("expand.sort", expandSort);
+        }
+        // expanded groups collected concurrently must match those collected sequentially
+        assertEquals(
+            h.query(req(params, "multiThreaded", "false")),
+            h.query(req(params, "multiThreaded", "true")));
+      }
+    }
+  }
+
+  public void testMultiThreadedTies() throws Exception {
+    final String group = random().nextBoolean() ? "group_s_dv" : "group_i";
+    // many segments, so that the groups are collected by several slices
+    for (int i = 0; i < 60; i++) {
+      assertU(
+          adoc(
+              "id",
+              Integer.toString(i),
+              group,
+              Integer.toString(i % 3),
+              "test_i",
+              Integer.toString(i % 2)));
+      if (i % 5 == 4) {
+        assertU(commit());
+      }
+    }
+
+    // every doc of a group has the same score, and one of two sort values
+    for (String expandSort : new String[] {null, "test_i desc"}) {
+      ModifiableSolrParams params =
+          params(
+              "q", "*:*",
+              "fq", "{!collapse field=" + group + "}",
+              "sort", "id asc",
+              "expand", "true",
+              "expand.rows", "7",
+              "omitHeader", "true");
+      if (expandSort != null) {
+        params.add("expand.sort", expandSort);
+      }
+      // equal docs are expanded in the order of the sequential collection
+      assertEquals(
+          h.query(req(params, "multiThreaded", "false")),
+          h.query(req(params, "multiThreaded", "true")));
+    }
+  }
+
   private void _testExpand(String group, String floatAppend, String hint) {
     // NOTE: one of our groups uses '0' as the group value to explicitly check numeric expand for 0
     // vs null group behavior
@@ -30,6 +30,7 @@ import java.util.Set;
 import org.apache.lucene.tests.util.TestUtil;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.StreamParams;
 import org.apache.solr.common.util.SuppressForbidden;
 import org.apache.solr.common.util.Utils;
@@ -513,6 +514,53 @@ public class TestExportWriter extends SolrTestCaseJ4 {
     assertJsonEquals(s, expectedResult);
   }
 
+  @Test
+  public void testShuffle() throws Exception {
+    clearIndex();
+    for (int i = 0; i < 100; i++) {
+      String value = Integer.toString(i);
+      assertU(adoc("id", value, "intdv", value, "stringdv", "s" + i % 7));
+      if (i == 50) {
+        assertU(commit());
+      }
+    }
+    assertU(commit());
+
+    int workers = 3;
+    ModifiableSolrParams params =
+        params("q", "*:*", "qt", "/export", "fl", "id,intdv", "sort", "intdv asc");
+    params.set("partitionKeys", "stringdv");
+    List<Object> expected = new ArrayList<>();
+    for (int worker = 0; worker < workers; worker++) {
+      String fq = "{!hash workers=" + workers + " worker=" + worker + "}";
+      String s = h.query(req(params, "fq", fq));
+      expected.add(getDocs(s));
+    }
+
+    // the first worker exports the documents of all the workers, the others read theirs
+    for (int worker = 0; worker < workers; worker++) {
+      String s =
+          h.query(
+              req(
+                  params,
+                  StreamParams.SHUFFLE_ID,
+                  "shuffle1",
+                  StreamParams.SHUFFLE_WORKERS,
+                  Integer.toString(workers),
+                  StreamParams.SHUFFLE_WORKER,
+                  Integer.toString(worker)));
+      List<Object> docs = getDocs(s);
+      assertFalse(docs.isEmpty());
+      assertEquals(expected.get(worker), docs);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Object> getDocs(String response) {
+    Map<String, Object> map = (Map<String, Object>) Utils.fromJSONString(response);
+    return (List<Object>) ((Map<String, Object>) map.get("response")).get("docs");
+  }
+
   @Test
   public void testStringWithCase() throws Exception {
     clearIndex();
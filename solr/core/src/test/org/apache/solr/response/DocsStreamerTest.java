@@ -18,8 +18,10 @@ package org.apache.solr.response;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import org.apache.lucene.index.IndexableField;
 import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.util.Utils;
 import org.apache.solr.schema.SchemaField;
 import org.junit.BeforeClass;
 
@@ -40,4 +42,51 @@ public class DocsStreamerTest extends SolrTestCaseJ4 {
       assertEquals(values.get(idx - 1), value);
     }
   }
+
+  @SuppressWarnings("unchecked")
+  public void testBatches() throws Exception {
+    final int numDocs = DocsStreamer.BATCH_SIZE * 2 + random().nextInt(DocsStreamer.BATCH_SIZE);
+    for (int i = 0; i < numDocs; i++) {
+      if (i % 3 == 0) {
+        // a document without the docValues only field
+        assertU(adoc("id", Integer.toString(i), "num_i_dv", Integer.toString(i)));
+      } else {
+        assertU(
+            adoc("id", Integer.toString(i), "num_i_dv", Integer.toString(i), "val_sdv", "v" + i));
+      }
+      if (random().nextInt(50) == 0) {
+        assertU(commit()); // more segments
+      }
+    }
+    assertU(commit());
+
+    // the documents are returned in the reverse order of their ids
+    String response =
+        h.query(
+            req(
+                "q",
+                "*:*",
+                "sort",
+                "num_i_dv desc",
+                "rows",
+                Integer.toString(numDocs),
+                "fl",
+                "id,val_sdv,score,[docid]",
+                "wt",
+                "json"));
+    List<Map<String, Object>> docs =
+        (List<Map<String, Object>>)
+            Utils.getObjectByPath(Utils.fromJSONString(response), false, "response/docs");
+    assertEquals(numDocs, docs.size());
+    for (int i = 0; i < numDocs; i++) {
+      Map<String, Object> doc = docs.get(i);
+      int id = numDocs - 1 - i;
+      assertEquals(Integer.toString(id), doc.get("id"));
+      assertEquals(id % 3 == 0 ? null : "v" + id, doc.get("val_sdv"));
+      assertNotNull(doc.get("score"));
+      assertNotNull(doc.get("[docid]"));
+    }
+    assertU(delQ("*:*"));
+    assertU(commit());
+  }
 }
@@ -23,11 +23,14 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.TupleBatch;
+import org.apache.solr.client.solrj.io.TupleSchema;
 import org.apache.solr.client.solrj.io.comp.StreamComparator;
 import org.apache.solr.client.solrj.io.stream.JavabinTupleStreamParser;
 import org.apache.solr.client.solrj.io.stream.StreamContext;
@@ -167,6 +170,108 @@ public class TestJavabinTupleStreamParser extends SolrTestCaseJ4 {
     assertEquals(Boolean.TRUE, m.get("EOF"));
   }
 
+  public void testBatch() throws IOException {
+    List<Map<String, Object>> l = new ArrayList<>();
+    l.add(Map.of("id", 1, "f", 1.0f, "s", "Some str 1"));
+    l.add(Map.of("id", 2, "f", 2.0f, "s", "Some str 2"));
+    l.add(Map.of("id", 3, "s", "Some str 3"));
+    l.add(Map.of("EOF", true, "RESPONSE_TIME", 206, "sleepMillis", 1000));
+
+    byte[] bytes = serialize(tupleStream(l));
+    TupleBatch batch = new TupleBatch(new TupleSchema("id", "f", "RESPONSE_TIME"), 2);
+    try (JavabinTupleStreamParser parser =
+        new JavabinTupleStreamParser(new ByteArrayInputStream(bytes), true)) {
+      assertTrue(parser.nextBatch(batch));
+      assertEquals(2, batch.size());
+      assertNull(batch.getEndTuple());
+      assertEquals(TupleBatch.Type.LONG, batch.getType(0));
+      assertEquals(TupleBatch.Type.DOUBLE, batch.getType(1));
+      assertEquals(1L, batch.getLong(0, 0));
+      assertEquals(2.0, batch.getDouble(1, 1), 0.01);
+      assertTrue(batch.isNull(0, 2));
+
+      batch.clear();
+      assertFalse(parser.nextBatch(batch));
+      assertEquals(1, batch.size());
+      assertEquals(3L, batch.getLong(0, 0));
+      assertTrue(batch.isNull(0, 1));
+      Tuple endTuple = batch.getEndTuple();
+      assertTrue(endTuple.EOF);
+      assertEquals(206L, endTuple.get("RESPONSE_TIME"));
+      assertEquals(1000L, endTuple.get("sleepMillis"));
+    }
+
+    batch = new TupleBatch(new TupleSchema("id", "f"));
+    try (JavabinTupleStreamParser parser =
+        new JavabinTupleStreamParser(new ByteArrayInputStream(bytes), false)) {
+      assertFalse(parser.nextBatch(batch));
+      assertEquals(3, batch.size());
+      // ints and floats are not converted to longs and doubles
+      assertEquals(TupleBatch.Type.OBJECT, batch.getType(0));
+      assertEquals(2, batch.get(1, 0));
+      assertEquals(2.0f, batch.get(1, 1));
+      assertTrue(batch.getEndTuple().EOF);
+    }
+  }
+
+  public void testBatchSkipsEntriesWithoutName() throws IOException {
+    Map<String, Object> doc = new HashMap<>();
+    doc.put("id", 1);
+    doc.put(null, "no name");
+    List<Map<String, Object>> l = new ArrayList<>();
+    l.add(doc);
+    l.add(Map.of("EOF", true));
+
+    byte[] bytes = serialize(tupleStream(l));
+    TupleBatch batch = new TupleBatch(new TupleSchema("id"));
+    try (JavabinTupleStreamParser parser =
+        new JavabinTupleStreamParser(new ByteArrayInputStream(bytes), true)) {
+      assertFalse(parser.nextBatch(batch));
+      assertEquals(1, batch.size());
+      assertEquals(1L, batch.getLong(0, 0));
+      assertTrue(batch.getEndTuple().EOF);
+    }
+  }
+
+  private static TupleStream tupleStream(List<Map<String, Object>> l) {
+    Iterator<Map<String, Object>> iterator = l.iterator();
+    return new TupleStream() {
+      @Override
+      public void setStreamContext(StreamContext context) {}
+
+      @Override
+      public List<TupleStream> children() {
+        return null;
+      }
+
+      @Override
+      public void open() {}
+
+      @Override
+      public void close() {}
+
+      @Override
+      public Tuple read() {
+        if (iterator.hasNext()) return new Tuple(iterator.next());
+        else return null;
+      }
+
+      @Override
+      public StreamComparator getStreamSort() {
+        return null;
+      }
+
+      @Override
+      public Explanation toExplanation(StreamFactory factory) {
+        return new StreamExplanation(getStreamNodeId().toString())
+            .withFunctionName("Dummy")
+            .withImplementingClass(this.getClass().getName())
+            .withExpressionType(Explanation.ExpressionType.STREAM_SOURCE)
+            .withExpression("--non-expressible--");
+      }
+    };
+  }
+
   @SuppressWarnings({"unchecked", "rawtypes"})
   public void testSolrDocumentList() throws IOException {
     SolrQueryResponse response = new SolrQueryResponse();
@@ -760,7 +760,9 @@ public class QueryEqualityTest extends SolrTestCaseJ4 {
             "maxDepth",
             "2",
             "useAutn",
-            "false");
+            "false",
+            "targetQuery",
+            "bar");
     // make sure all param substitution works for all args to graph query.
     assertQueryEquals(
         "graph", req, "{!graph from=node_s to=edge_s}*:*", "{!graph from=$from to=$to}*:*");
@@ -794,6 +796,12 @@ public class QueryEqualityTest extends SolrTestCaseJ4 {
         req,
         "{!graph from=node_s to=edge_s traversalFilter=foo returnOnlyLeaf=true returnRoot=false maxDepth=2 useAutn=false}*:*",
         "{!graph from=$from to=$to traversalFilter=$traversalFilter returnOnlyLeaf=$returnOnlyLeaf returnRoot=$returnRoot maxDepth=$maxDepth useAutn=$useAutn}*:*");
+
+    assertQueryEquals(
+        "graph",
+        req,
+        "{!graph from=node_s to=edge_s maxDepth=2 targetQuery=bar}*:*",
+        "{!graph from=$from to=$to maxDepth=$maxDepth targetQuery=$targetQuery}*:*");
   }
 
   public void testQuerySurround() throws Exception {
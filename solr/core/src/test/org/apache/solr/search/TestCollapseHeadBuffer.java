@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.solr.SolrTestCase;
+
+public class TestCollapseHeadBuffer extends SolrTestCase {
+
+  public void testEmpty() throws Exception {
+    try (CollapseHeadBuffer buffer = new CollapseHeadBuffer(1024)) {
+      buffer.forEachHead((key, score, doc) -> fail("unexpected head: " + key));
+      assertEquals(0, buffer.getSpillCount());
+    }
+  }
+
+  public void testTiesPreferLowestDoc() throws Exception {
+    try (CollapseHeadBuffer buffer = new CollapseHeadBuffer(1024)) {
+      buffer.add(7, 1.5f, 3);
+      buffer.add(7, 1.5f, 9);
+      buffer.add(7, -2f, 1);
+      final List<Integer> docs = new ArrayList<>();
+      buffer.forEachHead(
+          (key, score, doc) -> {
+            assertEquals(7, key);
+            assertEquals(1.5f, score, 0f);
+            docs.add(doc);
+          });
+      assertEquals(List.of(3), docs);
+    }
+  }
+
+  public void testRandomAgainstBruteForce() throws Exception {
+    final Random r = random();
+    final int iters = atLeast(10);
+    for (int iter = 0; iter < iters; iter++) {
+      final int numKeys = 1 + r.nextInt(500);
+      final int numDocs = r.nextInt(5000);
+      // small budgets force reductions and spills
+      final long budget =
+          r.nextBoolean()
+              ? CollapseHeadBuffer.BYTES_PER_ENTRY * (2 + r.nextInt(64))
+              : CollapseHeadBuffer.BYTES_PER_ENTRY * (long) (1 + numDocs);
+
+      final TreeMap<Integer, long[]> expected = new TreeMap<>();
+      try (CollapseHeadBuffer buffer = new CollapseHeadBuffer(budget)) {
+        for (int doc = 0; doc < numDocs; doc++) {
+          final int key = r.nextInt(numKeys) - (numKeys / 2);
+          final float score = r.nextInt(20) - 5 + (r.nextBoolean() ? 0.5f : 0f);
+          buffer.add(key, score, doc);
+          final long[] current = expected.get(key);
+          if (current == null || score > Float.intBitsToFloat((int) current[0])) {
+            expected.put(key, new long[] {Float.floatToIntBits(score), doc});
+          }
+        }
+
+        final List<long[]> actual = new ArrayList<>();
+        buffer.forEachHead(
+            (key, score, doc) -> actual.add(new long[] {key, Float.floatToIntBits(score), doc}));
+
+        assertEquals(expected.size(), actual.size());
+        int i = 0;
+        for (Map.Entry<Integer, long[]> entry : expected.entrySet()) {
+          final long[] head = actual.get(i++);
+          assertEquals((long) entry.getKey(), head[0]);
+          assertEquals(entry.getValue()[0], head[1]);
+          assertEquals(entry.getValue()[1], head[2]);
+        }
+      }
+    }
+  }
+
+  public void testSortHeadsByDoc() throws Exception {
+    final Random r = random();
+    final int iters = atLeast(10);
+    for (int iter = 0; iter < iters; iter++) {
+      final int numKeys = 1 + r.nextInt(500);
+      final int numDocs = r.nextInt(5000);
+      // small budgets spill the heads, and then their docs
+      final long budget =
+          r.nextBoolean()
+              ? CollapseHeadBuffer.BYTES_PER_ENTRY * (2 + r.nextInt(64))
+              : CollapseHeadBuffer.BYTES_PER_ENTRY * (long) (1 + numDocs);
+
+      final TreeMap<Integer, long[]> expected = new TreeMap<>();
+      try (CollapseHeadBuffer buffer = new CollapseHeadBuffer(budget)) {
+        for (int doc = 0; doc < numDocs; doc++) {
+          final int key = r.nextInt(numKeys) - (numKeys / 2);
+          final float score = r.nextInt(20) - 5 + (r.nextBoolean() ? 0.5f : 0f);
+          buffer.add(key, score, doc);
+          final long[] current = expected.get(key);
+          if (current == null || score > Float.intBitsToFloat((int) current[0])) {
+            expected.put(key, new long[] {Float.floatToIntBits(score), doc});
+          }
+        }
+
+        // the heads of the odd keys are dropped
+        final TreeMap<Integer, Integer> expectedByDoc = new TreeMap<>();
+        for (Map.Entry<Integer, long[]> entry : expected.entrySet()) {
+          if (entry.getKey() % 2 == 0) {
+            expectedByDoc.put((int) entry.getValue()[1], (int) entry.getValue()[0]);
+          }
+        }
+        final List<Integer> keys = new ArrayList<>();
+        try (CollapseHeadBuffer.DocHeads heads =
+            buffer.sortHeadsByDoc(
+                (key, score, doc) -> {
+                  keys.add(key);
+                  return key % 2 == 0;
+                })) {
+          assertEquals(new ArrayList<>(expected.keySet()), keys);
+          assertEquals(-1, heads.doc());
+          for (Map.Entry<Integer, Integer> entry : expectedByDoc.entrySet()) {
+            assertTrue(heads.next());
+            assertEquals((int) entry.getKey(), heads.doc());
+            assertEquals(Float.intBitsToFloat(entry.getValue()), heads.score(), 0f);
+          }
+          assertFalse(heads.next());
+          assertEquals(DocIdSetIterator.NO_MORE_DOCS, heads.doc());
+        }
+      }
+    }
+  }
+}
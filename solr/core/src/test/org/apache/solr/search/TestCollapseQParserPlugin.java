@@ -219,7 +219,14 @@ public class TestCollapseQParserPlugin extends SolrTestCaseJ4 {
 
   @Test
   public void testStringCollapse() {
-    for (final String hint : new String[] {"", " hint=" + CollapsingQParserPlugin.HINT_TOP_FC}) {
+    for (final String hint :
+        new String[] {
+          "",
+          " hint=" + CollapsingQParserPlugin.HINT_TOP_FC,
+          " hint=" + CollapsingQParserPlugin.HINT_COMPACT,
+          // tiny buffer forces the compact collapse to spill sorted runs
+          " hint=" + CollapsingQParserPlugin.HINT_COMPACT + " maxBufferBytes=24"
+        }) {
       testCollapseQueries("group_s", hint, false);
       testCollapseQueries("group_s_dv", hint, false);
     }
@@ -227,11 +234,17 @@ public class TestCollapseQParserPlugin extends SolrTestCaseJ4 {
 
   @Test
   public void testNumericCollapse() {
-    final String hint = "";
-    testCollapseQueries("group_i", hint, true);
-    testCollapseQueries("group_ti_dv", hint, true);
-    testCollapseQueries("group_f", hint, true);
-    testCollapseQueries("group_tf_dv", hint, true);
+    for (final String hint :
+        new String[] {
+          "",
+          " hint=" + CollapsingQParserPlugin.HINT_COMPACT,
+          " hint=" + CollapsingQParserPlugin.HINT_COMPACT + " maxBufferBytes=24"
+        }) {
+      testCollapseQueries("group_i", hint, true);
+      testCollapseQueries("group_ti_dv", hint, true);
+      testCollapseQueries("group_f", hint, true);
+      testCollapseQueries("group_tf_dv", hint, true);
+    }
   }
 
   @Test
@@ -1006,6 +1019,60 @@ public class TestCollapseQParserPlugin extends SolrTestCaseJ4 {
         SolrException.ErrorCode.BAD_REQUEST);
   }
 
+  @Test
+  public void testCompactCollapseMultiThreaded() throws Exception {
+    for (String group : new String[] {"group_s_dv", "group_i"}) {
+      clearIndex();
+      for (int i = 0; i < 50; i++) {
+        if (i % 9 == 0) {
+          // null group
+          assertU(adoc("id", Integer.toString(i), "test_i", Integer.toString(i % 13)));
+        } else {
+          assertU(
+              adoc(
+                  "id", Integer.toString(i),
+                  group, Integer.toString(i % 6),
+                  "test_i", Integer.toString(i % 13)));
+        }
+        if (random().nextInt(5) == 0) {
+          assertU(commit());
+        }
+      }
+      assertU(commit());
+
+      for (String nullPolicy : new String[] {"ignore", "collapse", "expand"}) {
+        final ModifiableSolrParams params =
+            params(
+                "q", "*:*",
+                "defType", "edismax",
+                "bf", "field(test_i)",
+                "fl", "id,score",
+                "sort", "score desc, id asc",
+                "rows", "50",
+                "omitHeader", "true");
+        final String expected =
+            h.query(
+                req(params, "fq", "{!collapse field=" + group + " nullPolicy=" + nullPolicy + "}"));
+        final String actual =
+            h.query(
+                req(
+                    params,
+                    "fq",
+                    "{!collapse field="
+                        + group
+                        + " nullPolicy="
+                        + nullPolicy
+                        + " hint="
+                        + CollapsingQParserPlugin.HINT_COMPACT
+                        + (random().nextBoolean() ? " maxBufferBytes=24" : "")
+                        + "}",
+                    "multiThreaded",
+                    "true"));
+        assertEquals(group + " nullPolicy=" + nullPolicy, expected, actual);
+      }
+    }
+  }
+
   @Test
   public void testEmptyCollection() {
     // group_s is docValues=false and group_dv_s is docValues=true
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiCollector;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.TopScoreDocCollectorManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.tests.index.RandomIndexWriter;
+import org.apache.lucene.tests.util.TestUtil;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.common.SolrException;
+
+public class TestSharedMinCompetitiveScore extends SolrTestCase {
+
+  private static final int NUM_SHARDS = 3;
+  private static final String[] TERMS = {"a", "b", "c", "d"};
+
+  private final Directory[] dirs = new Directory[NUM_SHARDS];
+  private final IndexReader[] readers = new IndexReader[NUM_SHARDS];
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    Random random = random();
+    for (int shard = 0; shard < NUM_SHARDS; shard++) {
+      dirs[shard] = newDirectory();
+      RandomIndexWriter iw = new RandomIndexWriter(random, dirs[shard]);
+      for (int i = 0; i < 500; i++) {
+        StringBuilder text = new StringBuilder();
+        for (int j = random.nextInt(10); j >= 0; j--) {
+          text.append(TERMS[random.nextInt(TERMS.length)]).append(' ');
+        }
+        Document doc = new Document();
+        doc.add(newTextField("text", text.toString(), Field.Store.NO));
+        iw.addDocument(doc);
+        if (random.nextInt(100) == 0) {
+          iw.commit();
+        }
+      }
+      readers[shard] = iw.getReader();
+      iw.close();
+    }
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    for (int shard = 0; shard < NUM_SHARDS; shard++) {
+      readers[shard].close();
+      dirs[shard].close();
+    }
+    super.tearDown();
+  }
+
+  public void testMergedTopDocs() throws Exception {
+    Query query =
+        new BooleanQuery.Builder()
+            .add(new TermQuery(new Term("text", "a")), BooleanClause.Occur.SHOULD)
+            .add(new TermQuery(new Term("text", "b")), BooleanClause.Occur.SHOULD)
+            .build();
+    int numHits = TestUtil.nextInt(random(), 1, 20);
+    boolean withMaxScore = random().nextBoolean();
+
+    TopDocs[] expected = new TopDocs[NUM_SHARDS];
+    TopDocs[] actual = new TopDocs[NUM_SHARDS];
+    SharedMinCompetitiveScore shared =
+        SharedMinCompetitiveScore.get(UUID.randomUUID().toString(), "collection1", null);
+    for (int shard = 0; shard < NUM_SHARDS; shard++) {
+      IndexSearcher searcher = new IndexSearcher(readers[shard]);
+      expected[shard] = collect(searcher, query, numHits, withMaxScore, null);
+      actual[shard] = collect(searcher, query, numHits, withMaxScore, shared);
+    }
+    assertTrue(shared.getScore() > 0);
+
+    // the shards may skip documents, but not any of the merged top documents
+    ScoreDoc[] expectedDocs = TopDocs.merge(numHits, expected).scoreDocs;
+    ScoreDoc[] actualDocs = TopDocs.merge(numHits, actual).scoreDocs;
+    assertEquals(expectedDocs.length, actualDocs.length);
+    for (int i = 0; i < expectedDocs.length; i++) {
+      assertEquals(expectedDocs[i].shardIndex, actualDocs[i].shardIndex);
+      assertEquals(expectedDocs[i].doc, actualDocs[i].doc);
+      assertEquals(expectedDocs[i].score, actualDocs[i].score, 0f);
+    }
+  }
+
+  public void testScope() {
+    String id = UUID.randomUUID().toString();
+    SharedMinCompetitiveScore shared = SharedMinCompetitiveScore.get(id, "collection1", "user1");
+    assertSame(shared, SharedMinCompetitiveScore.get(id, "collection1", "user1"));
+    // requests of other collections or users don't share it, even with the same id
+    assertNotSame(shared, SharedMinCompetitiveScore.get(id, "collection2", "user1"));
+    assertNotSame(shared, SharedMinCompetitiveScore.get(id, "collection1", "user2"));
+    assertNotSame(shared, SharedMinCompetitiveScore.get(id, "collection1", null));
+
+    // ids are random UUIDs
+    for (String invalid :
+        new String[] {"1", "x-" + id, id.toUpperCase(Locale.ROOT), new UUID(1, 2).toString()}) {
+      SolrException e =
+          expectThrows(
+              SolrException.class,
+              () -> SharedMinCompetitiveScore.get(invalid, "collection1", null));
+      assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+    }
+  }
+
+  private static TopDocs collect(
+      IndexSearcher searcher,
+      Query query,
+      int numHits,
+      boolean withMaxScore,
+      SharedMinCompetitiveScore shared)
+      throws Exception {
+    // like SolrIndexSearcher, skipping once minExactCount hits are collected
+    TopScoreDocCollector topCollector =
+        new TopScoreDocCollectorManager(numHits, null, 1).newCollector();
+    Collector collector =
+        withMaxScore ? MultiCollector.wrap(topCollector, new MaxScoreCollector()) : topCollector;
+    if (shared != null) {
+      collector = shared.wrap(collector);
+    }
+    searcher.search(query, collector);
+    return topCollector.topDocs();
+  }
+}
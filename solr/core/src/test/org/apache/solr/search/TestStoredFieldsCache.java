@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.List;
+import java.util.Random;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.tests.index.RandomIndexWriter;
+import org.apache.lucene.tests.util.TestUtil;
+import org.apache.solr.SolrTestCase;
+
+public class TestStoredFieldsCache extends SolrTestCase {
+
+  private static final int NUM_DOCS = 200;
+  private static final int MAX_ENTRY_BYTES = 1024;
+
+  public void testDocuments() throws Exception {
+    Random random = random();
+    try (Directory dir = newDirectory()) {
+      RandomIndexWriter iw = new RandomIndexWriter(random, dir);
+      for (int i = 0; i < NUM_DOCS; i++) {
+        Document doc = new Document();
+        doc.add(newStringField("id", Integer.toString(i), Field.Store.YES));
+        doc.add(new StoredField("text", TestUtil.randomUnicodeString(random)));
+        doc.add(new StoredField("int", random.nextInt()));
+        doc.add(new StoredField("long", random.nextLong()));
+        doc.add(new StoredField("float", random.nextFloat()));
+        doc.add(new StoredField("double", random.nextDouble()));
+        // some documents are too large to be cached
+        int length = random.nextInt(10) == 0 ? MAX_ENTRY_BYTES * 2 : random.nextInt(100);
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        doc.add(new StoredField("binary", bytes));
+        iw.addDocument(doc);
+        if (random.nextInt(50) == 0) {
+          iw.commit();
+        }
+      }
+      StoredFieldsCache cache = new StoredFieldsCache(1024 * 1024, MAX_ENTRY_BYTES);
+      try (DirectoryReader reader = iw.getReader()) {
+        iw.close();
+        List<LeafReaderContext> leaves = reader.leaves();
+        StoredFields storedFields = reader.storedFields();
+        for (int pass = 0; pass < 2; pass++) {
+          for (int docId = 0; docId < reader.maxDoc(); docId++) {
+            DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor();
+            cache.document(leaves, docId, storedFields, visitor);
+            assertDocumentEquals(storedFields.document(docId), visitor.getDocument());
+          }
+        }
+        assertTrue(cache.size() > 0);
+        assertTrue(cache.size() < reader.maxDoc());
+        assertTrue(cache.usedPages() >= cache.size());
+
+        // the visitor only gets the fields it needs
+        DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor("id", "long");
+        cache.document(leaves, 0, storedFields, visitor);
+        assertEquals(2, visitor.getDocument().getFields().size());
+      }
+      // the entries of closed segments are evicted, and their pages released
+      assertEquals(0, cache.size());
+      assertEquals(0, cache.usedPages());
+    }
+  }
+
+  public void testPartialReadsAreNotCached() throws Exception {
+    try (Directory dir = newDirectory()) {
+      RandomIndexWriter iw = new RandomIndexWriter(random(), dir);
+      for (int i = 0; i < 10; i++) {
+        Document doc = new Document();
+        doc.add(newStringField("id", Integer.toString(i), Field.Store.YES));
+        doc.add(new StoredField("text", TestUtil.randomUnicodeString(random())));
+        iw.addDocument(doc);
+      }
+      StoredFieldsCache cache = new StoredFieldsCache(1024 * 1024, MAX_ENTRY_BYTES);
+      try (DirectoryReader reader = iw.getReader()) {
+        iw.close();
+        List<LeafReaderContext> leaves = reader.leaves();
+        StoredFields storedFields = reader.storedFields();
+
+        // visitors skipping fields still skip them
+        DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor("id");
+        cache.document(leaves, 0, storedFields, visitor);
+        assertEquals(1, visitor.getDocument().getFields().size());
+        assertEquals(0, cache.size());
+
+        visitor = new DocumentStoredFieldVisitor();
+        cache.document(leaves, 0, storedFields, visitor);
+        assertEquals(2, visitor.getDocument().getFields().size());
+        assertEquals(1, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.usedPages());
+      }
+    }
+  }
+
+  private static void assertDocumentEquals(Document expected, Document actual) {
+    List<IndexableField> expectedFields = expected.getFields();
+    List<IndexableField> actualFields = actual.getFields();
+    assertEquals(expectedFields.size(), actualFields.size());
+    for (int i = 0; i < expectedFields.size(); i++) {
+      IndexableField expectedField = expectedFields.get(i);
+      IndexableField actualField = actualFields.get(i);
+      assertEquals(expectedField.name(), actualField.name());
+      assertEquals(expectedField.stringValue(), actualField.stringValue());
+      assertEquals(expectedField.numericValue(), actualField.numericValue());
+      assertEquals(expectedField.binaryValue(), actualField.binaryValue());
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Map;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.metrics.MetricsMap;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Tests the {@link StoredFieldsCache} configured in solrconfig.xml, used to fetch documents. */
+public class TestStoredFieldsCacheFetch extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig-stored-fields-cache.xml", "schema.xml");
+  }
+
+  @Test
+  public void testFetch() {
+    assertNotNull(h.getCore().getStoredFieldsCache());
+    assertU(adoc("id", "1", "name", "one"));
+    assertU(adoc("id", "2", "name", "two"));
+    assertU(commit());
+
+    // only fetching some of the fields doesn't cache the document
+    assertQ(req("q", "id:1", "fl", "name"), "//result/doc/str[@name='name'][.='one']");
+    assertEquals(0L, getMetrics().get(SolrCache.INSERTS_PARAM));
+
+    assertQ(req("q", "id:1", "fl", "*"), "//result/doc/str[@name='name'][.='one']");
+    Map<String, Object> metrics = getMetrics();
+    assertEquals(1L, metrics.get(SolrCache.INSERTS_PARAM));
+    assertEquals(0L, metrics.get(SolrCache.HITS_PARAM));
+
+    // there is no documentCache, so the document is fetched from the storedFieldsCache again
+    assertQ(req("q", "id:1", "fl", "*"), "//result/doc/str[@name='name'][.='one']");
+    metrics = getMetrics();
+    assertEquals(1L, metrics.get(SolrCache.INSERTS_PARAM));
+    assertEquals(1L, metrics.get(SolrCache.HITS_PARAM));
+
+    // also when only fetching some of the fields
+    assertQ(req("q", "id:1", "fl", "name"), "//result/doc/str[@name='name'][.='one']");
+    assertEquals(2L, getMetrics().get(SolrCache.HITS_PARAM));
+  }
+
+  private static Map<String, Object> getMetrics() {
+    SolrCore core = h.getCore();
+    return ((MetricsMap)
+            ((SolrMetricManager.GaugeWrapper<?>)
+                    core.getCoreMetricManager()
+                        .getRegistry()
+                        .getMetrics()
+                        .get("CACHE.core." + StoredFieldsCache.NAME))
+                .getGauge())
+        .getValue();
+  }
+}
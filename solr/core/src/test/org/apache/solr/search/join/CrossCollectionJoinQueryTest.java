@@ -305,6 +305,71 @@ public class CrossCollectionJoinQueryTest extends SolrCloudTestCase {
     }
   }
 
+  @Test
+  public void testKeyCacheSurvivesLocalCommits() throws Exception {
+    for (String field : new String[] {"product_id_i", "product_id_s"}) {
+      setupIndexes(false);
+      String query =
+          String.format(
+              Locale.ROOT,
+              "{!join method=crossCollection fromIndex=products from=%s to=%s routed=false}size_s:M",
+              field,
+              field);
+      testCcJoinQuery(query, true);
+
+      // a new medium product along with its part, the latter causing a local commit
+      int productId = NUM_PRODUCTS + 20;
+      indexDocs(
+          "products",
+          List.of(
+              new SolrInputDocument(
+                  "id", String.valueOf(productId),
+                  field, String.valueOf(productId),
+                  "size_s", "M")));
+      cluster.getSolrClient().commit("products");
+      indexDocs(
+          "parts",
+          List.of(
+              new SolrInputDocument(
+                  "id", productId + "_0",
+                  field, String.valueOf(productId))));
+      cluster.getSolrClient().commit("parts");
+
+      // the keys were carried over to the new searchers, so the new product isn't seen yet
+      assertResultCount("parts", query, NUM_PRODUCTS / 2, true);
+
+      // until the keys expire
+      assertResultCount(
+          "parts", query.replace("routed=false", "routed=false ttl=0"), NUM_PRODUCTS / 2 + 1, true);
+    }
+  }
+
+  @Test
+  public void testPointKeysInSeveralBatches() throws Exception {
+    setupIndexes(false);
+    int pointBatchSize = CrossCollectionJoinQuery.pointBatchSize;
+    // every shard gets all 50 medium products, so this takes several batches
+    CrossCollectionJoinQuery.pointBatchSize = 7;
+    try {
+      for (String field : new String[] {"product_id_i", "product_id_l"}) {
+        String query =
+            String.format(
+                Locale.ROOT,
+                "{!join method=crossCollection fromIndex=products from=%s to=%s routed=false}size_s:M",
+                field,
+                field);
+        testCcJoinQuery(query, true);
+
+        // a local commit drops the query result cache, so the cached keys are replayed in batches
+        indexDocs("parts", List.of(new SolrInputDocument("id", "unjoined_" + field)));
+        cluster.getSolrClient().commit("parts");
+        testCcJoinQuery(query, true);
+      }
+    } finally {
+      CrossCollectionJoinQuery.pointBatchSize = pointBatchSize;
+    }
+  }
+
   public void testCcJoinQuery(String query, boolean expectFullResults) throws Exception {
     assertResultCount("parts", query, NUM_PRODUCTS / 2, expectFullResults);
   }
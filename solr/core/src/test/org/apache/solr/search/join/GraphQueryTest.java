@@ -140,6 +140,41 @@ public class GraphQueryTest extends SolrTestCaseJ4 {
     assertJQ(
         req(p, "q", "{!graph from=${node_id} to=${edge_id} returnRoot=false maxDepth=1}id:doc_1"),
         "/response/numFound==1");
+
+    // walks from doc_8 to doc_5: 8->-2->3->5 and 8->1->-2->3->5, and without a depth limit also
+    // 8->-2->3->5->7->1->-2->3->5, which reaches doc_7 through the target
+    assertJQ(
+        req(
+            p,
+            "q",
+            "{!graph from=${node_id} to=${edge_id} maxDepth=2 targetQuery=id:doc_5}id:doc_8"),
+        "/response/numFound==0");
+    assertJQ(
+        req(
+            p,
+            "q",
+            "{!graph from=${node_id} to=${edge_id} maxDepth=3 targetQuery=id:doc_5}id:doc_8",
+            "fl",
+            "id",
+            "sort",
+            "id asc"),
+        "/response/docs==[{'id':'doc_2'},{'id':'doc_3'},{'id':'doc_5'},{'id':'doc_8'}]");
+    assertJQ(
+        req(
+            p,
+            "q",
+            "{!graph from=${node_id} to=${edge_id} maxDepth=4 targetQuery=id:doc_5}id:doc_8"),
+        "/response/numFound==5");
+    assertJQ(
+        req(
+            p,
+            "q",
+            "{!graph from=${node_id} to=${edge_id} returnRoot=false targetQuery=id:doc_5}id:doc_8",
+            "fl",
+            "id",
+            "sort",
+            "id asc"),
+        "/response/docs==[{'id':'doc_1'},{'id':'doc_2'},{'id':'doc_3'},{'id':'doc_5'},{'id':'doc_7'}]");
   }
 
   @Test
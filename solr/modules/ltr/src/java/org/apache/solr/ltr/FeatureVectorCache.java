@@ -0,0 +1,301 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.ltr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.ltr.feature.Feature;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.search.QueryLimits;
+import org.apache.solr.search.SolrCache;
+import org.apache.solr.search.SolrIndexSearcher;
+
+/**
+ * Caches the extracted feature values of documents, so that they are not computed again when the
+ * features of reranked documents are logged, or when the same documents are reranked again (e.g.
+ * when paging through reranked results).
+ *
+ * <p>The values of a document's features depend on the features of the store, the external feature
+ * info (efi), the request parameters that the feature parameters refer to (e.g. <code>$param</code>
+ * or <code>NOW</code>) and the original query, which together with the document id form the cache
+ * key. Vectors are kept for the duration of the request, and if a user cache named {@value
+ * #CACHE_NAME} is configured, for the lifetime of the searcher:
+ *
+ * <pre>
+ * &lt;cache name="ltrFeatureVectorCache"
+ *        class="solr.search.CaffeineCache"
+ *        size="4096"
+ *        initialSize="2048"
+ *        autowarmCount="0" /&gt;
+ * </pre>
+ *
+ * <p>Requests with query limits, such as <code>timeAllowed</code>, don't use the searcher scoped
+ * cache, so that whether they are cut short doesn't depend on what earlier requests cached.
+ */
+public final class FeatureVectorCache {
+
+  /** Name of the (optional) searcher scoped user cache of feature vectors */
+  public static final String CACHE_NAME = "ltrFeatureVectorCache";
+
+  private static final String REQUEST_CONTEXT_KEY = FeatureVectorCache.class.getName();
+
+  // a $name reference to a request parameter, but not an efi ${name} macro
+  private static final Pattern PARAM_REFERENCE = Pattern.compile("\\$([\\w.]+)");
+
+  private final QueryKey queryKey;
+  private final Map<DocKey, FeatureVector> requestVectors;
+  private final SolrCache<DocKey, FeatureVector> searcherVectors;
+
+  private FeatureVectorCache(
+      QueryKey queryKey,
+      Map<DocKey, FeatureVector> requestVectors,
+      SolrCache<DocKey, FeatureVector> searcherVectors) {
+    this.queryKey = queryKey;
+    this.requestVectors = requestVectors;
+    this.searcherVectors = searcherVectors;
+  }
+
+  /**
+   * Returns the cache of the feature vectors of a scoring query, or null if it has neither a
+   * request nor a searcher with a {@value #CACHE_NAME}.
+   */
+  @SuppressWarnings({"unchecked"})
+  static FeatureVectorCache create(LTRScoringQuery scoringQuery, IndexSearcher searcher) {
+    final SolrQueryRequest request = scoringQuery.getRequest();
+    final Map<DocKey, FeatureVector> requestVectors =
+        request == null
+            ? null
+            : (Map<DocKey, FeatureVector>)
+                request
+                    .getContext()
+                    .computeIfAbsent(REQUEST_CONTEXT_KEY, k -> new ConcurrentHashMap<>());
+    final SolrCache<DocKey, FeatureVector> searcherVectors =
+        searcher instanceof SolrIndexSearcher && !QueryLimits.getCurrentLimits().isLimitsEnabled()
+            ? ((SolrIndexSearcher) searcher).getCache(CACHE_NAME)
+            : null;
+    if (requestVectors == null && searcherVectors == null) {
+      return null;
+    }
+    final Collection<Feature> features = scoringQuery.getScoringModel().getAllFeatures();
+    final QueryKey queryKey =
+        new QueryKey(
+            scoringQuery.getScoringModel().getFeatureStoreName(),
+            features,
+            scoringQuery.getExternalFeatureInfo(),
+            referencedParams(features, request),
+            scoringQuery.getOriginalQuery());
+    return new FeatureVectorCache(queryKey, requestVectors, searcherVectors);
+  }
+
+  /**
+   * Returns the values of the request parameters that the parameters of the features refer to,
+   * along with the request's NOW if they mention it.
+   */
+  private static Map<String, List<String>> referencedParams(
+      Collection<Feature> features, SolrQueryRequest request) {
+    final Map<String, List<String>> referenced = new TreeMap<>();
+    if (features == null || request == null) {
+      return referenced;
+    }
+    for (final Feature feature : features) {
+      for (final Object value : feature.paramsToMap().values()) {
+        if (value instanceof Collection<?>) {
+          for (final Object element : (Collection<?>) value) {
+            addReferencedParams(String.valueOf(element), request, referenced);
+          }
+        } else if (value != null) {
+          addReferencedParams(value.toString(), request, referenced);
+        }
+      }
+    }
+    return referenced;
+  }
+
+  private static void addReferencedParams(
+      String featureParam, SolrQueryRequest request, Map<String, List<String>> referenced) {
+    final Matcher matcher = PARAM_REFERENCE.matcher(featureParam);
+    while (matcher.find()) {
+      final String[] values = request.getParams().getParams(matcher.group(1));
+      referenced.put(matcher.group(1), values == null ? List.of() : Arrays.asList(values));
+    }
+    if (featureParam.contains("NOW") && !referenced.containsKey(CommonParams.NOW)) {
+      String now = request.getParams().get(CommonParams.NOW);
+      final SolrRequestInfo requestInfo = SolrRequestInfo.getRequestInfo();
+      if (now == null && requestInfo != null) {
+        now = String.valueOf(requestInfo.getNOW().getTime());
+      }
+      referenced.put(CommonParams.NOW, now == null ? List.of() : List.of(now));
+    }
+  }
+
+  /**
+   * Sets the cached values of the extracted features of a document into <code>featuresInfo</code>.
+   *
+   * @return false, leaving <code>featuresInfo</code> untouched, if the values of some of the
+   *     features are not cached
+   */
+  boolean load(
+      int doc,
+      Feature.FeatureWeight[] extractedFeatureWeights,
+      LTRScoringQuery.FeatureInfo[] featuresInfo) {
+    final DocKey key = new DocKey(queryKey, doc);
+    FeatureVector vector = requestVectors == null ? null : requestVectors.get(key);
+    if (vector == null && searcherVectors != null) {
+      vector = searcherVectors.get(key);
+      if (vector != null && requestVectors != null) {
+        requestVectors.put(key, vector);
+      }
+    }
+    if (vector == null || !vector.contains(extractedFeatureWeights)) {
+      return false;
+    }
+    for (final Feature.FeatureWeight featureWeight : extractedFeatureWeights) {
+      final int featureId = featureWeight.getIndex();
+      featuresInfo[featureId].setValue(vector.values[featureId]);
+      featuresInfo[featureId].setUsed(vector.used.get(featureId));
+    }
+    return true;
+  }
+
+  /** Caches the values of the extracted features of a document */
+  void store(
+      int doc,
+      Feature.FeatureWeight[] extractedFeatureWeights,
+      LTRScoringQuery.FeatureInfo[] featuresInfo) {
+    final FeatureVector vector = new FeatureVector(featuresInfo.length);
+    for (final Feature.FeatureWeight featureWeight : extractedFeatureWeights) {
+      final int featureId = featureWeight.getIndex();
+      vector.values[featureId] = featuresInfo[featureId].getValue();
+      if (featuresInfo[featureId].isUsed()) {
+        vector.used.set(featureId);
+      }
+      vector.extracted.set(featureId);
+    }
+    final DocKey key = new DocKey(queryKey, doc);
+    if (requestVectors != null) {
+      requestVectors.put(key, vector);
+    }
+    if (searcherVectors != null) {
+      searcherVectors.put(key, vector);
+    }
+  }
+
+  /** The inputs of the features, other than the document */
+  private static final class QueryKey {
+    private final String featureStoreName;
+    // the definitions of the features may change while the store name stays the same
+    private final List<Feature> features;
+    private final Map<String, List<String>> efi;
+    private final Map<String, List<String>> referencedParams;
+    private final Query originalQuery;
+    private final int hashCode;
+
+    QueryKey(
+        String featureStoreName,
+        Collection<Feature> features,
+        Map<String, String[]> efi,
+        Map<String, List<String>> referencedParams,
+        Query originalQuery) {
+      this.featureStoreName = featureStoreName;
+      this.features = features == null ? List.of() : new ArrayList<>(features);
+      // String[] values don't implement equals()
+      this.efi = new TreeMap<>();
+      if (efi != null) {
+        for (Map.Entry<String, String[]> entry : efi.entrySet()) {
+          this.efi.put(entry.getKey(), Arrays.asList(entry.getValue()));
+        }
+      }
+      this.referencedParams = referencedParams;
+      this.originalQuery = originalQuery;
+      this.hashCode =
+          Objects.hash(featureStoreName, this.features, this.efi, referencedParams, originalQuery);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof QueryKey)) {
+        return false;
+      }
+      final QueryKey other = (QueryKey) obj;
+      return hashCode == other.hashCode
+          && Objects.equals(featureStoreName, other.featureStoreName)
+          && efi.equals(other.efi)
+          && referencedParams.equals(other.referencedParams)
+          && features.equals(other.features)
+          && Objects.equals(originalQuery, other.originalQuery);
+    }
+  }
+
+  private record DocKey(QueryKey queryKey, int doc) {}
+
+  private static final class FeatureVector implements Accountable {
+    private static final long BASE_RAM_BYTES =
+        RamUsageEstimator.shallowSizeOfInstance(FeatureVector.class);
+
+    // indexed by feature id, i.e. the index of the feature in its store
+    private final float[] values;
+    private final FixedBitSet used;
+    private final FixedBitSet extracted;
+
+    FeatureVector(int numFeatures) {
+      this.values = new float[numFeatures];
+      this.used = new FixedBitSet(numFeatures);
+      this.extracted = new FixedBitSet(numFeatures);
+    }
+
+    boolean contains(Feature.FeatureWeight[] featureWeights) {
+      for (final Feature.FeatureWeight featureWeight : featureWeights) {
+        final int featureId = featureWeight.getIndex();
+        if (featureId >= extracted.length() || !extracted.get(featureId)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return BASE_RAM_BYTES
+          + RamUsageEstimator.sizeOf(values)
+          + used.ramBytesUsed()
+          + extracted.ramBytesUsed();
+    }
+  }
+}
@@ -30,6 +30,7 @@ import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TotalHits;
 import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.FixedBitSet;
 import org.apache.solr.ltr.interleaving.OriginalRankingLTRScoringQuery;
 import org.apache.solr.search.IncompleteRerankingException;
 import org.apache.solr.search.QueryLimits;
@@ -52,6 +53,9 @@ public class LTRRescorer extends Rescorer {
     this.scoringQuery = scoringQuery;
   }
 
+  /** Number of hits whose features are extracted and then scored together */
+  static final int SCORE_BLOCK_SIZE = 64;
+
   private static final Comparator<ScoreDoc> docComparator = Comparator.comparingInt(a -> a.doc);
 
   protected static final Comparator<ScoreDoc> scoreComparator =
@@ -152,6 +156,12 @@ public class LTRRescorer extends Rescorer {
     return hits;
   }
 
+  /**
+   * Extracts the features of the hits and scores them with one {@link LTRScoringModel#batchScore}
+   * call per block of {@link #SCORE_BLOCK_SIZE} hits, reusing the feature vectors of each block for
+   * the next one, and collects the topN hits into <code>reranked</code>. If a {@link
+   * FeatureLogger} is set, the features of the topN hits are logged.
+   */
   public void scoreFeatures(
       IndexSearcher indexSearcher,
       int topN,
@@ -161,6 +171,16 @@ public class LTRRescorer extends Rescorer {
       ScoreDoc[] reranked)
       throws IOException {
 
+    final boolean logFeatures =
+        scoringQuery.getFeatureLogger() != null && indexSearcher instanceof SolrIndexSearcher;
+    final LTRScoringQuery.FeatureInfo[] featuresInfo = modelWeight.getFeaturesInfo();
+    final int blockSize = Math.min(hits.length, SCORE_BLOCK_SIZE);
+    final float[][] featureVectors = new float[blockSize][];
+    final float[] scores = new float[blockSize];
+    // the extracted values of all the features, so that the topN hits can be logged after scoring
+    final float[] loggedValues = logFeatures ? new float[hits.length * featuresInfo.length] : null;
+    final FixedBitSet loggedUsed = logFeatures ? new FixedBitSet(loggedValues.length) : null;
+
     int readerUpto = -1;
     int endDoc = 0;
     int docBase = 0;
@@ -182,13 +202,82 @@ public class LTRRescorer extends Rescorer {
         docBase = readerContext.docBase;
         scorer = modelWeight.scorer(readerContext);
       }
-      if (scoreSingleHit(topN, docBase, hitUpto, hit, docID, scorer, reranked)) {
-        logSingleHit(indexSearcher, modelWeight, hit.doc, scoringQuery);
+      final float[] features = extractNormalizedFeatures(docBase, hit, docID, scorer);
+      final int block = hitUpto % blockSize;
+      if (featureVectors[block] == null) {
+        featureVectors[block] = new float[features.length];
+      }
+      System.arraycopy(features, 0, featureVectors[block], 0, features.length);
+      if (logFeatures) {
+        final int offset = hitUpto * featuresInfo.length;
+        for (int i = 0; i < featuresInfo.length; i++) {
+          if (featuresInfo[i] != null) {
+            loggedValues[offset + i] = featuresInfo[i].getValue();
+            if (featuresInfo[i].isUsed()) {
+              loggedUsed.set(offset + i);
+            }
+          }
+        }
       }
       hitUpto++;
+      if (block == blockSize - 1 || hitUpto == hits.length) {
+        scoreBlock(topN, hits, hitUpto - block - 1, block + 1, featureVectors, scores, reranked);
+      }
+    }
+
+    if (logFeatures) {
+      for (final ScoreDoc hit : reranked) {
+        if (hit == null) {
+          continue;
+        }
+        // hits are sorted by doc
+        final int offset = Arrays.binarySearch(hits, hit, docComparator) * featuresInfo.length;
+        for (int i = 0; i < featuresInfo.length; i++) {
+          if (featuresInfo[i] != null) {
+            featuresInfo[i].setValue(loggedValues[offset + i]);
+            featuresInfo[i].setUsed(loggedUsed.get(offset + i));
+          }
+        }
+        logSingleHit(indexSearcher, modelWeight, hit.doc, scoringQuery);
+      }
+    }
+  }
+
+  private void scoreBlock(
+      int topN,
+      ScoreDoc[] hits,
+      int firstHit,
+      int numHits,
+      float[][] featureVectors,
+      float[] scores,
+      ScoreDoc[] reranked) {
+    scoringQuery.getScoringModel().batchScore(featureVectors, numHits, scores);
+    for (int i = 0; i < numHits; i++) {
+      final int hitUpto = firstHit + i;
+      hits[hitUpto].score = scores[i];
+      addToTopN(topN, hitUpto, hits[hitUpto], reranked);
     }
   }
 
+  /**
+   * Extracts the features of a single document, and returns the normalized values of the model's
+   * features. The returned array is reused by the scorer for the next document.
+   */
+  private static float[] extractNormalizedFeatures(
+      int docBase, ScoreDoc hit, int docID, LTRScoringQuery.ModelWeight.ModelScorer scorer)
+      throws IOException {
+    // see scoreSingleHit for why the scorer is never null and always advanced
+    assert (scorer != null);
+    final int targetDoc = docID - docBase;
+    scorer.docID();
+    scorer.iterator().advance(targetDoc);
+
+    scorer.getDocInfo().setOriginalDocScore(hit.score);
+    final float[] modelFeatureValuesNormalized = scorer.extractNormalizedFeatures();
+    checkQueryLimits();
+    return modelFeatureValuesNormalized;
+  }
+
   /**
    * Call this method if the {@link #scoreSingleHit(int, int, int, ScoreDoc, int,
    * org.apache.solr.ltr.LTRScoringQuery.ModelWeight.ModelScorer, ScoreDoc[])} method indicated that
@@ -232,10 +321,13 @@ public class LTRRescorer extends Rescorer {
     scorer.docID();
     scorer.iterator().advance(targetDoc);
 
-    boolean logHit = false;
-
     scorer.getDocInfo().setOriginalDocScore(hit.score);
     hit.score = scorer.score();
+    checkQueryLimits();
+    return addToTopN(topN, hitUpto, hit, reranked);
+  }
+
+  private static void checkQueryLimits() {
     if (QueryLimits.getCurrentLimits()
         .maybeExitWithPartialResults(
             "Learning To Rank rescoring -"
@@ -243,6 +335,14 @@ public class LTRRescorer extends Rescorer {
                 + " If partial results are tolerated the reranking got reverted and all documents preserved their original score and ranking.")) {
       throw new IncompleteRerankingException();
     }
+  }
+
+  /**
+   * Adds a scored hit to the topN heap in <code>reranked</code>, and returns true if it made it
+   * into the heap.
+   */
+  protected static boolean addToTopN(int topN, int hitUpto, ScoreDoc hit, ScoreDoc[] reranked) {
+    boolean logHit = false;
     if (hitUpto < topN) {
       reranked[hitUpto] = hit;
       // if the heap is not full, maybe I want to log the features for this
@@ -308,7 +408,8 @@ public class LTRRescorer extends Rescorer {
         // score, which some features can use instead of recalculating it
         r.getDocInfo().setOriginalDocScore(originalDocScore);
       }
-      r.score();
+      // only the feature values are needed, not the model's score
+      r.extractFeatures();
       return modelWeight.getFeaturesInfo();
     }
   }
@@ -231,7 +231,10 @@ public class LTRScoringQuery extends Query implements Accountable {
         modelFeaturesWeights[j++] = fw;
       }
     }
-    return new ModelWeight(modelFeaturesWeights, extractedFeatureWeights, allFeatures.size());
+    final ModelWeight modelWeight =
+        new ModelWeight(modelFeaturesWeights, extractedFeatureWeights, allFeatures.size());
+    modelWeight.featureVectorCache = FeatureVectorCache.create(this, searcher);
+    return modelWeight;
   }
 
   private void createWeights(
@@ -381,6 +384,9 @@ public class LTRScoringQuery extends Query implements Accountable {
      */
     private final FeatureInfo[] featuresInfo;
 
+    // cached feature values of documents, null if there is nowhere to cache them
+    private FeatureVectorCache featureVectorCache;
+
     /*
      * @param modelFeatureWeights
      *     - should be the same size as the number of features used by the model
@@ -436,6 +442,14 @@ public class LTRScoringQuery extends Query implements Accountable {
      * features that will be used for scoring. Then calculate and return the model's score.
      */
     private float makeNormalizedFeaturesAndScore() {
+      return ltrScoringModel.score(makeNormalizedFeatures());
+    }
+
+    /**
+     * Goes through all the stored feature values, and calculates the normalized values for all the
+     * features that will be used for scoring.
+     */
+    private float[] makeNormalizedFeatures() {
       int pos = 0;
       for (final Feature.FeatureWeight feature : modelFeatureWeights) {
         final int featureId = feature.getIndex();
@@ -449,7 +463,7 @@ public class LTRScoringQuery extends Query implements Accountable {
         pos++;
       }
       ltrScoringModel.normalizeFeaturesInPlace(modelFeatureValuesNormalized);
-      return ltrScoringModel.score(modelFeatureValuesNormalized);
+      return modelFeatureValuesNormalized;
     }
 
     @Override
@@ -501,6 +515,7 @@ public class LTRScoringQuery extends Query implements Accountable {
       // return a
       // non 0 score for a given model.
       ModelScorer mscorer = new ModelScorer(this, featureScorers);
+      mscorer.docBase = context.docBase;
       return mscorer;
     }
 
@@ -511,7 +526,8 @@ public class LTRScoringQuery extends Query implements Accountable {
 
     public class ModelScorer extends Scorer {
       private final DocInfo docInfo;
-      private final Scorer featureTraversalScorer;
+      private final FeatureTraversalScorer featureTraversalScorer;
+      private int docBase;
 
       public DocInfo getDocInfo() {
         return docInfo;
@@ -546,6 +562,24 @@ public class LTRScoringQuery extends Query implements Accountable {
         return featureTraversalScorer.score();
       }
 
+      /**
+       * Extracts the feature values of the current document into the {@link #getFeaturesInfo()}
+       * of the weight, without scoring the model.
+       */
+      public void extractFeatures() throws IOException {
+        featureTraversalScorer.extractFeatures();
+      }
+
+      /**
+       * Extracts the feature values of the current document and returns the normalized values of
+       * the model's features, without scoring the model. The returned array is reused for the next
+       * document.
+       */
+      public float[] extractNormalizedFeatures() throws IOException {
+        featureTraversalScorer.extractFeatures();
+        return makeNormalizedFeatures();
+      }
+
       @Override
       public float getMaxScore(int upTo) throws IOException {
         return Float.POSITIVE_INFINITY;
@@ -556,7 +590,39 @@ public class LTRScoringQuery extends Query implements Accountable {
         return featureTraversalScorer.iterator();
       }
 
-      private class SparseModelScorer extends Scorer {
+      private abstract class FeatureTraversalScorer extends Scorer {
+
+        FeatureTraversalScorer(Weight weight) {
+          super(weight);
+        }
+
+        /**
+         * Sets the values of the features of the current document in featuresInfo, from the
+         * feature vector cache if possible.
+         */
+        final void extractFeatures() throws IOException {
+          if (featureVectorCache == null) {
+            extractFeatureValues();
+            return;
+          }
+          final int doc = docBase + docID();
+          if (!featureVectorCache.load(doc, extractedFeatureWeights, featuresInfo)) {
+            extractFeatureValues();
+            featureVectorCache.store(doc, extractedFeatureWeights, featuresInfo);
+          }
+        }
+
+        /** Sets the values of the features matching the current document in featuresInfo */
+        abstract void extractFeatureValues() throws IOException;
+
+        @Override
+        public float score() throws IOException {
+          extractFeatures();
+          return makeNormalizedFeaturesAndScore();
+        }
+      }
+
+      private class SparseModelScorer extends FeatureTraversalScorer {
         private final DisiPriorityQueue subScorers;
         private final ScoringQuerySparseIterator itr;
 
@@ -584,7 +650,7 @@ public class LTRScoringQuery extends Query implements Accountable {
         }
 
         @Override
-        public float score() throws IOException {
+        void extractFeatureValues() throws IOException {
           final DisiWrapper topList = subScorers.topList();
           // If target doc we wanted to advance to match the actual doc
           // the underlying features advanced to, perform the feature
@@ -601,7 +667,6 @@ public class LTRScoringQuery extends Query implements Accountable {
               featuresInfo[featureId].setUsed(true);
             }
           }
-          return makeNormalizedFeaturesAndScore();
         }
 
         @Override
@@ -655,7 +720,7 @@ public class LTRScoringQuery extends Query implements Accountable {
         }
       }
 
-      private class DenseModelScorer extends Scorer {
+      private class DenseModelScorer extends FeatureTraversalScorer {
         private int activeDoc = -1; // The doc that our scorer's are actually at
         private int targetDoc = -1; // The doc we were most recently told to go to
         private int freq = -1;
@@ -673,7 +738,7 @@ public class LTRScoringQuery extends Query implements Accountable {
         }
 
         @Override
-        public float score() throws IOException {
+        void extractFeatureValues() throws IOException {
           reset();
           freq = 0;
           if (targetDoc == activeDoc) {
@@ -687,7 +752,6 @@ public class LTRScoringQuery extends Query implements Accountable {
               }
             }
           }
-          return makeNormalizedFeaturesAndScore();
         }
 
         @Override
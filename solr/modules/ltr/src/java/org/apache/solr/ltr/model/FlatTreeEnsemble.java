@@ -0,0 +1,362 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.ltr.model;
+
+import java.util.Arrays;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.InPlaceMergeSorter;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * The trees of a {@link MultipleAdditiveTreesModel} compiled into flat primitive arrays.
+ *
+ * <p>The nodes of all trees are stored in pre-order, so the left child of a split node is always
+ * the next node and only the right child needs to be recorded. Split nodes store their feature
+ * index and threshold, leaves store their value already multiplied by the weight of their tree, so
+ * a tree is evaluated with a simple loop over a few arrays instead of chasing node objects.
+ *
+ * <p>When every tree has at most 64 leaves and missing values are treated as zero, batches of
+ * documents are scored with the QuickScorer algorithm: the split nodes of each feature are sorted
+ * by threshold, and for each document only the nodes whose test fails are visited, clearing the
+ * leaves of their left subtree from a per tree bit vector. The exit leaf of a tree is then the
+ * lowest bit left set.
+ *
+ * @see <a href="https://doi.org/10.1145/2766462.2767733">C. Lucchese, F. M. Nardini, S. Orlando, R.
+ *     Perego, N. Tonellotto, R. Venturini. QuickScorer: a Fast Algorithm to Rank Documents with
+ *     Additive Ensembles of Regression Trees. SIGIR 2015.</a>
+ */
+final class FlatTreeEnsemble implements Accountable {
+  private static final long BASE_RAM_BYTES =
+      RamUsageEstimator.shallowSizeOfInstance(FlatTreeEnsemble.class);
+
+  /** Feature index of leaf nodes */
+  static final int LEAF = -1;
+
+  private final int numFeatures;
+  private final boolean isNullSameAsZero;
+  private final int[] treeRoots;
+  // feature index of each split node, LEAF for leaves
+  private final int[] nodeFeatures;
+  // threshold of each split node, weighted value of each leaf
+  private final float[] nodeValues;
+  // index of the right child of each split node
+  private final int[] rightChildren;
+  // whether missing (NaN) values go left, only used if !isNullSameAsZero
+  private final boolean[] missingLeft;
+  private final QuickScorer quickScorer;
+
+  private FlatTreeEnsemble(Builder builder) {
+    this.numFeatures = builder.numFeatures;
+    this.isNullSameAsZero = builder.isNullSameAsZero;
+    this.treeRoots = ArrayUtil.copyOfSubArray(builder.treeRoots, 0, builder.numTrees);
+    this.nodeFeatures = ArrayUtil.copyOfSubArray(builder.nodeFeatures, 0, builder.numNodes);
+    this.nodeValues = ArrayUtil.copyOfSubArray(builder.nodeValues, 0, builder.numNodes);
+    this.rightChildren = ArrayUtil.copyOfSubArray(builder.rightChildren, 0, builder.numNodes);
+    this.missingLeft =
+        isNullSameAsZero
+            ? null
+            : ArrayUtil.copyOfSubArray(builder.missingLeft, 0, builder.numNodes);
+    this.quickScorer = isNullSameAsZero ? QuickScorer.build(this) : null;
+  }
+
+  /** Number of features the trees were compiled against */
+  int getNumFeatures() {
+    return numFeatures;
+  }
+
+  /** True if batches are scored with the QuickScorer algorithm */
+  boolean usesQuickScorer() {
+    return quickScorer != null;
+  }
+
+  /**
+   * Scores a single feature vector of at least {@link #getNumFeatures()} values, summing the tree
+   * scores in tree order.
+   */
+  float score(float[] featureVector) {
+    float score = 0;
+    for (final int root : treeRoots) {
+      score += nodeValues[exitLeaf(root, featureVector)];
+    }
+    return score;
+  }
+
+  /**
+   * Scores the first <code>numDocs</code> feature vectors into <code>scores</code>. Each score is
+   * identical to the one returned by {@link #score(float[])}.
+   */
+  void score(float[][] featureVectors, int numDocs, float[] scores) {
+    if (quickScorer != null) {
+      quickScorer.score(featureVectors, numDocs, scores);
+      return;
+    }
+    // one pass per tree over all documents, keeping the tree's nodes in cache
+    Arrays.fill(scores, 0, numDocs, 0f);
+    for (final int root : treeRoots) {
+      for (int doc = 0; doc < numDocs; doc++) {
+        scores[doc] += nodeValues[exitLeaf(root, featureVectors[doc])];
+      }
+    }
+  }
+
+  private int exitLeaf(int node, float[] featureVector) {
+    int feature;
+    while ((feature = nodeFeatures[node]) != LEAF) {
+      final float value = featureVector[feature];
+      if (value <= nodeValues[node]) {
+        node++;
+      } else if (isNullSameAsZero || !Float.isNaN(value) || !missingLeft[node]) {
+        node = rightChildren[node];
+      } else {
+        node++;
+      }
+    }
+    return node;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES
+        + RamUsageEstimator.sizeOf(treeRoots)
+        + RamUsageEstimator.sizeOf(nodeFeatures)
+        + RamUsageEstimator.sizeOf(nodeValues)
+        + RamUsageEstimator.sizeOf(rightChildren)
+        + (missingLeft == null ? 0 : RamUsageEstimator.sizeOf(missingLeft))
+        + (quickScorer == null ? 0 : quickScorer.ramBytesUsed());
+  }
+
+  /** Compiles trees node by node, each tree in pre-order */
+  static final class Builder {
+    private final int numFeatures;
+    private final boolean isNullSameAsZero;
+    private int numTrees;
+    private int[] treeRoots = new int[8];
+    private int numNodes;
+    private int[] nodeFeatures = new int[64];
+    private float[] nodeValues = new float[64];
+    private int[] rightChildren = new int[64];
+    private boolean[] missingLeft = new boolean[64];
+
+    Builder(int numFeatures, boolean isNullSameAsZero) {
+      this.numFeatures = numFeatures;
+      this.isNullSameAsZero = isNullSameAsZero;
+    }
+
+    /** Starts a new tree, whose root is the next node added */
+    void startTree() {
+      treeRoots = ArrayUtil.grow(treeRoots, numTrees + 1);
+      treeRoots[numTrees++] = numNodes;
+    }
+
+    /**
+     * Adds a split node, whose left child is the next node added.
+     *
+     * @return the node index, to be passed to {@link #setRightChild}
+     */
+    int addSplit(int feature, float threshold, boolean missingGoesLeft) {
+      final int node = addNode(feature, threshold);
+      missingLeft[node] = missingGoesLeft;
+      return node;
+    }
+
+    /** Sets the right child of a split node to the next node added */
+    void setRightChild(int split) {
+      rightChildren[split] = numNodes;
+    }
+
+    /** Adds a leaf with the given (weighted) value */
+    void addLeaf(float weightedValue) {
+      addNode(LEAF, weightedValue);
+    }
+
+    private int addNode(int feature, float value) {
+      if (numNodes == nodeFeatures.length) {
+        final int newLength = ArrayUtil.oversize(numNodes + 1, Integer.BYTES);
+        nodeFeatures = ArrayUtil.growExact(nodeFeatures, newLength);
+        nodeValues = ArrayUtil.growExact(nodeValues, newLength);
+        rightChildren = ArrayUtil.growExact(rightChildren, newLength);
+        missingLeft = ArrayUtil.growExact(missingLeft, newLength);
+      }
+      nodeFeatures[numNodes] = feature;
+      nodeValues[numNodes] = value;
+      return numNodes++;
+    }
+
+    FlatTreeEnsemble build() {
+      return new FlatTreeEnsemble(this);
+    }
+  }
+
+  /** Feature major, bit vector based evaluation of batches of documents */
+  private static final class QuickScorer implements Accountable {
+    private static final long BASE_RAM_BYTES =
+        RamUsageEstimator.shallowSizeOfInstance(QuickScorer.class);
+
+    private final int numTrees;
+    // split nodes grouped by feature, then sorted by threshold
+    private final int[] featureStarts;
+    private final float[] thresholds;
+    private final int[] trees;
+    private final long[] masks;
+    // the weighted leaf values of each tree, from left to right
+    private final int[] leafStarts;
+    private final float[] leafValues;
+    private final long[] initialBits;
+
+    private QuickScorer(
+        int numTrees,
+        int[] featureStarts,
+        float[] thresholds,
+        int[] trees,
+        long[] masks,
+        int[] leafStarts,
+        float[] leafValues,
+        long[] initialBits) {
+      this.numTrees = numTrees;
+      this.featureStarts = featureStarts;
+      this.thresholds = thresholds;
+      this.trees = trees;
+      this.masks = masks;
+      this.leafStarts = leafStarts;
+      this.leafValues = leafValues;
+      this.initialBits = initialBits;
+    }
+
+    /** Returns null if a tree has more than 64 leaves or a threshold is NaN */
+    static QuickScorer build(FlatTreeEnsemble ensemble) {
+      final int numTrees = ensemble.treeRoots.length;
+      final int numNodes = ensemble.nodeFeatures.length;
+      // number of leaves before each node of its tree (and after the last node)
+      final int[] leafRanks = new int[numNodes + 1];
+      final int[] leafStarts = new int[numTrees + 1];
+      final long[] initialBits = new long[numTrees];
+      int numSplits = 0;
+      for (int tree = 0; tree < numTrees; tree++) {
+        final int end = tree + 1 < numTrees ? ensemble.treeRoots[tree + 1] : numNodes;
+        int leaves = 0;
+        for (int node = ensemble.treeRoots[tree]; node < end; node++) {
+          leafRanks[node] = leaves;
+          if (ensemble.nodeFeatures[node] == LEAF) {
+            leaves++;
+          } else if (Float.isNaN(ensemble.nodeValues[node])) {
+            return null;
+          } else {
+            numSplits++;
+          }
+        }
+        leafRanks[end] = leaves;
+        if (leaves > Long.SIZE) {
+          return null;
+        }
+        leafStarts[tree + 1] = leafStarts[tree] + leaves;
+        initialBits[tree] = leaves == Long.SIZE ? -1L : (1L << leaves) - 1;
+      }
+
+      final float[] leafValues = new float[leafStarts[numTrees]];
+      final int[] featureStarts = new int[ensemble.numFeatures + 1];
+      final float[] thresholds = new float[numSplits];
+      final int[] trees = new int[numSplits];
+      final long[] masks = new long[numSplits];
+      final int[] features = new int[numSplits];
+      int split = 0;
+      for (int tree = 0; tree < numTrees; tree++) {
+        final int end = tree + 1 < numTrees ? ensemble.treeRoots[tree + 1] : numNodes;
+        for (int node = ensemble.treeRoots[tree]; node < end; node++) {
+          final int feature = ensemble.nodeFeatures[node];
+          if (feature == LEAF) {
+            leafValues[leafStarts[tree] + leafRanks[node]] = ensemble.nodeValues[node];
+          } else {
+            // a failed test sends the document right, so the left subtree's leaves are unreachable
+            final int firstLeft = leafRanks[node + 1];
+            final int numLeft = leafRanks[ensemble.rightChildren[node]] - firstLeft;
+            features[split] = feature;
+            thresholds[split] = ensemble.nodeValues[node];
+            trees[split] = tree;
+            masks[split] = ~(((1L << numLeft) - 1) << firstLeft);
+            featureStarts[feature + 1]++;
+            split++;
+          }
+        }
+      }
+      for (int i = 0; i < ensemble.numFeatures; i++) {
+        featureStarts[i + 1] += featureStarts[i];
+      }
+
+      new InPlaceMergeSorter() {
+        @Override
+        protected int compare(int i, int j) {
+          final int cmp = Integer.compare(features[i], features[j]);
+          return cmp != 0 ? cmp : Float.compare(thresholds[i], thresholds[j]);
+        }
+
+        @Override
+        protected void swap(int i, int j) {
+          final int feature = features[i];
+          features[i] = features[j];
+          features[j] = feature;
+          final float threshold = thresholds[i];
+          thresholds[i] = thresholds[j];
+          thresholds[j] = threshold;
+          final int tree = trees[i];
+          trees[i] = trees[j];
+          trees[j] = tree;
+          final long mask = masks[i];
+          masks[i] = masks[j];
+          masks[j] = mask;
+        }
+      }.sort(0, numSplits);
+
+      return new QuickScorer(
+          numTrees, featureStarts, thresholds, trees, masks, leafStarts, leafValues, initialBits);
+    }
+
+    void score(float[][] featureVectors, int numDocs, float[] scores) {
+      final long[] bits = new long[numTrees];
+      for (int doc = 0; doc < numDocs; doc++) {
+        final float[] featureVector = featureVectors[doc];
+        System.arraycopy(initialBits, 0, bits, 0, numTrees);
+        for (int feature = 0; feature < featureStarts.length - 1; feature++) {
+          final float value = featureVector[feature];
+          for (int i = featureStarts[feature], end = featureStarts[feature + 1]; i < end; i++) {
+            if (value <= thresholds[i]) {
+              break; // this and all following tests (with larger thresholds) succeed
+            }
+            bits[trees[i]] &= masks[i];
+          }
+        }
+        float score = 0;
+        for (int tree = 0; tree < numTrees; tree++) {
+          score += leafValues[leafStarts[tree] + Long.numberOfTrailingZeros(bits[tree])];
+        }
+        scores[doc] = score;
+      }
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return BASE_RAM_BYTES
+          + RamUsageEstimator.sizeOf(featureStarts)
+          + RamUsageEstimator.sizeOf(thresholds)
+          + RamUsageEstimator.sizeOf(trees)
+          + RamUsageEstimator.sizeOf(masks)
+          + RamUsageEstimator.sizeOf(leafStarts)
+          + RamUsageEstimator.sizeOf(leafValues)
+          + RamUsageEstimator.sizeOf(initialBits);
+    }
+  }
+}
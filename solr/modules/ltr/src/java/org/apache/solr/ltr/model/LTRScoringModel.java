@@ -253,6 +253,23 @@ public abstract class LTRScoringModel implements Accountable {
    */
   public abstract float score(float[] modelFeatureValuesNormalized);
 
+  /**
+   * Scores the normalized feature vectors of many documents, e.g. all the documents being
+   * reranked. Models that can share work across documents should override this method; the default
+   * implementation calls {@link #score(float[])} for each document.
+   *
+   * @param modelFeatureValuesNormalized normalized feature values, one row per document. Rows are
+   *     not modified.
+   * @param numDocs number of rows to score
+   * @param scores receives the score of each row, which must be the same as the one returned by
+   *     {@link #score(float[])}
+   */
+  public void batchScore(float[][] modelFeatureValuesNormalized, int numDocs, float[] scores) {
+    for (int doc = 0; doc < numDocs; doc++) {
+      scores[doc] = score(modelFeatureValuesNormalized[doc]);
+    }
+  }
+
   /**
    * Similar to the score() function, except it returns an explanation of how the features were used
    * to calculate the score.
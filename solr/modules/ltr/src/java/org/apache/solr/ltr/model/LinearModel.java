@@ -83,6 +83,9 @@ public class LinearModel extends LTRScoringModel {
    */
   protected Float[] featureToWeight;
 
+  /** The validated featureToWeight, unboxed for scoring */
+  private float[] weights;
+
   public void setWeights(Object weights) {
     @SuppressWarnings({"unchecked"})
     final Map<String, Number> modelWeights = (Map<String, Number>) weights;
@@ -121,13 +124,17 @@ public class LinearModel extends LTRScoringModel {
       throw new ModelException(
           "Model " + name + " lacks weight(s) for " + missingWeightFeatureNames);
     }
+    weights = new float[featureToWeight.length];
+    for (int i = 0; i < weights.length; ++i) {
+      weights[i] = featureToWeight[i];
+    }
   }
 
   @Override
   public float score(float[] modelFeatureValuesNormalized) {
     float score = 0;
     for (int i = 0; i < modelFeatureValuesNormalized.length; ++i) {
-      score += modelFeatureValuesNormalized[i] * featureToWeight[i];
+      score += modelFeatureValuesNormalized[i] * weights[i];
     }
     return score;
   }
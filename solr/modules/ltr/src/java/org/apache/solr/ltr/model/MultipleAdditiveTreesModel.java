@@ -77,6 +77,9 @@ import org.apache.solr.util.SolrPluginUtils;
  * }
  * </pre>
  *
+ * <p>Once loaded, the trees are compiled into flat arrays that are evaluated without allocation or
+ * pointer chasing. {@link #batchScore} scores many documents per pass over the trees.
+ *
  * <p>Training libraries:
  *
  * <ul>
@@ -116,6 +119,9 @@ public class MultipleAdditiveTreesModel extends LTRScoringModel {
 
   private boolean isNullSameAsZero = true;
 
+  /** The trees compiled into flat arrays by {@link #validate()}, used for scoring */
+  private FlatTreeEnsemble flatTrees;
+
   private RegressionTree createRegressionTree(Map<String, Object> map) {
     final RegressionTree rt = new RegressionTree();
     if (map != null) {
@@ -294,6 +300,41 @@ public class MultipleAdditiveTreesModel extends LTRScoringModel {
     for (RegressionTree tree : trees) {
       tree.validate();
     }
+    flatTrees = compileTrees();
+  }
+
+  private record PendingNode(RegressionTreeNode node, int rightOf) {}
+
+  /** Flattens the (validated) trees, visiting the nodes of each tree in pre-order */
+  private FlatTreeEnsemble compileTrees() {
+    final FlatTreeEnsemble.Builder builder =
+        new FlatTreeEnsemble.Builder(features.size(), isNullSameAsZero);
+    final Deque<PendingNode> stack = new ArrayDeque<>();
+    for (final RegressionTree tree : trees) {
+      final float weight = tree.weight.floatValue();
+      builder.startTree();
+      stack.push(new PendingNode(tree.root, -1));
+      while (!stack.isEmpty()) {
+        final PendingNode pending = stack.pop();
+        final RegressionTreeNode node = pending.node();
+        if (pending.rightOf() >= 0) {
+          builder.setRightChild(pending.rightOf());
+        }
+        if (node.isLeaf()) {
+          builder.addLeaf(weight * node.value);
+        } else if (node.featureIndex < 0) {
+          // unsupported feature (tree is looking for a feature that does not exist)
+          builder.addLeaf(weight * 0f);
+        } else {
+          final int split =
+              builder.addSplit(
+                  node.featureIndex, node.threshold, Objects.equals(node.missing, "left"));
+          stack.push(new PendingNode(node.right, split));
+          stack.push(new PendingNode(node.left, -1));
+        }
+      }
+    }
+    return builder.build();
   }
 
   @Override
@@ -323,6 +364,9 @@ public class MultipleAdditiveTreesModel extends LTRScoringModel {
 
   @Override
   public float score(float[] modelFeatureValuesNormalized) {
+    if (flatTrees != null && modelFeatureValuesNormalized.length >= flatTrees.getNumFeatures()) {
+      return flatTrees.score(modelFeatureValuesNormalized);
+    }
     float score = 0;
     for (final RegressionTree t : trees) {
       score += t.score(modelFeatureValuesNormalized);
@@ -330,6 +374,27 @@ public class MultipleAdditiveTreesModel extends LTRScoringModel {
     return score;
   }
 
+  /** Evaluates each tree for many documents at a time, using the compiled trees if possible. */
+  @Override
+  public void batchScore(float[][] modelFeatureValuesNormalized, int numDocs, float[] scores) {
+    if (flatTrees != null) {
+      boolean complete = true;
+      for (int doc = 0; doc < numDocs && complete; doc++) {
+        complete = modelFeatureValuesNormalized[doc].length >= flatTrees.getNumFeatures();
+      }
+      if (complete) {
+        flatTrees.score(modelFeatureValuesNormalized, numDocs, scores);
+        return;
+      }
+    }
+    super.batchScore(modelFeatureValuesNormalized, numDocs, scores);
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return super.ramBytesUsed() + (flatTrees == null ? 0 : flatTrees.ramBytesUsed());
+  }
+
   private static float scoreNode(float[] featureVector, RegressionTreeNode regressionTreeNode) {
     while (true) {
       if (regressionTreeNode.isLeaf()) {
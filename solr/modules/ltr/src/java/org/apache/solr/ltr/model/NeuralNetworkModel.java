@@ -21,6 +21,7 @@ import java.util.List;
 import java.util.Map;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.Explanation;
+import org.apache.lucene.util.VectorUtil;
 import org.apache.solr.ltr.feature.Feature;
 import org.apache.solr.ltr.norm.Normalizer;
 import org.apache.solr.util.SolrPluginUtils;
@@ -81,6 +82,10 @@ import org.apache.solr.util.SolrPluginUtils;
  * }
  * </pre>
  *
+ * <p>The dense layers compute their dot products with Lucene's {@link VectorUtil}, which uses the
+ * Panama Vector API when it is available. {@link #batchScore} evaluates each layer for all
+ * documents at once, reusing its intermediate vectors from one layer to the next.
+ *
  * <p>Training libraries:
  *
  * <ul>
@@ -114,6 +119,16 @@ public class NeuralNetworkModel extends LTRScoringModel {
   public interface Layer {
     public float[] calculateOutput(float[] inputVec);
 
+    /**
+     * Calculates the outputs of the first <code>numDocs</code> input vectors. Implementations may
+     * reuse the arrays already in <code>outputVecs</code> if they have the right length.
+     */
+    public default void calculateOutputs(float[][] inputVecs, int numDocs, float[][] outputVecs) {
+      for (int doc = 0; doc < numDocs; doc++) {
+        outputVecs[doc] = calculateOutput(inputVecs[doc]);
+      }
+    }
+
     public int validate(int inputDim) throws ModelException;
 
     public String describe();
@@ -138,10 +153,12 @@ public class NeuralNetworkModel extends LTRScoringModel {
       final List<List<Double>> matrix = (List<List<Double>>) matrixObj;
       this.matrixRows = matrix.size();
       this.matrixCols = matrix.get(0).size();
-      this.weightMatrix = new float[this.matrixRows][this.matrixCols];
+      this.weightMatrix = new float[this.matrixRows][];
 
       for (int i = 0; i < this.matrixRows; i++) {
-        for (int j = 0; j < this.matrixCols; j++) {
+        // rows of other lengths are rejected by validate
+        this.weightMatrix[i] = new float[matrix.get(i).size()];
+        for (int j = 0; j < this.weightMatrix[i].length; j++) {
           this.weightMatrix[i][j] = matrix.get(i).get(j).floatValue();
         }
       }
@@ -218,16 +235,32 @@ public class NeuralNetworkModel extends LTRScoringModel {
       float[] outputVec = new float[this.matrixRows];
 
       for (int i = 0; i < this.matrixRows; i++) {
-        float outputVal = this.biasVector[i];
-        for (int j = 0; j < this.matrixCols; j++) {
-          outputVal += this.weightMatrix[i][j] * inputVec[j];
-        }
-        outputVec[i] = this.activation.apply(outputVal);
+        outputVec[i] = this.activation.apply(this.biasVector[i] + dot(i, inputVec));
       }
 
       return outputVec;
     }
 
+    @Override
+    public void calculateOutputs(float[][] inputVecs, int numDocs, float[][] outputVecs) {
+      for (int doc = 0; doc < numDocs; doc++) {
+        if (outputVecs[doc] == null || outputVecs[doc].length != this.matrixRows) {
+          outputVecs[doc] = new float[this.matrixRows];
+        }
+      }
+      // one row of the weight matrix at a time, for all documents
+      for (int i = 0; i < this.matrixRows; i++) {
+        for (int doc = 0; doc < numDocs; doc++) {
+          outputVecs[doc][i] = this.activation.apply(this.biasVector[i] + dot(i, inputVecs[doc]));
+        }
+      }
+    }
+
+    private float dot(int row, float[] inputVec) {
+      // validate ensures that every row has as many columns as the layer has inputs
+      return VectorUtil.dotProduct(this.weightMatrix[row], inputVec);
+    }
+
     @Override
     public int validate(int inputDim) throws ModelException {
       if (this.numUnits != this.matrixRows) {
@@ -242,6 +275,22 @@ public class NeuralNetworkModel extends LTRScoringModel {
                 + Integer.toString(this.matrixRows)
                 + " weight matrix rows.");
       }
+      for (int i = 0; i < this.matrixRows; i++) {
+        if (this.weightMatrix[i].length != this.matrixCols) {
+          throw new ModelException(
+              "Dimension mismatch in model \""
+                  + name
+                  + "\". Row "
+                  + Integer.toString(i)
+                  + " of the weight matrix for layer "
+                  + Integer.toString(this.layerID)
+                  + " has "
+                  + Integer.toString(this.weightMatrix[i].length)
+                  + " columns, but row 0 has "
+                  + Integer.toString(this.matrixCols)
+                  + ".");
+        }
+      }
       if (this.activation == null) {
         throw new ModelException(
             "Invalid activation function (\""
@@ -355,6 +404,26 @@ public class NeuralNetworkModel extends LTRScoringModel {
     return outputVec[0];
   }
 
+  @Override
+  public void batchScore(float[][] modelFeatureValuesNormalized, int numDocs, float[] scores) {
+    float[][] inputVecs = modelFeatureValuesNormalized;
+    float[][] outputVecs = new float[numDocs][];
+    float[][] spareVecs = new float[numDocs][];
+
+    for (Layer layer : layers) {
+      layer.calculateOutputs(inputVecs, numDocs, outputVecs);
+      // the feature vectors belong to the caller, later inputs are reused as outputs
+      final float[][] consumedVecs =
+          inputVecs == modelFeatureValuesNormalized ? spareVecs : inputVecs;
+      inputVecs = outputVecs;
+      outputVecs = consumedVecs;
+    }
+
+    for (int doc = 0; doc < numDocs; doc++) {
+      scores[doc] = inputVecs[doc][0];
+    }
+  }
+
   @Override
   public Explanation explain(
       LeafReaderContext context, int doc, float finalScore, List<Explanation> featureExplanations) {
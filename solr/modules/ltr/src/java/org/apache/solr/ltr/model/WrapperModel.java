@@ -147,6 +147,11 @@ public abstract class WrapperModel extends AdapterModel {
     return model.score(modelFeatureValuesNormalized);
   }
 
+  @Override
+  public void batchScore(float[][] modelFeatureValuesNormalized, int numDocs, float[] scores) {
+    model.batchScore(modelFeatureValuesNormalized, numDocs, scores);
+  }
+
   @Override
   public Explanation explain(
       LeafReaderContext context, int doc, float finalScore, List<Explanation> featureExplanations) {
@@ -20,6 +20,8 @@ import java.util.List;
 import java.util.Map;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.common.util.Utils;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.ltr.FeatureVectorCache;
 import org.apache.solr.ltr.TestRerankBase;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -260,4 +262,75 @@ public class TestFeatureExtractionFromMultipleSegments extends TestRerankBase {
     }
     assertEquals(passCount, numRows);
   }
+
+  @Test
+  public void testFeatureVectorCache() throws Exception {
+    final SolrQuery query = new SolrQuery();
+    query.setQuery("{!edismax qf='description^1' v='apple'}");
+    query.add("rows", "50");
+    query.add("wt", "json");
+    query.add("fq", "popularity:201");
+    query.add(
+        "fl",
+        "id,fv:[features store='feature-store-6' format='dense' efi.user_text='apple']");
+
+    final List<Map<String, Object>> docs = queryDocs(query);
+    assertEquals(50, docs.size());
+    final int cacheSize = getFeatureVectorCacheSize();
+    assertTrue("cache size=" + cacheSize, cacheSize >= docs.size());
+
+    // the second time the feature vectors come from the cache
+    assertEquals(docs, queryDocs(query));
+    assertEquals(cacheSize, getFeatureVectorCacheSize());
+
+    // features depend on the efi
+    query.set(
+        "fl",
+        "id,fv:[features store='feature-store-6' format='dense' efi.user_text='apple pie']");
+    assertEquals(50, queryDocs(query).size());
+    assertTrue(getFeatureVectorCacheSize() >= cacheSize + docs.size());
+
+    // requests with query limits always compute their features
+    final int limitedCacheSize = getFeatureVectorCacheSize();
+    query.set(
+        "fl",
+        "id,fv:[features store='feature-store-6' format='dense' efi.user_text='apple tart']");
+    query.set("timeAllowed", "60000");
+    assertEquals(50, queryDocs(query).size());
+    assertEquals(limitedCacheSize, getFeatureVectorCacheSize());
+  }
+
+  @Test
+  public void testFeatureVectorCacheKeyHasNow() throws Exception {
+    loadFeature(
+        "now", SolrFeature.class.getName(), "feature-store-now", "{\"q\":\"{!func}ms(NOW)\"}");
+
+    final SolrQuery query = new SolrQuery();
+    query.setQuery("id:1");
+    query.add("wt", "json");
+    query.add("fl", "id,fv:[features store='feature-store-now' format='dense']");
+    query.add("NOW", "1000");
+    assertEquals("now=1000.0", queryDocs(query).get(0).get("fv"));
+    assertEquals("now=1000.0", queryDocs(query).get(0).get("fv"));
+
+    // features that refer to NOW are cached per NOW
+    query.set("NOW", "2000");
+    assertEquals("now=2000.0", queryDocs(query).get(0).get("fv"));
+  }
+
+  private static List<Map<String, Object>> queryDocs(SolrQuery query) throws Exception {
+    final String res = restTestHarness.query("/query" + query.toQueryString());
+    @SuppressWarnings({"unchecked"})
+    final Map<String, Object> resultJson = (Map<String, Object>) Utils.fromJSONString(res);
+    @SuppressWarnings({"unchecked"})
+    final List<Map<String, Object>> docs =
+        (List<Map<String, Object>>) ((Map<String, Object>) resultJson.get("response")).get("docs");
+    return docs;
+  }
+
+  private static int getFeatureVectorCacheSize() throws Exception {
+    try (SolrCore core = solrClientTestRule.getCoreContainer().getCore(DEFAULT_TEST_CORENAME)) {
+      return core.withSearcher(searcher -> searcher.getCache(FeatureVectorCache.CACHE_NAME).size());
+    }
+  }
 }
@@ -18,8 +18,17 @@ package org.apache.solr.ltr.model;
 
 import static org.hamcrest.core.StringContains.containsString;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.ltr.TestRerankBase;
+import org.apache.solr.ltr.feature.Feature;
+import org.apache.solr.ltr.norm.IdentityNormalizer;
+import org.apache.solr.ltr.norm.Normalizer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -354,4 +363,101 @@ public class TestMultipleAdditiveTreesModel extends TestRerankBase {
     assertThat(qryResult, containsString(" Go Right "));
     assertThat(qryResult, containsString(" Go Left "));
   }
+
+  @Test
+  public void testCompiledTreesMatchTreeWalk() throws Exception {
+    final Random r = random();
+    final int iters = atLeast(10);
+    for (int iter = 0; iter < iters; iter++) {
+      final boolean isNullSameAsZero = r.nextBoolean();
+      final String[] names = new String[1 + r.nextInt(8)];
+      for (int i = 0; i < names.length; i++) {
+        names[i] = "f" + i;
+      }
+      final List<Feature> features = getFeatures(names);
+      final List<Normalizer> norms =
+          new ArrayList<>(Collections.nCopies(features.size(), IdentityNormalizer.INSTANCE));
+
+      final List<Object> trees = new ArrayList<>();
+      final int numTrees = 1 + r.nextInt(20);
+      for (int t = 0; t < numTrees; t++) {
+        final Map<String, Object> tree = new HashMap<>();
+        tree.put("weight", Float.toString(r.nextInt(5) - 2 + r.nextFloat()));
+        // deep trees have more than 64 leaves, which can't be scored with bit vectors
+        tree.put("root", randomNode(r, names.length, 1 + r.nextInt(r.nextBoolean() ? 6 : 10)));
+        trees.add(tree);
+      }
+      final Map<String, Object> params = new HashMap<>();
+      params.put("trees", trees);
+      params.put("isNullSameAsZero", isNullSameAsZero);
+
+      final MultipleAdditiveTreesModel model =
+          (MultipleAdditiveTreesModel)
+              LTRScoringModel.getInstance(
+                  solrResourceLoader,
+                  MultipleAdditiveTreesModel.class.getName(),
+                  "model" + iter,
+                  features,
+                  norms,
+                  "test",
+                  features,
+                  params);
+
+      final int numDocs = 1 + r.nextInt(50);
+      final float[][] featureVectors = new float[numDocs][];
+      final float[] expected = new float[numDocs];
+      for (int doc = 0; doc < numDocs; doc++) {
+        final float[] fv = new float[names.length];
+        for (int i = 0; i < fv.length; i++) {
+          fv[i] =
+              !isNullSameAsZero && r.nextInt(5) == 0 ? Float.NaN : r.nextInt(10) + r.nextFloat();
+        }
+        featureVectors[doc] = fv;
+        for (Object tree : trees) {
+          expected[doc] += walkTree((Map<?, ?>) tree, fv);
+        }
+        assertEquals(expected[doc], model.score(fv), 0f);
+      }
+
+      final float[] scores = new float[numDocs];
+      model.batchScore(featureVectors, numDocs, scores);
+      for (int doc = 0; doc < numDocs; doc++) {
+        assertEquals(expected[doc], scores[doc], 0f);
+      }
+    }
+  }
+
+  private static Map<String, Object> randomNode(Random r, int numFeatures, int depth) {
+    final Map<String, Object> node = new HashMap<>();
+    if (depth == 0 || r.nextInt(8) == 0) {
+      node.put("value", Float.toString(r.nextInt(100) - 50 + r.nextFloat()));
+      return node;
+    }
+    // an occasional feature that is not part of the model scores 0
+    node.put("feature", r.nextInt(50) == 0 ? "unknown" : "f" + r.nextInt(numFeatures));
+    // integral thresholds are often hit exactly by the feature values
+    node.put("threshold", Float.toString(r.nextBoolean() ? r.nextInt(10) : r.nextFloat() * 10));
+    node.put("missing", r.nextBoolean() ? "left" : "right");
+    node.put("left", randomNode(r, numFeatures, depth - 1));
+    node.put("right", randomNode(r, numFeatures, depth - 1));
+    return node;
+  }
+
+  /** Scores a tree by walking its parameters, as a reference for the compiled model */
+  private static float walkTree(Map<?, ?> tree, float[] fv) {
+    final float weight = Float.parseFloat((String) tree.get("weight"));
+    Map<?, ?> node = (Map<?, ?>) tree.get("root");
+    while (node.containsKey("feature")) {
+      final String feature = (String) node.get("feature");
+      if (feature.equals("unknown")) {
+        return weight * 0f;
+      }
+      final float value = fv[Integer.parseInt(feature.substring(1))];
+      final float threshold = Float.parseFloat((String) node.get("threshold")) + 1E-6f;
+      final boolean left =
+          Float.isNaN(value) ? "left".equals(node.get("missing")) : value <= threshold;
+      node = (Map<?, ?>) node.get(left ? "left" : "right");
+    }
+    return weight * Float.parseFloat((String) node.get("value"));
+  }
 }
@@ -283,6 +283,23 @@ public class TestNeuralNetworkModel extends TestRerankBase {
     assertEquals(expectedException.toString(), rootError.toString());
   }
 
+  @Test
+  public void rowDimensionMismatchTest() throws Exception {
+    final ModelException expectedException =
+        new ModelException(
+            "Dimension mismatch in model \"neuralnetworkmodel_mismatch_row\". "
+                + "Row 1 of the weight matrix for layer 0 has 3 columns, but row 0 has 4.");
+    Exception ex =
+        expectThrows(
+            Exception.class,
+            () -> {
+              createModelFromFiles(
+                  "neuralnetworkmodel_mismatch_row.json", "neuralnetworkmodel_features.json");
+            });
+    Throwable rootError = getRootCause(ex);
+    assertEquals(expectedException.toString(), rootError.toString());
+  }
+
   @Test
   public void inputDimensionMismatchTest() throws Exception {
     final ModelException expectedException =
@@ -359,6 +376,33 @@ public class TestNeuralNetworkModel extends TestRerankBase {
         explanation.toString());
   }
 
+  @Test
+  public void testBatchScore() throws Exception {
+    final LTRScoringModel model =
+        createModelFromFiles(
+            "neuralnetworkmodel_explainable.json", "neuralnetworkmodel_features.json");
+
+    final int numDocs = 1 + random().nextInt(20);
+    final float[][] featureValues = new float[numDocs][4];
+    for (float[] docFeatureValues : featureValues) {
+      for (int i = 0; i < docFeatureValues.length; i++) {
+        docFeatureValues[i] = random().nextFloat() * 10 - 5;
+      }
+    }
+    final float[][] copy = new float[numDocs][];
+    for (int doc = 0; doc < numDocs; doc++) {
+      copy[doc] = featureValues[doc].clone();
+    }
+
+    final float[] scores = new float[numDocs];
+    model.batchScore(featureValues, numDocs, scores);
+    for (int doc = 0; doc < numDocs; doc++) {
+      assertEquals(model.score(featureValues[doc]), scores[doc], 0f);
+      // the feature values belong to the caller
+      assertArrayEquals(copy[doc], featureValues[doc], 0f);
+    }
+  }
+
   public static class CustomNeuralNetworkModel extends NeuralNetworkModel {
 
     public CustomNeuralNetworkModel(
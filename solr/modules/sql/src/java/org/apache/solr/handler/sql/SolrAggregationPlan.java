@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.sql;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The plan of a GROUP BY query, with the estimates of its cost: either the shards facet the
+ * documents by the buckets, or the documents are exported, sorted by the buckets, and rolled up by
+ * one worker or in parallel by several. With the <code>auto</code> aggregation mode, the cheapest
+ * plan is chosen.
+ *
+ * <p>The costs are in the units of counting a document in a facet. Faceting also costs a bucket per
+ * group and shard, which the shards send and the node merges, and returns at most the limit of the
+ * query, or {@link SolrTable#DEFAULT_FACET_LIMIT} groups. Exporting costs more per document, shared
+ * among the workers, and each worker a constant more.
+ */
+record SolrAggregationPlan(String mode, int workers, long numFound, long groups, double cost) {
+
+  static final String FACET = "facet";
+  static final String MAP_REDUCE = "map_reduce";
+  static final String AUTO = "auto";
+
+  static final double FACET_BUCKET_COST = 20;
+  static final double EXPORT_DOC_COST = 10;
+  static final double WORKER_COST = 100_000;
+
+  /** The estimated numbers of groups are HyperLogLog estimates, within a few percent */
+  static final double GROUPS_ERROR = 1.1;
+
+  /** Returns the plan of an aggregation mode, and a number of workers for map_reduce */
+  static SolrAggregationPlan of(
+      String mode,
+      int workers,
+      SolrStatistics.QueryStatistics statistics,
+      List<String> buckets,
+      int numShards) {
+    long numFound = statistics.numFound();
+    long groups = statistics.groups(buckets);
+    if (MAP_REDUCE.equals(mode)) {
+      return new SolrAggregationPlan(
+          MAP_REDUCE, workers, numFound, groups, exportCost(numFound, workers));
+    }
+    return new SolrAggregationPlan(
+        FACET, 1, numFound, groups, facetCost(numFound, groups, numShards));
+  }
+
+  /**
+   * Chooses the cheapest plan of an aggregation, among faceting and exporting to up to <code>
+   * maxWorkers</code> workers. A facet plan is only chosen if it returns all the groups.
+   *
+   * @param limit the limit of the query, or null
+   */
+  static SolrAggregationPlan choose(
+      SolrStatistics.QueryStatistics statistics,
+      List<String> buckets,
+      String limit,
+      int numShards,
+      int maxWorkers) {
+    SolrAggregationPlan facet = of(FACET, 1, statistics, buckets, numShards);
+    SolrAggregationPlan export =
+        of(MAP_REDUCE, workers(statistics.numFound(), maxWorkers), statistics, buckets, numShards);
+    boolean facetComplete =
+        limit != null || facet.groups() * GROUPS_ERROR <= SolrTable.DEFAULT_FACET_LIMIT;
+    return facetComplete && facet.cost() <= export.cost() ? facet : export;
+  }
+
+  private static double facetCost(long numFound, long groups, int numShards) {
+    return numFound + (double) groups * Math.max(1, numShards) * FACET_BUCKET_COST;
+  }
+
+  private static double exportCost(long numFound, int workers) {
+    return numFound * EXPORT_DOC_COST / workers + workers * WORKER_COST;
+  }
+
+  /** The number of workers which minimizes the cost of exporting, at most maxWorkers */
+  private static int workers(long numFound, int maxWorkers) {
+    int workers = (int) Math.round(Math.sqrt(numFound * EXPORT_DOC_COST / WORKER_COST));
+    return Math.max(1, Math.min(workers, maxWorkers));
+  }
+
+  boolean isMapReduce() {
+    return MAP_REDUCE.equals(mode);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.ROOT,
+        "%s(workers=%d, numFound=%d, groups=%d, cost=%.0f)",
+        mode,
+        workers,
+        numFound,
+        groups,
+        cost);
+  }
+}
@@ -63,17 +63,23 @@ class SolrSchema extends AbstractSchema implements Closeable {
   // so there's some benefit to caching it for the duration of a statement
   // every statement gets a new SolrSchema instance
   private Map<String, RelDataType> schemaCache = new ConcurrentHashMap<>();
+  private final SolrStatistics statistics;
 
   SolrSchema(Properties properties, SolrClientCache solrClientCache) {
     super();
     this.properties = properties;
     this.solrClientCache = solrClientCache;
+    this.statistics = new SolrStatistics(properties.getProperty("zk"), solrClientCache);
   }
 
   public SolrClientCache getSolrClientCache() {
     return solrClientCache;
   }
 
+  SolrStatistics getStatistics() {
+    return statistics;
+  }
+
   @Override
   public void close() {
     isClosed = true;
@@ -102,7 +108,10 @@ class SolrSchema extends AbstractSchema implements Closeable {
     try {
       LukeRequest lukeRequest = new LukeRequest();
       lukeRequest.setNumTerms(0);
-      return lukeRequest.process(solrClientCache.getCloudSolrClient(zk), collection).getFieldInfo();
+      LukeResponse response =
+          lukeRequest.process(solrClientCache.getCloudSolrClient(zk), collection);
+      statistics.setIndexNumDocs(collection, response.getNumDocs());
+      return response.getFieldInfo();
     } catch (SolrServerException | IOException e) {
       throw new RuntimeException(e);
     } finally {
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.sql;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.client.solrj.io.SolrClientCache;
+import org.apache.solr.client.solrj.io.stream.CloudSolrStream;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.EnvUtils;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.request.SolrRequestInfo;
+
+/**
+ * Estimates of the sizes of the collections of a {@link SolrSchema}, and of the results of queries
+ * on them, which the planner chooses plans by. The number of documents of a collection is estimated
+ * from the index of the replica which answered the Luke request of the schema, times the number of
+ * shards. The number of documents matching a query, and the number of distinct values of fields
+ * among them, come from a <code>rows=0</code> query with HyperLogLog <code>hll</code> facets.
+ *
+ * <p>The query of the estimates runs as the user of the statement, whose permissions may restrict
+ * the documents it matches. It costs a pass over the matching documents per field, which the
+ * <code>auto</code> aggregation mode pays before each GROUP BY. The estimates of a query are thus
+ * shared by the statements of the same user for {@link #TTL_SECONDS}, up to {@link #MAX_CACHED}
+ * queries, as well as cached for the duration of a statement like the schema.
+ */
+class SolrStatistics {
+
+  /** The number of documents matching a query, and the number of distinct values of fields */
+  record QueryStatistics(long numFound, Map<String, Long> cardinalities) {
+
+    /**
+     * Estimates the number of groups of the documents by the values of fields: the product of the
+     * cardinalities of the fields, which the number of documents bounds.
+     */
+    long groups(List<String> fields) {
+      double groups = 1;
+      for (String field : fields) {
+        groups *= Math.max(1L, cardinalities.getOrDefault(field, numFound));
+      }
+      return (long) Math.min(groups, (double) numFound);
+    }
+  }
+
+  /** The time the estimates of a query are shared among statements */
+  static final long TTL_SECONDS = EnvUtils.getPropertyAsLong("solr.sql.statistics.ttl.sec", 60L);
+
+  /** The number of queries the estimates of which are shared among statements */
+  static final int MAX_CACHED = 1000;
+
+  private record CachedStatistics(QueryStatistics statistics, long nanoTime) {}
+
+  private static final Map<List<Object>, CachedStatistics> shared =
+      Collections.synchronizedMap(
+          new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, CachedStatistics> eldest) {
+              return size() > MAX_CACHED;
+            }
+          });
+
+  private final String zk;
+  private final SolrClientCache solrClientCache;
+  private final Map<String, Long> indexNumDocs = new ConcurrentHashMap<>();
+  private final Map<String, Integer> numShards = new ConcurrentHashMap<>();
+  private final Map<List<Object>, QueryStatistics> queries = new ConcurrentHashMap<>();
+
+  SolrStatistics(String zk, SolrClientCache solrClientCache) {
+    this.zk = zk;
+    this.solrClientCache = solrClientCache;
+  }
+
+  /** Records the number of documents of the index which answered a Luke request on a collection */
+  void setIndexNumDocs(String collection, Integer numDocs) {
+    if (numDocs != null) {
+      indexNumDocs.put(collection, numDocs.longValue());
+    }
+  }
+
+  /**
+   * Returns the estimated number of documents of a collection, or -1 if unknown. The schema of the
+   * collection must have been read.
+   */
+  long getNumDocs(String collection) {
+    Long numDocs = indexNumDocs.get(collection);
+    int shards = getNumShards(collection);
+    return numDocs == null || shards < 0 ? -1 : numDocs * shards;
+  }
+
+  /** Returns the number of shards of a collection, or of the collections of an alias */
+  int getNumShards(String collection) {
+    return numShards.computeIfAbsent(
+        collection,
+        c -> {
+          try {
+            return CloudSolrStream.getSlices(c, solrClientCache.getCloudSolrClient(zk), true)
+                .length;
+          } catch (IOException e) {
+            return -1;
+          }
+        });
+  }
+
+  /**
+   * Returns the number of documents of a collection which match a query, and the estimated number
+   * of distinct values of fields among them.
+   */
+  QueryStatistics getQueryStatistics(String collection, String query, List<String> fields) {
+    return queries.computeIfAbsent(
+        List.of(collection, query, fields), k -> getShared(collection, query, fields));
+  }
+
+  private QueryStatistics getShared(String collection, String query, List<String> fields) {
+    SolrRequestInfo requestInfo = SolrRequestInfo.getRequestInfo();
+    Principal principal = requestInfo == null ? null : requestInfo.getUserPrincipal();
+    List<Object> key =
+        List.of(zk, principal == null ? "" : principal.getName(), collection, query, fields);
+    CachedStatistics cached = shared.get(key);
+    if (cached == null
+        || System.nanoTime() - cached.nanoTime() > TimeUnit.SECONDS.toNanos(TTL_SECONDS)) {
+      cached = new CachedStatistics(fetch(collection, query, fields), System.nanoTime());
+      shared.put(key, cached);
+    }
+    return cached.statistics();
+  }
+
+  private QueryStatistics fetch(String collection, String query, List<String> fields) {
+    ModifiableSolrParams params = new ModifiableSolrParams();
+    params.set(CommonParams.Q, query);
+    params.set(CommonParams.ROWS, 0);
+    if (!fields.isEmpty()) {
+      StringBuilder facets = new StringBuilder("{");
+      for (int i = 0; i < fields.size(); i++) {
+        if (i > 0) {
+          facets.append(',');
+        }
+        facets.append("f").append(i).append(":\"hll(").append(fields.get(i)).append(")\"");
+      }
+      params.set("json.facet", facets.append('}').toString());
+    }
+
+    CloudSolrClient cloudSolrClient = solrClientCache.getCloudSolrClient(zk);
+    QueryResponse response;
+    // unlike the Luke requests of the schema, the query runs as the user of the statement
+    try {
+      response = new QueryRequest(params).process(cloudSolrClient, collection);
+    } catch (SolrServerException | IOException e) {
+      throw new RuntimeException(e);
+    }
+
+    long numFound = response.getResults().getNumFound();
+    Map<String, Long> cardinalities = new HashMap<>();
+    NamedList<?> facets = (NamedList<?>) response.getResponse().get("facets");
+    for (int i = 0; i < fields.size(); i++) {
+      // no documents match, or none has a value
+      Object cardinality = facets == null ? null : facets.get("f" + i);
+      cardinalities.put(fields.get(i), cardinality instanceof Number n ? n.longValue() : 0L);
+    }
+    return new QueryStatistics(numFound, cardinalities);
+  }
+}
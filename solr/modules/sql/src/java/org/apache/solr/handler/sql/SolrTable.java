@@ -44,6 +44,8 @@ import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.rel.type.RelProtoDataType;
 import org.apache.calcite.schema.SchemaPlus;
+import org.apache.calcite.schema.Statistic;
+import org.apache.calcite.schema.Statistics;
 import org.apache.calcite.schema.TranslatableTable;
 import org.apache.calcite.schema.impl.AbstractTableQueryable;
 import org.apache.calcite.util.Pair;
@@ -92,6 +94,9 @@ import org.apache.solr.common.params.ModifiableSolrParams;
 class SolrTable extends AbstractQueryableTable implements TranslatableTable {
   private static final String DEFAULT_QUERY = "*:*";
 
+  /** The number of groups a facet query returns if the query has no limit */
+  static final int DEFAULT_FACET_LIMIT = 1000;
+
   private final String collection;
   private final SolrSchema schema;
   private RelProtoDataType protoRowType;
@@ -115,6 +120,14 @@ class SolrTable extends AbstractQueryableTable implements TranslatableTable {
     return protoRowType.apply(typeFactory);
   }
 
+  /** Returns the estimated number of documents of the collection, which joins are ordered by */
+  @Override
+  public Statistic getStatistic() {
+    schema.getRowSchema(collection);
+    long numDocs = schema.getStatistics().getNumDocs(collection);
+    return numDocs < 0 ? Statistics.UNKNOWN : Statistics.of(numDocs, List.of());
+  }
+
   private Enumerable<Object> query(final Properties properties) {
     return query(
         properties,
@@ -149,19 +162,17 @@ class SolrTable extends AbstractQueryableTable implements TranslatableTable {
       final String havingPredicate,
       final String offset) {
     // SolrParams should be a ModifiableParams instead of a map
-    boolean mapReduce = "map_reduce".equals(properties.getProperty("aggregationMode"));
-    boolean negative = Boolean.parseBoolean(negativeQuery);
-
-    String q = null;
-
-    if (query == null) {
-      q = DEFAULT_QUERY;
-    } else {
-      if (negative) {
-        q = DEFAULT_QUERY + " AND " + query;
-      } else {
-        q = query;
-      }
+    String aggregationMode = properties.getProperty("aggregationMode");
+    boolean mapReduce = SolrAggregationPlan.MAP_REDUCE.equals(aggregationMode);
+    String q = toSolrQuery(query, negativeQuery);
+
+    Properties planProperties = properties;
+    if (!buckets.isEmpty() && SolrAggregationPlan.AUTO.equals(aggregationMode)) {
+      SolrAggregationPlan plan = planAggregation(properties, q, buckets, limit);
+      mapReduce = plan.isMapReduce();
+      planProperties = new Properties();
+      planProperties.putAll(properties);
+      planProperties.setProperty("numWorkers", Integer.toString(plan.workers()));
     }
 
     TupleStream tupleStream;
@@ -178,7 +189,7 @@ class SolrTable extends AbstractQueryableTable implements TranslatableTable {
                 handleGroupByMapReduce(
                     zk,
                     collection,
-                    properties,
+                    planProperties,
                     fields,
                     q,
                     orders,
@@ -220,6 +231,63 @@ class SolrTable extends AbstractQueryableTable implements TranslatableTable {
     };
   }
 
+  private static String toSolrQuery(String query, String negativeQuery) {
+    if (query == null) {
+      return DEFAULT_QUERY;
+    } else if (Boolean.parseBoolean(negativeQuery)) {
+      return DEFAULT_QUERY + " AND " + query;
+    } else {
+      return query;
+    }
+  }
+
+  /**
+   * Chooses the plan of an aggregation by the estimates of its cost, with up to <code>numWorkers
+   * </code> workers.
+   */
+  private SolrAggregationPlan planAggregation(
+      Properties properties, String q, List<String> buckets, String limit) {
+    SolrStatistics statistics = schema.getStatistics();
+    int maxWorkers = Integer.parseInt(properties.getProperty("numWorkers", "1"));
+    return SolrAggregationPlan.choose(
+        statistics.getQueryStatistics(collection, q, buckets),
+        buckets,
+        limit,
+        statistics.getNumShards(collection),
+        maxWorkers);
+  }
+
+  /**
+   * Describes how a query is run, with the estimates the plan of an aggregation is chosen by, for
+   * EXPLAIN.
+   */
+  String explainPlan(
+      String query,
+      String negativeQuery,
+      List<String> buckets,
+      List<Pair<String, String>> metricPairs,
+      String limit) {
+    Properties properties = schema.properties;
+    String q = toSolrQuery(query, negativeQuery);
+    SolrStatistics statistics = schema.getStatistics();
+    if (buckets.isEmpty()) {
+      long numFound = statistics.getQueryStatistics(collection, q, List.of()).numFound();
+      String mode = metricPairs.isEmpty() ? "select" : "stats";
+      return String.format(Locale.ROOT, "%s(numFound=%d)", mode, numFound);
+    }
+    String mode = properties.getProperty("aggregationMode", SolrAggregationPlan.FACET);
+    if (SolrAggregationPlan.AUTO.equals(mode)) {
+      return planAggregation(properties, q, buckets, limit).toString();
+    }
+    return SolrAggregationPlan.of(
+            mode,
+            Integer.parseInt(properties.getProperty("numWorkers", "1")),
+            statistics.getQueryStatistics(collection, q, buckets),
+            buckets,
+            statistics.getNumShards(collection))
+        .toString();
+  }
+
   private static StreamComparator bucketSortComp(List<Bucket> buckets, Map<String, String> dirs) {
     FieldComparator[] comps = new FieldComparator[buckets.size()];
     for (int i = 0; i < buckets.size(); i++) {
@@ -684,7 +752,7 @@ class SolrTable extends AbstractQueryableTable implements TranslatableTable {
       }
     }
 
-    int limit = lim != null ? Integer.parseInt(lim) : 1000;
+    int limit = lim != null ? Integer.parseInt(lim) : DEFAULT_FACET_LIMIT;
 
     FieldComparator[] sorts = null;
 
@@ -36,10 +36,12 @@ import org.apache.calcite.plan.RelOptCost;
 import org.apache.calcite.plan.RelOptPlanner;
 import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelWriter;
 import org.apache.calcite.rel.convert.ConverterImpl;
 import org.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.runtime.Hook;
+import org.apache.calcite.sql.SqlExplainLevel;
 import org.apache.calcite.util.BuiltInMethod;
 import org.apache.calcite.util.Pair;
 
@@ -59,6 +61,26 @@ class SolrToEnumerableConverter extends ConverterImpl implements EnumerableRel {
     return super.computeSelfCost(planner, mq).multiplyBy(.1);
   }
 
+  @Override
+  public RelWriter explainTerms(RelWriter pw) {
+    super.explainTerms(pw);
+    // the estimates of the plan take requests to Solr, which the digests of the nodes do without
+    SqlExplainLevel level = pw.getDetailLevel();
+    if (level == SqlExplainLevel.EXPPLAN_ATTRIBUTES || level == SqlExplainLevel.ALL_ATTRIBUTES) {
+      final SolrRel.Implementor solrImplementor = new SolrRel.Implementor();
+      solrImplementor.visitChild(0, getInput());
+      pw.item(
+          "plan",
+          solrImplementor.solrTable.explainPlan(
+              solrImplementor.query,
+              Boolean.toString(solrImplementor.negativeQuery),
+              solrImplementor.buckets,
+              solrImplementor.metricPairs,
+              solrImplementor.limitValue));
+    }
+    return pw;
+  }
+
   @Override
   public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
     // Generates a call to "query" with the appropriate fields
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.sql;
+
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.SolrTestCase;
+import org.junit.Test;
+
+public class SolrAggregationPlanTest extends SolrTestCase {
+
+  @Test
+  public void testGroups() {
+    SolrStatistics.QueryStatistics statistics =
+        new SolrStatistics.QueryStatistics(1000, Map.of("a", 10L, "b", 50L, "empty", 0L));
+    assertEquals(10, statistics.groups(List.of("a")));
+    assertEquals(500, statistics.groups(List.of("a", "b")));
+    assertEquals(10, statistics.groups(List.of("a", "empty")));
+    // there are at most as many groups as documents
+    assertEquals(1000, statistics.groups(List.of("a", "b", "b")));
+  }
+
+  @Test
+  public void testChoose() {
+    List<String> buckets = List.of("a");
+
+    // few groups are faceted
+    SolrAggregationPlan plan = choose(1_000_000, 100, null, 8);
+    assertEquals(SolrAggregationPlan.FACET, plan.mode());
+    assertEquals(100, plan.groups());
+
+    // more groups than a facet returns without a limit are exported
+    plan = choose(1_000_000, 5000, null, 8);
+    assertEquals(SolrAggregationPlan.MAP_REDUCE, plan.mode());
+    assertEquals(8, plan.workers());
+    plan = choose(10_000, 5000, null, 8);
+    assertEquals(SolrAggregationPlan.MAP_REDUCE, plan.mode());
+    assertEquals(1, plan.workers());
+
+    // with a limit, the groups are faceted unless there are too many of them to send
+    assertEquals(SolrAggregationPlan.FACET, choose(1_000_000, 5000, "10", 8).mode());
+    assertEquals(SolrAggregationPlan.MAP_REDUCE, choose(1_000_000, 900_000, "10", 8).mode());
+
+    // the cost of a forced mode
+    plan =
+        SolrAggregationPlan.of(
+            SolrAggregationPlan.MAP_REDUCE,
+            2,
+            new SolrStatistics.QueryStatistics(1000, Map.of("a", 10L)),
+            buckets,
+            2);
+    assertEquals(2, plan.workers());
+    assertEquals(
+        1000 * SolrAggregationPlan.EXPORT_DOC_COST / 2 + 2 * SolrAggregationPlan.WORKER_COST,
+        plan.cost(),
+        0.0);
+  }
+
+  private static SolrAggregationPlan choose(
+      long numFound, long cardinality, String limit, int maxWorkers) {
+    return SolrAggregationPlan.choose(
+        new SolrStatistics.QueryStatistics(numFound, Map.of("a", cardinality)),
+        List.of("a"),
+        limit,
+        2,
+        maxWorkers);
+  }
+}
@@ -1674,6 +1674,66 @@ public class TestSQLHandler extends SolrCloudTestCase {
     assertEquals(0, tuples.size());
   }
 
+  @Test
+  public void testAutoAggregationMode() throws Exception {
+    UpdateRequest update = new UpdateRequest();
+    for (int i = 0; i < 1200; i++) {
+      update.add("id", Integer.toString(i), "str_s", "s" + i, "field_i", Integer.toString(i % 10));
+    }
+    update.commit(cluster.getSolrClient(), COLLECTIONORALIAS);
+
+    // few groups are faceted
+    SolrParams sParams =
+        params(
+            CommonParams.QT,
+            "/sql",
+            "aggregationMode",
+            "auto",
+            "stmt",
+            "select field_i, count(*) from collection1 group by field_i order by field_i asc");
+    List<Tuple> tuples = getTuples(sParams, sqlUrl());
+    assertEquals(10, tuples.size());
+    assertEquals(0L, tuples.get(0).getLong("field_i").longValue());
+    assertEquals(120L, tuples.get(0).getLong("EXPR$1").longValue());
+
+    sParams =
+        params(
+            CommonParams.QT,
+            "/sql",
+            "aggregationMode",
+            "auto",
+            "stmt",
+            "explain plan for select field_i, count(*) from collection1 group by field_i");
+    tuples = getTuples(sParams, sqlUrl());
+    assertEquals(1, tuples.size());
+    assertTrue(tuples.get(0).getString("PLAN").contains("plan=[facet(workers=1, numFound=1200"));
+
+    // more groups than a facet returns without a limit are exported, rather than cut
+    sParams =
+        params(
+            CommonParams.QT,
+            "/sql",
+            "aggregationMode",
+            "auto",
+            "stmt",
+            "select str_s, count(*) from collection1 group by str_s order by str_s asc");
+    tuples = getTuples(sParams, sqlUrl());
+    assertEquals(1200, tuples.size());
+    assertEquals("s0", tuples.get(0).getString("str_s"));
+
+    // with a limit, the groups are faceted
+    sParams =
+        params(
+            CommonParams.QT,
+            "/sql",
+            "aggregationMode",
+            "auto",
+            "stmt",
+            "explain plan for select str_s, count(*) from collection1 group by str_s limit 10");
+    tuples = getTuples(sParams, sqlUrl());
+    assertTrue(tuples.get(0).getString("PLAN").contains("plan=[facet("));
+  }
+
   @Test
   public void testAggregatesWithoutGrouping() throws Exception {
 
@@ -34,6 +34,7 @@ import org.apache.solr.client.solrj.impl.Http2SolrClient;
 import org.apache.solr.client.solrj.impl.HttpClientUtil;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
 import org.apache.solr.client.solrj.impl.SolrClientBuilder;
+import org.apache.solr.client.solrj.io.stream.LookupCoalescer;
 import org.apache.solr.common.AlreadyClosedException;
 import org.apache.solr.common.util.IOUtils;
 import org.apache.solr.common.util.URLUtil;
@@ -57,6 +58,7 @@ public class SolrClientCache implements Closeable {
   private final Http2SolrClient http2SolrClient;
   private final AtomicBoolean isClosed = new AtomicBoolean(false);
   private final AtomicReference<String> defaultZkHost = new AtomicReference<>();
+  private LookupCoalescer lookupCoalescer;
 
   public SolrClientCache() {
     this.apacheHttpClient = null;
@@ -221,6 +223,18 @@ public class SolrClientCache implements Closeable {
     return builder;
   }
 
+  /**
+   * Returns the {@link LookupCoalescer} of the streams which share this cache, which merges their
+   * concurrent lookups and limits the requests they send at a time.
+   */
+  public synchronized LookupCoalescer getLookupCoalescer() {
+    ensureOpen();
+    if (lookupCoalescer == null) {
+      lookupCoalescer = new LookupCoalescer(this);
+    }
+    return lookupCoalescer;
+  }
+
   @Override
   public synchronized void close() {
     if (isClosed.compareAndSet(false, true)) {
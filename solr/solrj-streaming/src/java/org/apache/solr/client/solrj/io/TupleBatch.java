@@ -0,0 +1,424 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io;
+
+import java.util.Arrays;
+
+/**
+ * A batch of tuples stored by column, with the fields of a {@link TupleSchema}. A column holds
+ * primitive <code>long</code> or <code>double</code> values as long as all the values of the column
+ * in the batch are Longs, or Doubles, so that these values are neither boxed nor looked up by name
+ * when read. A column with values of other types, or of several types, holds objects.
+ *
+ * <p>A batch is filled with {@link #addRow()} and the setters, or {@link #add(Tuple)}, and read
+ * with the getters, or {@link #getTuple(int)}. It is reused by clearing it. The aggregates of a
+ * primitive column over a range of rows, such as {@link #sumLongs(int, int, int)}, are computed in
+ * a loop over its array.
+ *
+ * @see org.apache.solr.client.solrj.io.stream.TupleStream#readBatch(TupleBatch)
+ */
+public final class TupleBatch {
+
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  /** The type of the values of a column */
+  public enum Type {
+    /** No values, every row of the column is null */
+    EMPTY,
+    LONG,
+    DOUBLE,
+    OBJECT
+  }
+
+  private final TupleSchema schema;
+  private final int capacity;
+  private final Column[] columns;
+  private int size;
+  private Tuple endTuple;
+
+  public TupleBatch(TupleSchema schema) {
+    this(schema, DEFAULT_CAPACITY);
+  }
+
+  public TupleBatch(TupleSchema schema, int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    this.schema = schema;
+    this.capacity = capacity;
+    this.columns = new Column[schema.size()];
+    for (int i = 0; i < columns.length; i++) {
+      columns[i] = new Column(capacity);
+    }
+  }
+
+  public TupleSchema getSchema() {
+    return schema;
+  }
+
+  /** Returns the number of rows */
+  public int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  public boolean isFull() {
+    return size == capacity;
+  }
+
+  /**
+   * Returns the tuple which ended the stream the rows of this batch were read from, ie. its EOF
+   * tuple or an exception tuple, or null if the stream may have more tuples. The rows of this batch
+   * come before it.
+   */
+  public Tuple getEndTuple() {
+    return endTuple;
+  }
+
+  public void setEndTuple(Tuple endTuple) {
+    this.endTuple = endTuple;
+  }
+
+  /** Removes all the rows of this batch, and its end tuple */
+  public void clear() {
+    for (Column column : columns) {
+      column.clear(size);
+    }
+    size = 0;
+    endTuple = null;
+  }
+
+  /** Adds a row whose fields are all null, and returns it */
+  public int addRow() {
+    if (size == capacity) {
+      throw new IllegalStateException("The batch is full");
+    }
+    int row = size++;
+    for (Column column : columns) {
+      column.present[row] = false;
+    }
+    return row;
+  }
+
+  /** Removes the last row */
+  public void removeRow() {
+    int row = --size;
+    for (Column column : columns) {
+      column.set(row, null);
+      column.present[row] = false;
+    }
+  }
+
+  /** Adds a row with the fields of a tuple which are in the schema */
+  public void add(Tuple tuple) {
+    int row = addRow();
+    for (int i = 0; i < columns.length; i++) {
+      Object value = tuple.get(schema.getFieldName(i));
+      if (value != null) {
+        set(row, i, value);
+      }
+    }
+  }
+
+  public void setLong(int row, int column, long value) {
+    columns[column].setLong(row, value);
+  }
+
+  public void setDouble(int row, int column, double value) {
+    columns[column].setDouble(row, value);
+  }
+
+  public void set(int row, int column, Object value) {
+    if (value instanceof Long l) {
+      columns[column].setLong(row, l);
+    } else if (value instanceof Double d) {
+      columns[column].setDouble(row, d);
+    } else {
+      columns[column].set(row, value);
+    }
+  }
+
+  public Type getType(int column) {
+    return columns[column].type;
+  }
+
+  public boolean isNull(int row, int column) {
+    return !columns[column].present[row];
+  }
+
+  /**
+   * Returns the value of a field of a {@link Type#LONG} column, which is undefined if the field is
+   * {@link #isNull null}.
+   *
+   * @throws IllegalStateException if the column is not a {@link Type#LONG} column
+   */
+  public long getLong(int row, int column) {
+    Column c = columns[column];
+    if (c.type != Type.LONG) {
+      throw new IllegalStateException(
+          "Field " + schema.getFieldName(column) + " is not a long column: " + c.type);
+    }
+    return c.longs[row];
+  }
+
+  /**
+   * Returns the value of a field of a {@link Type#DOUBLE} column, which is undefined if the field
+   * is {@link #isNull null}.
+   *
+   * @throws IllegalStateException if the column is not a {@link Type#DOUBLE} column
+   */
+  public double getDouble(int row, int column) {
+    Column c = columns[column];
+    if (c.type != Type.DOUBLE) {
+      throw new IllegalStateException(
+          "Field " + schema.getFieldName(column) + " is not a double column: " + c.type);
+    }
+    return c.doubles[row];
+  }
+
+  /** Returns the value of a field, boxed if the column is a primitive column */
+  public Object get(int row, int column) {
+    return columns[column].get(row);
+  }
+
+  /**
+   * Returns the number of non-null values of a column in a range of rows, from <code>from</code>,
+   * inclusive, to <code>to</code>, exclusive.
+   */
+  public int count(int column, int from, int to) {
+    boolean[] present = columns[column].present;
+    int count = 0;
+    for (int row = from; row < to; row++) {
+      if (present[row]) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /** Returns the sum of the non-null values of a {@link Type#LONG} column in a range of rows */
+  public long sumLongs(int column, int from, int to) {
+    Column c = checkType(column, Type.LONG);
+    long sum = 0;
+    for (int row = from; row < to; row++) {
+      if (c.present[row]) {
+        sum += c.longs[row];
+      }
+    }
+    return sum;
+  }
+
+  /** Returns the sum of the non-null values of a {@link Type#DOUBLE} column in a range of rows */
+  public double sumDoubles(int column, int from, int to) {
+    Column c = checkType(column, Type.DOUBLE);
+    double sum = 0;
+    for (int row = from; row < to; row++) {
+      if (c.present[row]) {
+        sum += c.doubles[row];
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * Returns the minimum of the non-null values of a {@link Type#LONG} column in a range of rows, or
+   * {@link Long#MAX_VALUE} if there are none.
+   */
+  public long minLong(int column, int from, int to) {
+    Column c = checkType(column, Type.LONG);
+    long min = Long.MAX_VALUE;
+    for (int row = from; row < to; row++) {
+      if (c.present[row] && c.longs[row] < min) {
+        min = c.longs[row];
+      }
+    }
+    return min;
+  }
+
+  /**
+   * Returns the maximum of the non-null values of a {@link Type#LONG} column in a range of rows, or
+   * {@link Long#MIN_VALUE} if there are none.
+   */
+  public long maxLong(int column, int from, int to) {
+    Column c = checkType(column, Type.LONG);
+    long max = Long.MIN_VALUE;
+    for (int row = from; row < to; row++) {
+      if (c.present[row] && c.longs[row] > max) {
+        max = c.longs[row];
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Returns the minimum of the non-null values of a {@link Type#DOUBLE} column in a range of rows,
+   * or positive infinity if there are none. NaN values are ignored.
+   */
+  public double minDouble(int column, int from, int to) {
+    Column c = checkType(column, Type.DOUBLE);
+    double min = Double.POSITIVE_INFINITY;
+    for (int row = from; row < to; row++) {
+      if (c.present[row] && c.doubles[row] < min) {
+        min = c.doubles[row];
+      }
+    }
+    return min;
+  }
+
+  /**
+   * Returns the maximum of the non-null values of a {@link Type#DOUBLE} column in a range of rows,
+   * or negative infinity if there are none. NaN values are ignored.
+   */
+  public double maxDouble(int column, int from, int to) {
+    Column c = checkType(column, Type.DOUBLE);
+    double max = Double.NEGATIVE_INFINITY;
+    for (int row = from; row < to; row++) {
+      if (c.present[row] && c.doubles[row] > max) {
+        max = c.doubles[row];
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Returns true if two rows have equal values of a column, or are both null. Doubles are equal as
+   * by {@link Double#equals(Object)}.
+   */
+  public boolean equals(int column, int row, int otherRow) {
+    Column c = columns[column];
+    if (c.present[row] != c.present[otherRow]) {
+      return false;
+    }
+    if (!c.present[row]) {
+      return true;
+    }
+    return switch (c.type) {
+      case LONG -> c.longs[row] == c.longs[otherRow];
+      case DOUBLE ->
+          Double.doubleToLongBits(c.doubles[row]) == Double.doubleToLongBits(c.doubles[otherRow]);
+      case OBJECT -> c.objects[row].equals(c.objects[otherRow]);
+      case EMPTY -> true;
+    };
+  }
+
+  private Column checkType(int column, Type type) {
+    Column c = columns[column];
+    if (c.type != type) {
+      throw new IllegalStateException(
+          "Field " + schema.getFieldName(column) + " is not a " + type + " column: " + c.type);
+    }
+    return c;
+  }
+
+  /** Returns a new tuple with the non-null fields of a row */
+  public Tuple getTuple(int row) {
+    Tuple tuple = new Tuple();
+    for (int i = 0; i < columns.length; i++) {
+      if (columns[i].present[row]) {
+        tuple.put(schema.getFieldName(i), columns[i].get(row));
+      }
+    }
+    return tuple;
+  }
+
+  private static final class Column {
+    private final boolean[] present;
+    private Type type = Type.EMPTY;
+    private long[] longs;
+    private double[] doubles;
+    private Object[] objects;
+
+    Column(int capacity) {
+      this.present = new boolean[capacity];
+    }
+
+    void setLong(int row, long value) {
+      if (type == Type.EMPTY) {
+        type = Type.LONG;
+        if (longs == null) {
+          longs = new long[present.length];
+        }
+      }
+      if (type == Type.LONG) {
+        longs[row] = value;
+        present[row] = true;
+      } else {
+        set(row, value);
+      }
+    }
+
+    void setDouble(int row, double value) {
+      if (type == Type.EMPTY) {
+        type = Type.DOUBLE;
+        if (doubles == null) {
+          doubles = new double[present.length];
+        }
+      }
+      if (type == Type.DOUBLE) {
+        doubles[row] = value;
+        present[row] = true;
+      } else {
+        set(row, value);
+      }
+    }
+
+    void set(int row, Object value) {
+      if (value == null) {
+        present[row] = false;
+        if (objects != null) {
+          objects[row] = null;
+        }
+        return;
+      }
+      if (type != Type.OBJECT) {
+        // box the values of the rows before this one, the column now holds several types
+        if (objects == null) {
+          objects = new Object[present.length];
+        }
+        for (int i = 0; i < row; i++) {
+          objects[i] = present[i] ? get(i) : null;
+        }
+        type = Type.OBJECT;
+      }
+      objects[row] = value;
+      present[row] = true;
+    }
+
+    Object get(int row) {
+      if (!present[row]) {
+        return null;
+      }
+      return switch (type) {
+        case LONG -> longs[row];
+        case DOUBLE -> doubles[row];
+        case OBJECT -> objects[row];
+        case EMPTY -> null;
+      };
+    }
+
+    void clear(int size) {
+      if (objects != null) {
+        Arrays.fill(objects, 0, size, null);
+      }
+      Arrays.fill(present, 0, size, false);
+      type = Type.EMPTY;
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The layout of the fields of the tuples of a {@link TupleBatch}: the names of its columns, in
+ * order. A stream which reads batches resolves the columns of the fields it uses once, rather than
+ * looking the fields up by name for every tuple.
+ */
+public final class TupleSchema {
+
+  private final String[] fieldNames;
+  private final Map<String, Integer> columns;
+
+  /**
+   * @param fieldNames the names of the fields, duplicates are ignored
+   */
+  public TupleSchema(Collection<String> fieldNames) {
+    this.fieldNames = new LinkedHashSet<>(fieldNames).toArray(new String[0]);
+    this.columns = new HashMap<>();
+    for (int i = 0; i < this.fieldNames.length; i++) {
+      columns.put(this.fieldNames[i], i);
+    }
+  }
+
+  public TupleSchema(String... fieldNames) {
+    this(Arrays.asList(fieldNames));
+  }
+
+  /** Returns the number of columns */
+  public int size() {
+    return fieldNames.length;
+  }
+
+  public String getFieldName(int column) {
+    return fieldNames[column];
+  }
+
+  public List<String> getFieldNames() {
+    return List.of(fieldNames);
+  }
+
+  /** Returns the column of a field, or -1 if the field is not in this schema */
+  public int getColumn(String fieldName) {
+    Integer column = columns.get(fieldName);
+    return column == null ? -1 : column;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof TupleSchema other && Arrays.equals(fieldNames, other.fieldNames);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(fieldNames);
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(fieldNames);
+  }
+}
@@ -0,0 +1,403 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.eval;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.stream.StreamContext;
+import org.apache.solr.client.solrj.io.stream.expr.Explanation;
+import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionParameter;
+import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
+import org.apache.solr.common.util.EnvUtils;
+
+/**
+ * Evaluates the arithmetic, comparisons and boolean logic of an evaluator over primitive values,
+ * without the boxing and the {@link java.math.BigDecimal}s of the evaluators it is compiled from.
+ *
+ * <p>The add, sub, mult, div, if, eq, gt, gteq, lt, lteq, and, or and not evaluators are compiled
+ * into lambdas over doubles and booleans; any other evaluator within them is evaluated as usual,
+ * and its result used if it is a number or a boolean. The branch an if chooses is returned as the
+ * if evaluator returns it, whatever its type. The compiled lambdas only compute what the
+ * evaluators would compute exactly: the arithmetic of whole numbers below 2<sup>53</sup>, with
+ * whole results, and the comparisons of finite numbers. For anything else, such as a fraction, a
+ * null or a list, the tuple is evaluated by the evaluators themselves, so that the result is the
+ * same either way. An evaluator which falls back for most tuples stops being compiled.
+ *
+ * <p>The compilation may be disabled with the <code>solr.streaming.evaluators.compile</code>
+ * property. The evaluators compiled and the tuples which fell back are counted in {@link
+ * #getMetrics()}.
+ */
+public final class CompiledEvaluator implements StreamEvaluator {
+
+  private static final long serialVersionUID = 1L;
+
+  public static final boolean ENABLED =
+      EnvUtils.getPropertyAsBool("solr.streaming.evaluators.compile", true);
+
+  // the whole numbers which doubles and BigDecimals agree on
+  private static final double MAX_EXACT = 0x1p53;
+
+  // evaluations after which an evaluator falling back for most tuples stops being compiled
+  static final int MIN_EVALUATIONS = 1024;
+
+  private static final LongAdder COMPILED = new LongAdder();
+  private static final LongAdder EVALUATIONS = new LongAdder();
+  private static final LongAdder FALLBACKS = new LongAdder();
+
+  /** Thrown by the compiled lambdas for the values they don't compute exactly */
+  private static final class Fallback extends RuntimeException {
+    private static final Fallback INSTANCE = new Fallback();
+
+    private Fallback() {
+      super(null, null, false, false);
+    }
+  }
+
+  private interface NumberNode extends Serializable {
+    double evaluate(Tuple tuple) throws IOException;
+  }
+
+  private interface BooleanNode extends Serializable {
+    boolean evaluate(Tuple tuple) throws IOException;
+  }
+
+  private interface ValueNode extends Serializable {
+    Object evaluate(Tuple tuple) throws IOException;
+  }
+
+  private final StreamEvaluator evaluator;
+  private ValueNode node;
+  private long evaluations;
+  private long fallbacks;
+
+  private CompiledEvaluator(StreamEvaluator evaluator, ValueNode node) {
+    this.evaluator = evaluator;
+    this.node = node;
+  }
+
+  /**
+   * Returns an evaluator computing the same as the given one, compiled if it is arithmetic or
+   * boolean logic, or the evaluator itself otherwise.
+   */
+  public static StreamEvaluator compile(StreamEvaluator evaluator) {
+    if (!ENABLED || evaluator instanceof CompiledEvaluator) {
+      return evaluator;
+    }
+    if (!isNumeric(evaluator) && !isBoolean(evaluator)) {
+      return evaluator;
+    }
+    COMPILED.increment();
+    return new CompiledEvaluator(evaluator, compileValue(evaluator));
+  }
+
+  /** Returns the evaluator this was compiled from */
+  public StreamEvaluator getEvaluator() {
+    return evaluator;
+  }
+
+  @Override
+  public Object evaluate(Tuple tuple) throws IOException {
+    if (node != null) {
+      evaluations++;
+      try {
+        return node.evaluate(tuple);
+      } catch (IOException | RuntimeException e) {
+        // anything not computed exactly, or failing, is left to the evaluator, for its own result
+        // or error
+        fallbacks++;
+        FALLBACKS.increment();
+        if (evaluations >= MIN_EVALUATIONS && fallbacks * 2 > evaluations) {
+          node = null;
+        }
+      } finally {
+        EVALUATIONS.increment();
+      }
+    }
+    return evaluator.evaluate(tuple);
+  }
+
+  private static boolean isNumeric(StreamEvaluator evaluator) {
+    return evaluator instanceof AddEvaluator
+        || evaluator instanceof SubtractEvaluator
+        || evaluator instanceof MultiplyEvaluator
+        || evaluator instanceof DivideEvaluator
+        || evaluator instanceof IfThenElseEvaluator;
+  }
+
+  private static boolean isBoolean(StreamEvaluator evaluator) {
+    return evaluator instanceof EqualToEvaluator
+        || evaluator instanceof GreaterThanEvaluator
+        || evaluator instanceof GreaterThanEqualToEvaluator
+        || evaluator instanceof LessThanEvaluator
+        || evaluator instanceof LessThanEqualToEvaluator
+        || evaluator instanceof AndEvaluator
+        || evaluator instanceof OrEvaluator
+        || evaluator instanceof NotEvaluator;
+  }
+
+  /** Compiles an evaluator returning what it returns: a double, a boolean, or the branch of an if */
+  private static ValueNode compileValue(StreamEvaluator evaluator) {
+    if (evaluator instanceof IfThenElseEvaluator ifThenElse) {
+      return compileIf(ifThenElse);
+    } else if (isNumeric(evaluator)) {
+      NumberNode number = compileNumber(evaluator);
+      return tuple -> number.evaluate(tuple);
+    } else if (isBoolean(evaluator)) {
+      BooleanNode condition = compileBoolean(evaluator);
+      return tuple -> condition.evaluate(tuple);
+    }
+    return evaluator::evaluate;
+  }
+
+  private static ValueNode compileIf(IfThenElseEvaluator evaluator) {
+    // all of if(condition, then, else) are evaluated, as by the evaluator
+    List<StreamEvaluator> operands = evaluator.containedEvaluators;
+    BooleanNode condition = compileBoolean(operands.get(0));
+    ValueNode then = compileValue(operands.get(1));
+    ValueNode otherwise = compileValue(operands.get(2));
+    return tuple -> {
+      boolean test = condition.evaluate(tuple);
+      Object thenValue = then.evaluate(tuple);
+      Object otherwiseValue = otherwise.evaluate(tuple);
+      // the branch is converted as by the evaluator, which gives a long as a double, for instance
+      return evaluator.normalizeOutputType(
+          evaluator.normalizeInputType(test ? thenValue : otherwiseValue));
+    };
+  }
+
+  private static NumberNode compileNumber(StreamEvaluator evaluator) {
+    if (evaluator instanceof FieldValueEvaluator field) {
+      String fieldName = field.getFieldName();
+      return tuple -> {
+        Object value = tuple.get(fieldName);
+        if (value == null) {
+          // may be found in the context
+          throw Fallback.INSTANCE;
+        }
+        StreamContext context = field.getStreamContext();
+        if (context != null) {
+          context.getTupleContext().remove("null");
+        }
+        return number(value);
+      };
+    } else if (evaluator instanceof RawValueEvaluator raw && isExact(raw.getValue())) {
+      double value = number(raw.getValue());
+      return tuple -> value;
+    } else if (!isNumeric(evaluator)) {
+      return tuple -> number(evaluator.evaluate(tuple));
+    }
+
+    if (evaluator instanceof IfThenElseEvaluator ifThenElse) {
+      ValueNode node = compileIf(ifThenElse);
+      return tuple -> number(node.evaluate(tuple));
+    }
+
+    List<StreamEvaluator> operands = ((RecursiveEvaluator) evaluator).containedEvaluators;
+
+    NumberNode[] nodes = new NumberNode[operands.size()];
+    for (int i = 0; i < nodes.length; i++) {
+      nodes[i] = compileNumber(operands.get(i));
+    }
+    if (evaluator instanceof AddEvaluator) {
+      return tuple -> {
+        double result = 0;
+        for (NumberNode node : nodes) {
+          result = result(result + operand(node.evaluate(tuple)));
+        }
+        return result;
+      };
+    } else if (evaluator instanceof SubtractEvaluator) {
+      return tuple -> {
+        double result = operand(nodes[0].evaluate(tuple));
+        for (int i = 1; i < nodes.length; i++) {
+          result = result(result - operand(nodes[i].evaluate(tuple)));
+        }
+        return result;
+      };
+    } else if (evaluator instanceof MultiplyEvaluator) {
+      return tuple -> {
+        double result = 1;
+        for (NumberNode node : nodes) {
+          result = result(result * operand(node.evaluate(tuple)));
+        }
+        return result;
+      };
+    } else {
+      NumberNode numerator = nodes[0];
+      NumberNode denominator = nodes[1];
+      return tuple -> {
+        double n = operand(numerator.evaluate(tuple));
+        double d = operand(denominator.evaluate(tuple));
+        // only whole quotients, and the error of a 0 denominator is the evaluator's
+        if (d == 0 || n % d != 0) {
+          throw Fallback.INSTANCE;
+        }
+        return result(n / d);
+      };
+    }
+  }
+
+  private static BooleanNode compileBoolean(StreamEvaluator evaluator) {
+    if (!isBoolean(evaluator)
+        || (evaluator instanceof NotEvaluator not && not.containedEvaluators.size() != 1)) {
+      return tuple -> {
+        if (evaluator.evaluate(tuple) instanceof Boolean value) {
+          return value;
+        }
+        throw Fallback.INSTANCE;
+      };
+    }
+
+    List<StreamEvaluator> operands = ((RecursiveEvaluator) evaluator).containedEvaluators;
+    if (evaluator instanceof NotEvaluator) {
+      BooleanNode operand = compileBoolean(operands.get(0));
+      return tuple -> !operand.evaluate(tuple);
+    } else if (evaluator instanceof AndEvaluator || evaluator instanceof OrEvaluator) {
+      boolean and = evaluator instanceof AndEvaluator;
+      BooleanNode[] nodes = new BooleanNode[operands.size()];
+      for (int i = 0; i < nodes.length; i++) {
+        nodes[i] = compileBoolean(operands.get(i));
+      }
+      return tuple -> {
+        // all the operands are evaluated, and tested by pairs, as by the evaluator
+        boolean[] values = new boolean[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+          values[i] = nodes[i].evaluate(tuple);
+        }
+        for (int i = 1; i < values.length; i++) {
+          if (and ? !(values[i - 1] && values[i]) : !(values[i - 1] || values[i])) {
+            return false;
+          }
+        }
+        return true;
+      };
+    }
+
+    NumberNode[] nodes = new NumberNode[operands.size()];
+    for (int i = 0; i < nodes.length; i++) {
+      nodes[i] = compileNumber(operands.get(i));
+    }
+    Comparison comparison;
+    if (evaluator instanceof EqualToEvaluator) {
+      comparison = (left, right) -> left == right;
+    } else if (evaluator instanceof GreaterThanEvaluator) {
+      comparison = (left, right) -> left > right;
+    } else if (evaluator instanceof GreaterThanEqualToEvaluator) {
+      comparison = (left, right) -> left >= right;
+    } else if (evaluator instanceof LessThanEvaluator) {
+      comparison = (left, right) -> left < right;
+    } else {
+      comparison = (left, right) -> left <= right;
+    }
+    return tuple -> {
+      double[] values = new double[nodes.length];
+      for (int i = 0; i < nodes.length; i++) {
+        values[i] = nodes[i].evaluate(tuple);
+      }
+      for (int i = 1; i < values.length; i++) {
+        if (!comparison.test(values[i - 1], values[i])) {
+          return false;
+        }
+      }
+      return true;
+    };
+  }
+
+  private interface Comparison extends Serializable {
+    boolean test(double left, double right);
+  }
+
+  private static boolean isExact(Object value) {
+    try {
+      number(value);
+      return true;
+    } catch (Fallback e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns a number as a double, if the evaluators compare it as such: the shortest decimal of a
+   * finite double orders as the double does, and so does a long below 2<sup>53</sup>.
+   */
+  private static double number(Object value) {
+    if (value instanceof Double d) {
+      if (Double.isFinite(d)) {
+        return d;
+      }
+    } else if (value instanceof Long || value instanceof Integer) {
+      long l = ((Number) value).longValue();
+      if (l < MAX_EXACT && l > -MAX_EXACT) {
+        return l;
+      }
+    }
+    throw Fallback.INSTANCE;
+  }
+
+  /** Returns an operand of arithmetic, which must be a whole number below 2<sup>53</sup> */
+  private static double operand(double value) {
+    if (value != Math.rint(value) || Math.abs(value) >= MAX_EXACT) {
+      throw Fallback.INSTANCE;
+    }
+    return value;
+  }
+
+  /** Returns the result of arithmetic, computed exactly if below 2<sup>53</sup>, without -0.0 */
+  private static double result(double value) {
+    if (Math.abs(value) >= MAX_EXACT) {
+      throw Fallback.INSTANCE;
+    }
+    return value + 0.0;
+  }
+
+  @Override
+  public void setStreamContext(StreamContext streamContext) {
+    evaluator.setStreamContext(streamContext);
+  }
+
+  @Override
+  public StreamContext getStreamContext() {
+    return evaluator.getStreamContext();
+  }
+
+  @Override
+  public StreamExpressionParameter toExpression(StreamFactory factory) throws IOException {
+    return evaluator.toExpression(factory);
+  }
+
+  @Override
+  public Explanation toExplanation(StreamFactory factory) throws IOException {
+    return evaluator.toExplanation(factory);
+  }
+
+  /**
+   * Returns the number of evaluators compiled so far in this JVM, and the number of tuples which
+   * they evaluated, and which fell back to the evaluators they were compiled from.
+   */
+  public static Map<String, Long> getMetrics() {
+    Map<String, Long> metrics = new TreeMap<>();
+    metrics.put("compiled", COMPILED.sum());
+    metrics.put("evaluations", EVALUATIONS.sum());
+    metrics.put("fallbacks", FALLBACKS.sum());
+    return metrics;
+  }
+}
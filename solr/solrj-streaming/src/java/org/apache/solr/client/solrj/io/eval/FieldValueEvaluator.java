@@ -40,6 +40,10 @@ public class FieldValueEvaluator extends SourceEvaluator {
     this.fieldName = fieldName;
   }
 
+  String getFieldName() {
+    return fieldName;
+  }
+
   @Override
   public Object evaluate(Tuple tuple) throws IOException {
     Object value = tuple.get(fieldName);
@@ -71,6 +71,10 @@ public class RawValueEvaluator extends SourceEvaluator {
     }
   }
 
+  Object getValue() {
+    return value;
+  }
+
   @Override
   public Object evaluate(Tuple tuple) {
     return value;
@@ -45,6 +45,7 @@ import org.apache.solr.client.solrj.io.comp.StreamComparator;
 import org.apache.solr.client.solrj.io.eq.FieldEqualitor;
 import org.apache.solr.client.solrj.io.eq.MultipleFieldEqualitor;
 import org.apache.solr.client.solrj.io.stream.CloudSolrStream;
+import org.apache.solr.client.solrj.io.stream.LookupCoalescer;
 import org.apache.solr.client.solrj.io.stream.StreamContext;
 import org.apache.solr.client.solrj.io.stream.TupleStream;
 import org.apache.solr.client.solrj.io.stream.UniqueStream;
@@ -578,6 +579,14 @@ public class GatherNodesStream extends TupleStream implements Expressible {
         joinSParams.set("q", "{!terms f=" + traverseTo + "}" + nodeQuery.toString());
       }
 
+      // the traversals share the budget of requests of the node with the lookups of other streams
+      LookupCoalescer budget = streamContext.getSolrClientCache().getLookupCoalescer();
+      try {
+        budget.acquire();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+
       TupleStream stream = null;
       try {
         stream =
@@ -599,6 +608,7 @@ public class GatherNodesStream extends TupleStream implements Expressible {
       } catch (Exception e) {
         throw new RuntimeException(e);
       } finally {
+        budget.release();
         try {
           stream.close();
         } catch (Exception ce) {
@@ -54,18 +54,27 @@ import org.apache.solr.common.cloud.Replica;
 import org.apache.solr.common.cloud.Slice;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.params.StreamParams;
 
 /**
  * Connects to Zookeeper to pick replicas from a specific collection to send the query to. Under the
  * covers the SolrStream instances send the query to the replicas. SolrStreams are opened using a
  * thread pool, but a single thread is used to iterate and merge Tuples from each SolrStream.
  *
+ * <p>When {@link PrefetchStream#DEFAULT_BUFFER_SIZE} or {@link #setPrefetchSize} is positive, each
+ * SolrStream is read ahead of the merge by a {@link PrefetchStream}, so that the merge doesn't wait
+ * for each shard in turn. The reads of the merge which had to wait for a shard are counted by
+ * {@link #getStalls()}.
+ *
  * @since 5.1.0
  */
 public class CloudSolrStream extends TupleStream implements Expressible {
 
   private static final long serialVersionUID = 1;
 
+  // the number of shuffled streams a worker opened
+  private static final String SHUFFLED_STREAMS = "shuffledStreams";
+
   protected String zkHost;
   protected String collection;
   protected ModifiableSolrParams params;
@@ -74,6 +83,8 @@ public class CloudSolrStream extends TupleStream implements Expressible {
   private boolean trace;
   protected transient Map<String, Tuple> eofTuples;
   protected transient List<TupleStream> solrStreams;
+  protected transient List<PrefetchStream> prefetchStreams;
+  private int prefetchSize = PrefetchStream.DEFAULT_BUFFER_SIZE;
   protected transient TreeSet<TupleWrapper> tuples;
   protected transient StreamContext streamContext;
 
@@ -286,11 +297,46 @@ public class CloudSolrStream extends TupleStream implements Expressible {
   public void open() throws IOException {
     this.tuples = new TreeSet<>();
     this.solrStreams = new ArrayList<>();
+    this.prefetchStreams = Collections.synchronizedList(new ArrayList<>());
     this.eofTuples = Collections.synchronizedMap(new HashMap<>());
     constructStreams();
     openStreams();
   }
 
+  /**
+   * Sets the number of tuples read ahead of the merge from each shard, or 0 to read the shards only
+   * as the merge needs their tuples
+   */
+  public void setPrefetchSize(int prefetchSize) {
+    this.prefetchSize = prefetchSize;
+  }
+
+  /** Returns the number of reads of the shards which had to wait for their tuples */
+  public long getStalls() {
+    long stalls = 0;
+    if (prefetchStreams != null) {
+      synchronized (prefetchStreams) {
+        for (PrefetchStream prefetchStream : prefetchStreams) {
+          stalls += prefetchStream.getStalls();
+        }
+      }
+    }
+    return stalls;
+  }
+
+  /** Returns the time the reads of the shards waited for their tuples, in nanoseconds */
+  public long getStallNanos() {
+    long stallNanos = 0;
+    if (prefetchStreams != null) {
+      synchronized (prefetchStreams) {
+        for (PrefetchStream prefetchStream : prefetchStreams) {
+          stallNanos += prefetchStream.getStallNanos();
+        }
+      }
+    }
+    return stallNanos;
+  }
+
   public Map<String, Tuple> getEofTuples() {
     return this.eofTuples;
   }
@@ -379,6 +425,10 @@ public class CloudSolrStream extends TupleStream implements Expressible {
   protected void constructStreams() throws IOException {
     final ModifiableSolrParams mParams = adjustParams(new ModifiableSolrParams(params));
     mParams.set(DISTRIB, "false"); // We are the aggregator.
+    String shuffleId = nextShuffleId(mParams);
+    if (shuffleId != null) {
+      mParams.set(StreamParams.SHUFFLE_ID, shuffleId);
+    }
     try {
       final Stream<SolrStream> streamOfSolrStream;
       if (streamContext != null && streamContext.get("shards") != null) {
@@ -415,6 +465,32 @@ public class CloudSolrStream extends TupleStream implements Expressible {
     }
   }
 
+  /**
+   * Returns the id of the shuffle of the documents of this stream among the workers of a parallel
+   * stream, or null if they aren't shuffled. The workers open the same streams in the same order,
+   * so the n-th shuffled stream of each worker has the same id.
+   */
+  private String nextShuffleId(SolrParams params) {
+    if (streamContext == null
+        || streamContext.numWorkers < 2
+        || streamContext.get(ParallelStream.SHUFFLE_ID_PARAM) == null) {
+      return null;
+    }
+    String partitionKeys = params.get("partitionKeys");
+    if (partitionKeys == null
+        || partitionKeys.equals("none")
+        || !"/export".equals(params.get("qt"))) {
+      return null;
+    }
+    int n;
+    synchronized (streamContext) {
+      Integer shuffledStreams = (Integer) streamContext.get(SHUFFLED_STREAMS);
+      n = shuffledStreams == null ? 0 : shuffledStreams;
+      streamContext.put(SHUFFLED_STREAMS, n + 1);
+    }
+    return streamContext.get(ParallelStream.SHUFFLE_ID_PARAM) + "-" + n;
+  }
+
   private void openStreams() throws IOException {
     List<StreamOpener> tasks =
         solrStreams.stream()
@@ -430,6 +506,13 @@ public class CloudSolrStream extends TupleStream implements Expressible {
   /** Closes the CloudSolrStream */
   @Override
   public void close() throws IOException {
+    if (prefetchStreams != null) {
+      synchronized (prefetchStreams) {
+        for (PrefetchStream prefetchStream : prefetchStreams) {
+          prefetchStream.close();
+        }
+      }
+    }
     if (solrStreams != null) {
       for (TupleStream solrStream : solrStreams) {
         solrStream.close();
@@ -473,10 +556,19 @@ public class CloudSolrStream extends TupleStream implements Expressible {
   protected class TupleWrapper implements Comparable<TupleWrapper> {
     private Tuple tuple;
     private final SolrStream stream;
+    private final TupleStream reader;
     private final StreamComparator comp;
 
     public TupleWrapper(SolrStream stream, StreamComparator comp) {
+      this(stream, stream, comp);
+    }
+
+    /**
+     * @param reader the stream the tuples of the SolrStream are read from, which may read it ahead
+     */
+    public TupleWrapper(SolrStream stream, TupleStream reader, StreamComparator comp) {
       this.stream = stream;
+      this.reader = reader;
       this.comp = comp;
     }
 
@@ -509,7 +601,7 @@ public class CloudSolrStream extends TupleStream implements Expressible {
     }
 
     public boolean next() throws IOException {
-      this.tuple = stream.read();
+      this.tuple = reader.read();
 
       if (tuple.EOF) {
         eofTuples.put(stream.getBaseUrl(), tuple);
@@ -531,8 +623,15 @@ public class CloudSolrStream extends TupleStream implements Expressible {
 
     @Override
     public TupleWrapper call() throws Exception {
-      stream.open();
-      TupleWrapper wrapper = new TupleWrapper(stream, comp);
+      TupleStream reader = stream;
+      // streams which don't track their prefetch streams read the shards directly
+      if (prefetchSize > 0 && prefetchStreams != null) {
+        PrefetchStream prefetchStream = new PrefetchStream(stream, prefetchSize);
+        prefetchStreams.add(prefetchStream);
+        reader = prefetchStream;
+      }
+      reader.open();
+      TupleWrapper wrapper = new TupleWrapper(stream, reader, comp);
       if (wrapper.next()) {
         return wrapper;
       } else {
@@ -29,6 +29,7 @@ import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 import org.apache.solr.client.solrj.io.Tuple;
 import org.apache.solr.client.solrj.io.comp.StreamComparator;
 import org.apache.solr.client.solrj.io.stream.expr.Explanation;
@@ -49,6 +50,9 @@ import org.slf4j.LoggerFactory;
  */
 public class DaemonStream extends TupleStream implements Expressible {
 
+  // the key of the shutdown state of the daemon in the context of its stream
+  private static final String SHUTDOWN_KEY = "daemon.shutdown";
+
   private TupleStream tupleStream;
   private StreamRunner streamRunner;
   private ArrayBlockingQueue<Tuple> queue;
@@ -250,9 +254,25 @@ public class DaemonStream extends TupleStream implements Expressible {
 
   @Override
   public void setStreamContext(StreamContext streamContext) {
+    streamContext.put(SHUTDOWN_KEY, (BooleanSupplier) this::isShutdown);
     this.tupleStream.setStreamContext(streamContext);
   }
 
+  private boolean isShutdown() {
+    StreamRunner runner = streamRunner;
+    return runner != null && runner.getShutdown();
+  }
+
+  /**
+   * Returns true if the stream of a context is run by a daemon which is shut down, so that a stream
+   * which may not end on its own, such as a tailing topic, stops.
+   */
+  static boolean isShutdown(StreamContext streamContext) {
+    return streamContext != null
+        && streamContext.get(SHUTDOWN_KEY) instanceof BooleanSupplier shutdown
+        && shutdown.getAsBoolean();
+  }
+
   public void shutdown() {
     streamRunner.setShutdown(true);
   }
@@ -387,6 +407,10 @@ public class DaemonStream extends TupleStream implements Expressible {
                   break OUTER;
                 }
               }
+              // a run which tails a topic may not end, so it stops between tuples on shutdown
+              if (getShutdown()) {
+                break INNER;
+              }
             }
           } catch (IOException e) {
             exception = e;
@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.common.util.IOUtils;
+
+/**
+ * A stable sort of tuples, within a memory budget. Once the tuples added to the sorter exceed the
+ * budget, they are sorted and spilled to disk as a run, and the runs are merged when the tuples are
+ * read. At most {@link #MAX_MERGE_FAN_IN} runs are merged at once, so that the number of open
+ * files is bounded.
+ */
+final class ExternalSorter implements Closeable {
+
+  static final int MAX_MERGE_FAN_IN = 64;
+
+  private final Comparator<Tuple> comparator;
+  private final long memoryLimit;
+
+  private List<Tuple> tuples = new ArrayList<>();
+  private long tuplesBytes;
+  private final List<SpillFile> runs = new ArrayList<>();
+
+  private ListCursor inMemory;
+  private Merger merger;
+
+  /**
+   * @param memoryLimit the memory budget of the tuples, in bytes, or a non-positive number to never
+   *     spill
+   */
+  ExternalSorter(Comparator<Tuple> comparator, long memoryLimit) {
+    this.comparator = comparator;
+    this.memoryLimit = memoryLimit;
+  }
+
+  void add(Tuple tuple) throws IOException {
+    tuples.add(tuple);
+    if (memoryLimit > 0) {
+      tuplesBytes += SpillFile.estimateSize(tuple);
+      if (tuplesBytes > memoryLimit) {
+        tuples.sort(comparator);
+        SpillFile run = new SpillFile(SpillMetrics.SORT_RUN);
+        runs.add(run);
+        for (Tuple t : tuples) {
+          run.write(t, 0);
+        }
+        run.finish();
+        tuples = new ArrayList<>();
+        tuplesBytes = 0;
+      }
+    }
+  }
+
+  /** Sorts the added tuples, which can then be read */
+  void sort() throws IOException {
+    tuples.sort(comparator);
+    if (runs.isEmpty()) {
+      inMemory = new ListCursor(tuples);
+    } else {
+      // the tuples which are still in memory are the last run
+      Comparator<Cursor> cursorComparator = (a, b) -> comparator.compare(a.tuple(), b.tuple());
+      List<Cursor> cursors = merge(runs, MAX_MERGE_FAN_IN - 1, cursorComparator);
+      cursors.add(new ListCursor(tuples));
+      merger = new Merger(cursors, cursorComparator);
+    }
+  }
+
+  /** Returns the next tuple in sorted order, or null if there are no more */
+  Tuple next() throws IOException {
+    if (inMemory != null) {
+      return inMemory.next() ? inMemory.tuple() : null;
+    }
+    return merger.next();
+  }
+
+  @Override
+  public void close() throws IOException {
+    IOUtils.closeQuietly(merger);
+    for (SpillFile run : runs) {
+      IOUtils.closeQuietly(run);
+    }
+    tuples = null;
+  }
+
+  /**
+   * Merges sorted runs until there are at most <code>maxCursors</code> of them, and returns the
+   * cursors over the remaining runs, in the order of the runs. The runs which are merged are
+   * replaced in <code>runs</code> by the merged run.
+   *
+   * @param comparator the order of the tuples of the runs, the tuples of the earlier run first when
+   *     equal
+   */
+  static List<Cursor> merge(List<SpillFile> runs, int maxCursors, Comparator<Cursor> comparator)
+      throws IOException {
+    while (runs.size() > maxCursors) {
+      List<SpillFile> merged = runs.subList(0, Math.min(MAX_MERGE_FAN_IN, runs.size()));
+      List<Cursor> cursors = new ArrayList<>(merged.size());
+      for (SpillFile run : merged) {
+        cursors.add(new SpillFileCursor(run.reader()));
+      }
+      SpillFile mergedRun = new SpillFile(SpillMetrics.SORT_MERGE);
+      try (Merger merger = new Merger(cursors, comparator)) {
+        for (Cursor cursor = merger.nextCursor(); cursor != null; cursor = merger.nextCursor()) {
+          mergedRun.write(cursor.tuple(), cursor.tag());
+        }
+        mergedRun.finish();
+      } catch (IOException | RuntimeException e) {
+        IOUtils.closeQuietly(mergedRun);
+        throw e;
+      }
+      for (SpillFile run : merged) {
+        run.close();
+      }
+      merged.clear();
+      runs.add(0, mergedRun);
+    }
+    List<Cursor> cursors = new ArrayList<>(runs.size() + 1);
+    for (SpillFile run : runs) {
+      cursors.add(new SpillFileCursor(run.reader()));
+    }
+    return cursors;
+  }
+
+  /** A sorted sequence of tuples */
+  abstract static class Cursor implements Closeable {
+    private int index;
+
+    /** Moves to the next tuple, returning false if there are no more */
+    abstract boolean next() throws IOException;
+
+    abstract Tuple tuple();
+
+    abstract long tag();
+  }
+
+  static final class SpillFileCursor extends Cursor {
+    private final SpillFile.Reader reader;
+
+    SpillFileCursor(SpillFile.Reader reader) {
+      this.reader = reader;
+    }
+
+    @Override
+    boolean next() throws IOException {
+      return reader.next();
+    }
+
+    @Override
+    Tuple tuple() {
+      return reader.tuple();
+    }
+
+    @Override
+    long tag() {
+      return reader.tag();
+    }
+
+    @Override
+    public void close() throws IOException {
+      reader.close();
+    }
+  }
+
+  /** A cursor over a list of tuples, which releases them as it moves */
+  private static final class ListCursor extends Cursor {
+    private final List<Tuple> tuples;
+    private int pos;
+    private Tuple tuple;
+
+    ListCursor(List<Tuple> tuples) {
+      this.tuples = tuples;
+    }
+
+    @Override
+    boolean next() {
+      tuple = pos < tuples.size() ? tuples.set(pos++, null) : null;
+      return tuple != null;
+    }
+
+    @Override
+    Tuple tuple() {
+      return tuple;
+    }
+
+    @Override
+    long tag() {
+      return 0;
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  /** Merges sorted cursors, the tuples of the earlier cursor first when equal */
+  static final class Merger implements Closeable {
+    private final List<Cursor> cursors;
+    private final PriorityQueue<Cursor> queue;
+    private Cursor current;
+
+    Merger(List<Cursor> cursors, Comparator<Cursor> comparator) throws IOException {
+      this.cursors = cursors;
+      this.queue =
+          new PriorityQueue<>(
+              Math.max(1, cursors.size()),
+              comparator.thenComparingInt((Cursor cursor) -> cursor.index));
+      for (int i = 0; i < cursors.size(); i++) {
+        Cursor cursor = cursors.get(i);
+        cursor.index = i;
+        if (cursor.next()) {
+          queue.add(cursor);
+        }
+      }
+    }
+
+    /** Returns the cursor positioned on the next tuple, or null if there are no more */
+    Cursor nextCursor() throws IOException {
+      if (current != null && current.next()) {
+        queue.add(current);
+      }
+      current = queue.poll();
+      return current;
+    }
+
+    /** Returns the next tuple, or null if there are no more */
+    Tuple next() throws IOException {
+      Cursor cursor = nextCursor();
+      return cursor == null ? null : cursor.tuple();
+    }
+
+    @Override
+    public void close() throws IOException {
+      for (Cursor cursor : cursors) {
+        IOUtils.closeQuietly(cursor);
+      }
+    }
+  }
+}
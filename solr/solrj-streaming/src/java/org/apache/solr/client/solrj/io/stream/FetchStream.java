@@ -17,17 +17,28 @@
 
 package org.apache.solr.client.solrj.io.stream;
 
-import static org.apache.solr.common.params.CommonParams.SORT;
+import static org.apache.solr.common.params.CommonParams.DISTRIB;
 import static org.apache.solr.common.params.CommonParams.VERSION_FIELD;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.client.solrj.io.SolrClientCache;
 import org.apache.solr.client.solrj.io.Tuple;
 import org.apache.solr.client.solrj.io.comp.StreamComparator;
 import org.apache.solr.client.solrj.io.stream.expr.Explanation;
@@ -38,14 +49,33 @@ import org.apache.solr.client.solrj.io.stream.expr.StreamExpression;
 import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionNamedParameter;
 import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionValue;
 import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
-import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.client.solrj.request.schema.SchemaRequest;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.ImplicitDocRouter;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.Slice;
 import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
 
 /**
  * Iterates over a stream and fetches additional fields from a specified collection. Fetches are
  * done in batches.
  *
- * <p>Syntax: fetch(collection, stream, on="a=b", fl="c,d,e", batchSize="50")
+ * <p>With <code>maxPendingBatches</code>, the fetches of up to that many batches are in flight
+ * while the stream is read ahead; the tuples are still returned in the order of the stream. With
+ * <code>realtimeGet="true"</code>, if the right key is the unique key of the collection, the keys
+ * of a batch are routed to their shards by the router of the collection and fetched with a
+ * real-time get of the shard leaders, instead of a query of all the shards. With <code>cacheSize
+ * </code>, the rows most recently fetched are kept, and the keys found among them are not fetched
+ * again.
+ *
+ * <p>Syntax: fetch(collection, stream, on="a=b", fl="c,d,e", batchSize="50",
+ * maxPendingBatches="0", realtimeGet="false", cacheSize="0")
  *
  * @since 6.3.0
  */
@@ -66,6 +96,16 @@ public class FetchStream extends TupleStream implements Expressible {
   private int batchSize;
   private boolean appendVersion = true;
   private boolean appendKey = true;
+  private int maxPendingBatches;
+  private boolean realtimeGet;
+  private int cacheSize;
+
+  private transient ExecutorService executor;
+  private transient Deque<Batch> pendingBatches;
+  private transient Tuple endTuple;
+  // the collection to route the keys within, if the lookups are real-time gets
+  private transient DocCollection docCollection;
+  private transient Map<String, Tuple> cache;
 
   public FetchStream(
       String zkHost,
@@ -89,6 +129,9 @@ public class FetchStream extends TupleStream implements Expressible {
     StreamExpressionNamedParameter batchSizeParam =
         factory.getNamedOperand(expression, "batchSize");
     StreamExpressionNamedParameter zkHostExpression = factory.getNamedOperand(expression, "zkHost");
+    int maxPendingBatches = factory.getIntOperand(expression, "maxPendingBatches", 0);
+    boolean realtimeGet = factory.getBooleanOperand(expression, "realtimeGet", false);
+    int cacheSize = factory.getIntOperand(expression, "cacheSize", 0);
 
     String on = null;
     String fl = null;
@@ -111,6 +154,14 @@ public class FetchStream extends TupleStream implements Expressible {
           Integer.parseInt(((StreamExpressionValue) batchSizeParam.getParameter()).getValue());
     }
 
+    if (maxPendingBatches < 0 || cacheSize < 0) {
+      throw new IOException(
+          String.format(
+              Locale.ROOT,
+              "invalid expression %s - maxPendingBatches and cacheSize must not be negative",
+              expression));
+    }
+
     if (1 != streamExpressions.size()) {
       throw new IOException(
           String.format(
@@ -141,6 +192,9 @@ public class FetchStream extends TupleStream implements Expressible {
     }
 
     init(zkHost, collectionName, stream, on, fl, batchSize);
+    this.maxPendingBatches = maxPendingBatches;
+    this.realtimeGet = realtimeGet;
+    this.cacheSize = cacheSize;
   }
 
   private void init(
@@ -154,6 +208,10 @@ public class FetchStream extends TupleStream implements Expressible {
     this.zkHost = zkHost;
     this.collection = collection;
     this.stream = tupleStream;
+    if (batchSize <= 0) {
+      throw new IOException(
+          String.format(Locale.ROOT, "batchSize '%d' must be greater than 0.", batchSize));
+    }
     this.batchSize = batchSize;
     this.fields = fieldList.split(",");
     this.fieldList = fieldList;
@@ -178,6 +236,21 @@ public class FetchStream extends TupleStream implements Expressible {
     }
   }
 
+  /** Sets the number of batches fetched while the stream is read ahead, 0 to fetch each in turn */
+  public void setMaxPendingBatches(int maxPendingBatches) {
+    this.maxPendingBatches = maxPendingBatches;
+  }
+
+  /** Sets whether the keys are fetched with real-time gets routed to the shards which own them */
+  public void setRealtimeGet(boolean realtimeGet) {
+    this.realtimeGet = realtimeGet;
+  }
+
+  /** Sets the number of fetched rows kept to look up the next keys in, 0 to keep none */
+  public void setCacheSize(int cacheSize) {
+    this.cacheSize = cacheSize;
+  }
+
   @Override
   public StreamExpression toExpression(StreamFactory factory) throws IOException {
     return toExpression(factory, true);
@@ -193,6 +266,18 @@ public class FetchStream extends TupleStream implements Expressible {
     expression.addParameter(new StreamExpressionNamedParameter("fl", fieldList));
     expression.addParameter(
         new StreamExpressionNamedParameter("batchSize", Integer.toString(batchSize)));
+    if (maxPendingBatches > 0) {
+      expression.addParameter(
+          new StreamExpressionNamedParameter(
+              "maxPendingBatches", Integer.toString(maxPendingBatches)));
+    }
+    if (realtimeGet) {
+      expression.addParameter(new StreamExpressionNamedParameter("realtimeGet", "true"));
+    }
+    if (cacheSize > 0) {
+      expression.addParameter(
+          new StreamExpressionNamedParameter("cacheSize", Integer.toString(cacheSize)));
+    }
 
     // stream
     if (includeStreams) {
@@ -234,87 +319,276 @@ public class FetchStream extends TupleStream implements Expressible {
   @Override
   public void open() throws IOException {
     tuples = Collections.emptyIterator();
+    endTuple = null;
+    pendingBatches = new ArrayDeque<>();
+    if (cacheSize > 0) {
+      cache =
+          new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Tuple> eldest) {
+              return size() > cacheSize;
+            }
+          };
+    }
+    if (realtimeGet) {
+      docCollection = getDocCollection();
+    }
+    if (maxPendingBatches > 0 || docCollection != null) {
+      executor =
+          ExecutorUtil.newMDCAwareCachedThreadPool(
+              new SolrNamedThreadFactory("FetchStream-" + collection));
+    }
     stream.open();
   }
 
-  private void fetchBatch() throws IOException {
-    Tuple EOFTuple = null;
-    List<Tuple> batch = new ArrayList<>(batchSize);
+  /** The keys of a batch not found in the cache, and their lookup once it is sent */
+  private static class Batch {
+    final List<Tuple> tuples = new ArrayList<>();
+    final List<String> keys = new ArrayList<>();
+    Future<Map<String, Tuple>> lookup;
+  }
+
+  private List<Tuple> nextBatch() throws IOException {
+    if (maxPendingBatches == 0) {
+      if (endTuple != null) {
+        return List.of(endTuple);
+      }
+      Batch batch = readBatch();
+      return complete(batch, lookup(batch.keys));
+    }
+
+    while (pendingBatches.size() < maxPendingBatches && endTuple == null) {
+      Batch batch = readBatch();
+      batch.lookup = executor.submit(() -> lookup(batch.keys));
+      pendingBatches.add(batch);
+    }
+    Batch batch = pendingBatches.poll();
+    if (batch == null) {
+      return List.of(endTuple);
+    }
+    try {
+      return complete(batch, batch.lookup.get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while fetching from " + collection);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException ioe) {
+        throw new IOException(ioe.getMessage(), ioe);
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private Batch readBatch() throws IOException {
+    Batch batch = new Batch();
     for (int i = 0; i < batchSize; i++) {
       Tuple tuple = stream.read();
       if (tuple.EOF) {
-        EOFTuple = tuple;
+        endTuple = tuple;
         break;
+      }
+      batch.tuples.add(tuple);
+      String key = tuple.getString(leftKey);
+      Tuple cached = cache == null ? null : cache.get(key);
+      if (cached != null) {
+        merge(tuple, cached);
       } else {
-        batch.add(tuple);
+        batch.keys.add(key);
       }
     }
+    return batch;
+  }
 
-    if (batch.size() > 0) {
-      StringBuilder buf = new StringBuilder(batch.size() * 10 + 20);
-      buf.append("{! df=").append(rightKey).append(" q.op=OR cache=false }"); // disable queryCache
-      for (Tuple tuple : batch) {
-        String key = tuple.getString(leftKey);
-        buf.append(' ').append(ClientUtils.escapeQueryChars(key));
-      }
-
-      ModifiableSolrParams params = new ModifiableSolrParams();
-      params.add("q", buf.toString());
-      params.add("fl", fieldList + appendFields());
-      params.add("rows", Integer.toString(batchSize));
-      params.add(SORT, "_version_ desc");
-
-      CloudSolrStream cloudSolrStream = new CloudSolrStream(zkHost, collection, params);
-      StreamContext newContext = new StreamContext();
-      newContext.setSolrClientCache(streamContext.getSolrClientCache());
-      newContext.setObjectCache(streamContext.getObjectCache());
-      cloudSolrStream.setStreamContext(newContext);
-      Map<String, Tuple> fetched = new HashMap<>();
-      try {
-        cloudSolrStream.open();
-        while (true) {
-          Tuple t = cloudSolrStream.read();
-          if (t.EOF) {
-            break;
-          } else {
-            String rightValue = t.getString(rightKey);
-            fetched.put(rightValue, t);
-          }
-        }
-      } finally {
-        cloudSolrStream.close();
-      }
-
+  private List<Tuple> complete(Batch batch, Map<String, Tuple> fetched) {
+    if (!fetched.isEmpty()) {
       // Iterate the batch and add the fetched fields to the Tuples
-      for (Tuple batchTuple : batch) {
+      for (Tuple batchTuple : batch.tuples) {
         Tuple fetchedTuple = fetched.get(batchTuple.getString(leftKey));
         if (fetchedTuple != null) {
-          for (String field : fields) {
-            Object value = fetchedTuple.get(field);
-            if (value != null) {
-              batchTuple.put(field, value);
-            }
-          }
+          merge(batchTuple, fetchedTuple);
         }
       }
+      if (cache != null) {
+        cache.putAll(fetched);
+      }
+    }
+
+    if (endTuple != null && pendingBatches.isEmpty()) {
+      batch.tuples.add(endTuple);
+    }
+    return batch.tuples;
+  }
+
+  private void merge(Tuple tuple, Tuple fetchedTuple) {
+    for (String field : fields) {
+      Object value = fetchedTuple.get(field);
+      if (value != null) {
+        tuple.put(field, value);
+      }
+    }
+  }
+
+  private Map<String, Tuple> lookup(List<String> keys) throws IOException {
+    if (keys.isEmpty()) {
+      return Map.of();
+    } else if (docCollection != null) {
+      return getByShard(keys);
     }
+    // merged with the concurrent lookups of other streams of the collection and user, or of the
+    // streams of the same context if the user isn't known
+    Object user = streamContext.get(LookupCoalescer.USER_KEY);
+    return streamContext
+        .getSolrClientCache()
+        .getLookupCoalescer()
+        .lookup(
+            user == null ? streamContext : user,
+            zkHost,
+            collection,
+            rightKey,
+            fieldList + appendFields(),
+            keys);
+  }
 
-    if (EOFTuple != null) {
-      batch.add(EOFTuple);
+  /** Returns the collection to route the keys within, or null if it can't be routed to */
+  private DocCollection getDocCollection() throws IOException {
+    CloudSolrClient cloudSolrClient =
+        streamContext.getSolrClientCache().getCloudSolrClient(zkHost);
+    List<String> collections = cloudSolrClient.getClusterStateProvider().resolveAlias(collection);
+    if (collections.size() != 1) {
+      return null;
+    }
+    DocCollection docCollection =
+        cloudSolrClient.getClusterState().getCollectionOrNull(collections.get(0), true);
+    if (docCollection == null
+        || docCollection.getRouter() instanceof ImplicitDocRouter
+        || docCollection.getRouter().getRouteField(docCollection) != null) {
+      // the documents aren't routed by their ids
+      return null;
+    }
+    if (!rightKey.equals(getUniqueKey(cloudSolrClient, docCollection.getName()))) {
+      // a real-time get looks the documents up by their ids
+      return null;
     }
+    return docCollection;
+  }
 
-    this.tuples = batch.iterator();
+  private static String getUniqueKey(CloudSolrClient cloudSolrClient, String collection)
+      throws IOException {
+    try {
+      return new SchemaRequest.UniqueKey().process(cloudSolrClient, collection).getUniqueKey();
+    } catch (SolrServerException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private Map<String, Tuple> getByShard(List<String> keys) throws IOException {
+    Map<String, Slice> slices = new HashMap<>();
+    Map<String, List<String>> keysBySlice = new HashMap<>();
+    for (String key : keys) {
+      Slice slice = docCollection.getRouter().getTargetSlice(key, null, null, null, docCollection);
+      slices.put(slice.getName(), slice);
+      keysBySlice.computeIfAbsent(slice.getName(), s -> new ArrayList<>()).add(key);
+    }
+
+    if (keysBySlice.size() == 1) {
+      Map.Entry<String, List<String>> entry = keysBySlice.entrySet().iterator().next();
+      return get(slices.get(entry.getKey()), entry.getValue());
+    }
+    List<CompletableFuture<Map<String, Tuple>>> gets = new ArrayList<>();
+    for (Map.Entry<String, List<String>> entry : keysBySlice.entrySet()) {
+      Slice slice = slices.get(entry.getKey());
+      gets.add(
+          CompletableFuture.supplyAsync(
+              () -> {
+                try {
+                  return get(slice, entry.getValue());
+                } catch (IOException e) {
+                  throw new RuntimeException(e);
+                }
+              },
+              executor));
+    }
+    Map<String, Tuple> fetched = new HashMap<>();
+    try {
+      for (CompletableFuture<Map<String, Tuple>> get : gets) {
+        fetched.putAll(get.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while fetching from " + collection);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException && cause.getCause() instanceof IOException ioe) {
+        throw new IOException(ioe.getMessage(), ioe);
+      }
+      throw new IOException(cause);
+    }
+    return fetched;
+  }
+
+  /** Returns the documents of the keys owned by a shard, from a real-time get of its leader */
+  private Map<String, Tuple> get(Slice slice, List<String> keys) throws IOException {
+    Replica leader = slice.getLeader();
+    if (leader == null) {
+      throw new IOException(
+          "No leader available for shard " + slice.getName() + " of " + collection);
+    }
+    ModifiableSolrParams params = new ModifiableSolrParams();
+    for (String key : keys) {
+      params.add("id", key);
+    }
+    params.set("fl", fieldList + appendFields());
+    params.set(DISTRIB, false);
+    QueryRequest request = new QueryRequest(params);
+    request.setPath("/" + leader.getCoreName() + "/get");
+
+    SolrClientCache solrClientCache = streamContext.getSolrClientCache();
+    LookupCoalescer budget = solrClientCache.getLookupCoalescer();
+    NamedList<Object> response;
+    budget.acquire();
+    try {
+      response = solrClientCache.getHttpSolrClient(leader.getBaseUrl()).request(request);
+    } catch (SolrServerException e) {
+      throw new IOException(e);
+    } finally {
+      budget.release();
+    }
+
+    // a single id is answered with the document alone
+    Map<String, Tuple> fetched = new HashMap<>();
+    if (response.get("doc") instanceof SolrDocument doc) {
+      fetched.put(String.valueOf(doc.getFirstValue(rightKey)), new Tuple(doc));
+    } else if (response.get("response") instanceof SolrDocumentList docs) {
+      for (SolrDocument doc : docs) {
+        fetched.put(String.valueOf(doc.getFirstValue(rightKey)), new Tuple(doc));
+      }
+    }
+    return fetched;
   }
 
   @Override
   public void close() throws IOException {
-    stream.close();
+    try {
+      if (executor != null) {
+        // the batches read ahead are not fetched
+        for (Batch batch : pendingBatches) {
+          batch.lookup.cancel(true);
+        }
+        ExecutorUtil.shutdownNowAndAwaitTermination(executor);
+        executor = null;
+      }
+    } finally {
+      pendingBatches = null;
+      docCollection = null;
+      cache = null;
+      stream.close();
+    }
   }
 
   @Override
   public Tuple read() throws IOException {
-    if (!tuples.hasNext()) {
-      fetchBatch();
+    while (!tuples.hasNext()) {
+      tuples = nextBatch().iterator();
     }
 
     return tuples.next();
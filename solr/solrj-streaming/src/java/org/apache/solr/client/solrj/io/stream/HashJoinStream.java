@@ -16,8 +16,10 @@
  */
 package org.apache.solr.client.solrj.io.stream;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -31,6 +33,7 @@ import org.apache.solr.client.solrj.io.stream.expr.StreamExpression;
 import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionNamedParameter;
 import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionValue;
 import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
+import org.apache.solr.common.util.IOUtils;
 
 /**
  * Takes two streams (fullStream and hashStream) and joins them similar to an InnerJoinStream. The
@@ -41,6 +44,13 @@ import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
  * being computed on then that tuple will not be considered a match to anything. Ie, all fields
  * which are part of the hash must have a non-null value.
  *
+ * <p>If the estimated size of the hashed tuples exceeds the <code>memoryLimit</code> parameter, in
+ * bytes, a grace hash join is done instead: the tuples of both streams are partitioned to disk by
+ * hash, and the partitions are joined one at a time, partitioning them again if they still don't
+ * fit. The joined tuples are returned in the same order as without spilling: in the order of the
+ * fullStream, and the matches of each of its tuples in the order of the hashStream. See {@link
+ * SpillMetrics} for the metrics of the spilled tuples.
+ *
  * @since 6.0.0
  */
 public class HashJoinStream extends TupleStream implements Expressible {
@@ -52,14 +62,27 @@ public class HashJoinStream extends TupleStream implements Expressible {
   protected List<String> leftHashOn;
   protected List<String> rightHashOn;
   protected HashMap<String, List<Tuple>> hashedTuples;
+  protected long memoryLimit;
 
   protected Tuple workingFullTuple = null;
   protected String workingFullHash = null;
   protected int workingHashSetIdx = 0;
 
+  private transient GraceHashJoin graceHashJoin;
+
   public HashJoinStream(TupleStream fullStream, TupleStream hashStream, List<String> hashOn)
       throws IOException {
-    init(fullStream, hashStream, hashOn);
+    this(fullStream, hashStream, hashOn, SpillFile.DEFAULT_MEMORY_LIMIT);
+  }
+
+  /**
+   * @param memoryLimit the memory budget of the hashed tuples, in bytes, or a non-positive number
+   *     to never spill them to disk, which doesn't change the order of the joined tuples
+   */
+  public HashJoinStream(
+      TupleStream fullStream, TupleStream hashStream, List<String> hashOn, long memoryLimit)
+      throws IOException {
+    init(fullStream, hashStream, hashOn, memoryLimit);
   }
 
   public HashJoinStream(StreamExpression expression, StreamFactory factory) throws IOException {
@@ -70,9 +93,12 @@ public class HashJoinStream extends TupleStream implements Expressible {
     StreamExpressionNamedParameter hashStreamExpression =
         factory.getNamedOperand(expression, "hashed");
     StreamExpressionNamedParameter onExpression = factory.getNamedOperand(expression, "on");
+    long memoryLimit = SpillFile.getMemoryLimit(expression, factory);
+    int memoryLimitParams =
+        factory.getNamedOperand(expression, SpillFile.MEMORY_LIMIT_PARAM) == null ? 0 : 1;
 
     // validate expression contains only what we want.
-    if (expression.getParameters().size() != streamExpressions.size() + 2) {
+    if (expression.getParameters().size() != streamExpressions.size() + 2 + memoryLimitParams) {
       throw new IOException(
           String.format(Locale.ROOT, "Invalid expression %s - unknown operands found", expression));
     }
@@ -113,14 +139,17 @@ public class HashJoinStream extends TupleStream implements Expressible {
     init(
         factory.constructStream(streamExpressions.get(0)),
         factory.constructStream((StreamExpression) hashStreamExpression.getParameter()),
-        hashOn);
+        hashOn,
+        memoryLimit);
   }
 
-  private void init(TupleStream fullStream, TupleStream hashStream, List<String> hashOn)
+  private void init(
+      TupleStream fullStream, TupleStream hashStream, List<String> hashOn, long memoryLimit)
       throws IOException {
     this.fullStream = fullStream;
     this.hashStream = hashStream;
     this.hashedTuples = new HashMap<>();
+    this.memoryLimit = memoryLimit;
     this.leftHashOn = new ArrayList<>();
     this.rightHashOn = new ArrayList<>();
 
@@ -190,6 +219,7 @@ public class HashJoinStream extends TupleStream implements Expressible {
     }
 
     expression.addParameter(new StreamExpressionNamedParameter("on", sb.toString()));
+    SpillFile.addMemoryLimit(expression, memoryLimit);
     return expression;
   }
 
@@ -226,10 +256,15 @@ public class HashJoinStream extends TupleStream implements Expressible {
     hashStream.open();
     fullStream.open();
 
+    long hashedBytes = 0;
     Tuple tuple = hashStream.read();
     while (!tuple.EOF) {
       String hash = computeHash(tuple, rightHashOn);
-      if (null != hash) {
+      if (null != graceHashJoin) {
+        if (null != hash) {
+          graceHashJoin.addHashed(hash, tuple);
+        }
+      } else if (null != hash) {
         if (hashedTuples.containsKey(hash)) {
           hashedTuples.get(hash).add(tuple);
         } else {
@@ -237,9 +272,26 @@ public class HashJoinStream extends TupleStream implements Expressible {
           set.add(tuple);
           hashedTuples.put(hash, set);
         }
+        if (memoryLimit > 0) {
+          hashedBytes += SpillFile.estimateSize(tuple);
+          if (hashedBytes > memoryLimit) {
+            // too many tuples to hash, partition both streams to disk
+            graceHashJoin = new GraceHashJoin();
+            for (List<Tuple> set : hashedTuples.values()) {
+              for (Tuple hashed : set) {
+                graceHashJoin.addHashed(computeHash(hashed, rightHashOn), hashed);
+              }
+            }
+            hashedTuples.clear();
+          }
+        }
       }
       tuple = hashStream.read();
     }
+
+    if (null != graceHashJoin) {
+      graceHashJoin.join();
+    }
   }
 
   protected String computeHash(Tuple tuple, List<String> hashOn) {
@@ -258,12 +310,34 @@ public class HashJoinStream extends TupleStream implements Expressible {
 
   @Override
   public void close() throws IOException {
-    hashStream.close();
-    fullStream.close();
+    try {
+      IOUtils.closeQuietly(graceHashJoin);
+      graceHashJoin = null;
+    } finally {
+      hashStream.close();
+      fullStream.close();
+    }
+  }
+
+  /** Returns true if the tuples of the fullStream without any match must be returned */
+  protected boolean isOuterJoin() {
+    return false;
+  }
+
+  /**
+   * Returns the next tuple of the grace hash join, if the hashed tuples were spilled to disk, or
+   * null otherwise.
+   */
+  protected Tuple readSpilled() throws IOException {
+    return null == graceHashJoin ? null : graceHashJoin.read();
   }
 
   @Override
   public Tuple read() throws IOException {
+    Tuple spilled = readSpilled();
+    if (null != spilled) {
+      return spilled;
+    }
 
     findNextWorkingFullTuple:
     while (null == workingFullTuple) {
@@ -314,4 +388,177 @@ public class HashJoinStream extends TupleStream implements Expressible {
   public int getCost() {
     return 0;
   }
+
+  /**
+   * A grace hash join. The hashed tuples, and then the tuples of the fullStream, are written to
+   * {@link #NUM_PARTITIONS} partitions by hash, along with the position of the full tuples in the
+   * fullStream. Each pair of partitions is then joined in memory, or partitioned again with another
+   * hash function if its hashed tuples still exceed the memory limit, and the joined tuples are
+   * written to sorted runs of positions. The runs are merged to read the joined tuples in the order
+   * of the fullStream.
+   */
+  private class GraceHashJoin implements Closeable {
+    private static final int NUM_PARTITIONS = 16;
+    private static final int MAX_DEPTH = 4;
+    private static final Comparator<ExternalSorter.Cursor> BY_POSITION =
+        Comparator.comparingLong(ExternalSorter.Cursor::tag);
+
+    private final SpillFile[] hashedPartitions = new SpillFile[NUM_PARTITIONS];
+    private final List<SpillFile> spillFiles = new ArrayList<>();
+    private final List<SpillFile> outputRuns = new ArrayList<>();
+    private ExternalSorter.Merger merger;
+    private Tuple eofTuple;
+
+    void addHashed(String hash, Tuple tuple) throws IOException {
+      write(hashedPartitions, partition(hash, 0), tuple, 0, SpillMetrics.HASH_JOIN_BUILD);
+    }
+
+    /** Partitions the fullStream, and joins the partitions */
+    void join() throws IOException {
+      SpillFile[] fullPartitions = new SpillFile[NUM_PARTITIONS];
+      SpillFile unmatched = null;
+      long position = 0;
+      Tuple tuple = fullStream.read();
+      while (!tuple.EOF) {
+        String hash = computeHash(tuple, leftHashOn);
+        if (null != hash) {
+          write(fullPartitions, partition(hash, 0), tuple, position, SpillMetrics.HASH_JOIN_PROBE);
+        } else if (isOuterJoin()) {
+          if (null == unmatched) {
+            unmatched = newSpillFile(SpillMetrics.HASH_JOIN_OUTPUT);
+            outputRuns.add(unmatched);
+          }
+          unmatched.write(tuple, position);
+        }
+        position++;
+        tuple = fullStream.read();
+      }
+      eofTuple = tuple;
+
+      for (int i = 0; i < NUM_PARTITIONS; i++) {
+        joinPartition(hashedPartitions[i], fullPartitions[i], 0);
+      }
+      List<ExternalSorter.Cursor> cursors =
+          ExternalSorter.merge(outputRuns, ExternalSorter.MAX_MERGE_FAN_IN, BY_POSITION);
+      merger = new ExternalSorter.Merger(cursors, BY_POSITION);
+    }
+
+    private void joinPartition(SpillFile hashed, SpillFile full, int depth) throws IOException {
+      try {
+        if (null == full || (null == hashed && !isOuterJoin())) {
+          return;
+        }
+        if (null != hashed && hashed.heapBytes() > memoryLimit && depth < MAX_DEPTH) {
+          SpillFile[] hashedParts =
+              partition(hashed, rightHashOn, depth + 1, SpillMetrics.HASH_JOIN_BUILD);
+          SpillFile[] fullParts =
+              partition(full, leftHashOn, depth + 1, SpillMetrics.HASH_JOIN_PROBE);
+          for (int i = 0; i < NUM_PARTITIONS; i++) {
+            joinPartition(hashedParts[i], fullParts[i], depth + 1);
+          }
+          return;
+        }
+        SpillFile out = newSpillFile(SpillMetrics.HASH_JOIN_OUTPUT);
+        outputRuns.add(out);
+        if (null == hashed) {
+          copy(full, out);
+          return;
+        }
+
+        HashMap<String, List<Tuple>> partitionTuples = new HashMap<>();
+        try (SpillFile.Reader reader = hashed.reader()) {
+          while (reader.next()) {
+            partitionTuples
+                .computeIfAbsent(computeHash(reader.tuple(), rightHashOn), k -> new ArrayList<>())
+                .add(reader.tuple());
+          }
+        }
+        try (SpillFile.Reader reader = full.reader()) {
+          while (reader.next()) {
+            Tuple fullTuple = reader.tuple();
+            List<Tuple> matches = partitionTuples.get(computeHash(fullTuple, leftHashOn));
+            if (null != matches) {
+              for (Tuple match : matches) {
+                Tuple returnTuple = fullTuple.clone();
+                returnTuple.merge(match);
+                out.write(returnTuple, reader.tag());
+              }
+            } else if (isOuterJoin()) {
+              out.write(fullTuple, reader.tag());
+            }
+          }
+        }
+        out.finish();
+      } finally {
+        closeSpillFile(hashed);
+        closeSpillFile(full);
+      }
+    }
+
+    private SpillFile[] partition(SpillFile file, List<String> hashOn, int depth, String phase)
+        throws IOException {
+      SpillFile[] partitions = new SpillFile[NUM_PARTITIONS];
+      try (SpillFile.Reader reader = file.reader()) {
+        while (reader.next()) {
+          String hash = computeHash(reader.tuple(), hashOn);
+          write(partitions, partition(hash, depth), reader.tuple(), reader.tag(), phase);
+        }
+      }
+      return partitions;
+    }
+
+    private void copy(SpillFile from, SpillFile to) throws IOException {
+      try (SpillFile.Reader reader = from.reader()) {
+        while (reader.next()) {
+          to.write(reader.tuple(), reader.tag());
+        }
+      }
+      to.finish();
+    }
+
+    private void write(SpillFile[] partitions, int i, Tuple tuple, long tag, String phase)
+        throws IOException {
+      if (null == partitions[i]) {
+        partitions[i] = newSpillFile(phase);
+      }
+      partitions[i].write(tuple, tag);
+    }
+
+    private int partition(String hash, int depth) {
+      return SpillFile.partition(hash.hashCode(), depth, NUM_PARTITIONS);
+    }
+
+    private SpillFile newSpillFile(String phase) throws IOException {
+      SpillFile file = new SpillFile(phase);
+      spillFiles.add(file);
+      return file;
+    }
+
+    private void closeSpillFile(SpillFile file) throws IOException {
+      if (null != file) {
+        spillFiles.remove(file);
+        file.close();
+      }
+    }
+
+    /** Returns the next joined tuple, or the EOF tuple of the fullStream */
+    Tuple read() throws IOException {
+      Tuple tuple = merger.next();
+      return null == tuple ? eofTuple : tuple;
+    }
+
+    @Override
+    public void close() throws IOException {
+      IOUtils.closeQuietly(merger);
+      for (SpillFile file : spillFiles) {
+        IOUtils.closeQuietly(file);
+      }
+      // the runs merged while joining are not spill files of this join
+      for (SpillFile file : outputRuns) {
+        IOUtils.closeQuietly(file);
+      }
+      spillFiles.clear();
+      outputRuns.clear();
+    }
+  }
 }
@@ -17,13 +17,18 @@
 package org.apache.solr.client.solrj.io.stream;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.TupleBatch;
+import org.apache.solr.client.solrj.io.TupleSchema;
 import org.apache.solr.client.solrj.io.comp.HashKey;
 import org.apache.solr.client.solrj.io.comp.StreamComparator;
 import org.apache.solr.client.solrj.io.eq.FieldEqualitor;
@@ -39,7 +44,21 @@ import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionValue;
 import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
 import org.apache.solr.client.solrj.io.stream.metrics.Bucket;
 import org.apache.solr.client.solrj.io.stream.metrics.Metric;
+import org.apache.solr.common.util.IOUtils;
 
+/**
+ * Aggregates the metrics of the tuples of a stream by the values of the buckets, in a hash table.
+ * The tuples don't need to be sorted by the buckets, and the aggregated tuples are not sorted.
+ *
+ * <p>If the estimated size of the groups exceeds the <code>memoryLimit</code> parameter, in bytes,
+ * no more groups are added to the hash table: the tuples of the other groups are partitioned to
+ * disk by hash, and each partition is aggregated once the groups in memory are returned,
+ * partitioning it again if it still doesn't fit. See {@link SpillMetrics} for the metrics of the
+ * spilled tuples.
+ *
+ * <p>Without a memory limit, the tuples are read in {@link TupleBatch batches} of the fields of the
+ * buckets and metrics, so that the metrics read the values of their columns without boxing.
+ */
 public class HashRollupStream extends TupleStream implements Expressible {
 
   private static final long serialVersionUID = 1;
@@ -47,11 +66,26 @@ public class HashRollupStream extends TupleStream implements Expressible {
   private PushBackStream tupleStream;
   private Bucket[] buckets;
   private Metric[] metrics;
+  private long memoryLimit;
 
   private Iterator<Tuple> tupleIterator;
+  private transient Deque<Partition> partitions;
+  private transient Tuple eofTuple;
+
+  private static final int NUM_PARTITIONS = 16;
+  private static final int MAX_DEPTH = 4;
 
   public HashRollupStream(TupleStream tupleStream, Bucket[] buckets, Metric[] metrics) {
-    init(tupleStream, buckets, metrics);
+    this(tupleStream, buckets, metrics, SpillFile.DEFAULT_MEMORY_LIMIT);
+  }
+
+  /**
+   * @param memoryLimit the memory budget of the groups, in bytes, or a non-positive number to never
+   *     spill tuples to disk
+   */
+  public HashRollupStream(
+      TupleStream tupleStream, Bucket[] buckets, Metric[] metrics, long memoryLimit) {
+    init(tupleStream, buckets, metrics, memoryLimit);
   }
 
   public HashRollupStream(StreamExpression expression, StreamFactory factory) throws IOException {
@@ -62,10 +96,13 @@ public class HashRollupStream extends TupleStream implements Expressible {
     List<StreamExpression> metricExpressions =
         factory.getExpressionOperandsRepresentingTypes(expression, Expressible.class, Metric.class);
     StreamExpressionNamedParameter overExpression = factory.getNamedOperand(expression, "over");
+    long memoryLimit = SpillFile.getMemoryLimit(expression, factory);
+    int memoryLimitParams =
+        factory.getNamedOperand(expression, SpillFile.MEMORY_LIMIT_PARAM) == null ? 0 : 1;
 
     // validate expression contains only what we want.
     if (expression.getParameters().size()
-        != streamExpressions.size() + metricExpressions.size() + 1) {
+        != streamExpressions.size() + metricExpressions.size() + 1 + memoryLimitParams) {
       throw new IOException(
           String.format(Locale.ROOT, "Invalid expression %s - unknown operands found", expression));
     }
@@ -109,7 +146,7 @@ public class HashRollupStream extends TupleStream implements Expressible {
       // while we're using equalitors we don't support the form a=b. Only single field names.
     }
 
-    init(factory.constructStream(streamExpressions.get(0)), buckets, metrics);
+    init(factory.constructStream(streamExpressions.get(0)), buckets, metrics, memoryLimit);
   }
 
   private List<FieldEqualitor> flattenEqualitor(StreamEqualitor equalitor) {
@@ -126,10 +163,12 @@ public class HashRollupStream extends TupleStream implements Expressible {
     return flattenedList;
   }
 
-  private void init(TupleStream tupleStream, Bucket[] buckets, Metric[] metrics) {
+  private void init(
+      TupleStream tupleStream, Bucket[] buckets, Metric[] metrics, long memoryLimit) {
     this.tupleStream = new PushBackStream(tupleStream);
     this.buckets = buckets;
     this.metrics = metrics;
+    this.memoryLimit = memoryLimit;
   }
 
   @Override
@@ -164,6 +203,8 @@ public class HashRollupStream extends TupleStream implements Expressible {
       expression.addParameter(metric.toExpression(factory));
     }
 
+    SpillFile.addMemoryLimit(expression, memoryLimit);
+
     return expression;
   }
 
@@ -204,37 +245,67 @@ public class HashRollupStream extends TupleStream implements Expressible {
 
   @Override
   public void close() throws IOException {
-    tupleStream.close();
-    tupleIterator = null;
+    try {
+      if (partitions != null) {
+        for (Partition partition : partitions) {
+          IOUtils.closeQuietly(partition.file());
+        }
+      }
+    } finally {
+      tupleStream.close();
+      tupleIterator = null;
+      partitions = null;
+      eofTuple = null;
+    }
   }
 
   @Override
   public Tuple read() throws IOException {
-    // On the first call to read build the tupleIterator.
+    // On the first call to read aggregate the tuples of the stream.
     if (tupleIterator == null) {
-      Map<HashKey, Metric[]> metricMap = new HashMap<>();
-      while (true) {
-        Tuple tuple = tupleStream.read();
-        if (tuple.EOF) {
-          List<Tuple> tuples = new ArrayList<>();
-          for (Map.Entry<HashKey, Metric[]> entry : metricMap.entrySet()) {
-            Tuple t = new Tuple();
-            Metric[] finishedMetrics = entry.getValue();
-            for (Metric metric : finishedMetrics) {
-              t.put(metric.getIdentifier(), metric.getValue());
-            }
+      partitions = new ArrayDeque<>();
+      if (memoryLimit <= 0) {
+        tupleIterator = aggregateBatches();
+      } else {
+        tupleIterator =
+            aggregate(
+                () -> {
+                  Tuple tuple = tupleStream.read();
+                  if (tuple.EOF) {
+                    eofTuple = tuple;
+                    return null;
+                  }
+                  return tuple;
+                },
+                0);
+      }
+    }
 
-            HashKey hashKey = entry.getKey();
-            for (int i = 0; i < buckets.length; i++) {
-              t.put(buckets[i].toString(), hashKey.getParts()[i]);
-            }
-            tuples.add(t);
-          }
-          tuples.add(tuple);
-          this.tupleIterator = tuples.iterator();
-          break;
-        }
+    // Then aggregate the partitions spilled to disk, if any.
+    while (!tupleIterator.hasNext()) {
+      Partition partition = partitions.poll();
+      if (partition == null) {
+        return eofTuple;
+      }
+      try (SpillFile file = partition.file();
+          SpillFile.Reader reader = file.reader()) {
+        tupleIterator = aggregate(() -> reader.next() ? reader.tuple() : null, partition.depth());
+      }
+    }
+
+    return tupleIterator.next();
+  }
 
+  /**
+   * Aggregates the tuples of a source by bucket values. Once the groups exceed the memory limit,
+   * the tuples of new groups are spilled to partitions, which are queued to be aggregated later.
+   */
+  private Iterator<Tuple> aggregate(TupleSource source, int depth) throws IOException {
+    Map<HashKey, Metric[]> metricMap = new HashMap<>();
+    SpillFile[] spilled = null;
+    long groupsBytes = 0;
+    try {
+      for (Tuple tuple = source.next(); tuple != null; tuple = source.next()) {
         Object[] bucketValues = new Object[buckets.length];
         for (int i = 0; i < buckets.length; i++) {
           bucketValues[i] = buckets[i].getBucketValue(tuple);
@@ -247,6 +318,12 @@ public class HashRollupStream extends TupleStream implements Expressible {
           for (Metric bucketMetric : currentMetrics) {
             bucketMetric.update(tuple);
           }
+        } else if (spilled != null) {
+          int i = SpillFile.partition(hashKey.hashCode(), depth, NUM_PARTITIONS);
+          if (spilled[i] == null) {
+            spilled[i] = new SpillFile(SpillMetrics.ROLLUP_PARTITION);
+          }
+          spilled[i].write(tuple, 0);
         } else {
           currentMetrics = new Metric[metrics.length];
           for (int i = 0; i < metrics.length; i++) {
@@ -255,13 +332,100 @@ public class HashRollupStream extends TupleStream implements Expressible {
             currentMetrics[i] = bucketMetric;
           }
           metricMap.put(hashKey, currentMetrics);
+
+          if (memoryLimit > 0 && depth < MAX_DEPTH) {
+            groupsBytes += SpillFile.estimateSize(bucketValues) + 128L * (1 + metrics.length);
+            if (groupsBytes > memoryLimit) {
+              spilled = new SpillFile[NUM_PARTITIONS];
+            }
+          }
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      if (spilled != null) {
+        for (SpillFile file : spilled) {
+          IOUtils.closeQuietly(file);
         }
       }
+      throw e;
     }
 
-    return tupleIterator.next();
+    if (spilled != null) {
+      for (SpillFile file : spilled) {
+        if (file != null) {
+          file.finish();
+          partitions.add(new Partition(file, depth + 1));
+        }
+      }
+    }
+
+    return toTuples(metricMap);
   }
 
+  /** Aggregates the tuples of the stream, read in batches, by bucket values */
+  private Iterator<Tuple> aggregateBatches() throws IOException {
+    List<String> fields = new ArrayList<>();
+    for (Bucket bucket : buckets) {
+      fields.add(bucket.toString());
+    }
+    for (Metric metric : metrics) {
+      fields.addAll(Arrays.asList(metric.getColumns()));
+    }
+    TupleBatch batch = new TupleBatch(new TupleSchema(fields));
+
+    Map<HashKey, Metric[]> metricMap = new HashMap<>();
+    do {
+      tupleStream.readBatch(batch);
+      for (int row = 0; row < batch.size(); row++) {
+        Object[] bucketValues = new Object[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+          bucketValues[i] = buckets[i].getBucketValue(batch, row);
+        }
+
+        HashKey hashKey = new HashKey(bucketValues);
+        Metric[] currentMetrics = metricMap.get(hashKey);
+        if (currentMetrics == null) {
+          currentMetrics = new Metric[metrics.length];
+          for (int i = 0; i < metrics.length; i++) {
+            currentMetrics[i] = metrics[i].newInstance();
+          }
+          metricMap.put(hashKey, currentMetrics);
+        }
+        for (Metric bucketMetric : currentMetrics) {
+          bucketMetric.update(batch, row);
+        }
+      }
+    } while (batch.getEndTuple() == null);
+    eofTuple = batch.getEndTuple();
+
+    return toTuples(metricMap);
+  }
+
+  private Iterator<Tuple> toTuples(Map<HashKey, Metric[]> metricMap) {
+    List<Tuple> tuples = new ArrayList<>(metricMap.size());
+    for (Map.Entry<HashKey, Metric[]> entry : metricMap.entrySet()) {
+      Tuple t = new Tuple();
+      Metric[] finishedMetrics = entry.getValue();
+      for (Metric metric : finishedMetrics) {
+        t.put(metric.getIdentifier(), metric.getValue());
+      }
+
+      HashKey hashKey = entry.getKey();
+      for (int i = 0; i < buckets.length; i++) {
+        t.put(buckets[i].toString(), hashKey.getParts()[i]);
+      }
+      tuples.add(t);
+    }
+    return tuples.iterator();
+  }
+
+  private interface TupleSource {
+    /** Returns the next tuple, or null if there are no more */
+    Tuple next() throws IOException;
+  }
+
+  private record Partition(SpillFile file, int depth) {}
+
   @Override
   public int getCost() {
     return 0;
@@ -22,6 +22,7 @@ import java.util.List;
 import java.util.Locale;
 import org.apache.solr.client.solrj.io.Tuple;
 import org.apache.solr.client.solrj.io.comp.StreamComparator;
+import org.apache.solr.client.solrj.io.eval.CompiledEvaluator;
 import org.apache.solr.client.solrj.io.eval.RecursiveBooleanEvaluator;
 import org.apache.solr.client.solrj.io.eval.StreamEvaluator;
 import org.apache.solr.client.solrj.io.stream.expr.Explanation;
@@ -44,6 +45,7 @@ public class HavingStream extends TupleStream implements Expressible {
 
   private TupleStream stream;
   private RecursiveBooleanEvaluator evaluator;
+  private transient StreamEvaluator compiledEvaluator;
   private transient StreamContext streamContext;
 
   public HavingStream(TupleStream stream, RecursiveBooleanEvaluator evaluator) throws IOException {
@@ -148,6 +150,7 @@ public class HavingStream extends TupleStream implements Expressible {
 
   @Override
   public void open() throws IOException {
+    compiledEvaluator = CompiledEvaluator.compile(evaluator);
     stream.open();
   }
 
@@ -165,7 +168,7 @@ public class HavingStream extends TupleStream implements Expressible {
       }
 
       streamContext.getTupleContext().clear();
-      if ((boolean) evaluator.evaluate(tuple)) {
+      if ((boolean) compiledEvaluator.evaluate(tuple)) {
         return tuple;
       }
     }
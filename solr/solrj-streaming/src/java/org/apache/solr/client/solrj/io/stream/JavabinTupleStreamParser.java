@@ -21,10 +21,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.TupleBatch;
+import org.apache.solr.client.solrj.io.TupleSchema;
+import org.apache.solr.common.params.StreamParams;
 import org.apache.solr.common.util.DataInputInputStream;
 import org.apache.solr.common.util.FastInputStream;
 import org.apache.solr.common.util.JavaBinCodec;
@@ -36,6 +41,7 @@ public class JavabinTupleStreamParser extends JavaBinCodec implements TupleStrea
   private boolean onlyJsonTypes = false;
   int objectSize;
   private boolean atDocs;
+  private Map<String, Object> skippedFields;
 
   public JavabinTupleStreamParser(InputStream is, boolean onlyJsonTypes) throws IOException {
     this.onlyJsonTypes = onlyJsonTypes;
@@ -179,12 +185,8 @@ public class JavabinTupleStreamParser extends JavaBinCodec implements TupleStrea
   @Override
   @SuppressWarnings({"unchecked"})
   public Map<String, Object> next() throws IOException {
-    if (!atDocs) {
-      atDocs = true;
-      if (!readTillDocs()) {
-        arraySize = 0;
-        return null;
-      }
+    if (!atDocs()) {
+      return null;
     }
 
     if (arraySize == 0) return null;
@@ -194,6 +196,122 @@ public class JavabinTupleStreamParser extends JavaBinCodec implements TupleStrea
     return (Map<String, Object>) o;
   }
 
+  private boolean atDocs() throws IOException {
+    if (!atDocs) {
+      atDocs = true;
+      if (!readTillDocs()) {
+        arraySize = 0;
+      }
+    }
+    return arraySize != 0;
+  }
+
+  /**
+   * Decodes the next documents directly into the columns of a batch, which is not cleared, until
+   * it is full or there are no more documents. The fields which are not in the schema of the batch
+   * are skipped, and the numeric values are decoded as primitives, without boxing. A document with
+   * an {@link StreamParams#EOF} field is not added, it is set as the end tuple of the batch.
+   *
+   * @return false if there are no more documents
+   * @throws SolrStream.HandledException if a document has an {@link StreamParams#EXCEPTION} field
+   */
+  public boolean nextBatch(TupleBatch batch) throws IOException {
+    TupleSchema schema = batch.getSchema();
+    while (!batch.isFull()) {
+      if (!atDocs()) {
+        return false;
+      }
+      tagByte = fis.readByte();
+      arraySize--;
+      int size;
+      if (tagByte == END) {
+        arraySize = 0;
+        return false;
+      } else if (tagByte == SOLRDOC) {
+        tagByte = fis.readByte();
+        size = readSize(fis);
+      } else if (tagByte >>> 5 == ORDERED_MAP >>> 5 || tagByte >>> 5 == NAMED_LST >>> 5) {
+        size = readSize(fis);
+      } else if (tagByte == MAP) {
+        size = readVInt(fis);
+      } else if (tagByte == MAP_ENTRY_ITER) {
+        size = Integer.MAX_VALUE;
+      } else {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> doc = (Map<String, Object>) readObject(fis);
+        batch.add(new Tuple(doc));
+        continue;
+      }
+
+      int row = batch.addRow();
+      boolean eof = false;
+      if (skippedFields != null) {
+        skippedFields.clear();
+      }
+      for (int i = 0; i < size; i++) {
+        Object key = readVal(fis);
+        if (key == END_OBJ) {
+          break;
+        }
+        if (key instanceof Map) {
+          // a child document
+          continue;
+        }
+        if (key == null) {
+          // an entry without a name, which can't be a field of the tuple
+          readVal(fis);
+          continue;
+        }
+        String name = key.toString();
+        int column = schema.getColumn(name);
+        if (column >= 0) {
+          readValue(batch, row, column);
+          continue;
+        }
+        Object value = readVal(fis);
+        if (StreamParams.EXCEPTION.equals(name)) {
+          throw new SolrStream.HandledException(String.valueOf(value));
+        }
+        eof |= StreamParams.EOF.equals(name);
+        if (skippedFields == null) {
+          skippedFields = new HashMap<>();
+        }
+        skippedFields.put(name, value);
+      }
+
+      if (eof) {
+        // the fields of the EOF tuple may be metrics rather than fields of the schema
+        Tuple endTuple = batch.getTuple(row);
+        endTuple.putAll(skippedFields);
+        batch.removeRow();
+        batch.setEndTuple(endTuple);
+        arraySize = 0;
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Reads a value into a column, as a primitive if it is a number */
+  private void readValue(TupleBatch batch, int row, int column) throws IOException {
+    tagByte = fis.readByte();
+    if (tagByte >>> 5 == SLONG >>> 5) {
+      batch.setLong(row, column, readSmallLong(fis));
+    } else if (tagByte == LONG) {
+      batch.setLong(row, column, fis.readLong());
+    } else if (tagByte == DOUBLE) {
+      batch.setDouble(row, column, fis.readDouble());
+    } else if (onlyJsonTypes && tagByte >>> 5 == SINT >>> 5) {
+      batch.setLong(row, column, readSmallInt(fis));
+    } else if (onlyJsonTypes && tagByte == INT) {
+      batch.setLong(row, column, fis.readInt());
+    } else if (onlyJsonTypes && tagByte == FLOAT) {
+      batch.setDouble(row, column, fis.readFloat());
+    } else {
+      batch.set(row, column, readObject(fis));
+    }
+  }
+
   @Override
   public void close() throws IOException {
     is.close();
@@ -0,0 +1,274 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.stream;
+
+import static org.apache.solr.common.params.CommonParams.SORT;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.solr.client.solrj.io.SolrClientCache;
+import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.EnvUtils;
+
+/**
+ * Looks up the documents of a collection by the values of a key field, merging the lookups which
+ * the streams sharing a {@link SolrClientCache} make at the same time into one request.
+ *
+ * <p>The lookups of the same fields of a collection by the same key field, made by the same user,
+ * are grouped: while a request of a group is sent, the next lookups join the next group, up to
+ * {@link #MAX_KEYS} keys, which is sent once the request returns. The requests of all the groups
+ * share a budget of {@link #MAX_REQUESTS} requests at a time, besides the requests of the graph
+ * traversals which {@link #acquire()} it, and a group keeps growing while it waits for the budget.
+ * A lookup alone is sent right away. The request of a group is sent by the lookup which started it:
+ * if it fails, for instance because the stream of that lookup was closed, the other lookups of the
+ * group are sent on their own.
+ *
+ * <p>The lookups, the requests sent for them, and the waits for the budget are counted in {@link
+ * #getMetrics()}.
+ */
+public final class LookupCoalescer {
+
+  /**
+   * The key of the name of the user of the streams in their {@link StreamContext}, "" for none.
+   * Without it, only the lookups of the streams of the same context are merged.
+   */
+  public static final String USER_KEY = "lookup.user";
+
+  /** The maximum number of keys of a request, below the default maximum of boolean clauses */
+  public static final int MAX_KEYS =
+      EnvUtils.getPropertyAsInteger("solr.streaming.lookup.maxKeys", 1000);
+
+  /** The maximum number of requests sent at a time by the streams of a node */
+  public static final int MAX_REQUESTS =
+      EnvUtils.getPropertyAsInteger("solr.streaming.lookup.maxRequests", 32);
+
+  private static final LongAdder LOOKUPS = new LongAdder();
+  private static final LongAdder COALESCED = new LongAdder();
+  private static final LongAdder REQUESTS = new LongAdder();
+  private static final LongAdder RETRIES = new LongAdder();
+  private static final LongAdder KEYS = new LongAdder();
+  private static final LongAdder BUDGET_WAITS = new LongAdder();
+  private static final LongAdder BUDGET_WAIT_NANOS = new LongAdder();
+
+  private final SolrClientCache solrClientCache;
+  private final Semaphore budget = new Semaphore(MAX_REQUESTS, true);
+  private final Map<Lookup, Group> openGroups = new HashMap<>();
+  // one request of a lookup at a time, while the next group grows
+  private final Map<Lookup, Semaphore> requests = new ConcurrentHashMap<>();
+
+  public LookupCoalescer(SolrClientCache solrClientCache) {
+    this.solrClientCache = solrClientCache;
+  }
+
+  /** The user, collection, key field and fields of a lookup */
+  private record Lookup(
+      Object user, String zkHost, String collection, String keyField, String fl) {}
+
+  private static class Group {
+    final Set<String> keys = new LinkedHashSet<>();
+    // the number of keys of the lookups, some of which may be the same
+    int rows;
+    final CompletableFuture<Map<String, Tuple>> result = new CompletableFuture<>();
+  }
+
+  /**
+   * Returns the documents of a collection whose key field has one of the given values, by value.
+   * Of the documents with the same value, the one with the lowest version is returned. The tuples
+   * may be shared with other lookups, and must not be modified.
+   *
+   * @param user who the lookup is made for, only the lookups of the same user being merged
+   * @param fl the fields of the documents, which must include the key field
+   */
+  public Map<String, Tuple> lookup(
+      Object user,
+      String zkHost,
+      String collection,
+      String keyField,
+      String fl,
+      Collection<String> keys)
+      throws IOException {
+    LOOKUPS.increment();
+    Lookup lookup = new Lookup(user, zkHost, collection, keyField, fl);
+    Group group;
+    boolean leader;
+    synchronized (openGroups) {
+      group = openGroups.get(lookup);
+      if (group != null && group.keys.size() + keys.size() <= MAX_KEYS) {
+        group.keys.addAll(keys);
+        group.rows += keys.size();
+        leader = false;
+        COALESCED.increment();
+      } else {
+        group = new Group();
+        group.keys.addAll(keys);
+        group.rows = keys.size();
+        openGroups.put(lookup, group);
+        leader = true;
+      }
+    }
+
+    if (leader) {
+      send(lookup, group);
+    }
+    try {
+      return group.result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while looking up " + collection);
+    } catch (ExecutionException e) {
+      if (!leader) {
+        // the failure, or cancellation, of the lookup which sent the request isn't this one's
+        RETRIES.increment();
+        return fetchAlone(lookup, keys);
+      }
+      if (e.getCause() instanceof IOException ioe) {
+        throw new IOException(ioe.getMessage(), ioe);
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private void send(Lookup lookup, Group group) {
+    Semaphore request = requests.computeIfAbsent(lookup, l -> new Semaphore(1));
+    try {
+      request.acquireUninterruptibly();
+      try {
+        acquire();
+        try {
+          synchronized (openGroups) {
+            // the keys of the group are final from now on
+            openGroups.remove(lookup, group);
+          }
+          group.result.complete(fetch(lookup, group.keys, group.rows));
+        } finally {
+          release();
+        }
+      } finally {
+        request.release();
+      }
+    } catch (Throwable t) {
+      synchronized (openGroups) {
+        openGroups.remove(lookup, group);
+      }
+      group.result.completeExceptionally(t);
+    }
+  }
+
+  private Map<String, Tuple> fetchAlone(Lookup lookup, Collection<String> keys) throws IOException {
+    acquire();
+    try {
+      return fetch(lookup, new LinkedHashSet<>(keys), keys.size());
+    } finally {
+      release();
+    }
+  }
+
+  private Map<String, Tuple> fetch(Lookup lookup, Set<String> keys, int rows) throws IOException {
+    REQUESTS.increment();
+    KEYS.add(keys.size());
+    StringBuilder buf = new StringBuilder(keys.size() * 10 + 20);
+    // disable queryCache
+    buf.append("{! df=").append(lookup.keyField()).append(" q.op=OR cache=false }");
+    for (String key : keys) {
+      buf.append(' ').append(ClientUtils.escapeQueryChars(key));
+    }
+
+    ModifiableSolrParams params = new ModifiableSolrParams();
+    params.add("q", buf.toString());
+    params.add("fl", lookup.fl());
+    params.add("rows", Integer.toString(rows));
+    params.add(SORT, "_version_ desc");
+
+    CloudSolrStream cloudSolrStream =
+        new CloudSolrStream(lookup.zkHost(), lookup.collection(), params);
+    StreamContext context = new StreamContext();
+    context.setSolrClientCache(solrClientCache);
+    cloudSolrStream.setStreamContext(context);
+    Map<String, Tuple> fetched = new HashMap<>();
+    try {
+      cloudSolrStream.open();
+      while (true) {
+        Tuple t = cloudSolrStream.read();
+        if (t.EOF) {
+          break;
+        } else {
+          fetched.put(t.getString(lookup.keyField()), t);
+        }
+      }
+    } finally {
+      cloudSolrStream.close();
+    }
+    return fetched;
+  }
+
+  /**
+   * Waits for a request of the budget of the node. The request must be read entirely before it is
+   * {@link #release() released}, and no other request may be acquired meanwhile.
+   */
+  public void acquire() throws InterruptedIOException {
+    if (budget.tryAcquire()) {
+      return;
+    }
+    long start = System.nanoTime();
+    try {
+      budget.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to send a request");
+    } finally {
+      BUDGET_WAITS.increment();
+      BUDGET_WAIT_NANOS.add(System.nanoTime() - start);
+    }
+  }
+
+  /** Returns a request to the budget of the node */
+  public void release() {
+    budget.release();
+  }
+
+  /**
+   * Returns the number of lookups so far in this JVM, how many were merged into the request of
+   * another, how many were sent on their own after that request failed, the number of requests and
+   * keys sent, and the number and time in milliseconds of the
+   * waits for the budget of requests.
+   */
+  public static Map<String, Long> getMetrics() {
+    Map<String, Long> metrics = new TreeMap<>();
+    metrics.put("lookups", LOOKUPS.sum());
+    metrics.put("coalesced", COALESCED.sum());
+    metrics.put("requests", REQUESTS.sum());
+    metrics.put("retries", RETRIES.sum());
+    metrics.put("keys", KEYS.sum());
+    metrics.put("budgetWaits", BUDGET_WAITS.sum());
+    metrics.put("budgetWaitTimeMs", TimeUnit.NANOSECONDS.toMillis(BUDGET_WAIT_NANOS.sum()));
+    return metrics;
+  }
+}
@@ -36,6 +36,9 @@ import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
  * tuple from the fullStream does not contain a value (ie, null) for one of the fields the hash is
  * being computed on then that tuple will be returned without any joined tuples from the hashStream
  *
+ * <p>Like a HashJoinStream, it does a grace hash join if the hashed tuples exceed the <code>
+ * memoryLimit</code> parameter.
+ *
  * @since 6.0.0
  */
 public class OuterHashJoinStream extends HashJoinStream implements Expressible {
@@ -47,6 +50,16 @@ public class OuterHashJoinStream extends HashJoinStream implements Expressible {
     super(fullStream, hashStream, hashOn);
   }
 
+  /**
+   * @param memoryLimit the memory budget of the hashed tuples, in bytes, or a non-positive number
+   *     to never spill them to disk, which doesn't change the order of the joined tuples
+   */
+  public OuterHashJoinStream(
+      TupleStream fullStream, TupleStream hashStream, List<String> hashOn, long memoryLimit)
+      throws IOException {
+    super(fullStream, hashStream, hashOn, memoryLimit);
+  }
+
   public OuterHashJoinStream(StreamExpression expression, StreamFactory factory)
       throws IOException {
     super(expression, factory);
@@ -88,12 +101,22 @@ public class OuterHashJoinStream extends HashJoinStream implements Expressible {
       }
     }
     expression.addParameter(new StreamExpressionNamedParameter("on", sb.toString()));
+    SpillFile.addMemoryLimit(expression, memoryLimit);
 
     return expression;
   }
 
+  @Override
+  protected boolean isOuterJoin() {
+    return true;
+  }
+
   @Override
   public Tuple read() throws IOException {
+    Tuple spilled = readSpilled();
+    if (null != spilled) {
+      return spilled;
+    }
 
     if (null == workingFullTuple) {
       Tuple fullTuple = fullStream.read();
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.UUID;
 import org.apache.solr.client.solrj.io.Tuple;
 import org.apache.solr.client.solrj.io.comp.FieldComparator;
 import org.apache.solr.client.solrj.io.comp.StreamComparator;
@@ -41,12 +42,20 @@ import org.apache.solr.common.params.ModifiableSolrParams;
  * execution. Workers are chosen from a SolrCloud collection. Tuples that are streamed back from the
  * workers are ordered by a Comparator.
  *
+ * <p>With <code>shuffle="true"</code>, each shard reads the documents of an /export search once for
+ * all the workers, and routes them to the workers by the hash of their <code>partitionKeys</code>,
+ * rather than each worker filtering the documents of its partition from a search of its own.
+ *
  * @since 5.1.0
  */
 public class ParallelStream extends CloudSolrStream implements Expressible {
 
+  /** The parameter of the id of the shuffle of the searches of the workers */
+  public static final String SHUFFLE_ID_PARAM = "shuffleId";
+
   private TupleStream tupleStream;
   private int workers;
+  private boolean shuffle;
   private transient StreamFactory streamFactory;
 
   public ParallelStream(
@@ -75,11 +84,16 @@ public class ParallelStream extends CloudSolrStream implements Expressible {
             expression, Expressible.class, TupleStream.class);
     StreamExpressionNamedParameter sortExpression = factory.getNamedOperand(expression, SORT);
     StreamExpressionNamedParameter zkHostExpression = factory.getNamedOperand(expression, "zkHost");
+    StreamExpressionNamedParameter shuffleExpression =
+        factory.getNamedOperand(expression, "shuffle");
 
     // validate expression contains only what we want.
 
     if (expression.getParameters().size()
-        != streamExpressions.size() + 3 + (null != zkHostExpression ? 1 : 0)) {
+        != streamExpressions.size()
+            + 3
+            + (null != zkHostExpression ? 1 : 0)
+            + (null != shuffleExpression ? 1 : 0)) {
       throw new IOException(
           String.format(Locale.ROOT, "Invalid expression %s - unknown operands found", expression));
     }
@@ -171,6 +185,27 @@ public class ParallelStream extends CloudSolrStream implements Expressible {
             FieldComparator.class);
     streamFactory = factory;
     init(zkHost, collectionName, stream, workersInt, comp);
+
+    if (null != shuffleExpression) {
+      if (!(shuffleExpression.getParameter() instanceof StreamExpressionValue)) {
+        throw new IOException(
+            String.format(
+                Locale.ROOT,
+                "Invalid expression %s - the shuffle parameter must be true or false",
+                expression));
+      }
+      shuffle =
+          Boolean.parseBoolean(
+              ((StreamExpressionValue) shuffleExpression.getParameter()).getValue());
+    }
+  }
+
+  /**
+   * Sets whether the shards read the documents of the /export searches of the workers once, and
+   * route them to the workers, rather than each worker reading its partition of the documents.
+   */
+  public void setShuffle(boolean shuffle) {
+    this.shuffle = shuffle;
   }
 
   private void init(
@@ -222,6 +257,10 @@ public class ParallelStream extends CloudSolrStream implements Expressible {
     // zkHost
     expression.addParameter(new StreamExpressionNamedParameter("zkHost", zkHost));
 
+    if (shuffle) {
+      expression.addParameter(new StreamExpressionNamedParameter("shuffle", "true"));
+    }
+
     return expression;
   }
 
@@ -290,12 +329,16 @@ public class ParallelStream extends CloudSolrStream implements Expressible {
       Object pushStream = ((Expressible) tupleStream).toExpression(streamFactory);
 
       List<String> shardUrls = getShards(this.zkHost, this.collection, this.streamContext);
+      String shuffleId = shuffle ? UUID.randomUUID().toString() : null;
 
       for (int w = 0; w < workers; w++) {
         ModifiableSolrParams paramsLoc = new ModifiableSolrParams();
         paramsLoc.set(DISTRIB, "false"); // We are the aggregator.
         paramsLoc.set("numWorkers", workers);
         paramsLoc.set("workerID", w);
+        if (shuffleId != null) {
+          paramsLoc.set(SHUFFLE_ID_PARAM, shuffleId);
+        }
 
         paramsLoc.set("expr", pushStream.toString());
         paramsLoc.set("qt", "/stream");
@@ -0,0 +1,302 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.stream;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.comp.StreamComparator;
+import org.apache.solr.client.solrj.io.stream.expr.Explanation;
+import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
+import org.apache.solr.common.util.EnvUtils;
+import org.apache.solr.common.util.IOUtils;
+import org.slf4j.MDC;
+
+/**
+ * Reads the tuples of a stream ahead of its consumer, on a virtual thread, so that the consumer
+ * doesn't wait for the network between tuples. {@link CloudSolrStream} reads each shard through
+ * one when the <code>solr.streaming.prefetch.tuples</code> system property is set, so that the
+ * connections to all the shards stay busy while it merges their tuples.
+ *
+ * <p>The tuples are handed over in chunks through a bounded queue of at most the buffer size
+ * tuples: once the consumer falls that far behind, the reader waits for it, which in turn stops
+ * reading the response. A chunk is handed over early when the consumer is waiting for it.
+ *
+ * <p>A read which has to wait for the reader is a stall. The stalls and the time spent in them are
+ * counted by stream, and in total in {@link #getMetrics()}, along with the times the reader waited
+ * for the consumer.
+ *
+ * <p>The stream is never closed while the reader is reading it: closing interrupts the reader and
+ * waits for it to stop, and if it doesn't in time, the reader closes the stream once its read
+ * returns.
+ */
+public final class PrefetchStream extends TupleStream {
+
+  private static final long serialVersionUID = 1;
+
+  /** The default number of tuples read ahead, 0 by default to not read ahead */
+  public static final int DEFAULT_BUFFER_SIZE =
+      EnvUtils.getPropertyAsInteger("solr.streaming.prefetch.tuples", 0);
+
+  static final int CHUNK_SIZE = 128;
+
+  private static final long CLOSE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+  private static final LongAdder TOTAL_TUPLES = new LongAdder();
+  private static final LongAdder TOTAL_STALLS = new LongAdder();
+  private static final LongAdder TOTAL_STALL_NANOS = new LongAdder();
+  private static final LongAdder TOTAL_FULL_WAITS = new LongAdder();
+
+  private final TupleStream stream;
+  private final int bufferSize;
+
+  private transient ReadAhead readAhead;
+  private transient List<Tuple> chunk;
+  private transient int pos;
+  private transient Tuple endTuple;
+  private transient long stalls;
+  private transient long stallNanos;
+
+  /**
+   * @param bufferSize the number of tuples to read ahead, at least one chunk of {@link #CHUNK_SIZE}
+   */
+  public PrefetchStream(TupleStream stream, int bufferSize) {
+    this.stream = stream;
+    this.bufferSize = bufferSize;
+  }
+
+  /** Returns the number of reads which waited for the tuples to be read */
+  public long getStalls() {
+    return stalls;
+  }
+
+  /** Returns the time the reads waited for the tuples to be read, in nanoseconds */
+  public long getStallNanos() {
+    return stallNanos;
+  }
+
+  @Override
+  public void setStreamContext(StreamContext context) {
+    stream.setStreamContext(context);
+  }
+
+  @Override
+  public List<TupleStream> children() {
+    return List.of(stream);
+  }
+
+  @Override
+  public void open() throws IOException {
+    stream.open();
+    chunk = null;
+    endTuple = null;
+    ReadAhead readAhead = new ReadAhead(Math.max(1, bufferSize / CHUNK_SIZE));
+    Map<String, String> mdc = MDC.getCopyOfContextMap();
+    readAhead.thread =
+        Thread.ofVirtual()
+            .name("PrefetchStream")
+            .start(
+                () -> {
+                  if (mdc != null) {
+                    MDC.setContextMap(mdc);
+                  }
+                  readAhead.run();
+                });
+    this.readAhead = readAhead;
+  }
+
+  @Override
+  public Tuple read() throws IOException {
+    if (chunk == null || pos == chunk.size()) {
+      if (endTuple != null) {
+        return endTuple;
+      }
+      chunk = take();
+      pos = 0;
+    }
+    Tuple tuple = chunk.get(pos++);
+    if (tuple.EOF) {
+      endTuple = tuple;
+    }
+    return tuple;
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<Tuple> take() throws IOException {
+    Object item = readAhead.queue.poll();
+    if (item == null) {
+      long start = System.nanoTime();
+      readAhead.consumerWaiting = true;
+      try {
+        item = readAhead.queue.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for tuples");
+      } finally {
+        readAhead.consumerWaiting = false;
+        long nanos = System.nanoTime() - start;
+        stalls++;
+        stallNanos += nanos;
+        TOTAL_STALLS.increment();
+        TOTAL_STALL_NANOS.add(nanos);
+      }
+    }
+    if (item instanceof IOException e) {
+      throw e;
+    } else if (item instanceof RuntimeException e) {
+      throw e;
+    } else if (item instanceof Error e) {
+      throw e;
+    } else if (item instanceof Throwable t) {
+      throw new IOException(t);
+    }
+    return (List<Tuple>) item;
+  }
+
+  /** Stops reading ahead, and closes the stream */
+  @Override
+  public void close() throws IOException {
+    ReadAhead readAhead = this.readAhead;
+    this.readAhead = null;
+    chunk = null;
+    if (readAhead == null || readAhead.stop()) {
+      stream.close();
+    }
+  }
+
+  /**
+   * The reading ahead of the stream from its opening, with its own queue so that a reader which is
+   * still running after the stream is closed never hands over tuples to a later opening.
+   */
+  private final class ReadAhead {
+    private final BlockingQueue<Object> queue;
+    private volatile boolean closed;
+    private volatile boolean consumerWaiting;
+    private Thread thread;
+    // guarded by this
+    private boolean ended;
+    private boolean closeStream;
+
+    ReadAhead(int capacity) {
+      this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    void run() {
+      List<Tuple> tuples = new ArrayList<>(CHUNK_SIZE);
+      try {
+        while (!closed) {
+          Tuple tuple;
+          do {
+            tuple = stream.read();
+            tuples.add(tuple);
+          } while (!tuple.EOF && tuples.size() < CHUNK_SIZE && !consumerWaiting);
+          TOTAL_TUPLES.add(tuple.EOF ? tuples.size() - 1 : tuples.size());
+          put(tuples);
+          if (tuple.EOF) {
+            return;
+          }
+          tuples = new ArrayList<>(CHUNK_SIZE);
+        }
+      } catch (Throwable t) {
+        // handed over to the consumer after the tuples read before it, and rethrown
+        try {
+          if (!tuples.isEmpty()) {
+            put(tuples);
+          }
+          put(t);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      } finally {
+        end();
+      }
+    }
+
+    private void put(Object item) throws InterruptedException {
+      if (queue.offer(item)) {
+        return;
+      }
+      TOTAL_FULL_WAITS.increment();
+      while (!closed) {
+        if (queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+          return;
+        }
+      }
+    }
+
+    private void end() {
+      boolean close;
+      synchronized (this) {
+        ended = true;
+        close = closeStream;
+      }
+      if (close) {
+        IOUtils.closeQuietly(stream);
+      }
+    }
+
+    /**
+     * Stops the reader, and returns true if it ended, so that the stream can be closed, or false if
+     * the reader is still reading it and will close it once its read returns.
+     */
+    boolean stop() {
+      closed = true;
+      queue.clear();
+      thread.interrupt();
+      try {
+        thread.join(CLOSE_TIMEOUT_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      synchronized (this) {
+        closeStream = !ended;
+        return ended;
+      }
+    }
+  }
+
+  @Override
+  public StreamComparator getStreamSort() {
+    return stream.getStreamSort();
+  }
+
+  @Override
+  public Explanation toExplanation(StreamFactory factory) throws IOException {
+    return stream.toExplanation(factory);
+  }
+
+  /**
+   * Returns the number of tuples read ahead so far in this JVM, the number of stalls and the time
+   * spent in them in milliseconds, and the number of times a reader waited for its consumer.
+   */
+  public static Map<String, Long> getMetrics() {
+    Map<String, Long> metrics = new TreeMap<>();
+    metrics.put("tuples", TOTAL_TUPLES.sum());
+    metrics.put("stalls", TOTAL_STALLS.sum());
+    metrics.put("stallTimeMs", TimeUnit.NANOSECONDS.toMillis(TOTAL_STALL_NANOS.sum()));
+    metrics.put("fullWaits", TOTAL_FULL_WAITS.sum());
+    return metrics;
+  }
+}
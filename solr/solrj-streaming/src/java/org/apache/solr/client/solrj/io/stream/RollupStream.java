@@ -18,9 +18,12 @@ package org.apache.solr.client.solrj.io.stream;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.TupleBatch;
+import org.apache.solr.client.solrj.io.TupleSchema;
 import org.apache.solr.client.solrj.io.comp.HashKey;
 import org.apache.solr.client.solrj.io.comp.StreamComparator;
 import org.apache.solr.client.solrj.io.eq.FieldEqualitor;
@@ -38,6 +41,14 @@ import org.apache.solr.client.solrj.io.stream.metrics.Bucket;
 import org.apache.solr.client.solrj.io.stream.metrics.Metric;
 
 /**
+ * Aggregates the metrics of the tuples of a stream sorted by the buckets, one group of tuples with
+ * the same bucket values at a time.
+ *
+ * <p>The tuples are read in {@link TupleBatch batches} of the fields of the buckets and metrics.
+ * The rows of a group are found by comparing the bucket columns of consecutive rows, and each
+ * metric is updated with the whole range of rows of the group at once, which the metrics of a
+ * primitive column aggregate in a loop over its array.
+ *
  * @since 6.0.0
  */
 public class RollupStream extends TupleStream implements Expressible {
@@ -48,9 +59,11 @@ public class RollupStream extends TupleStream implements Expressible {
   private Bucket[] buckets;
   private Metric[] metrics;
 
+  private transient TupleBatch batch;
+  private transient int[] bucketColumns;
+  private transient int row;
   private HashKey currentKey = new HashKey("-");
   private Metric[] currentMetrics;
-  private boolean finished = false;
 
   public RollupStream(TupleStream tupleStream, Bucket[] buckets, Metric[] metrics) {
     init(tupleStream, buckets, metrics);
@@ -207,78 +220,109 @@ public class RollupStream extends TupleStream implements Expressible {
   @Override
   public void close() throws IOException {
     tupleStream.close();
+    this.batch = null;
     this.currentMetrics = null;
     this.currentKey = new HashKey("-");
-    this.finished = false;
   }
 
   @Override
   public Tuple read() throws IOException {
+    if (batch == null) {
+      List<String> fields = new ArrayList<>();
+      for (Bucket bucket : buckets) {
+        fields.add(bucket.toString());
+      }
+      for (Metric metric : metrics) {
+        fields.addAll(Arrays.asList(metric.getColumns()));
+      }
+      batch = new TupleBatch(new TupleSchema(fields));
+      bucketColumns = new int[buckets.length];
+      for (int i = 0; i < buckets.length; i++) {
+        bucketColumns[i] = batch.getSchema().getColumn(buckets[i].toString());
+      }
+      row = 0;
+    }
 
     while (true) {
-      Tuple tuple = tupleStream.read();
-      if (tuple.EOF) {
-        if (!finished) {
-
+      if (row == batch.size()) {
+        Tuple endTuple = batch.getEndTuple();
+        if (endTuple != null) {
           if (currentMetrics == null) {
-            return tuple;
-          }
-
-          Tuple t = new Tuple();
-          for (Metric metric : currentMetrics) {
-            t.put(metric.getIdentifier(), metric.getValue());
+            return endTuple;
           }
-
-          for (int i = 0; i < buckets.length; i++) {
-            t.put(buckets[i].toString(), currentKey.getParts()[i]);
-          }
-          tupleStream.pushBack(tuple);
-          finished = true;
+          Tuple t = groupTuple();
+          currentMetrics = null;
           return t;
-        } else {
-          return tuple;
         }
+        tupleStream.readBatch(batch);
+        row = 0;
+        continue;
       }
 
-      Object[] bucketValues = new Object[buckets.length];
-      for (int i = 0; i < buckets.length; i++) {
-        bucketValues[i] = buckets[i].getBucketValue(tuple);
+      Tuple t = null;
+      // the first row of a batch is compared with the bucket values of the current group, the
+      // other rows with the row before them
+      if (row > 0 || !isCurrentGroup(row)) {
+        if (currentMetrics != null) {
+          t = groupTuple();
+        }
+        Object[] bucketValues = new Object[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+          bucketValues[i] = buckets[i].getBucketValue(batch, row);
+        }
+        currentKey = new HashKey(bucketValues);
+        currentMetrics = new Metric[metrics.length];
+        for (int i = 0; i < metrics.length; i++) {
+          currentMetrics[i] = metrics[i].newInstance();
+        }
       }
 
-      HashKey hashKey = new HashKey(bucketValues);
-
-      if (hashKey.equals(currentKey)) {
-        for (Metric bucketMetric : currentMetrics) {
-          bucketMetric.update(tuple);
-        }
-      } else {
-        Tuple t = null;
-        if (currentMetrics != null) {
-          t = new Tuple();
-          for (Metric metric : currentMetrics) {
-            t.put(metric.getIdentifier(), metric.getValue());
-          }
+      int end = row + 1;
+      while (end < batch.size() && isSameGroup(end - 1, end)) {
+        end++;
+      }
+      for (Metric bucketMetric : currentMetrics) {
+        bucketMetric.update(batch, row, end);
+      }
+      row = end;
 
-          for (int i = 0; i < buckets.length; i++) {
-            t.put(buckets[i].toString(), currentKey.getParts()[i]);
-          }
-        }
+      if (t != null) {
+        return t;
+      }
+    }
+  }
 
-        currentKey = hashKey;
-        if (metrics != null) {
-          currentMetrics = new Metric[metrics.length];
-          for (int i = 0; i < metrics.length; i++) {
-            Metric bucketMetric = metrics[i].newInstance();
-            bucketMetric.update(tuple);
-            currentMetrics[i] = bucketMetric;
-          }
-        }
+  private boolean isCurrentGroup(int row) {
+    if (currentMetrics == null) {
+      return false;
+    }
+    Object[] parts = currentKey.getParts();
+    for (int i = 0; i < buckets.length; i++) {
+      if (!parts[i].equals(buckets[i].getBucketValue(batch, row))) {
+        return false;
+      }
+    }
+    return true;
+  }
 
-        if (t != null) {
-          return t;
-        }
+  private boolean isSameGroup(int row, int otherRow) {
+    for (int column : bucketColumns) {
+      if (column >= 0 && !batch.equals(column, row, otherRow)) {
+        return false;
       }
     }
+    return true;
+  }
+
+  private Tuple groupTuple() {
+    Tuple t = new Tuple();
+    for (Metric metric : currentMetrics) {
+      t.put(metric.getIdentifier(), metric.getValue());
+    }
+    for (int i = 0; i < buckets.length; i++) {
+      t.put(buckets[i].toString(), currentKey.getParts()[i]);
+    }
+    return t;
   }
 
   @Override
@@ -26,6 +26,7 @@ import java.util.Map;
 import java.util.Set;
 import org.apache.solr.client.solrj.io.Tuple;
 import org.apache.solr.client.solrj.io.comp.StreamComparator;
+import org.apache.solr.client.solrj.io.eval.CompiledEvaluator;
 import org.apache.solr.client.solrj.io.eval.EvaluatorException;
 import org.apache.solr.client.solrj.io.eval.StreamEvaluator;
 import org.apache.solr.client.solrj.io.ops.StreamOperation;
@@ -55,6 +56,7 @@ public class SelectStream extends TupleStream implements Expressible {
   private Map<String, String> selectedFields;
   private List<String> selectedFieldGlobPatterns;
   private Map<StreamEvaluator, String> selectedEvaluators;
+  private transient Map<StreamEvaluator, String> compiledEvaluators;
   private List<StreamOperation> operations;
 
   public SelectStream(TupleStream stream, List<String> selectedFields) throws IOException {
@@ -295,6 +297,11 @@ public class SelectStream extends TupleStream implements Expressible {
 
   @Override
   public void open() throws IOException {
+    compiledEvaluators = new LinkedHashMap<>();
+    for (Map.Entry<StreamEvaluator, String> selectedEvaluator : selectedEvaluators.entrySet()) {
+      compiledEvaluators.put(
+          CompiledEvaluator.compile(selectedEvaluator.getKey()), selectedEvaluator.getValue());
+    }
     stream.open();
   }
 
@@ -344,7 +351,7 @@ public class SelectStream extends TupleStream implements Expressible {
     }
 
     // Apply all evaluators
-    for (Map.Entry<StreamEvaluator, String> selectedEvaluator : selectedEvaluators.entrySet()) {
+    for (Map.Entry<StreamEvaluator, String> selectedEvaluator : compiledEvaluators.entrySet()) {
       Object o = selectedEvaluator.getKey().evaluate(workingForEvaluators);
       if (o != null) {
         workingForEvaluators.put(selectedEvaluator.getValue(), o);
@@ -31,6 +31,7 @@ import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.InputStreamResponseParser;
 import org.apache.solr.client.solrj.io.SolrClientCache;
 import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.TupleBatch;
 import org.apache.solr.client.solrj.io.comp.StreamComparator;
 import org.apache.solr.client.solrj.io.stream.expr.Explanation;
 import org.apache.solr.client.solrj.io.stream.expr.Explanation.ExpressionType;
@@ -151,8 +152,14 @@ public class SolrStream extends TupleStream {
     ModifiableSolrParams solrParams = new ModifiableSolrParams(paramsIn);
     if (params.get("partitionKeys") != null) {
       if (!params.get("partitionKeys").equals("none") && numWorkers > 1) {
-        String partitionFilter = getPartitionFilter();
-        solrParams.add("fq", partitionFilter);
+        if (params.get(StreamParams.SHUFFLE_ID) != null) {
+          // the shard reads the documents once for all the workers, and sends each its partition
+          solrParams.set(StreamParams.SHUFFLE_WORKERS, numWorkers);
+          solrParams.set(StreamParams.SHUFFLE_WORKER, workerID);
+        } else {
+          String partitionFilter = getPartitionFilter();
+          solrParams.add("fq", partitionFilter);
+        }
       }
     } else if (numWorkers > 1) {
       throw new IOException(
@@ -237,6 +244,36 @@ public class SolrStream extends TupleStream {
     }
   }
 
+  /**
+   * Decodes the tuples directly into the batch when the response is in the javabin format, unless
+   * the fields of the tuples are mapped or traced.
+   */
+  @Override
+  public void readBatch(TupleBatch batch) throws IOException {
+    if (!(tupleStreamParser instanceof JavabinTupleStreamParser parser)
+        || trace
+        || fieldMappings != null) {
+      super.readBatch(batch);
+      return;
+    }
+    batch.clear();
+    try {
+      if (!parser.nextBatch(batch) && batch.getEndTuple() == null) {
+        batch.setEndTuple(Tuple.EOF());
+      }
+    } catch (HandledException e) {
+      throw new IOException("--> " + this.baseUrl + ":" + e.getMessage());
+    } catch (Exception e) {
+      // The Stream source did not provide an exception in a format that the SolrStream could
+      // propagate.
+      throw new IOException(
+          "--> "
+              + this.baseUrl
+              + ": An exception has occurred on the server, refer to server log for details.",
+          e);
+    }
+  }
+
   public void setDistrib(boolean distrib) {
     this.distrib = distrib;
   }
@@ -18,7 +18,6 @@ package org.apache.solr.client.solrj.io.stream;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import org.apache.solr.client.solrj.io.Tuple;
@@ -36,6 +35,11 @@ import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
 /**
  * The SortStream emits a stream of Tuples sorted by a Comparator.
  *
+ * <p>If the estimated size of the tuples exceeds the <code>memoryLimit</code> parameter, in bytes,
+ * the tuples are sorted with an external merge sort: sorted runs of tuples are spilled to disk, and
+ * merged as the sorted tuples are read. See {@link SpillMetrics} for the metrics of the spilled
+ * tuples.
+ *
  * @since 6.1.0
  */
 public class SortStream extends TupleStream implements Expressible {
@@ -44,10 +48,20 @@ public class SortStream extends TupleStream implements Expressible {
 
   private TupleStream stream;
   private StreamComparator comparator;
+  private long memoryLimit;
   private Worker worker;
 
   public SortStream(TupleStream stream, StreamComparator comp) throws IOException {
-    init(stream, comp);
+    this(stream, comp, SpillFile.DEFAULT_MEMORY_LIMIT);
+  }
+
+  /**
+   * @param memoryLimit the memory budget of the buffered tuples, in bytes, or a non-positive number
+   *     to never spill them to disk
+   */
+  public SortStream(TupleStream stream, StreamComparator comp, long memoryLimit)
+      throws IOException {
+    init(stream, comp, memoryLimit);
   }
 
   public SortStream(StreamExpression expression, StreamFactory factory) throws IOException {
@@ -56,9 +70,12 @@ public class SortStream extends TupleStream implements Expressible {
         factory.getExpressionOperandsRepresentingTypes(
             expression, Expressible.class, TupleStream.class);
     StreamExpressionNamedParameter byExpression = factory.getNamedOperand(expression, "by");
+    long memoryLimit = SpillFile.getMemoryLimit(expression, factory);
+    int memoryLimitParams =
+        factory.getNamedOperand(expression, SpillFile.MEMORY_LIMIT_PARAM) == null ? 0 : 1;
 
     // validate expression contains only what we want.
-    if (expression.getParameters().size() != streamExpressions.size() + 1) {
+    if (expression.getParameters().size() != streamExpressions.size() + 1 + memoryLimitParams) {
       throw new IOException(
           String.format(Locale.ROOT, "Invalid expression %s - unknown operands found", expression));
     }
@@ -84,43 +101,52 @@ public class SortStream extends TupleStream implements Expressible {
         factory.constructStream(streamExpressions.get(0)),
         factory.constructComparator(
             ((StreamExpressionValue) byExpression.getParameter()).getValue(),
-            FieldComparator.class));
+            FieldComparator.class),
+        memoryLimit);
   }
 
-  private void init(TupleStream stream, StreamComparator comp) throws IOException {
+  private void init(TupleStream stream, StreamComparator comp, long memoryLimit)
+      throws IOException {
     this.stream = stream;
     this.comparator = comp;
+    this.memoryLimit = memoryLimit;
 
-    // standard java modified merge sort
+    // standard java modified merge sort, merging the sorted runs spilled to disk if any
     worker =
         new Worker() {
 
-          @SuppressWarnings("JdkObsolete")
-          private final LinkedList<Tuple> tuples = new LinkedList<>();
+          private ExternalSorter sorter;
 
           private Tuple eofTuple;
 
           @Override
           public void readStream(TupleStream stream) throws IOException {
+            sorter = new ExternalSorter(comparator, memoryLimit);
             Tuple tuple = stream.read();
             while (!tuple.EOF) {
-              tuples.add(tuple);
+              sorter.add(tuple);
               tuple = stream.read();
             }
             eofTuple = tuple;
           }
 
           @Override
-          public void sort() {
-            tuples.sort(comparator);
+          public void sort() throws IOException {
+            sorter.sort();
           }
 
           @Override
-          public Tuple read() {
-            if (tuples.isEmpty()) {
-              return eofTuple;
+          public Tuple read() throws IOException {
+            Tuple tuple = sorter.next();
+            return tuple == null ? eofTuple : tuple;
+          }
+
+          @Override
+          public void close() throws IOException {
+            if (sorter != null) {
+              sorter.close();
+              sorter = null;
             }
-            return tuples.removeFirst();
           }
         };
   }
@@ -156,6 +182,8 @@ public class SortStream extends TupleStream implements Expressible {
           "This SortStream contains a non-expressible equalitor - it cannot be converted to an expression");
     }
 
+    SpillFile.addMemoryLimit(expression, memoryLimit);
+
     return expression;
   }
 
@@ -193,7 +221,11 @@ public class SortStream extends TupleStream implements Expressible {
 
   @Override
   public void close() throws IOException {
-    stream.close();
+    try {
+      worker.close();
+    } finally {
+      stream.close();
+    }
   }
 
   @Override
@@ -216,8 +248,10 @@ public class SortStream extends TupleStream implements Expressible {
   private interface Worker {
     public void readStream(TupleStream stream) throws IOException;
 
-    public void sort();
+    public void sort() throws IOException;
+
+    public Tuple read() throws IOException;
 
-    public Tuple read();
+    public void close() throws IOException;
   }
 }
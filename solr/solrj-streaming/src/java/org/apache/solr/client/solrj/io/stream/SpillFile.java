@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.stream.expr.StreamExpression;
+import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionNamedParameter;
+import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionValue;
+import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
+import org.apache.solr.common.util.FastInputStream;
+import org.apache.solr.common.util.FastOutputStream;
+import org.apache.solr.common.util.IOUtils;
+import org.apache.solr.common.util.JavaBinCodec;
+
+/**
+ * A temporary file of tuples, spilled to disk by a stream which exceeds its memory budget. Each
+ * tuple is written in the javabin format along with a <code>long</code> tag, which the stream may
+ * use to restore the order of the tuples. The file is deleted when closed.
+ *
+ * <p>Only the values which javabin reads back as equal values of the same type can be written, see
+ * {@link #isSpillable}. A tuple with any other value, e.g. a nested {@link Tuple}, fails the stream
+ * rather than being changed by spilling it.
+ */
+final class SpillFile implements Closeable {
+
+  /** Name of the parameter of the memory budget of a stream, in bytes */
+  static final String MEMORY_LIMIT_PARAM = "memoryLimit";
+
+  /** The memory budget of the streams which don't set it, unlimited by default */
+  static final long DEFAULT_MEMORY_LIMIT = Long.getLong("solr.streaming.memoryLimit", -1L);
+
+  /** The directory of the spill files, the temp directory of the JVM by default */
+  private static final String SPILL_DIR = System.getProperty("solr.streaming.spillDir");
+
+  private final String phase;
+  private final Path path;
+  private FastOutputStream out;
+  private JavaBinCodec codec;
+  private long size;
+  private long bytes;
+  private long heapBytes;
+
+  SpillFile(String phase) throws IOException {
+    this.phase = phase;
+    Path dir = Path.of(SPILL_DIR == null ? System.getProperty("java.io.tmpdir") : SPILL_DIR);
+    this.path = Files.createTempFile(Files.createDirectories(dir), "solr-spill-", ".bin");
+    this.out = new FastOutputStream(Files.newOutputStream(path));
+    this.codec = new JavaBinCodec();
+    codec.init(out);
+  }
+
+  void write(Tuple tuple, long tag) throws IOException {
+    for (Map.Entry<String, Object> field : tuple.getFields().entrySet()) {
+      if (!isSpillable(field.getValue())) {
+        throw new IOException(
+            String.format(
+                Locale.ROOT,
+                "Unable to spill the field %s of type %s to disk, increase the %s parameter",
+                field.getKey(),
+                field.getValue().getClass().getName(),
+                MEMORY_LIMIT_PARAM));
+      }
+    }
+    out.writeLong(tag);
+    codec.writeVal(tuple.getFields());
+    codec.writeVal(tuple.getFieldNames());
+    codec.writeVal(tuple.getFieldLabels());
+    size++;
+    heapBytes += estimateSize(tuple);
+  }
+
+  /** Returns the number of tuples in this file */
+  long size() {
+    return size;
+  }
+
+  /** Returns the size of this file, once written */
+  long bytes() {
+    return bytes;
+  }
+
+  /** Returns the estimated heap memory of the tuples of this file, see {@link #estimateSize} */
+  long heapBytes() {
+    return heapBytes;
+  }
+
+  /** Ends the writing of this file, and records it in the {@link SpillMetrics} */
+  void finish() throws IOException {
+    if (out != null) {
+      out.flushBuffer();
+      bytes = out.size();
+      out.close();
+      out = null;
+      codec = null;
+      SpillMetrics.record(phase, size, bytes);
+    }
+  }
+
+  /** Returns a new reader of the tuples of this file, in the order they were written */
+  Reader reader() throws IOException {
+    finish();
+    return new Reader();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      IOUtils.closeQuietly(out);
+    } finally {
+      out = null;
+      Files.deleteIfExists(path);
+    }
+  }
+
+  /** A reader of the tuples of a spill file */
+  final class Reader implements Closeable {
+    private final FastInputStream in;
+    private final JavaBinCodec codec = new JavaBinCodec();
+    private long remaining = size;
+    private Tuple tuple;
+    private long tag;
+
+    private Reader() throws IOException {
+      this.in = new FastInputStream(Files.newInputStream(path));
+    }
+
+    /** Reads the next tuple, returning false if there are no more */
+    @SuppressWarnings("unchecked")
+    boolean next() throws IOException {
+      if (remaining == 0) {
+        tuple = null;
+        return false;
+      }
+      remaining--;
+      tag = in.readLong();
+      tuple = new Tuple((Map<String, ?>) codec.readVal(in));
+      List<String> fieldNames = (List<String>) codec.readVal(in);
+      Map<String, String> fieldLabels = (Map<String, String>) codec.readVal(in);
+      if (fieldNames != null) {
+        tuple.setFieldNames(fieldNames);
+      }
+      if (fieldLabels != null) {
+        tuple.setFieldLabels(fieldLabels);
+      }
+      return true;
+    }
+
+    Tuple tuple() {
+      return tuple;
+    }
+
+    long tag() {
+      return tag;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /**
+   * Returns the memory budget set by the {@value #MEMORY_LIMIT_PARAM} parameter of an expression,
+   * or {@link #DEFAULT_MEMORY_LIMIT}.
+   */
+  static long getMemoryLimit(StreamExpression expression, StreamFactory factory)
+      throws IOException {
+    StreamExpressionNamedParameter param = factory.getNamedOperand(expression, MEMORY_LIMIT_PARAM);
+    if (param == null) {
+      return DEFAULT_MEMORY_LIMIT;
+    }
+    if (param.getParameter() instanceof StreamExpressionValue value) {
+      try {
+        return Long.parseLong(value.getValue());
+      } catch (NumberFormatException e) {
+        // fall through
+      }
+    }
+    throw new IOException(
+        String.format(
+            Locale.ROOT,
+            "Invalid expression %s - the %s parameter must be a number of bytes",
+            expression,
+            MEMORY_LIMIT_PARAM));
+  }
+
+  /** Adds the {@value #MEMORY_LIMIT_PARAM} parameter to an expression, unless it is the default */
+  static void addMemoryLimit(StreamExpression expression, long memoryLimit) {
+    if (memoryLimit != DEFAULT_MEMORY_LIMIT) {
+      expression.addParameter(
+          new StreamExpressionNamedParameter(MEMORY_LIMIT_PARAM, Long.toString(memoryLimit)));
+    }
+  }
+
+  /**
+   * Returns the partition of a hash code, among <code>numPartitions</code>, with a different hash
+   * function at each depth of partitioning so that a partition can be partitioned again.
+   */
+  static int partition(int hashCode, int depth, int numPartitions) {
+    int h = hashCode ^ (depth * 0x9E3779B9);
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    return Math.floorMod(h, numPartitions);
+  }
+
+  /** Returns true if javabin reads a value back as an equal value of the same type */
+  static boolean isSpillable(Object value) {
+    if (value == null
+        || value instanceof String
+        || value instanceof Long
+        || value instanceof Integer
+        || value instanceof Double
+        || value instanceof Float
+        || value instanceof Short
+        || value instanceof Byte
+        || value instanceof Boolean
+        || value instanceof byte[]
+        || value instanceof long[]
+        || value instanceof int[]
+        || value instanceof double[]
+        || value instanceof float[]
+        || value instanceof short[]
+        || value instanceof boolean[]) {
+      return true;
+    } else if (value instanceof Date) {
+      // not a subclass, e.g. a Timestamp
+      return value.getClass() == Date.class;
+    } else if (value instanceof List<?> list) {
+      for (Object o : list) {
+        if (!isSpillable(o)) {
+          return false;
+        }
+      }
+      return true;
+    } else if (value instanceof Map<?, ?> map) {
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        if (!isSpillable(entry.getKey()) || !isSpillable(entry.getValue())) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /** Returns a rough estimate of the heap memory used by a tuple */
+  static long estimateSize(Tuple tuple) {
+    return 64 + estimateSize((Object) tuple.getFields());
+  }
+
+  /** Returns a rough estimate of the heap memory used by a value of a tuple */
+  static long estimateSize(Object value) {
+    if (value == null) {
+      return 0;
+    } else if (value instanceof CharSequence s) {
+      return 48 + 2L * s.length();
+    } else if (value instanceof Number || value instanceof Boolean || value instanceof Date) {
+      return 24;
+    } else if (value instanceof Tuple t) {
+      return estimateSize(t);
+    } else if (value instanceof Map<?, ?> map) {
+      long size = 64;
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        size += 48 + estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+      }
+      return size;
+    } else if (value instanceof Object[] array) {
+      long size = 16;
+      for (Object o : array) {
+        size += 8 + estimateSize(o);
+      }
+      return size;
+    } else if (value instanceof Collection<?> collection) {
+      long size = 48;
+      for (Object o : collection) {
+        size += 8 + estimateSize(o);
+      }
+      return size;
+    } else {
+      return 64;
+    }
+  }
+}
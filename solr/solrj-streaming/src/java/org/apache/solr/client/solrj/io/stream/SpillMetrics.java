@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.stream;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the tuples spilled to disk by the streams which are limited by a memory budget, by phase
+ * of these streams: <code>sort.run</code> and <code>sort.merge</code> for the external merge sort,
+ * <code>hashJoin.build</code>, <code>hashJoin.probe</code> and <code>hashJoin.output</code> for the
+ * grace hash join, and <code>rollup.partition</code> for the partitioned aggregation.
+ *
+ * @see SortStream
+ * @see HashJoinStream
+ * @see HashRollupStream
+ */
+public final class SpillMetrics {
+
+  public static final String SORT_RUN = "sort.run";
+  public static final String SORT_MERGE = "sort.merge";
+  public static final String HASH_JOIN_BUILD = "hashJoin.build";
+  public static final String HASH_JOIN_PROBE = "hashJoin.probe";
+  public static final String HASH_JOIN_OUTPUT = "hashJoin.output";
+  public static final String ROLLUP_PARTITION = "rollup.partition";
+
+  private static final Map<String, PhaseCounters> PHASES = new ConcurrentHashMap<>();
+
+  private SpillMetrics() {}
+
+  private static final class PhaseCounters {
+    final LongAdder files = new LongAdder();
+    final LongAdder tuples = new LongAdder();
+    final LongAdder bytes = new LongAdder();
+  }
+
+  /** Records a file of spilled tuples once it is written */
+  static void record(String phase, long tuples, long bytes) {
+    PhaseCounters counters = PHASES.computeIfAbsent(phase, k -> new PhaseCounters());
+    counters.files.increment();
+    counters.tuples.add(tuples);
+    counters.bytes.add(bytes);
+  }
+
+  /**
+   * Returns the number of files, tuples and bytes spilled so far in this JVM, by phase, e.g. <code>
+   * sort.run.bytes</code>, and in total, e.g. <code>bytes</code>.
+   */
+  public static Map<String, Long> getMetrics() {
+    Map<String, Long> metrics = new TreeMap<>();
+    long files = 0, tuples = 0, bytes = 0;
+    for (Map.Entry<String, PhaseCounters> entry : PHASES.entrySet()) {
+      PhaseCounters counters = entry.getValue();
+      metrics.put(entry.getKey() + ".files", counters.files.sum());
+      metrics.put(entry.getKey() + ".tuples", counters.tuples.sum());
+      metrics.put(entry.getKey() + ".bytes", counters.bytes.sum());
+      files += counters.files.sum();
+      tuples += counters.tuples.sum();
+      bytes += counters.bytes.sum();
+    }
+    metrics.put("files", files);
+    metrics.put("tuples", tuples);
+    metrics.put("bytes", bytes);
+    return metrics;
+  }
+}
@@ -24,11 +24,13 @@ import static org.apache.solr.common.params.CommonParams.SORT;
 import static org.apache.solr.common.params.CommonParams.VERSION_FIELD;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -38,6 +40,7 @@ import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.io.SolrClientCache;
@@ -62,6 +65,23 @@ import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
 
 /**
+ * Reads the documents of a collection which are new since the checkpoints of the topic, in the
+ * order of their versions, and checkpoints the versions read by shard in the checkpoint collection.
+ *
+ * <p>By default, a run of the topic reads a page of <code>rows</code> documents of each shard. With
+ * <code>tailMillis</code>, a run tails the shards instead: it reads the next page of each shard
+ * which filled its page, and polls all the shards once it has caught up, until no new document
+ * comes for <code>tailMillis</code>. A {@link DaemonStream} then keeps reading the new documents
+ * in a single run, rather than closing the topic and persisting its checkpoints after each page.
+ * Besides every <code>checkpointEvery</code> documents, the checkpoints can then be persisted every
+ * <code>checkpointInterval</code> milliseconds.
+ *
+ * <p>The checkpoints persisted while reading cover the documents read so far, which the consumer
+ * of the topic may not have processed yet: if it fails, the next run doesn't read them again, so
+ * they are read at most once. When the topic is read by an {@link UpdateStream} directly, the
+ * checkpoints persisted are instead those of the documents of the batches the collection accepted,
+ * and the next run reads the others again, so they are read at least once.
+ *
  * @since 6.0.0
  */
 public class TopicStream extends CloudSolrStream implements Expressible {
@@ -76,9 +96,25 @@ public class TopicStream extends CloudSolrStream implements Expressible {
   private Map<String, Long> checkpoints = new HashMap<>();
   private String checkpointCollection;
   private long initialCheckpoint = -1;
+  private long checkpointInterval = -1;
+  private long tailMillis = -1;
+
+  /** The interval at which the shards are polled for new documents, once a tail caught up */
+  static final long TAIL_POLL_MILLIS = 250;
 
   private transient SolrClientCache clientCache;
   private transient boolean doCloseCache;
+  // the number of documents read from the current page of each shard
+  private transient Map<String, Integer> pageCounts;
+  private transient long lastCheckpoint;
+  private transient long idleSince = -1;
+  // with a consumer which acknowledges the documents it processed
+  private transient boolean acknowledging;
+  // guarded by this
+  private transient Mark acknowledged;
+
+  /** The checkpoints of the documents read up to a point, and their number */
+  record Mark(Map<String, Long> checkpoints, long count) {}
 
   public TopicStream(
       String zkHost,
@@ -152,6 +188,11 @@ public class TopicStream extends CloudSolrStream implements Expressible {
           Long.parseLong(((StreamExpressionValue) checkpointEveryParam.getParameter()).getValue());
     }
 
+    StreamExpressionNamedParameter checkpointIntervalParam =
+        factory.getNamedOperand(expression, "checkpointInterval");
+    StreamExpressionNamedParameter tailMillisParam =
+        factory.getNamedOperand(expression, "tailMillis");
+
     //  Checkpoint Collection Name
     if (null == checkpointCollectionName) {
       throw new IOException(
@@ -183,7 +224,9 @@ public class TopicStream extends CloudSolrStream implements Expressible {
     for (StreamExpressionNamedParameter namedParam : namedParams) {
       if (!namedParam.getName().equals("zkHost")
           && !namedParam.getName().equals(ID)
-          && !namedParam.getName().equals("checkpointEvery")) {
+          && !namedParam.getName().equals("checkpointEvery")
+          && !namedParam.getName().equals("checkpointInterval")
+          && !namedParam.getName().equals("tailMillis")) {
         params.set(namedParam.getName(), namedParam.getParameter().toString().trim());
       }
     }
@@ -216,6 +259,58 @@ public class TopicStream extends CloudSolrStream implements Expressible {
         initialCheckpoint,
         checkpointEvery,
         params);
+
+    if (checkpointIntervalParam != null) {
+      setCheckpointInterval(
+          Long.parseLong(
+              ((StreamExpressionValue) checkpointIntervalParam.getParameter()).getValue()));
+    }
+    if (tailMillisParam != null) {
+      setTailMillis(
+          Long.parseLong(((StreamExpressionValue) tailMillisParam.getParameter()).getValue()));
+    }
+  }
+
+  /**
+   * Makes the consumer acknowledge the documents it processed, with {@link #acknowledge}: only
+   * their checkpoints are then persisted, and the next run reads the others again.
+   */
+  void setAcknowledging(boolean acknowledging) {
+    this.acknowledging = acknowledging;
+  }
+
+  /** Returns the checkpoints of the documents read so far, which the consumer acknowledges */
+  Mark mark() {
+    return new Mark(new HashMap<>(checkpoints), count);
+  }
+
+  /**
+   * Acknowledges the documents read up to a mark, once the consumer processed them: their
+   * checkpoints are persisted if <code>checkpointEvery</code> documents or <code>
+   * checkpointInterval</code> passed since the last ones.
+   */
+  synchronized void acknowledge(Mark mark) throws IOException {
+    long previous = acknowledged.count();
+    acknowledged = mark;
+    if ((checkpointEvery > 0 && mark.count() / checkpointEvery > previous / checkpointEvery)
+        || (checkpointInterval > -1
+            && System.nanoTime() - lastCheckpoint
+                >= TimeUnit.MILLISECONDS.toNanos(checkpointInterval))) {
+      persistCheckpoints(mark.checkpoints());
+    }
+  }
+
+  /** Sets the interval at which the checkpoints are persisted while reading, or -1 for none */
+  public void setCheckpointInterval(long checkpointInterval) {
+    this.checkpointInterval = checkpointInterval;
+  }
+
+  /**
+   * Sets how long a run keeps polling the shards for new documents once it has caught up, or -1 to
+   * read a single page of each shard by run
+   */
+  public void setTailMillis(long tailMillis) {
+    this.tailMillis = tailMillis;
   }
 
   @Override
@@ -249,6 +344,15 @@ public class TopicStream extends CloudSolrStream implements Expressible {
     }
     expression.addParameter(
         new StreamExpressionNamedParameter("checkpointEvery", Long.toString(checkpointEvery)));
+    if (checkpointInterval > -1) {
+      expression.addParameter(
+          new StreamExpressionNamedParameter(
+              "checkpointInterval", Long.toString(checkpointInterval)));
+    }
+    if (tailMillis > -1) {
+      expression.addParameter(
+          new StreamExpressionNamedParameter("tailMillis", Long.toString(tailMillis)));
+    }
 
     return expression;
   }
@@ -320,6 +424,9 @@ public class TopicStream extends CloudSolrStream implements Expressible {
     this.tuples = new TreeSet<>();
     this.solrStreams = new ArrayList<>();
     this.eofTuples = Collections.synchronizedMap(new HashMap<>());
+    this.pageCounts = new HashMap<>();
+    this.lastCheckpoint = System.nanoTime();
+    this.idleSince = -1;
 
     if (checkpoints.size() == 0 && streamContext.numWorkers > 1) {
       // Each worker must maintain its own checkpoints
@@ -332,6 +439,10 @@ public class TopicStream extends CloudSolrStream implements Expressible {
       }
     }
 
+    synchronized (this) {
+      acknowledged = mark();
+    }
+
     constructStreams();
     openStreams();
   }
@@ -352,8 +463,15 @@ public class TopicStream extends CloudSolrStream implements Expressible {
   public void close() throws IOException {
     try {
 
+      if (acknowledging) {
+        synchronized (this) {
+          // the next run reads the documents which weren't acknowledged again
+          checkpoints = new HashMap<>(acknowledged.checkpoints());
+          count = acknowledged.count();
+        }
+      }
       if (initialRun || runCount > 0) {
-        persistCheckpoints();
+        persistCheckpoints(checkpoints);
         initialRun = false;
         runCount = 0;
       }
@@ -375,6 +493,9 @@ public class TopicStream extends CloudSolrStream implements Expressible {
   @Override
   public Tuple read() throws IOException {
     Tuple tuple = _read();
+    while (tuple.EOF && tailMillis > -1 && nextPages()) {
+      tuple = _read();
+    }
 
     if (tuple.EOF) {
       if (runCount > 0) {
@@ -388,13 +509,22 @@ public class TopicStream extends CloudSolrStream implements Expressible {
 
     ++count;
     ++runCount;
-    if (checkpointEvery > -1 && (count % checkpointEvery) == 0) {
-      persistCheckpoints();
+    // an acknowledging consumer persists the checkpoints of the documents it processed instead
+    if (!acknowledging) {
+      if (checkpointEvery > -1 && (count % checkpointEvery) == 0) {
+        persistCheckpoints(checkpoints);
+      } else if (checkpointInterval > -1
+          && System.nanoTime() - lastCheckpoint
+              >= TimeUnit.MILLISECONDS.toNanos(checkpointInterval)) {
+        persistCheckpoints(checkpoints);
+      }
     }
 
     long version = tuple.getLong(VERSION_FIELD);
     String slice = tuple.getString("_SLICE_");
     checkpoints.put(slice, version);
+    pageCounts.merge(slice, 1, Integer::sum);
+    idleSince = -1;
 
     tuple.remove("_SLICE_");
     tuple.remove("_CORE_");
@@ -407,6 +537,54 @@ public class TopicStream extends CloudSolrStream implements Expressible {
     return 0;
   }
 
+  /**
+   * Opens the next pages of the shards once the current pages are read: of the shards which filled
+   * their page, or of all the shards after {@link #TAIL_POLL_MILLIS} if none did. Returns false
+   * once no document has been read for tailMillis, or once the {@link DaemonStream} running the
+   * topic is shut down.
+   */
+  private boolean nextPages() throws IOException {
+    if (DaemonStream.isShutdown(streamContext)) {
+      return false;
+    }
+    int rows = params.getInt("rows", 500);
+    Set<String> fullSlices = new HashSet<>();
+    for (Map.Entry<String, Integer> entry : pageCounts.entrySet()) {
+      if (entry.getValue() >= rows) {
+        fullSlices.add(entry.getKey());
+      }
+    }
+
+    if (fullSlices.isEmpty()) {
+      long now = System.nanoTime();
+      if (idleSince == -1) {
+        idleSince = now;
+      }
+      if (now - idleSince >= TimeUnit.MILLISECONDS.toNanos(tailMillis)) {
+        return false;
+      }
+      try {
+        Thread.sleep(TAIL_POLL_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while tailing topic " + id);
+      }
+      if (DaemonStream.isShutdown(streamContext)) {
+        return false;
+      }
+      fullSlices = null;
+    }
+
+    for (TupleStream solrStream : solrStreams) {
+      solrStream.close();
+    }
+    solrStreams.clear();
+    pageCounts.clear();
+    constructStreams(fullSlices);
+    openStreams();
+    return true;
+  }
+
   private void getCheckpoints() throws IOException {
     var cloudSolrClient = clientCache.getCloudSolrClient(zkHost);
     this.checkpoints = new HashMap<>();
@@ -464,11 +642,12 @@ public class TopicStream extends CloudSolrStream implements Expressible {
     return checkpoint;
   }
 
-  private void persistCheckpoints() throws IOException {
+  private void persistCheckpoints(Map<String, Long> checkpoints) throws IOException {
 
     if (clientCache == null) {
       return;
     }
+    lastCheckpoint = System.nanoTime();
 
     var cloudSolrClient = clientCache.getCloudSolrClient(zkHost);
     UpdateRequest request = new UpdateRequest();
@@ -523,6 +702,11 @@ public class TopicStream extends CloudSolrStream implements Expressible {
 
   @Override
   protected void constructStreams() throws IOException {
+    constructStreams(null);
+  }
+
+  /** Constructs the streams of the shards of the given slices, or of all the shards if null */
+  private void constructStreams(Set<String> sliceNames) throws IOException {
     var cloudSolrClient = clientCache.getCloudSolrClient(zkHost);
     Slice[] slices = CloudSolrStream.getSlices(this.collection, cloudSolrClient, false);
 
@@ -540,6 +724,9 @@ public class TopicStream extends CloudSolrStream implements Expressible {
     Set<String> liveNodes = cloudSolrClient.getClusterState().getLiveNodes();
 
     for (Slice slice : slices) {
+      if (sliceNames != null && !sliceNames.contains(slice.getName())) {
+        continue;
+      }
       ModifiableSolrParams localParams = new ModifiableSolrParams(mParams);
       long checkpoint = checkpoints.get(slice.getName());
 
@@ -21,6 +21,8 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -30,6 +32,7 @@ import java.util.stream.Collectors;
 import org.apache.solr.client.solrj.impl.CloudSolrClient;
 import org.apache.solr.client.solrj.io.SolrClientCache;
 import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.TupleBatch;
 import org.apache.solr.client.solrj.io.comp.StreamComparator;
 import org.apache.solr.client.solrj.io.stream.expr.Explanation;
 import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
@@ -42,6 +45,7 @@ import org.apache.solr.common.cloud.Replica;
 import org.apache.solr.common.cloud.Slice;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.params.StreamParams;
 import org.apache.solr.common.util.IOUtils;
 
 /**
@@ -66,6 +70,28 @@ public abstract class TupleStream implements Closeable, Serializable, MapWriter
 
   public abstract Tuple read() throws IOException;
 
+  /**
+   * Clears a batch, and reads the next tuples of this stream into it until it is full or this
+   * stream returns its EOF tuple or an exception tuple, which is set as the {@link
+   * TupleBatch#getEndTuple() end tuple} of the batch. The fields of the tuples which are not in the
+   * schema of the batch are dropped.
+   *
+   * <p>This default implementation adds the tuples returned by {@link #read()}. Streams which can
+   * produce the columns of the tuples directly override it, and streams which consume batches call
+   * it rather than {@link #read()}, so that the tuples are not materialized in between.
+   */
+  public void readBatch(TupleBatch batch) throws IOException {
+    batch.clear();
+    while (!batch.isFull()) {
+      Tuple tuple = read();
+      if (tuple.EOF || tuple.EXCEPTION) {
+        batch.setEndTuple(tuple);
+        return;
+      }
+      batch.add(tuple);
+    }
+  }
+
   public abstract StreamComparator getStreamSort();
 
   public abstract Explanation toExplanation(StreamFactory factory) throws IOException;
@@ -171,6 +197,8 @@ public abstract class TupleStream implements Closeable, Serializable, MapWriter
 
       ReplicaListTransformer replicaListTransformer =
           requestReplicaListTransformerGenerator.getReplicaListTransformer(solrParams);
+      // the workers of a shuffle must all read a shard from the same replica
+      final String shuffleId = solrParams.get(StreamParams.SHUFFLE_ID);
 
       final String coreFilter =
           streamContext != null && streamContext.isLocal()
@@ -181,7 +209,12 @@ public abstract class TupleStream implements Closeable, Serializable, MapWriter
         slice.getReplicas().stream()
             .filter(r -> r.isActive(liveNodes))
             .forEach(sortedReplicas::add);
-        replicaListTransformer.transform(sortedReplicas);
+        if (shuffleId == null) {
+          replicaListTransformer.transform(sortedReplicas);
+        } else {
+          sortedReplicas.sort(Comparator.comparing(Replica::getCoreName));
+          Collections.rotate(sortedReplicas, shuffleId.hashCode());
+        }
         sortedReplicas.stream()
             .filter(r -> coreFilter == null || coreFilter.equals(r.core))
             .findFirst()
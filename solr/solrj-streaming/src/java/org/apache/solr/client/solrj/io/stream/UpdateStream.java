@@ -18,9 +18,14 @@ package org.apache.solr.client.solrj.io.stream;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.io.SolrClientCache;
 import org.apache.solr.client.solrj.io.Tuple;
@@ -35,12 +40,23 @@ import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionValue;
 import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Sends tuples emitted by a wrapped {@link TupleStream} as updates to a SolrCloud collection.
  *
+ * <p>By default, each batch is sent before the tuples of the next one are read. With <code>
+ * maxPendingBatches</code>, the batches are sent in order by a background thread while the next
+ * ones are read, up to that many batches ahead: the summary tuple of a batch is returned once it is
+ * queued, an error sending a batch fails a following read and skips the batches after it, and the
+ * end of the stream is only returned once all the batches are sent.
+ *
+ * <p>When the tuples are read from a {@link TopicStream} directly, the topic only persists the
+ * checkpoints of the tuples of the batches sent.
+ *
  * @since 6.0.0
  */
 public class UpdateStream extends TupleStream implements Expressible {
@@ -59,6 +75,13 @@ public class UpdateStream extends TupleStream implements Expressible {
    */
   private boolean pruneVersionField;
 
+  /**
+   * The number of batches which may be sent while the next ones are read, or 0 to send each batch
+   * before reading the next one. May be set per expression using the <code>"maxPendingBatches"
+   * </code> named operand.
+   */
+  private int maxPendingBatches;
+
   private int batchNumber;
   private long totalDocsIndex;
   private PushBackStream tupleSource;
@@ -67,6 +90,10 @@ public class UpdateStream extends TupleStream implements Expressible {
 
   protected transient SolrClientCache clientCache;
   private transient boolean doCloseCache;
+  private transient ExecutorService batchSender;
+  private transient Deque<Future<?>> pendingBatches;
+  private transient volatile boolean batchFailed;
+  private transient TopicStream topic;
 
   public UpdateStream(StreamExpression expression, StreamFactory factory) throws IOException {
     String collectionName = factory.getValueOperand(expression, 0);
@@ -78,6 +105,15 @@ public class UpdateStream extends TupleStream implements Expressible {
     int updateBatchSize = extractBatchSize(expression, factory);
     pruneVersionField =
         factory.getBooleanOperand(expression, "pruneVersionField", defaultPruneVersionField());
+    maxPendingBatches = factory.getIntOperand(expression, "maxPendingBatches", 0);
+    if (maxPendingBatches < 0) {
+      throw new IOException(
+          String.format(
+              Locale.ROOT,
+              "invalid expression %s - maxPendingBatches '%d' must not be negative.",
+              expression,
+              maxPendingBatches));
+    }
 
     // Extract underlying TupleStream.
     List<StreamExpression> streamExpressions =
@@ -114,6 +150,11 @@ public class UpdateStream extends TupleStream implements Expressible {
     this.tupleSource = new PushBackStream(tupleSource);
   }
 
+  /** Sets the number of batches which may be sent while the next ones are read */
+  public void setMaxPendingBatches(int maxPendingBatches) {
+    this.maxPendingBatches = maxPendingBatches;
+  }
+
   /** The name of the collection being updated */
   protected String getCollectionName() {
     return collection;
@@ -127,6 +168,18 @@ public class UpdateStream extends TupleStream implements Expressible {
     } else {
       doCloseCache = false;
     }
+    // the topic persists the checkpoints of the tuples once they are sent
+    topic = tupleSource.children().get(0) instanceof TopicStream t ? t : null;
+    if (topic != null) {
+      topic.setAcknowledging(true);
+    }
+    batchFailed = false;
+    if (maxPendingBatches > 0) {
+      pendingBatches = new ArrayDeque<>();
+      batchSender =
+          ExecutorUtil.newMDCAwareSingleThreadExecutor(
+              new SolrNamedThreadFactory("UpdateStream-" + collection));
+    }
     tupleSource.open();
   }
 
@@ -137,30 +190,96 @@ public class UpdateStream extends TupleStream implements Expressible {
       Tuple tuple = tupleSource.read();
       if (tuple.EOF) {
         if (documentBatch.isEmpty()) {
+          awaitPendingBatches(0);
           return tuple;
         } else {
           tupleSource.pushBack(tuple);
-          uploadBatchToCollection(documentBatch);
-          int b = documentBatch.size();
-          documentBatch.clear();
-          return createBatchSummaryTuple(b);
+          return sendBatch();
         }
       }
       documentBatch.add(convertTupleToSolrDocument(tuple));
     }
 
-    uploadBatchToCollection(documentBatch);
+    return sendBatch();
+  }
+
+  private Tuple sendBatch() throws IOException {
     int b = documentBatch.size();
-    documentBatch.clear();
+    TopicStream.Mark mark = topic == null ? null : topic.mark();
+    if (pendingBatches == null) {
+      uploadBatchToCollection(documentBatch);
+      documentBatch.clear();
+      if (mark != null) {
+        topic.acknowledge(mark);
+      }
+    } else {
+      awaitPendingBatches(maxPendingBatches - 1);
+      List<SolrInputDocument> batch = documentBatch;
+      documentBatch = new ArrayList<>();
+      pendingBatches.add(
+          batchSender.submit(
+              () -> {
+                // the batches after a failed batch are skipped, before the reader cancels them
+                if (batchFailed) {
+                  return null;
+                }
+                try {
+                  uploadBatchToCollection(batch);
+                  if (mark != null) {
+                    topic.acknowledge(mark);
+                  }
+                } catch (IOException | RuntimeException e) {
+                  batchFailed = true;
+                  throw e;
+                }
+                return null;
+              }));
+    }
     return createBatchSummaryTuple(b);
   }
 
+  /** Waits until at most <code>maxPending</code> batches are being sent */
+  private void awaitPendingBatches(int maxPending) throws IOException {
+    if (pendingBatches == null) {
+      return;
+    }
+    while (pendingBatches.size() > maxPending) {
+      try {
+        pendingBatches.peek().get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while sending documents to " + collection, e);
+      } catch (ExecutionException e) {
+        // the batches sent after a failed batch are not sent
+        for (Future<?> pendingBatch : pendingBatches) {
+          pendingBatch.cancel(false);
+        }
+        pendingBatches.clear();
+        if (e.getCause() instanceof IOException ioe) {
+          throw ioe;
+        }
+        throw new IOException(e.getCause());
+      }
+      pendingBatches.poll();
+    }
+  }
+
   @Override
   public void close() throws IOException {
-    if (doCloseCache) {
-      clientCache.close();
+    try {
+      // the source is closed once the batches read from it are sent
+      awaitPendingBatches(0);
+    } finally {
+      if (batchSender != null) {
+        ExecutorUtil.shutdownAndAwaitTermination(batchSender);
+        batchSender = null;
+        pendingBatches = null;
+      }
+      if (doCloseCache) {
+        clientCache.close();
+      }
+      tupleSource.close();
     }
-    tupleSource.close();
   }
 
   @Override
@@ -187,6 +306,11 @@ public class UpdateStream extends TupleStream implements Expressible {
     expression.addParameter(new StreamExpressionNamedParameter("zkHost", zkHost));
     expression.addParameter(
         new StreamExpressionNamedParameter("batchSize", Integer.toString(updateBatchSize)));
+    if (maxPendingBatches > 0) {
+      expression.addParameter(
+          new StreamExpressionNamedParameter(
+              "maxPendingBatches", Integer.toString(maxPendingBatches)));
+    }
 
     if (includeStreams) {
       if (tupleSource != null) {
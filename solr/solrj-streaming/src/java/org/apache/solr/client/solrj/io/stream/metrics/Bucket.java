@@ -17,12 +17,16 @@
 package org.apache.solr.client.solrj.io.stream.metrics;
 
 import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.TupleBatch;
+import org.apache.solr.client.solrj.io.TupleSchema;
 
 public class Bucket {
 
   private static final String NULL_VALUE = "NULL";
 
   private String bucketKey;
+  private TupleSchema batchSchema;
+  private int batchColumn;
 
   public Bucket(String bucketKey) {
     this.bucketKey = bucketKey;
@@ -37,6 +41,19 @@ public class Bucket {
     }
   }
 
+  public Object getBucketValue(TupleBatch batch, int row) {
+    if (batch.getSchema() != batchSchema) {
+      batchSchema = batch.getSchema();
+      batchColumn = batchSchema.getColumn(bucketKey);
+    }
+    Object o = batchColumn < 0 ? null : batch.get(row, batchColumn);
+    if (o == null) {
+      return NULL_VALUE;
+    } else {
+      return o;
+    }
+  }
+
   @Override
   public String toString() {
     return bucketKey;
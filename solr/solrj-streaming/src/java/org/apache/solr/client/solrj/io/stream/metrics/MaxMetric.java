@@ -19,6 +19,7 @@ package org.apache.solr.client.solrj.io.stream.metrics;
 import java.io.IOException;
 import java.util.Locale;
 import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.TupleBatch;
 import org.apache.solr.client.solrj.io.stream.expr.StreamExpression;
 import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionParameter;
 import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
@@ -76,7 +77,57 @@ public class MaxMetric extends Metric {
 
   @Override
   public void update(Tuple tuple) {
-    Object o = tuple.get(columnName);
+    updateValue(tuple.get(columnName));
+  }
+
+  @Override
+  public void update(TupleBatch batch, int row) {
+    int column = getColumn(batch, columnName);
+    if (column < 0 || batch.isNull(row, column)) {
+      return;
+    }
+    switch (batch.getType(column)) {
+      case LONG -> {
+        long l = batch.getLong(row, column);
+        if (l > longMax) {
+          longMax = l;
+        }
+      }
+      case DOUBLE -> {
+        double d = batch.getDouble(row, column);
+        if (d > doubleMax) {
+          doubleMax = d;
+        }
+      }
+      default -> updateValue(batch.get(row, column));
+    }
+  }
+
+  @Override
+  public void update(TupleBatch batch, int from, int to) {
+    int column = getColumn(batch, columnName);
+    if (column < 0) {
+      return;
+    }
+    switch (batch.getType(column)) {
+      case LONG -> {
+        long l = batch.maxLong(column, from, to);
+        if (l > longMax) {
+          longMax = l;
+        }
+      }
+      case DOUBLE -> {
+        double d = batch.maxDouble(column, from, to);
+        if (d > doubleMax) {
+          doubleMax = d;
+        }
+      }
+      case OBJECT -> super.update(batch, from, to);
+      case EMPTY -> {}
+    }
+  }
+
+  private void updateValue(Object o) {
     if (o instanceof Double) {
       double d = (double) o;
       if (d > doubleMax) {
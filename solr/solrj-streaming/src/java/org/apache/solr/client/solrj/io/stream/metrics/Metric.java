@@ -19,6 +19,8 @@ package org.apache.solr.client.solrj.io.stream.metrics;
 import java.io.IOException;
 import java.util.UUID;
 import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.TupleBatch;
+import org.apache.solr.client.solrj.io.TupleSchema;
 import org.apache.solr.client.solrj.io.stream.expr.Explanation;
 import org.apache.solr.client.solrj.io.stream.expr.Explanation.ExpressionType;
 import org.apache.solr.client.solrj.io.stream.expr.Expressible;
@@ -31,6 +33,9 @@ public abstract class Metric implements Expressible {
   private String identifier;
   public boolean outputLong; // This is only used for SQL in facet mode.
 
+  private TupleSchema batchSchema;
+  private int batchColumn;
+
   public String getFunctionName() {
     return functionName;
   }
@@ -72,6 +77,34 @@ public abstract class Metric implements Expressible {
 
   public abstract void update(Tuple tuple);
 
+  /**
+   * Updates this metric with a row of a batch. This default implementation materializes the tuple
+   * of the row; the metrics of a single column override it to read the column directly.
+   */
+  public void update(TupleBatch batch, int row) {
+    update(batch.getTuple(row));
+  }
+
+  /**
+   * Updates this metric with a range of rows of a batch, from <code>from</code>, inclusive, to
+   * <code>to</code>, exclusive. This default implementation updates it row by row; the metrics of a
+   * single column override it to aggregate a primitive column in one loop.
+   */
+  public void update(TupleBatch batch, int from, int to) {
+    for (int row = from; row < to; row++) {
+      update(batch, row);
+    }
+  }
+
+  /** Returns the column of a field in the schema of a batch, or -1, resolved once per schema */
+  protected int getColumn(TupleBatch batch, String fieldName) {
+    if (batch.getSchema() != batchSchema) {
+      batchSchema = batch.getSchema();
+      batchColumn = batchSchema.getColumn(fieldName);
+    }
+    return batchColumn;
+  }
+
   public abstract Metric newInstance();
 
   public abstract String[] getColumns();
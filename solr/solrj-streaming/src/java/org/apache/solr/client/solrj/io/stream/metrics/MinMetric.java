@@ -19,6 +19,7 @@ package org.apache.solr.client.solrj.io.stream.metrics;
 import java.io.IOException;
 import java.util.Locale;
 import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.TupleBatch;
 import org.apache.solr.client.solrj.io.stream.expr.StreamExpression;
 import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionParameter;
 import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
@@ -77,7 +78,57 @@ public class MinMetric extends Metric {
 
   @Override
   public void update(Tuple tuple) {
-    Object o = tuple.get(columnName);
+    updateValue(tuple.get(columnName));
+  }
+
+  @Override
+  public void update(TupleBatch batch, int row) {
+    int column = getColumn(batch, columnName);
+    if (column < 0 || batch.isNull(row, column)) {
+      return;
+    }
+    switch (batch.getType(column)) {
+      case LONG -> {
+        long l = batch.getLong(row, column);
+        if (l < longMin) {
+          longMin = l;
+        }
+      }
+      case DOUBLE -> {
+        double d = batch.getDouble(row, column);
+        if (d < doubleMin) {
+          doubleMin = d;
+        }
+      }
+      default -> updateValue(batch.get(row, column));
+    }
+  }
+
+  @Override
+  public void update(TupleBatch batch, int from, int to) {
+    int column = getColumn(batch, columnName);
+    if (column < 0) {
+      return;
+    }
+    switch (batch.getType(column)) {
+      case LONG -> {
+        long l = batch.minLong(column, from, to);
+        if (l < longMin) {
+          longMin = l;
+        }
+      }
+      case DOUBLE -> {
+        double d = batch.minDouble(column, from, to);
+        if (d < doubleMin) {
+          doubleMin = d;
+        }
+      }
+      case OBJECT -> super.update(batch, from, to);
+      case EMPTY -> {}
+    }
+  }
+
+  private void updateValue(Object o) {
     if (o instanceof Double) {
       double d = (double) o;
       if (d < doubleMin) {
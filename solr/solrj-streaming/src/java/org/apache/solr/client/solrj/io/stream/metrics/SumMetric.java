@@ -19,6 +19,7 @@ package org.apache.solr.client.solrj.io.stream.metrics;
 import java.io.IOException;
 import java.util.Locale;
 import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.TupleBatch;
 import org.apache.solr.client.solrj.io.stream.expr.StreamExpression;
 import org.apache.solr.client.solrj.io.stream.expr.StreamExpressionParameter;
 import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
@@ -67,7 +68,37 @@ public class SumMetric extends Metric {
 
   @Override
   public void update(Tuple tuple) {
-    Object o = tuple.get(columnName);
+    updateValue(tuple.get(columnName));
+  }
+
+  @Override
+  public void update(TupleBatch batch, int row) {
+    int column = getColumn(batch, columnName);
+    if (column < 0 || batch.isNull(row, column)) {
+      return;
+    }
+    switch (batch.getType(column)) {
+      case LONG -> longSum += batch.getLong(row, column);
+      case DOUBLE -> doubleSum += batch.getDouble(row, column);
+      default -> updateValue(batch.get(row, column));
+    }
+  }
+
+  @Override
+  public void update(TupleBatch batch, int from, int to) {
+    int column = getColumn(batch, columnName);
+    if (column < 0) {
+      return;
+    }
+    switch (batch.getType(column)) {
+      case LONG -> longSum += batch.sumLongs(column, from, to);
+      case DOUBLE -> doubleSum += batch.sumDoubles(column, from, to);
+      case OBJECT -> super.update(batch, from, to);
+      case EMPTY -> {}
+    }
+  }
+
+  private void updateValue(Object o) {
     if (o instanceof Double d) {
       doubleSum += d;
     } else if (o instanceof Float f) {
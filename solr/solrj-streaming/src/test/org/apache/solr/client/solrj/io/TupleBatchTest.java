@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io;
+
+import java.util.Map;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.client.solrj.io.stream.metrics.CountMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.MaxMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.Metric;
+import org.apache.solr.client.solrj.io.stream.metrics.SumMetric;
+import org.junit.Test;
+
+public class TupleBatchTest extends SolrTestCase {
+
+  @Test
+  public void testColumns() {
+    TupleBatch batch = new TupleBatch(new TupleSchema("l", "d", "s", "mixed"), 3);
+    batch.add(new Tuple(Map.of("l", 1L, "d", 1.5, "s", "a", "mixed", 1L, "other", "x")));
+    batch.add(new Tuple(Map.of("d", 2.5, "s", "b", "mixed", 2.5)));
+    batch.add(new Tuple(Map.of("l", 3L, "mixed", "c")));
+    assertTrue(batch.isFull());
+    expectThrows(IllegalStateException.class, batch::addRow);
+
+    assertEquals(TupleBatch.Type.LONG, batch.getType(0));
+    assertEquals(TupleBatch.Type.DOUBLE, batch.getType(1));
+    assertEquals(TupleBatch.Type.OBJECT, batch.getType(2));
+    assertEquals(TupleBatch.Type.OBJECT, batch.getType(3));
+    assertEquals(3L, batch.getLong(2, 0));
+    assertTrue(batch.isNull(1, 0));
+    assertEquals(2.5, batch.getDouble(1, 1), 0.0);
+    expectThrows(IllegalStateException.class, () -> batch.getLong(0, 1));
+
+    // the values of a column of several types keep their types
+    assertEquals(1L, batch.get(0, 3));
+    assertEquals(2.5, batch.get(1, 3));
+    assertEquals("c", batch.get(2, 3));
+
+    assertEquals(Map.of("l", 1L, "d", 1.5, "s", "a", "mixed", 1L), batch.getTuple(0).getFields());
+    assertEquals(Map.of("l", 3L, "mixed", "c"), batch.getTuple(2).getFields());
+
+    batch.clear();
+    assertEquals(0, batch.size());
+    assertEquals(TupleBatch.Type.EMPTY, batch.getType(3));
+    batch.add(new Tuple(Map.of("mixed", 4L)));
+    assertEquals(TupleBatch.Type.LONG, batch.getType(3));
+    assertTrue(batch.isNull(0, 2));
+  }
+
+  @Test
+  public void testRanges() {
+    TupleBatch batch = new TupleBatch(new TupleSchema("l", "d", "s"));
+    for (int i = 0; i < 10; i++) {
+      int row = batch.addRow();
+      if (i != 3) {
+        batch.setLong(row, 0, i);
+      }
+      batch.setDouble(row, 1, i < 5 ? 0.5 : 1.5);
+      batch.set(row, 2, i < 5 ? "a" : "b");
+    }
+    assertEquals(9, batch.count(0, 0, 10));
+    assertEquals(2, batch.count(0, 2, 5));
+    assertEquals(45 - 3, batch.sumLongs(0, 0, 10));
+    assertEquals(2.5, batch.sumDoubles(1, 3, 6), 0.0);
+    assertEquals(4, batch.minLong(0, 3, 10));
+    assertEquals(Long.MAX_VALUE, batch.minLong(0, 3, 4));
+    assertEquals(8, batch.maxLong(0, 0, 9));
+    assertEquals(0.5, batch.minDouble(1, 0, 10), 0.0);
+    assertEquals(Double.NEGATIVE_INFINITY, batch.maxDouble(1, 0, 0), 0.0);
+    expectThrows(IllegalStateException.class, () -> batch.sumLongs(1, 0, 10));
+
+    assertTrue(batch.equals(1, 0, 4));
+    assertFalse(batch.equals(1, 4, 5));
+    assertFalse(batch.equals(0, 2, 3));
+    assertTrue(batch.equals(2, 5, 9));
+
+    // the metrics of a range of rows are the metrics of its rows
+    Metric sum = new SumMetric("l");
+    Metric max = new MaxMetric("d");
+    Metric count = new CountMetric("l");
+    for (Metric metric : new Metric[] {sum, max, count}) {
+      metric.update(batch, 2, 8);
+    }
+    assertEquals(2L + 4 + 5 + 6 + 7, sum.getValue());
+    assertEquals(1.5, max.getValue());
+    assertEquals(5L, count.getValue());
+  }
+
+  @Test
+  public void testMetrics() {
+    TupleBatch batch = new TupleBatch(new TupleSchema("a", "b"));
+    for (int i = 0; i < 10; i++) {
+      batch.add(new Tuple(Map.of("a", (long) i, "b", i % 2 == 0 ? (Object) (double) i : "x")));
+    }
+    Metric sumA = new SumMetric("a");
+    Metric maxB = new MaxMetric("b");
+    Metric sumMissing = new SumMetric("missing");
+    for (int row = 0; row < batch.size(); row++) {
+      sumA.update(batch, row);
+      maxB.update(batch, row);
+      sumMissing.update(batch, row);
+    }
+    assertEquals(45L, sumA.getValue());
+    assertEquals(8.0, maxB.getValue());
+    assertEquals(0.0, sumMissing.getValue());
+  }
+}
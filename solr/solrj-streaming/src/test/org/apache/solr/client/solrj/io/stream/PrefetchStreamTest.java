@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.stream;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.client.solrj.io.Tuple;
+import org.junit.Test;
+
+public class PrefetchStreamTest extends SolrTestCase {
+
+  @Test
+  public void testReadAhead() throws IOException {
+    List<Tuple> tuples = tuples(1000);
+    int bufferSize = random().nextInt(3 * PrefetchStream.CHUNK_SIZE);
+    try (PrefetchStream stream =
+        new PrefetchStream(new SpillStreamsTest.TuplesStream(tuples), bufferSize)) {
+      stream.open();
+      for (Tuple expected : tuples) {
+        Tuple tuple = stream.read();
+        assertFalse(tuple.EOF);
+        assertEquals(expected.getLong("id"), tuple.getLong("id"));
+      }
+      assertTrue(stream.read().EOF);
+      // the end tuple is returned again
+      assertTrue(stream.read().EOF);
+    }
+  }
+
+  @Test
+  public void testError() throws IOException {
+    TupleStream failing =
+        new SpillStreamsTest.TuplesStream(tuples(500)) {
+          private int reads;
+
+          @Override
+          public Tuple read() {
+            if (++reads == 300) {
+              throw new IllegalStateException("failed");
+            }
+            return super.read();
+          }
+        };
+    try (PrefetchStream stream = new PrefetchStream(failing, 1024)) {
+      stream.open();
+      // the tuples read before the error are returned first
+      for (int i = 1; i < 300; i++) {
+        assertFalse(stream.read().EOF);
+      }
+      IllegalStateException e = expectThrows(IllegalStateException.class, stream::read);
+      assertEquals("failed", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testClose() throws IOException {
+    // an endless stream, which fills the buffer and waits for the consumer
+    AtomicInteger reads = new AtomicInteger();
+    TupleStream endless =
+        new SpillStreamsTest.TuplesStream(List.of()) {
+          @Override
+          public Tuple read() {
+            Tuple tuple = new Tuple();
+            tuple.put("id", (long) reads.incrementAndGet());
+            return tuple;
+          }
+        };
+    PrefetchStream stream = new PrefetchStream(endless, PrefetchStream.CHUNK_SIZE);
+    stream.open();
+    assertEquals(1L, (long) stream.read().getLong("id"));
+    stream.close();
+    // no more than the buffer, the chunk waiting for room, and the chunk read were read
+    assertTrue(reads.get() <= 3 * PrefetchStream.CHUNK_SIZE);
+  }
+
+  @Test
+  public void testCloseWhileReading() throws Exception {
+    // a stream whose reads wait until they are interrupted
+    CountDownLatch reading = new CountDownLatch(1);
+    AtomicBoolean inRead = new AtomicBoolean();
+    AtomicBoolean closedInRead = new AtomicBoolean();
+    TupleStream blocking =
+        new SpillStreamsTest.TuplesStream(List.of()) {
+          @Override
+          public Tuple read() {
+            inRead.set(true);
+            reading.countDown();
+            try {
+              Thread.sleep(Long.MAX_VALUE);
+            } catch (InterruptedException e) {
+              throw new IllegalStateException("interrupted", e);
+            } finally {
+              inRead.set(false);
+            }
+            return Tuple.EOF();
+          }
+
+          @Override
+          public void close() {
+            closedInRead.set(inRead.get());
+          }
+        };
+    PrefetchStream stream = new PrefetchStream(blocking, 1024);
+    stream.open();
+    reading.await();
+    stream.close();
+    assertFalse(inRead.get());
+    assertFalse(closedInRead.get());
+  }
+
+  @Test
+  public void testStalls() throws IOException {
+    TupleStream slow =
+        new SpillStreamsTest.TuplesStream(tuples(10)) {
+          @Override
+          public Tuple read() {
+            try {
+              Thread.sleep(5);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            return super.read();
+          }
+        };
+    try (PrefetchStream stream = new PrefetchStream(slow, 1024)) {
+      stream.open();
+      int count = 0;
+      while (!stream.read().EOF) {
+        count++;
+      }
+      assertEquals(10, count);
+      // the consumer waited for the first tuples at least
+      assertTrue(stream.getStalls() > 0);
+      assertTrue(stream.getStallNanos() > 0);
+    }
+  }
+
+  private static List<Tuple> tuples(int n) {
+    List<Tuple> tuples = new ArrayList<>();
+    for (long i = 0; i < n; i++) {
+      Tuple tuple = new Tuple();
+      tuple.put("id", i);
+      tuples.add(tuple);
+    }
+    return tuples;
+  }
+}
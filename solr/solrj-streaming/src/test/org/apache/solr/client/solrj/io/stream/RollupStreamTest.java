@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.stream;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.stream.metrics.Bucket;
+import org.apache.solr.client.solrj.io.stream.metrics.CountMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.MaxMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.MeanMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.Metric;
+import org.apache.solr.client.solrj.io.stream.metrics.MinMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.SumMetric;
+import org.junit.Test;
+
+/** Checks that rolling up groups of rows of batches returns the groups of a hash rollup */
+public class RollupStreamTest extends SolrTestCase {
+
+  @Test
+  public void testRollup() throws IOException {
+    Random random = random();
+    List<Tuple> tuples = new ArrayList<>();
+    // groups of up to several batches, and tuples without bucket values or metric values
+    for (int i = 0; i < 5000; i++) {
+      Tuple tuple = new Tuple();
+      if (random.nextInt(20) != 0) {
+        tuple.put("key_s", "key" + random.nextInt(random.nextBoolean() ? 5 : 500));
+      }
+      if (random.nextInt(10) != 0) {
+        tuple.put("value_l", (long) random.nextInt(1000) - 500);
+      }
+      tuple.put("value_d", random.nextDouble());
+      tuples.add(tuple);
+    }
+    tuples.sort(
+        Comparator.comparing(
+            t -> (String) t.get("key_s"), Comparator.nullsFirst(Comparator.naturalOrder())));
+
+    Bucket[] buckets = {new Bucket("key_s")};
+    Metric[] metrics = {
+      new CountMetric(),
+      new CountMetric("value_l"),
+      new SumMetric("value_l"),
+      new MinMetric("value_l"),
+      new MaxMetric("value_l"),
+      new MeanMetric("value_l"),
+      new SumMetric("value_d"),
+      new MaxMetric("value_d")
+    };
+
+    List<Tuple> rolledUp =
+        read(new RollupStream(new SpillStreamsTest.TuplesStream(tuples), buckets, metrics));
+    List<Tuple> expected =
+        read(
+            new HashRollupStream(
+                new SpillStreamsTest.TuplesStream(tuples), buckets, metrics, -1));
+    assertEquals(expected.size(), rolledUp.size());
+
+    Map<Object, Map<String, Object>> byKey = new HashMap<>();
+    for (Tuple tuple : expected) {
+      byKey.put(tuple.get("key_s"), tuple.getFields());
+    }
+    Object previousKey = null;
+    for (Tuple tuple : rolledUp) {
+      // each group is returned once, in order
+      assertNotEquals(previousKey, tuple.get("key_s"));
+      previousKey = tuple.get("key_s");
+      Map<String, Object> expectedFields = byKey.get(tuple.get("key_s"));
+      assertEquals(expectedFields.keySet(), tuple.getFields().keySet());
+      for (Map.Entry<String, Object> field : expectedFields.entrySet()) {
+        Object value = tuple.get(field.getKey());
+        if (value instanceof Double d) {
+          // the sums are added up in another order
+          assertEquals(field.getKey(), (Double) field.getValue(), d, 1e-9);
+        } else {
+          assertEquals(field.getKey(), field.getValue(), value);
+        }
+      }
+    }
+  }
+
+  private static List<Tuple> read(TupleStream stream) throws IOException {
+    List<Tuple> tuples = new ArrayList<>();
+    try {
+      stream.open();
+      for (Tuple tuple = stream.read(); !tuple.EOF; tuple = stream.read()) {
+        tuples.add(tuple);
+      }
+    } finally {
+      stream.close();
+    }
+    return tuples;
+  }
+}
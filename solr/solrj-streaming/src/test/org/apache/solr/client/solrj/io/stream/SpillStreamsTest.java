@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.stream;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.comp.ComparatorOrder;
+import org.apache.solr.client.solrj.io.comp.FieldComparator;
+import org.apache.solr.client.solrj.io.comp.StreamComparator;
+import org.apache.solr.client.solrj.io.stream.expr.Explanation;
+import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
+import org.apache.solr.client.solrj.io.stream.metrics.Bucket;
+import org.apache.solr.client.solrj.io.stream.metrics.CountMetric;
+import org.apache.solr.client.solrj.io.stream.metrics.Metric;
+import org.apache.solr.client.solrj.io.stream.metrics.SumMetric;
+import org.junit.Test;
+
+/** Checks that the streams which spill to disk return the same tuples as in memory */
+public class SpillStreamsTest extends SolrTestCase {
+
+  private static final long MEMORY_LIMIT = 4096;
+
+  @Test
+  public void testSort() throws IOException {
+    List<Tuple> tuples = randomTuples(2000, 50);
+    StreamComparator comp = new FieldComparator("key_s", ComparatorOrder.ASCENDING);
+
+    long spilledTuples = spilledTuples(SpillMetrics.SORT_RUN);
+    List<Tuple> expected = read(new SortStream(new TuplesStream(tuples), comp, -1));
+    List<Tuple> actual = read(new SortStream(new TuplesStream(tuples), comp, MEMORY_LIMIT));
+    assertTrue(spilledTuples(SpillMetrics.SORT_RUN) > spilledTuples);
+
+    // the sort is stable
+    assertEquals(fields(expected), fields(actual));
+  }
+
+  @Test
+  public void testHashJoin() throws IOException {
+    List<Tuple> full = randomTuples(1000, 300);
+    List<Tuple> hashed = randomTuples(1000, 200);
+    for (Tuple tuple : hashed) {
+      tuple.put("hashed_l", tuple.get("value_l"));
+      tuple.remove("value_l");
+    }
+    List<String> on = List.of("key_s");
+
+    long spilledTuples = spilledTuples(SpillMetrics.HASH_JOIN_BUILD);
+    List<Tuple> expected =
+        read(new HashJoinStream(new TuplesStream(full), new TuplesStream(hashed), on, -1));
+    List<Tuple> actual =
+        read(
+            new HashJoinStream(
+                new TuplesStream(full), new TuplesStream(hashed), on, MEMORY_LIMIT));
+    assertTrue(spilledTuples(SpillMetrics.HASH_JOIN_BUILD) > spilledTuples);
+    assertFalse(expected.isEmpty());
+    assertEquals(fields(expected), fields(actual));
+
+    expected =
+        read(new OuterHashJoinStream(new TuplesStream(full), new TuplesStream(hashed), on, -1));
+    actual =
+        read(
+            new OuterHashJoinStream(
+                new TuplesStream(full), new TuplesStream(hashed), on, MEMORY_LIMIT));
+    assertTrue(expected.size() > full.size() / 2);
+    assertEquals(fields(expected), fields(actual));
+  }
+
+  @Test
+  public void testHashRollup() throws IOException {
+    List<Tuple> tuples = randomTuples(3000, 500);
+    Bucket[] buckets = {new Bucket("key_s")};
+    Metric[] metrics = {new CountMetric(), new SumMetric("value_l")};
+
+    long spilledTuples = spilledTuples(SpillMetrics.ROLLUP_PARTITION);
+    List<Tuple> expected =
+        read(new HashRollupStream(new TuplesStream(tuples), buckets, metrics, -1));
+    List<Tuple> actual =
+        read(new HashRollupStream(new TuplesStream(tuples), buckets, metrics, MEMORY_LIMIT));
+    assertTrue(spilledTuples(SpillMetrics.ROLLUP_PARTITION) > spilledTuples);
+
+    // the groups are not in any order
+    assertEquals(byKey(expected), byKey(actual));
+  }
+
+  @Test
+  public void testSpillFile() throws IOException {
+    Tuple tuple = new Tuple();
+    tuple.put("str_s", "a");
+    tuple.put("int_i", 1);
+    tuple.put("float_f", 1.5f);
+    tuple.put("date_dt", new Date(1000));
+    tuple.put("vector", new float[] {1, 2});
+    tuple.put("list", new ArrayList<>(List.of(1L, "b")));
+    tuple.put("map", new LinkedHashMap<>(Map.of("c", 2.5d)));
+    try (SpillFile file = new SpillFile(SpillMetrics.SORT_RUN)) {
+      file.write(tuple, 7);
+      try (SpillFile.Reader reader = file.reader()) {
+        assertTrue(reader.next());
+        assertEquals(7, reader.tag());
+        Tuple read = reader.tuple();
+        assertEquals(tuple.getFields().keySet(), read.getFields().keySet());
+        for (String field : tuple.getFields().keySet()) {
+          if (field.equals("vector")) {
+            assertArrayEquals((float[]) tuple.get(field), (float[]) read.get(field), 0f);
+          } else {
+            assertEquals(tuple.get(field), read.get(field));
+            assertSame(tuple.get(field).getClass(), read.get(field).getClass());
+          }
+        }
+        assertFalse(reader.next());
+      }
+    }
+
+    // values which wouldn't be read back as they were written
+    tuple.put("tuple", new Tuple(Map.of("d", 1L)));
+    try (SpillFile file = new SpillFile(SpillMetrics.SORT_RUN)) {
+      expectThrows(IOException.class, () -> file.write(tuple, 0));
+    }
+    assertFalse(SpillFile.isSpillable(List.of(new BigDecimal("1.5"))));
+    assertFalse(SpillFile.isSpillable(Map.of("e", new Object[] {"f"})));
+  }
+
+  private List<Tuple> randomTuples(int count, int numKeys) {
+    Random random = random();
+    List<Tuple> tuples = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Tuple tuple = new Tuple();
+      tuple.put("id", Integer.toString(i));
+      if (random.nextInt(20) != 0) {
+        tuple.put("key_s", "key" + random.nextInt(numKeys));
+      }
+      tuple.put("value_l", (long) random.nextInt(1000));
+      tuples.add(tuple);
+    }
+    return tuples;
+  }
+
+  private static long spilledTuples(String phase) {
+    return SpillMetrics.getMetrics().getOrDefault(phase + ".tuples", 0L);
+  }
+
+  private static List<Tuple> read(TupleStream stream) throws IOException {
+    List<Tuple> tuples = new ArrayList<>();
+    try {
+      stream.open();
+      for (Tuple tuple = stream.read(); !tuple.EOF; tuple = stream.read()) {
+        tuples.add(tuple);
+      }
+    } finally {
+      stream.close();
+    }
+    return tuples;
+  }
+
+  private static List<Map<String, Object>> fields(List<Tuple> tuples) {
+    List<Map<String, Object>> fields = new ArrayList<>(tuples.size());
+    for (Tuple tuple : tuples) {
+      fields.add(tuple.getFields());
+    }
+    return fields;
+  }
+
+  private static Map<Object, Map<String, Object>> byKey(List<Tuple> tuples) {
+    Map<Object, Map<String, Object>> byKey = new HashMap<>();
+    for (Tuple tuple : tuples) {
+      assertNull(byKey.put(tuple.get("key_s"), tuple.getFields()));
+    }
+    return byKey;
+  }
+
+  /** A stream of a list of tuples */
+  static class TuplesStream extends TupleStream {
+    private final List<Tuple> tuples;
+    private int pos;
+
+    TuplesStream(List<Tuple> tuples) {
+      this.tuples = tuples;
+    }
+
+    @Override
+    public void setStreamContext(StreamContext context) {}
+
+    @Override
+    public List<TupleStream> children() {
+      return List.of();
+    }
+
+    @Override
+    public void open() {
+      pos = 0;
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public Tuple read() {
+      return pos < tuples.size() ? tuples.get(pos++).clone() : Tuple.EOF();
+    }
+
+    @Override
+    public StreamComparator getStreamSort() {
+      return null;
+    }
+
+    @Override
+    public Explanation toExplanation(StreamFactory factory) {
+      return null;
+    }
+  }
+}
@@ -26,6 +26,9 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.apache.lucene.tests.util.LuceneTestCase;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.client.solrj.SolrClient;
@@ -65,7 +68,11 @@ import org.apache.solr.common.cloud.ClusterState;
 import org.apache.solr.common.cloud.DocCollection;
 import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
+import org.apache.solr.common.util.TimeSource;
 import org.apache.solr.embedded.JettySolrRunner;
+import org.apache.solr.util.TimeOut;
 import org.junit.Assume;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -1063,6 +1070,163 @@ public class StreamDecoratorTest extends SolrCloudTestCase {
     solrClientCache.close();
   }
 
+  @Test
+  public void testConcurrentFetchStreams() throws Exception {
+    UpdateRequest update = new UpdateRequest();
+    for (int i = 0; i < 100; i++) {
+      update.add(id, Integer.toString(i), "a_i", Integer.toString(i), "subject", "blah " + i);
+    }
+    update.commit(cluster.getSolrClient(), COLLECTIONORALIAS);
+
+    StreamFactory factory =
+        new StreamFactory()
+            .withCollectionZkHost(COLLECTIONORALIAS, cluster.getZkServer().getZkAddress())
+            .withFunctionName("search", CloudSolrStream.class)
+            .withFunctionName("fetch", FetchStream.class);
+    String expr =
+        "fetch("
+            + COLLECTIONORALIAS
+            + ", search("
+            + COLLECTIONORALIAS
+            + ", q=*:*, fl=\"id,a_i\", sort=\"a_i asc\", rows=100), on=\"id=a_i\", "
+            + "batchSize=\"5\", fl=\"subject\")";
+
+    long lookups = LookupCoalescer.getMetrics().get("lookups");
+    long coalesced = LookupCoalescer.getMetrics().get("coalesced");
+    long requests = LookupCoalescer.getMetrics().get("requests");
+    // the streams of a user share a cache, which merges their lookups made at the same time
+    SolrClientCache solrClientCache = new SolrClientCache();
+    LookupCoalescer coalescer = solrClientCache.getLookupCoalescer();
+    ExecutorService executor =
+        ExecutorUtil.newMDCAwareFixedThreadPool(4, new SolrNamedThreadFactory("fetch"));
+    try {
+      // the first lookups wait for the budget, so that they are merged
+      for (int i = 0; i < LookupCoalescer.MAX_REQUESTS; i++) {
+        coalescer.acquire();
+      }
+      List<Future<List<Tuple>>> futures = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  TupleStream stream = factory.constructStream(expr);
+                  StreamContext context = new StreamContext();
+                  context.setSolrClientCache(solrClientCache);
+                  context.put(LookupCoalescer.USER_KEY, "user");
+                  stream.setStreamContext(context);
+                  return getTuples(stream);
+                }));
+      }
+      TimeOut timeOut = new TimeOut(30, TimeUnit.SECONDS, TimeSource.NANO_TIME);
+      timeOut.waitFor(
+          "the lookups weren't merged",
+          () -> LookupCoalescer.getMetrics().get("coalesced") >= coalesced + 3);
+      for (int i = 0; i < LookupCoalescer.MAX_REQUESTS; i++) {
+        coalescer.release();
+      }
+      for (Future<List<Tuple>> future : futures) {
+        List<Tuple> tuples = future.get();
+        assertEquals(100, tuples.size());
+        for (int i = 0; i < 100; i++) {
+          assertEquals("blah " + i, tuples.get(i).getString("subject"));
+        }
+      }
+    } finally {
+      ExecutorUtil.shutdownAndAwaitTermination(executor);
+      solrClientCache.close();
+    }
+
+    assertEquals(lookups + 4 * 20, (long) LookupCoalescer.getMetrics().get("lookups"));
+    long sent = LookupCoalescer.getMetrics().get("requests") - requests;
+    assertTrue("requests: " + sent, sent > 0 && sent < 4 * 20);
+  }
+
+  @Test
+  public void testPipelinedFetchStream() throws Exception {
+    UpdateRequest update = new UpdateRequest();
+    for (int i = 0; i < 100; i++) {
+      update.add(
+          id,
+          Integer.toString(i),
+          "a_i",
+          Integer.toString(i),
+          "b_i",
+          Integer.toString(i % 10),
+          "subject",
+          "blah " + i);
+    }
+    update.commit(cluster.getSolrClient(), COLLECTIONORALIAS);
+
+    StreamFactory factory =
+        new StreamFactory()
+            .withCollectionZkHost(COLLECTIONORALIAS, cluster.getZkServer().getZkAddress())
+            .withFunctionName("search", CloudSolrStream.class)
+            .withFunctionName("fetch", FetchStream.class);
+    StreamContext streamContext = new StreamContext();
+    SolrClientCache solrClientCache = new SolrClientCache();
+    streamContext.setSolrClientCache(solrClientCache);
+
+    try {
+      // real-time gets of the shards of the keys, fetched while the next batches are read
+      long lookups = LookupCoalescer.getMetrics().get("lookups");
+      TupleStream stream =
+          factory.constructStream(
+              "fetch("
+                  + COLLECTIONORALIAS
+                  + ", search("
+                  + COLLECTIONORALIAS
+                  + ", q=*:*, fl=\"id,a_i\", sort=\"a_i asc\", rows=100), on=\"a_i=id\", "
+                  + "fl=\"subject\", batchSize=\"3\", maxPendingBatches=\"4\", "
+                  + "realtimeGet=\"true\")");
+      stream.setStreamContext(streamContext);
+      List<Tuple> tuples = getTuples(stream);
+      assertEquals(100, tuples.size());
+      for (int i = 0; i < 100; i++) {
+        assertEquals(i, (long) tuples.get(i).getLong("a_i"));
+        assertEquals("blah " + i, tuples.get(i).getString("subject"));
+      }
+      // not queried
+      assertEquals(lookups, (long) LookupCoalescer.getMetrics().get("lookups"));
+
+      // the keys of a field other than the unique key are queried
+      stream =
+          factory.constructStream(
+              "fetch("
+                  + COLLECTIONORALIAS
+                  + ", search("
+                  + COLLECTIONORALIAS
+                  + ", q=*:*, fl=\"id,a_i\", sort=\"a_i asc\", rows=100), on=\"a_i=a_i\", "
+                  + "fl=\"subject\", batchSize=\"50\", realtimeGet=\"true\")");
+      stream.setStreamContext(streamContext);
+      tuples = getTuples(stream);
+      assertEquals(100, tuples.size());
+      for (int i = 0; i < 100; i++) {
+        assertEquals("blah " + i, tuples.get(i).getString("subject"));
+      }
+      assertEquals(lookups + 2, (long) LookupCoalescer.getMetrics().get("lookups"));
+
+      // the keys of the rows kept are not looked up again
+      lookups = LookupCoalescer.getMetrics().get("lookups");
+      stream =
+          factory.constructStream(
+              "fetch("
+                  + COLLECTIONORALIAS
+                  + ", search("
+                  + COLLECTIONORALIAS
+                  + ", q=*:*, fl=\"id,a_i,b_i\", sort=\"a_i asc\", rows=100), "
+                  + "on=\"b_i=id\", fl=\"subject\", batchSize=\"5\", cacheSize=\"10\")");
+      stream.setStreamContext(streamContext);
+      tuples = getTuples(stream);
+      assertEquals(100, tuples.size());
+      for (int i = 0; i < 100; i++) {
+        assertEquals("blah " + (i % 10), tuples.get(i).getString("subject"));
+      }
+      assertEquals(lookups + 2, (long) LookupCoalescer.getMetrics().get("lookups"));
+    } finally {
+      solrClientCache.close();
+    }
+  }
+
   @Test
   public void testParallelFetchStream() throws Exception {
 
@@ -1759,6 +1923,66 @@ public class StreamDecoratorTest extends SolrCloudTestCase {
     }
   }
 
+  @Test
+  public void testConcurrentParallelShuffles() throws Exception {
+    // enough documents for the buffers of the workers at each shard to spill to disk
+    int numDocs = 80_000;
+    UpdateRequest update = new UpdateRequest();
+    for (int i = 0; i < numDocs; i++) {
+      update.add(id, Integer.toString(i), "a_s", "hello" + i % 1000, "a_i", Integer.toString(i));
+      if (update.getDocuments().size() == 10_000) {
+        update.process(cluster.getSolrClient(), COLLECTIONORALIAS);
+        update = new UpdateRequest();
+      }
+    }
+    update.commit(cluster.getSolrClient(), COLLECTIONORALIAS);
+
+    String zkHost = cluster.getZkServer().getZkAddress();
+    StreamFactory factory =
+        new StreamFactory()
+            .withCollectionZkHost(COLLECTIONORALIAS, zkHost)
+            .withFunctionName("search", CloudSolrStream.class)
+            .withFunctionName("parallel", ParallelStream.class);
+    String expr =
+        "parallel("
+            + COLLECTIONORALIAS
+            + ", search("
+            + COLLECTIONORALIAS
+            + ", q=*:*, fl=\"id,a_s,a_i\", sort=\"a_i asc\", partitionKeys=\"a_s\", "
+            + "qt=\"/export\"), workers=\"2\", zkHost=\""
+            + zkHost
+            + "\", sort=\"a_i asc\", shuffle=\"true\")";
+
+    // each worker merges the documents of both shards, which the other worker may export
+    SolrClientCache solrClientCache = new SolrClientCache();
+    ExecutorService executor =
+        ExecutorUtil.newMDCAwareFixedThreadPool(2, new SolrNamedThreadFactory("shuffle"));
+    try {
+      List<Future<List<Tuple>>> futures = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  TupleStream stream = factory.constructStream(expr);
+                  StreamContext context = new StreamContext();
+                  context.setSolrClientCache(solrClientCache);
+                  stream.setStreamContext(context);
+                  return getTuples(stream);
+                }));
+      }
+      for (Future<List<Tuple>> future : futures) {
+        List<Tuple> tuples = future.get();
+        assertEquals(numDocs, tuples.size());
+        for (int i = 0; i < numDocs; i++) {
+          assertEquals(i, (long) tuples.get(i).getLong("a_i"));
+        }
+      }
+    } finally {
+      ExecutorUtil.shutdownAndAwaitTermination(executor);
+      solrClientCache.close();
+    }
+  }
+
   @Test
   public void testParallelReducerStream() throws Exception {
 
@@ -3215,6 +3439,118 @@ public class StreamDecoratorTest extends SolrCloudTestCase {
     }
   }
 
+  @Test
+  public void testUpdateStreamPendingBatches() throws Exception {
+
+    CollectionAdminRequest.createCollection("pendingDestinationCollection", "conf", 2, 1)
+        .process(cluster.getSolrClient());
+    cluster.waitForActiveCollection("pendingDestinationCollection", 2, 2);
+
+    UpdateRequest update = new UpdateRequest();
+    for (int i = 0; i < 25; i++) {
+      update.add(id, Integer.toString(i), "a_s", "hello" + i, "a_i", Integer.toString(i));
+    }
+    update.commit(cluster.getSolrClient(), "collection1");
+
+    StreamContext streamContext = new StreamContext();
+    SolrClientCache solrClientCache = new SolrClientCache();
+    streamContext.setSolrClientCache(solrClientCache);
+
+    StreamFactory factory =
+        new StreamFactory()
+            .withCollectionZkHost("collection1", cluster.getZkServer().getZkAddress())
+            .withCollectionZkHost(
+                "pendingDestinationCollection", cluster.getZkServer().getZkAddress())
+            .withFunctionName("search", CloudSolrStream.class)
+            .withFunctionName("update", UpdateStream.class);
+
+    try {
+      // the batches are sent while the next ones are read
+      TupleStream stream =
+          factory.constructStream(
+              "update(pendingDestinationCollection, batchSize=4, maxPendingBatches=2, "
+                  + "search(collection1, q=*:*, fl=\"id,a_s,a_i\", sort=\"a_i asc\"))");
+      stream.setStreamContext(streamContext);
+      List<Tuple> tuples = getTuples(stream);
+      assertEquals(7, tuples.size());
+      assertEquals(1, tuples.get(6).get("batchIndexed"));
+      assertEquals(25L, tuples.get(6).get("totalIndexed"));
+
+      // all the batches were sent before the end of the stream
+      cluster.getSolrClient().commit("pendingDestinationCollection");
+      stream =
+          factory.constructStream(
+              "search(pendingDestinationCollection, q=*:*, fl=\"id,a_i\", sort=\"a_i asc\")");
+      stream.setStreamContext(streamContext);
+      tuples = getTuples(stream);
+      assertEquals(25, tuples.size());
+      for (int i = 0; i < 25; i++) {
+        assertEquals(i, (long) tuples.get(i).getLong("a_i"));
+      }
+    } finally {
+      CollectionAdminRequest.deleteCollection("pendingDestinationCollection")
+          .process(cluster.getSolrClient());
+      solrClientCache.close();
+    }
+  }
+
+  @Test
+  public void testUpdateStreamFailedPendingBatch() throws Exception {
+
+    CollectionAdminRequest.createCollection("pendingFailureCollection", "conf", 2, 1)
+        .process(cluster.getSolrClient());
+    cluster.waitForActiveCollection("pendingFailureCollection", 2, 2);
+
+    UpdateRequest update = new UpdateRequest();
+    for (int i = 0; i < 25; i++) {
+      String s = i == 10 ? "x" : Integer.toString(i);
+      update.add(id, Integer.toString(i), "s_s", s, "a_i", Integer.toString(i));
+    }
+    update.commit(cluster.getSolrClient(), "collection1");
+
+    StreamContext streamContext = new StreamContext();
+    SolrClientCache solrClientCache = new SolrClientCache();
+    streamContext.setSolrClientCache(solrClientCache);
+
+    StreamFactory factory =
+        new StreamFactory()
+            .withCollectionZkHost("collection1", cluster.getZkServer().getZkAddress())
+            .withCollectionZkHost("pendingFailureCollection", cluster.getZkServer().getZkAddress())
+            .withFunctionName("search", CloudSolrStream.class)
+            .withFunctionName("select", SelectStream.class)
+            .withFunctionName("update", UpdateStream.class);
+
+    try {
+      // the third batch can't be indexed, "x" is not an int
+      TupleStream stream =
+          factory.constructStream(
+              "update(pendingFailureCollection, batchSize=4, maxPendingBatches=2, "
+                  + "select(search(collection1, q=*:*, fl=\"id,a_i,s_s\", sort=\"a_i asc\"), "
+                  + "id, a_i, s_s as s_i))");
+      stream.setStreamContext(streamContext);
+      expectThrows(IOException.class, () -> getTuples(stream));
+
+      // the batches read after the failed batch were not sent
+      cluster.getSolrClient().commit("pendingFailureCollection");
+      TupleStream search =
+          factory.constructStream(
+              "search(pendingFailureCollection, q=*:*, fl=\"id,a_i\", sort=\"a_i asc\")");
+      search.setStreamContext(streamContext);
+      List<Tuple> tuples = getTuples(search);
+      assertTrue(tuples.size() >= 8);
+      for (int i = 0; i < 8; i++) {
+        assertEquals(i, (long) tuples.get(i).getLong("a_i"));
+      }
+      for (Tuple tuple : tuples) {
+        assertTrue(tuple.getLong("a_i") < 12);
+      }
+    } finally {
+      CollectionAdminRequest.deleteCollection("pendingFailureCollection")
+          .process(cluster.getSolrClient());
+      solrClientCache.close();
+    }
+  }
+
   @Test
   public void testParallelUpdateStream() throws Exception {
 
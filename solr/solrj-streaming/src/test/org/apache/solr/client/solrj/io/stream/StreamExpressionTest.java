@@ -32,6 +32,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.zip.GZIPOutputStream;
@@ -2708,6 +2709,65 @@ public class StreamExpressionTest extends SolrCloudTestCase {
     }
   }
 
+  @Test
+  public void testTopicStreamTail() throws Exception {
+    Assume.assumeTrue(!useAlias);
+
+    UpdateRequest update = new UpdateRequest();
+    for (int i = 0; i < 10; i++) {
+      update.add(id, Integer.toString(i), "a_s", "hello", "a_i", Integer.toString(i));
+    }
+    update.commit(cluster.getSolrClient(), COLLECTIONORALIAS);
+
+    StreamFactory factory =
+        new StreamFactory()
+            .withCollectionZkHost("collection1", cluster.getZkServer().getZkAddress())
+            .withFunctionName("topic", TopicStream.class);
+
+    SolrClientCache cache = new SolrClientCache();
+    try {
+      // a run reads the next pages of the shards until all the documents are read
+      TupleStream stream =
+          factory.constructStream(
+              "topic(collection1, collection1, q=\"a_s:hello\", fl=\"id\", id=\"3000000\", "
+                  + "initialCheckpoint=0, rows=2, tailMillis=0)");
+      StreamContext context = new StreamContext();
+      context.setSolrClientCache(cache);
+      stream.setStreamContext(context);
+      List<Tuple> tuples = getTuples(stream);
+      assertEquals(10, tuples.size());
+
+      cluster.getSolrClient().commit("collection1");
+      new UpdateRequest()
+          .add(id, "10", "a_s", "hello", "a_i", "10")
+          .commit(cluster.getSolrClient(), COLLECTIONORALIAS);
+
+      // the next run starts from the persisted checkpoints
+      stream =
+          factory.constructStream(
+              "topic(collection1, collection1, q=\"a_s:hello\", fl=\"id\", id=\"3000000\", "
+                  + "rows=2, tailMillis=500)");
+      context = new StreamContext();
+      context.setSolrClientCache(cache);
+      stream.setStreamContext(context);
+      try {
+        stream.open();
+        assertEquals(10L, (long) stream.read().getLong(id));
+
+        // once caught up, the shards are polled until no document comes for tailMillis
+        long start = System.nanoTime();
+        Tuple tuple = stream.read();
+        assertTrue(tuple.EOF);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(0L, (long) tuple.getLong("sleepMillis"));
+      } finally {
+        stream.close();
+      }
+    } finally {
+      cache.close();
+    }
+  }
+
   @Test
   public void testParallelTopicStream() throws Exception {
 
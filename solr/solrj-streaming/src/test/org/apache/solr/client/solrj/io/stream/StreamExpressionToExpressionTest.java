@@ -49,6 +49,7 @@ public class StreamExpressionToExpressionTest extends SolrTestCase {
             .withFunctionName("reduce", ReducerStream.class)
             .withFunctionName("group", GroupOperation.class)
             .withFunctionName("update", UpdateStream.class)
+            .withFunctionName("fetch", FetchStream.class)
             .withFunctionName("stats", StatsStream.class)
             .withFunctionName("facet", FacetStream.class)
             .withFunctionName("jdbc", JDBCStream.class)
@@ -155,6 +156,20 @@ public class StreamExpressionToExpressionTest extends SolrTestCase {
       assertTrue(expressionString.contains("id=blah"));
       assertTrue(expressionString.contains("checkpointEvery=1000"));
     }
+
+    // Tailing
+    try (TopicStream stream =
+        new TopicStream(
+            StreamExpressionParser.parse(
+                "topic(collection2, collection1, q=*:*, fl=\"id\", id=\"blah\", checkpointInterval=5000, tailMillis=2000)"),
+            factory)) {
+      expressionString = stream.toExpression(factory).toString();
+      assertTrue(expressionString.contains("checkpointInterval=5000"));
+      assertTrue(expressionString.contains("tailMillis=2000"));
+      // not sent to the shards
+      assertEquals(
+          expressionString.indexOf("tailMillis"), expressionString.lastIndexOf("tailMillis"));
+    }
   }
 
   @Test
@@ -278,6 +293,44 @@ public class StreamExpressionToExpressionTest extends SolrTestCase {
       assertTrue(expressionString.contains("update(collection2"));
       assertTrue(expressionString.contains("batchSize=5"));
       assertTrue(expressionString.contains("search(collection1"));
+      assertFalse(expressionString.contains("maxPendingBatches"));
+    }
+
+    expression =
+        StreamExpressionParser.parse(
+            "update(collection2, batchSize=5, maxPendingBatches=2, "
+                + "search(collection1, q=*:*, fl=\"id,a_s\", sort=\"a_s asc\"))");
+    try (UpdateStream updateStream = new UpdateStream(expression, factory)) {
+      String expressionString = updateStream.toExpression(factory).toString();
+      assertTrue(expressionString.contains("maxPendingBatches=2"));
+    }
+  }
+
+  @Test
+  public void testFetchStream() throws Exception {
+    StreamExpression expression =
+        StreamExpressionParser.parse(
+            "fetch(collection1, on=\"a_s=id\", fl=\"b_s\", batchSize=10, "
+                + "search(collection1, q=*:*, fl=\"id,a_s\", sort=\"a_s asc\"))");
+    try (FetchStream stream = new FetchStream(expression, factory)) {
+      String expressionString = stream.toExpression(factory).toString();
+      assertTrue(expressionString.contains("fetch(collection1"));
+      assertTrue(expressionString.contains("batchSize=10"));
+      assertFalse(expressionString.contains("maxPendingBatches"));
+      assertFalse(expressionString.contains("realtimeGet"));
+      assertFalse(expressionString.contains("cacheSize"));
+    }
+
+    expression =
+        StreamExpressionParser.parse(
+            "fetch(collection1, on=\"a_s=id\", fl=\"b_s\", maxPendingBatches=4, "
+                + "realtimeGet=true, cacheSize=1000, "
+                + "search(collection1, q=*:*, fl=\"id,a_s\", sort=\"a_s asc\"))");
+    try (FetchStream stream = new FetchStream(expression, factory)) {
+      String expressionString = stream.toExpression(factory).toString();
+      assertTrue(expressionString.contains("maxPendingBatches=4"));
+      assertTrue(expressionString.contains("realtimeGet=true"));
+      assertTrue(expressionString.contains("cacheSize=1000"));
     }
   }
 
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.io.stream.eval;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.client.solrj.io.Tuple;
+import org.apache.solr.client.solrj.io.eval.AbsoluteValueEvaluator;
+import org.apache.solr.client.solrj.io.eval.AddEvaluator;
+import org.apache.solr.client.solrj.io.eval.AndEvaluator;
+import org.apache.solr.client.solrj.io.eval.CompiledEvaluator;
+import org.apache.solr.client.solrj.io.eval.DivideEvaluator;
+import org.apache.solr.client.solrj.io.eval.EqualToEvaluator;
+import org.apache.solr.client.solrj.io.eval.GreaterThanEqualToEvaluator;
+import org.apache.solr.client.solrj.io.eval.GreaterThanEvaluator;
+import org.apache.solr.client.solrj.io.eval.IfThenElseEvaluator;
+import org.apache.solr.client.solrj.io.eval.LessThanEqualToEvaluator;
+import org.apache.solr.client.solrj.io.eval.LessThanEvaluator;
+import org.apache.solr.client.solrj.io.eval.MultiplyEvaluator;
+import org.apache.solr.client.solrj.io.eval.NotEvaluator;
+import org.apache.solr.client.solrj.io.eval.OrEvaluator;
+import org.apache.solr.client.solrj.io.eval.StreamEvaluator;
+import org.apache.solr.client.solrj.io.eval.SubtractEvaluator;
+import org.apache.solr.client.solrj.io.stream.expr.StreamFactory;
+import org.junit.Test;
+
+public class CompiledEvaluatorTest extends SolrTestCase {
+
+  private static final String[] EXPRESSIONS = {
+    "add(a,b)",
+    "add(a,b,c)",
+    "add(a,1)",
+    "sub(a,b)",
+    "sub(a,add(b,c))",
+    "mult(a,b)",
+    "mult(a,b,c)",
+    "mult(a,2.5)",
+    "div(a,b)",
+    "div(add(a,b),c)",
+    "add(abs(a),b)",
+    "if(gt(a,b),a,b)",
+    "if(eq(a,b),add(a,c),sub(b,c))",
+    "if(gt(a,0),a,0)",
+    "add(if(gt(a,b),a,b),c)",
+    "if(lt(a,b),eq(a,c),b)",
+    "eq(a,b)",
+    "eq(mult(a,b),c)",
+    "gt(a,b)",
+    "gteq(a,b,c)",
+    "lt(add(a,b),c)",
+    "lteq(a,b)",
+    "and(gt(a,b),lt(b,c))",
+    "or(gt(a,b),lt(b,c),eq(a,c))",
+    "not(gt(a,b))"
+  };
+
+  private final StreamFactory factory =
+      new StreamFactory()
+          .withFunctionName("abs", AbsoluteValueEvaluator.class)
+          .withFunctionName("add", AddEvaluator.class)
+          .withFunctionName("sub", SubtractEvaluator.class)
+          .withFunctionName("mult", MultiplyEvaluator.class)
+          .withFunctionName("div", DivideEvaluator.class)
+          .withFunctionName("if", IfThenElseEvaluator.class)
+          .withFunctionName("eq", EqualToEvaluator.class)
+          .withFunctionName("gt", GreaterThanEvaluator.class)
+          .withFunctionName("gteq", GreaterThanEqualToEvaluator.class)
+          .withFunctionName("lt", LessThanEvaluator.class)
+          .withFunctionName("lteq", LessThanEqualToEvaluator.class)
+          .withFunctionName("and", AndEvaluator.class)
+          .withFunctionName("or", OrEvaluator.class)
+          .withFunctionName("not", NotEvaluator.class);
+
+  @Test
+  public void testSameResults() throws Exception {
+    for (String expression : EXPRESSIONS) {
+      StreamEvaluator interpreted = factory.constructEvaluator(expression);
+      StreamEvaluator compiled = CompiledEvaluator.compile(factory.constructEvaluator(expression));
+      assertTrue(expression, compiled instanceof CompiledEvaluator);
+      for (int i = 0; i < 500; i++) {
+        Map<String, Object> values = new HashMap<>();
+        values.put("a", randomValue());
+        values.put("b", randomValue());
+        values.put("c", randomValue());
+        Object expected;
+        try {
+          expected = interpreted.evaluate(new Tuple(values));
+        } catch (Exception e) {
+          Exception actual =
+              expectThrows(Exception.class, () -> compiled.evaluate(new Tuple(values)));
+          assertEquals(expression + " " + values, e.getMessage(), actual.getMessage());
+          continue;
+        }
+        assertEquals(expression + " " + values, expected, compiled.evaluate(new Tuple(values)));
+      }
+    }
+  }
+
+  @Test
+  public void testFallback() throws Exception {
+    StreamEvaluator compiled = CompiledEvaluator.compile(factory.constructEvaluator("add(a,b)"));
+    long fallbacks = CompiledEvaluator.getMetrics().get("fallbacks");
+
+    Map<String, Object> values = new HashMap<>();
+    values.put("a", 1L);
+    values.put("b", 2);
+    assertEquals(3D, compiled.evaluate(new Tuple(values)));
+    assertEquals(fallbacks, (long) CompiledEvaluator.getMetrics().get("fallbacks"));
+
+    // decimals are added as such
+    values.put("a", 1.1D);
+    values.put("b", 2.2D);
+    assertEquals(3.3D, compiled.evaluate(new Tuple(values)));
+    values.put("a", null);
+    assertNull(compiled.evaluate(new Tuple(values)));
+    assertEquals(fallbacks + 2, (long) CompiledEvaluator.getMetrics().get("fallbacks"));
+  }
+
+  @Test
+  public void testIf() throws Exception {
+    String expression = "if(gt(a,0),a,b)";
+    StreamEvaluator interpreted = factory.constructEvaluator(expression);
+    StreamEvaluator compiled = CompiledEvaluator.compile(factory.constructEvaluator(expression));
+    long fallbacks = CompiledEvaluator.getMetrics().get("fallbacks");
+
+    // the branch is returned as by the evaluator, whatever its type
+    for (Object[] values :
+        new Object[][] {{5L, 0L}, {5, 0L}, {-1L, -0.0D}, {-1L, "x"}, {2.5D, null}, {-1L, true}}) {
+      Map<String, Object> tuple = new HashMap<>();
+      tuple.put("a", values[0]);
+      tuple.put("b", values[1]);
+      Object expected = interpreted.evaluate(new Tuple(tuple));
+      assertEquals(tuple.toString(), expected, compiled.evaluate(new Tuple(tuple)));
+    }
+    assertEquals(fallbacks, (long) CompiledEvaluator.getMetrics().get("fallbacks"));
+  }
+
+  @Test
+  public void testNotCompiled() throws Exception {
+    StreamEvaluator evaluator = factory.constructEvaluator("abs(a)");
+    assertSame(evaluator, CompiledEvaluator.compile(evaluator));
+
+    StreamEvaluator compiled = CompiledEvaluator.compile(factory.constructEvaluator("gt(a,1)"));
+    assertSame(compiled, CompiledEvaluator.compile(compiled));
+    assertEquals("gt(a,1)", compiled.toExpression(factory).toString());
+  }
+
+  private static Object randomValue() {
+    switch (random().nextInt(9)) {
+      case 0:
+        return (long) random().nextInt(5);
+      case 1:
+        return random().nextInt(2000) - 1000;
+      case 2:
+        return (double) (random().nextInt(200) - 100);
+      case 3:
+        return (random().nextInt(2000) - 1000) / 10D;
+      case 4:
+        return (1L << 53) + random().nextInt(3) - 1;
+      case 5:
+        return -0.0D;
+      case 6:
+        return random().nextBoolean() ? Double.MAX_VALUE : Long.MAX_VALUE;
+      case 7:
+        return null;
+      default:
+        return (long) random().nextInt(100_000_000);
+    }
+  }
+}
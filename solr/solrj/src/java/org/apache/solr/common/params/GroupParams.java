@@ -69,4 +69,11 @@ public interface GroupParams {
   public static final String GROUP_DISTRIBUTED_SECOND = GROUP + ".distributed.second";
 
   public static final String GROUP_DISTRIBUTED_TOPGROUPS_PREFIX = GROUP + ".topgroups.";
+
+  /**
+   * The maximum number of groups a shard may have for its top groups to be returned together with
+   * its search groups, saving the second distributed phase when all shards have no more groups. A
+   * value of 0, the default, disables this.
+   */
+  public static final String GROUP_SINGLE_PASS_MAX_GROUPS = GROUP + ".singlePass.maxGroups";
 }
@@ -101,6 +101,27 @@ public interface ShardParams {
   /** Force a single-pass distributed query? (true/false) */
   String DISTRIB_SINGLE_PASS = "distrib.singlePass";
 
+  /**
+   * The number of top documents of each shard whose fields are returned along with their ids, so
+   * that they don't need to be retrieved in a second pass if they make the merged results (int)
+   */
+  String DISTRIB_SINGLE_PASS_DOCS = "distrib.singlePass.docs";
+
+  /**
+   * Share the minimum competitive score of the top documents between the shard requests served by
+   * the same node? (true/false)
+   */
+  String DISTRIB_SHARED_MIN_SCORE = "distrib.sharedMinScore";
+
+  /** Return the index version of the shard in the response header? (true/false) */
+  String SHARDS_INDEX_VERSION = "shards.indexVersion";
+
+  /**
+   * The maximum age, in milliseconds, of the last seen index versions of the shards that a cached
+   * distributed response is checked against, up to a limit of the node
+   */
+  String DISTRIB_RESPONSE_CACHE_MAX_AGE = "distrib.responseCache.maxAge";
+
   /**
    * Throw an error from search requests when the {@value ShardParams#SHARDS_TOLERANT} param has
    * this value and ZooKeeper is not connected.
@@ -22,6 +22,11 @@ public interface StreamParams {
   // parameters
   String EXPR = "expr";
 
+  // shuffle of the documents of an export among the workers of a parallel stream
+  String SHUFFLE_ID = "shuffle.id";
+  String SHUFFLE_WORKERS = "shuffle.workers";
+  String SHUFFLE_WORKER = "shuffle.worker";
+
   // stream properties
   String TUPLE = "tuple";
   String DOCS = "docs";
@@ -76,6 +76,22 @@ public class ShardParamsTest extends SolrTestCase {
     assertEquals(ShardParams.DISTRIB_SINGLE_PASS, "distrib.singlePass");
   }
 
+  public void testDistribSinglePassDocs() {
+    assertEquals(ShardParams.DISTRIB_SINGLE_PASS_DOCS, "distrib.singlePass.docs");
+  }
+
+  public void testDistribSharedMinScore() {
+    assertEquals(ShardParams.DISTRIB_SHARED_MIN_SCORE, "distrib.sharedMinScore");
+  }
+
+  public void testShardsIndexVersion() {
+    assertEquals(ShardParams.SHARDS_INDEX_VERSION, "shards.indexVersion");
+  }
+
+  public void testDistribResponseCacheMaxAge() {
+    assertEquals(ShardParams.DISTRIB_RESPONSE_CACHE_MAX_AGE, "distrib.responseCache.maxAge");
+  }
+
   @Test
   public void testGetShardsTolerantAsBool() {
     ModifiableSolrParams params = new ModifiableSolrParams();